@@ -50,6 +50,7 @@ public class BasicAuthWebSecurityConfiguration {
 						.requestMatchers(HttpMethod.POST, "/fhir/ConceptMap/*").authenticated()
 						.requestMatchers(HttpMethod.PUT, "/fhir/ConceptMap/*").authenticated()
 						.requestMatchers(HttpMethod.DELETE, "/fhir/ConceptMap/*").authenticated()
+						.requestMatchers(HttpMethod.POST, "/fhir/$closure").authenticated()
 						.requestMatchers("/fhir/**").permitAll()
 						.requestMatchers("/mcp/**").permitAll()
 						.requestMatchers("/sse").permitAll()
@@ -57,6 +58,11 @@ public class BasicAuthWebSecurityConfiguration {
 						.requestMatchers("/.well-known/**").permitAll() // Chrome DevTools workspace probe; avoids Basic prompt
 						.requestMatchers("/").permitAll()
 						.requestMatchers("/version").permitAll()
+						.requestMatchers(HttpMethod.GET, "/stats/slow-requests").authenticated() // Holds the parameters of other users' requests
+						.requestMatchers(HttpMethod.GET, "/stats/**").permitAll()
+						.requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/prometheus").permitAll()
+						.requestMatchers(HttpMethod.GET, "/export/**").permitAll()
+						.requestMatchers(HttpMethod.POST, "/bulk/validate-code").permitAll()
 						.requestMatchers("/*").permitAll()
 						.requestMatchers("/_ah/warmup").permitAll()
 						.anyRequest().authenticated()
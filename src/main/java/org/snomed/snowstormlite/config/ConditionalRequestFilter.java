@@ -0,0 +1,186 @@
+package org.snomed.snowstormlite.config;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.snomed.snowstormlite.domain.FHIRCodeSystem;
+import org.snomed.snowstormlite.service.CodeSystemRepository;
+import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.ResourceIndexIOProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.snomed.snowstormlite.fhir.FHIRConstants.ACCEPT_LANGUAGE_HEADER;
+
+/**
+ * Conditional GET for the $expand and $lookup operations. Responses only change when the index content changes, so each response is given
+ * a strong ETag derived from the index versions, the last update of the code system and the normalised request, plus a Last-Modified date.
+ * The date is the latest of the code system update and the index commits, which record their time, so it is the same for every instance
+ * serving the same index.
+ * A request with a matching If-None-Match, or If-Modified-Since when no If-None-Match is given, is answered with 304 before the request
+ * reaches the FHIR server.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class ConditionalRequestFilter implements Filter {
+
+	private static final List<String> OPERATIONS = List.of("expand", "lookup");
+	private static final List<String> VARY_HEADERS = List.of("Accept", ACCEPT_LANGUAGE_HEADER);
+
+	private final IndexIOProvider indexIOProvider;
+	private final ResourceIndexIOProvider resourceIndexIOProvider;
+	private final CodeSystemRepository codeSystemRepository;
+	private final boolean enabled;
+	private final int maxAgeSeconds;
+
+	public ConditionalRequestFilter(IndexIOProvider indexIOProvider, ResourceIndexIOProvider resourceIndexIOProvider, CodeSystemRepository codeSystemRepository,
+			@Value("${search.http-cache.enabled:true}") boolean enabled, @Value("${search.http-cache.max-age-seconds:60}") int maxAgeSeconds) {
+
+		this.indexIOProvider = indexIOProvider;
+		this.resourceIndexIOProvider = resourceIndexIOProvider;
+		this.codeSystemRepository = codeSystemRepository;
+		this.enabled = enabled;
+		this.maxAgeSeconds = maxAgeSeconds;
+	}
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) req;
+		HttpServletResponse response = (HttpServletResponse) res;
+		String method = request.getMethod();
+		if (!enabled || !("GET".equals(method) || "HEAD".equals(method)) || !isCacheableOperation(request.getRequestURI())) {
+			chain.doFilter(req, res);
+			return;
+		}
+		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcherIfAvailable();
+		FHIRCodeSystem codeSystem = indexSearcher != null ? codeSystemRepository.getCodeSystem() : null;
+		if (codeSystem == null) {
+			// Nothing loaded yet, the request fails without validators
+			chain.doFilter(req, res);
+			return;
+		}
+
+		DirectoryReader reader = (DirectoryReader) indexSearcher.getIndexReader();
+		long lastModified = Math.max(IndexIOProvider.getCommitTime(reader), resourceIndexIOProvider.getLastModified());
+		if (codeSystem.getLastUpdated() != null) {
+			lastModified = Math.max(lastModified, codeSystem.getLastUpdated().getTime());
+		}
+		// HTTP dates have second precision
+		lastModified -= lastModified % 1000;
+		String eTag = getETag(request, reader.getVersion(), resourceIndexIOProvider.getIndexVersion(), codeSystem);
+
+		response.setHeader("ETag", eTag);
+		if (lastModified > 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		response.setHeader("Cache-Control", (request.getHeader("Authorization") != null ? "private" : "public") + ", max-age=" + maxAgeSeconds);
+		response.setHeader("Vary", String.join(", ", VARY_HEADERS));
+
+		if (isNotModified(request, eTag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		chain.doFilter(req, new ValidatorRemovingResponse(response));
+	}
+
+	static String getETag(HttpServletRequest request, long indexVersion, long resourceIndexVersion, FHIRCodeSystem codeSystem) {
+		Hasher hasher = Hashing.sha256().newHasher()
+				.putLong(indexVersion)
+				.putLong(resourceIndexVersion)
+				.putString(String.valueOf(codeSystem.getSystemAndVersionUri()), StandardCharsets.UTF_8)
+				.putLong(codeSystem.getLastUpdated() != null ? codeSystem.getLastUpdated().getTime() : 0)
+				.putString(request.getRequestURI(), StandardCharsets.UTF_8);
+		// Parameter names are sorted, the order of repeated values is kept because it can change the response
+		for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+			hasher.putString(parameter.getKey(), StandardCharsets.UTF_8).putInt(parameter.getValue().length);
+			for (String value : parameter.getValue()) {
+				hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+			}
+		}
+		for (String header : VARY_HEADERS) {
+			hasher.putString(String.valueOf(request.getHeader(header)), StandardCharsets.UTF_8).putByte((byte) 0);
+		}
+		return "\"" + hasher.hash() + "\"";
+	}
+
+	static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			// Weak comparison, as required for If-None-Match
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.startsWith("W/")) {
+					candidate = candidate.substring(2);
+				}
+				if (candidate.equals("*") || candidate.equals(eTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		try {
+			long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+			return ifModifiedSince != -1 && lastModified > 0 && lastModified <= ifModifiedSince;
+		} catch (IllegalArgumentException e) {
+			// Invalid date, ignored
+			return false;
+		}
+	}
+
+	static boolean isCacheableOperation(String requestUri) {
+		if (requestUri != null) {
+			int operationStart = requestUri.lastIndexOf('$');
+			return operationStart != -1 && OPERATIONS.contains(requestUri.substring(operationStart + 1));
+		}
+		return false;
+	}
+
+	/**
+	 * Error responses must not be cached or revalidated, so the validators set before the request was processed are removed.
+	 */
+	private static final class ValidatorRemovingResponse extends HttpServletResponseWrapper {
+
+		ValidatorRemovingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public void setStatus(int status) {
+			removeValidators(status);
+			super.setStatus(status);
+		}
+
+		@Override
+		public void sendError(int status) throws IOException {
+			removeValidators(status);
+			super.sendError(status);
+		}
+
+		@Override
+		public void sendError(int status, String message) throws IOException {
+			removeValidators(status);
+			super.sendError(status, message);
+		}
+
+		private void removeValidators(int status) {
+			if (status >= 300 && !isCommitted()) {
+				setHeader("ETag", null);
+				setHeader("Last-Modified", null);
+				setHeader("Cache-Control", "no-store");
+			}
+		}
+	}
+}
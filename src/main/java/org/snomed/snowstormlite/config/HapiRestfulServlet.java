@@ -8,8 +8,10 @@ import ca.uhn.fhir.rest.server.RestfulServer;
 import jakarta.servlet.ServletException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.fhir.ClosureProvider;
 import org.snomed.snowstormlite.fhir.CodeSystemProvider;
 import org.snomed.snowstormlite.fhir.ConceptMapProvider;
+import org.snomed.snowstormlite.fhir.EclExplainProvider;
 import org.snomed.snowstormlite.fhir.FHIRTerminologyCapabilitiesProvider;
 import org.snomed.snowstormlite.fhir.FhirBatchBundleProvider;
 import org.snomed.snowstormlite.fhir.ValueSetProvider;
@@ -66,9 +68,12 @@ public class HapiRestfulServlet extends RestfulServer {
 		setServerConformanceProvider(new FHIRTerminologyCapabilitiesProvider(this, getServerVersion()));
 
 		registerProvider(applicationContext.getBean(FhirBatchBundleProvider.class));
+		registerProvider(applicationContext.getBean(EclExplainProvider.class));
+		registerProvider(applicationContext.getBean(ClosureProvider.class));
 
 		// Register interceptors
 		registerInterceptor(new FHIRContextInterceptor());
+		registerInterceptor(new RequestProfileInterceptor());
 
 		logger.info("FHIR Resource providers and interceptors registered");
 	}
@@ -0,0 +1,25 @@
+package org.snomed.snowstormlite.config;
+
+import jakarta.servlet.*;
+import org.snomed.snowstormlite.service.IndexReaderScope;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Holds the index readers used by each request until the request completes, see {@link IndexReaderScope}.
+ * Runs before the other filters because some of them read the index.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class IndexReaderScopeFilter implements Filter {
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+			chain.doFilter(req, res);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.snomed.snowstormlite.config;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import org.snomed.snowstormlite.service.QueryBudget;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Applies the configured time and concept limits to FHIR operation requests, such as $expand, to FHIR batches and to ECL exports,
+ * based on the operation in the request path. Other requests, for example package loading through /fhir-admin, ValueSet and ConceptMap
+ * writes and the dashboard APIs, are not limited.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class QueryBudgetFilter implements Filter {
+
+	public static final String EXPORT_OPERATION = "export";
+	private static final List<String> OPERATIONS = List.of("expand", "validate-code", "lookup", "subsumes", "translate");
+
+	private final QueryLimitsConfiguration queryLimitsConfiguration;
+
+	public QueryBudgetFilter(QueryLimitsConfiguration queryLimitsConfiguration) {
+		this.queryLimitsConfiguration = queryLimitsConfiguration;
+	}
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) req;
+		if (!isLimited(request)) {
+			chain.doFilter(req, res);
+			return;
+		}
+		String operation = isExport(request) ? EXPORT_OPERATION : getOperation(request.getRequestURI());
+		QueryLimitsConfiguration.Limit limit = queryLimitsConfiguration.getLimit(operation);
+		long timeoutMs = limit.getTimeoutMs() != null ? limit.getTimeoutMs() : 0;
+		int maxConcepts = limit.getMaxConcepts() != null ? limit.getMaxConcepts() : 0;
+		try (QueryBudget.Scope ignored = QueryBudget.start(operation, timeoutMs, maxConcepts)) {
+			chain.doFilter(req, res);
+		}
+	}
+
+	static boolean isLimited(HttpServletRequest request) {
+		String fhirBase = request.getContextPath() + "/fhir";
+		String uri = request.getRequestURI();
+		if (uri == null) {
+			return false;
+		}
+		if (uri.equals(fhirBase) || uri.equals(fhirBase + "/") || isExport(request)) {
+			// Batch or ECL export
+			return true;
+		}
+		return uri.startsWith(fhirBase + "/") && uri.indexOf('$') != -1;
+	}
+
+	private static boolean isExport(HttpServletRequest request) {
+		String uri = request.getRequestURI();
+		return uri != null && uri.startsWith(request.getContextPath() + "/export/");
+	}
+
+	/**
+	 * @return the operation named after the '$' of the path, or the default operation.
+	 */
+	public static String getOperation(String requestUri) {
+		if (requestUri != null) {
+			int operationStart = requestUri.lastIndexOf('$');
+			if (operationStart != -1) {
+				String operation = requestUri.substring(operationStart + 1);
+				if (OPERATIONS.contains(operation)) {
+					return operation;
+				}
+			}
+		}
+		return QueryLimitsConfiguration.DEFAULT_OPERATION;
+	}
+}
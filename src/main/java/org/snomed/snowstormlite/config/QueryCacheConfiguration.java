@@ -0,0 +1,80 @@
+package org.snomed.snowstormlite.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class QueryCacheConfiguration {
+
+	private boolean enabled = true;
+	private int maxQueries = 1000;
+	private int maxMemoryMb = 64;
+	private int minFrequency = 2;
+	private int historySize = 256;
+	private int minSegmentDocs = 10_000;
+	private float skipCacheFactor = 10;
+	private List<String> queryTypes = new ArrayList<>(List.of("TermQuery", "TermInSetQuery", "BooleanQuery", "ConceptIdSetQuery"));
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getMaxQueries() {
+		return maxQueries;
+	}
+
+	public void setMaxQueries(int maxQueries) {
+		this.maxQueries = maxQueries;
+	}
+
+	public int getMaxMemoryMb() {
+		return maxMemoryMb;
+	}
+
+	public void setMaxMemoryMb(int maxMemoryMb) {
+		this.maxMemoryMb = maxMemoryMb;
+	}
+
+	public int getMinFrequency() {
+		return minFrequency;
+	}
+
+	public void setMinFrequency(int minFrequency) {
+		this.minFrequency = minFrequency;
+	}
+
+	public int getHistorySize() {
+		return historySize;
+	}
+
+	public void setHistorySize(int historySize) {
+		this.historySize = historySize;
+	}
+
+	public int getMinSegmentDocs() {
+		return minSegmentDocs;
+	}
+
+	public void setMinSegmentDocs(int minSegmentDocs) {
+		this.minSegmentDocs = minSegmentDocs;
+	}
+
+	public float getSkipCacheFactor() {
+		return skipCacheFactor;
+	}
+
+	public void setSkipCacheFactor(float skipCacheFactor) {
+		this.skipCacheFactor = skipCacheFactor;
+	}
+
+	public List<String> getQueryTypes() {
+		return queryTypes;
+	}
+
+	public void setQueryTypes(List<String> queryTypes) {
+		this.queryTypes = queryTypes;
+	}
+}
@@ -0,0 +1,53 @@
+package org.snomed.snowstormlite.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class QueryLimitsConfiguration {
+
+	public static final String DEFAULT_OPERATION = "default";
+
+	private final Map<String, Limit> operation = new HashMap<>();
+
+	// Used by Spring to fill the properties
+	public Map<String, Limit> getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Returns the limits for the named operation, with any unset values taken from the default limits.
+	 */
+	public Limit getLimit(String operationName) {
+		Limit defaults = operation.getOrDefault(DEFAULT_OPERATION, new Limit());
+		Limit limit = operation.get(operationName);
+		if (limit == null) {
+			return defaults;
+		}
+		Limit merged = new Limit();
+		merged.setTimeoutMs(limit.getTimeoutMs() != null ? limit.getTimeoutMs() : defaults.getTimeoutMs());
+		merged.setMaxConcepts(limit.getMaxConcepts() != null ? limit.getMaxConcepts() : defaults.getMaxConcepts());
+		return merged;
+	}
+
+	public static class Limit {
+
+		private Long timeoutMs;
+		private Integer maxConcepts;
+
+		public Long getTimeoutMs() {
+			return timeoutMs;
+		}
+
+		public void setTimeoutMs(Long timeoutMs) {
+			this.timeoutMs = timeoutMs;
+		}
+
+		public Integer getMaxConcepts() {
+			return maxConcepts;
+		}
+
+		public void setMaxConcepts(Integer maxConcepts) {
+			this.maxConcepts = maxConcepts;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.snomed.snowstormlite.config;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.RequestProfile;
+import org.snomed.snowstormlite.service.SlowRequestLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Profiles each FHIR request, for the {@link SlowRequestLog}, which is given the profile when the request completes,
+ * and for the Server-Timing response header written by {@link RequestProfileInterceptor}.
+ * The operation name is the same as used for the query limits.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 15)
+public class RequestProfileFilter implements Filter {
+
+	public static final String SERVER_TIMING_REQUEST_HEADER = "X-Server-Timing";
+
+	private final SlowRequestLog slowRequestLog;
+	private final IndexIOProvider indexIOProvider;
+	private final boolean serverTimingEnabled;
+	private final boolean serverTimingAlways;
+
+	public RequestProfileFilter(SlowRequestLog slowRequestLog, IndexIOProvider indexIOProvider,
+			@Value("${search.server-timing.enabled:true}") boolean serverTimingEnabled, @Value("${search.server-timing.always:false}") boolean serverTimingAlways) {
+
+		this.slowRequestLog = slowRequestLog;
+		this.indexIOProvider = indexIOProvider;
+		this.serverTimingEnabled = serverTimingEnabled;
+		this.serverTimingAlways = serverTimingAlways;
+	}
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) req;
+		boolean serverTiming = isServerTimingRequested(request);
+		if (!(slowRequestLog.isEnabled() || serverTiming) || !request.getRequestURI().startsWith(request.getContextPath() + "/fhir/")) {
+			chain.doFilter(req, res);
+			return;
+		}
+		try (RequestProfile.Scope scope = RequestProfile.start(QueryBudgetFilter.getOperation(request.getRequestURI()), serverTiming)) {
+			IndexSearcher indexSearcher = indexIOProvider.getIndexSearcherIfAvailable();
+			if (indexSearcher != null) {
+				RequestProfile.put("indexGeneration", ((DirectoryReader) indexSearcher.getIndexReader()).getIndexCommit().getGeneration());
+			}
+			try {
+				chain.doFilter(req, res);
+			} finally {
+				RequestProfile profile = scope.end();
+				if (profile != null) {
+					String query = request.getQueryString();
+					slowRequestLog.record(profile, request.getMethod() + " " + request.getRequestURI() + (query != null ? "?" + query : ""),
+							scope.getElapsedMillis());
+				}
+			}
+		}
+	}
+
+	private boolean isServerTimingRequested(HttpServletRequest request) {
+		return serverTimingEnabled && (serverTimingAlways || "true".equalsIgnoreCase(request.getHeader(SERVER_TIMING_REQUEST_HEADER)));
+	}
+}
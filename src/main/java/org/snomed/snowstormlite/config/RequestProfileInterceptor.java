@@ -0,0 +1,28 @@
+package org.snomed.snowstormlite.config;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import jakarta.servlet.http.HttpServletResponse;
+import org.snomed.snowstormlite.service.RequestProfile;
+
+/**
+ * Once the FHIR server has the response, before it is written, adds the Server-Timing header if the client asked for it
+ * and starts the serialization phase of the request profile.
+ * Serialization is not part of the header because the header is sent before the body, it is only in the slow-request log.
+ */
+@Interceptor
+public class RequestProfileInterceptor {
+
+	public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean outgoingResponse(HttpServletResponse response) {
+		String serverTiming = RequestProfile.getServerTimingHeader();
+		if (serverTiming != null && response != null) {
+			response.setHeader(SERVER_TIMING_HEADER, serverTiming);
+		}
+		RequestProfile.startFinalPhase("serialization");
+		return true;
+	}
+}
@@ -0,0 +1,59 @@
+package org.snomed.snowstormlite.config;
+
+public class SearchConcurrencyConfiguration {
+
+	private boolean enabled = false;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int queueSize = 64;
+	private int minIndexDocs = 100_000;
+	private int maxDocsPerSlice = 250_000;
+	private int maxSegmentsPerSlice = 5;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public int getMinIndexDocs() {
+		return minIndexDocs;
+	}
+
+	public void setMinIndexDocs(int minIndexDocs) {
+		this.minIndexDocs = minIndexDocs;
+	}
+
+	public int getMaxDocsPerSlice() {
+		return maxDocsPerSlice;
+	}
+
+	public void setMaxDocsPerSlice(int maxDocsPerSlice) {
+		this.maxDocsPerSlice = maxDocsPerSlice;
+	}
+
+	public int getMaxSegmentsPerSlice() {
+		return maxSegmentsPerSlice;
+	}
+
+	public void setMaxSegmentsPerSlice(int maxSegmentsPerSlice) {
+		this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+	}
+}
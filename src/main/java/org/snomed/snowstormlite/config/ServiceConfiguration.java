@@ -19,4 +19,28 @@ public class ServiceConfiguration {
         return new LanguageDialectAliasConfiguration();
     }
 
+    @Bean
+    @ConfigurationProperties(prefix = "search.query-cache")
+    public QueryCacheConfiguration queryCacheConfiguration() {
+        return new QueryCacheConfiguration();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "search.concurrent")
+    public SearchConcurrencyConfiguration searchConcurrencyConfiguration() {
+        return new SearchConcurrencyConfiguration();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "search.limits")
+    public QueryLimitsConfiguration queryLimitsConfiguration() {
+        return new QueryLimitsConfiguration();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "search.slow-request-log")
+    public SlowRequestLogConfiguration slowRequestLogConfiguration() {
+        return new SlowRequestLogConfiguration();
+    }
+
 }
@@ -20,8 +20,8 @@ public class SimpleCorsFilter implements Filter {
         
         response.setHeader("Access-Control-Allow-Origin", "*");
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS, PATCH");
-        response.setHeader("Access-Control-Allow-Headers", "x-fhir-starter, Origin, Accept, X-Requested-With, Content-Type");
-        response.setHeader("Access-Control-Expose-Headers", "Location, Content-Location");
+        response.setHeader("Access-Control-Allow-Headers", "x-fhir-starter, Origin, Accept, X-Requested-With, Content-Type, If-None-Match, If-Modified-Since, X-Server-Timing");
+        response.setHeader("Access-Control-Expose-Headers", "Location, Content-Location, ETag, Last-Modified, Server-Timing");
         response.setHeader("Access-Control-Max-Age", "3600");
         
         if ("OPTIONS".equalsIgnoreCase(request.getMethod())) {
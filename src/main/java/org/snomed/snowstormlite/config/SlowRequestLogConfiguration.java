@@ -0,0 +1,66 @@
+package org.snomed.snowstormlite.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class SlowRequestLogConfiguration {
+
+	private boolean enabled = true;
+	private double sampleRate = 1.0;
+	private int bufferSize = 200;
+	private final Map<String, Threshold> operation = new HashMap<>();
+
+	/**
+	 * Returns the threshold for the named operation, or the default threshold if the operation has none.
+	 * @return the threshold in milliseconds, null if requests of the operation are not logged.
+	 */
+	public Long getThresholdMs(String operationName) {
+		Threshold threshold = operation.get(operationName);
+		if (threshold == null || threshold.getThresholdMs() == null) {
+			threshold = operation.get(QueryLimitsConfiguration.DEFAULT_OPERATION);
+		}
+		return threshold != null ? threshold.getThresholdMs() : null;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	public void setSampleRate(double sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	// Used by Spring to fill the properties
+	public Map<String, Threshold> getOperation() {
+		return operation;
+	}
+
+	public static class Threshold {
+
+		private Long thresholdMs;
+
+		public Long getThresholdMs() {
+			return thresholdMs;
+		}
+
+		public void setThresholdMs(Long thresholdMs) {
+			this.thresholdMs = thresholdMs;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.snomed.snowstormlite.domain;
+
+/**
+ * The concepts added to a named closure table by one $closure request. Version 0 is written when the table is initialised and has no concepts.
+ */
+public class ClosureTableVersion {
+
+	public static final String DOC_TYPE = "closure";
+
+	public interface Fields {
+
+		String NAME = "closure_name";
+		String VERSION = "closure_version";
+		String CODE_SYSTEM_VERSION = "closure_cs_version";
+		String CONCEPTS = "closure_concepts";
+	}
+
+	private final String name;
+	private final int version;
+	private final String codeSystemVersion;
+	private final long[] conceptIds;
+
+	public ClosureTableVersion(String name, int version, String codeSystemVersion, long[] conceptIds) {
+		this.name = name;
+		this.version = version;
+		this.codeSystemVersion = codeSystemVersion;
+		this.conceptIds = conceptIds;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return version URI of the code system that the table was initialised against.
+	 */
+	public String getCodeSystemVersion() {
+		return codeSystemVersion;
+	}
+
+	public long[] getConceptIds() {
+		return conceptIds;
+	}
+}
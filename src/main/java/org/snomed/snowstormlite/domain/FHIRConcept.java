@@ -21,6 +21,7 @@ public class FHIRConcept {
 
 	public interface FieldNames {
 		String ID = "id";
+		String ID_NUMERIC = "id_numeric";
 		String ACTIVE = "active";
 		String EFFECTIVE_TIME = "effective_time";
 		String MODULE = "module";
@@ -33,6 +34,7 @@ public class FHIRConcept {
 		String ATTRIBUTE_PREFIX = "at_";
 		String MEMBERSHIP = "membership";
 		String MAPPING = "mapping";
+		String MAPPING_TARGET = "mapping_target";
 		String TERM = "term";
 		String TERM_STORED = "term_stored";
 		String PT_AND_FSN_TERM_LENGTH = "pt_term_len";
@@ -54,6 +54,13 @@ public class FHIRMapping {
 		return inverse;
 	}
 
+	/**
+	 * @return value of the mapping target field, used to find the concepts mapped to a code.
+	 */
+	public static String toTargetIndexString(String refsetId, String code) {
+		return refsetId + "|" + code;
+	}
+
 	public String toIndexString() {
 		return format("%s|%s|%s|%s|%s", refsetId, stringToIndex(code), stringToIndex(correlation), stringToIndex(message), inverse ? "1" : "0");
 	}
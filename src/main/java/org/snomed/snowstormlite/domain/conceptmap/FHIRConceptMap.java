@@ -15,13 +15,37 @@ import static org.snomed.snowstormlite.util.CollectionUtils.orEmpty;
 public class FHIRConceptMap {
 
 	public static final String DOC_TYPE = "cm";
+	public static final String ELEMENT_DOC_TYPE = "cm-element";
 
 	public interface Fields {
 
 		String ID = "id";
 		String URL = "url";
+		String NORMALIZED_URL = "normalized_url";
 		String VERSION = "version";
+		String NAME = "name";
+		// Separate from name, which older versions indexed without doc values
+		String NAME_SORT = "name_sort";
+		String NAME_SEARCH = "name_search";
+		String TITLE = "title";
+		String TITLE_SEARCH = "title_search";
+		String STATUS = "status";
+		// Maps saved by older versions, an indexed string field. Lucene does not allow a field to change from indexed to stored only.
 		String SERIALISED = "serialised";
+		String SERIALISED_STORED = "serialised_stored";
+		String ELEMENTS_KEY = "elements_key";
+	}
+
+	/**
+	 * Fields of the documents that hold the elements of a map, one document per element.
+	 */
+	public interface ElementFields {
+
+		String ELEMENTS_KEY = "cme_elements_key";
+		String ORDER = "cme_order";
+		String SOURCE = "cme_source";
+		String TARGET = "cme_target";
+		String SERIALISED = "cme_serialised";
 	}
 
 	private String id;
@@ -62,6 +86,8 @@ public class FHIRConceptMap {
 
 	private String snomedRefsetEquivalence;
 
+	private String elementsKey;
+
 	public FHIRConceptMap() {
 		group = new ArrayList<>();
 	}
@@ -301,4 +327,16 @@ public class FHIRConceptMap {
 	public void setSnomedRefsetEquivalence(String snomedRefsetEquivalence) {
 		this.snomedRefsetEquivalence = snomedRefsetEquivalence;
 	}
+
+	/**
+	 * @return key of the index documents that hold the elements of a stored map, null if the map holds its own elements.
+	 */
+	@JsonIgnore
+	public String getElementsKey() {
+		return elementsKey;
+	}
+
+	public void setElementsKey(String elementsKey) {
+		this.elementsKey = elementsKey;
+	}
 }
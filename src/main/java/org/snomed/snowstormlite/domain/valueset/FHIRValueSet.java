@@ -22,10 +22,21 @@ public class FHIRValueSet {
 		String URL = "url";
 		String VERSION = "version";
 		String NAME = "name";
+		// Separate from name, which older versions indexed without doc values
+		String NAME_SORT = "name_sort";
+		String NAME_SEARCH = "name_search";
+		String TITLE = "title";
+		String TITLE_SEARCH = "title_search";
 		String STATUS = "status";
 		String EXPERIMENTAL = "exp";
 		String DESCRIPTION = "desc";
+		// ValueSets saved by older versions, an indexed string field. Lucene does not allow a field to change from indexed to stored only.
 		String SERIALISED = "serialised";
+		String SERIALISED_STORED = "serialised_stored";
+		String MEMBERS = "members";
+		String MEMBERS_KEY = "members_key";
+		String CODES = "codes";
+		String CODES_CRITERIA = "codes_criteria";
 	}
 
 	private String id;
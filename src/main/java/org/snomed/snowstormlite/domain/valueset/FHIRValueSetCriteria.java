@@ -1,5 +1,6 @@
 package org.snomed.snowstormlite.domain.valueset;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.ValueSet;
 
@@ -17,6 +18,8 @@ public class FHIRValueSetCriteria {
 
 	private List<String> codes;
 
+	private long[] conceptIds;
+
 	private List<FHIRValueSetFilter> filter;
 
 	private List<String> valueSet;
@@ -46,7 +49,7 @@ public class FHIRValueSetCriteria {
 		ValueSet.ConceptSetComponent hapiConceptSet = new ValueSet.ConceptSetComponent();
 		hapiConceptSet.setSystem(system);
 		hapiConceptSet.setVersion(version);
-		for (String code : orEmpty(codes)) {
+		for (String code : orEmpty(getCodes())) {
 			ValueSet.ConceptReferenceComponent component = new ValueSet.ConceptReferenceComponent();
 			component.setCode(code);
 			hapiConceptSet.addConcept(component);
@@ -75,11 +78,31 @@ public class FHIRValueSetCriteria {
 	}
 
 	public List<String> getCodes() {
+		if (codes == null && conceptIds != null) {
+			codes = new ArrayList<>(conceptIds.length);
+			for (long conceptId : conceptIds) {
+				codes.add(Long.toString(conceptId));
+			}
+		}
 		return codes;
 	}
 
 	public void setCodes(List<String> codes) {
 		this.codes = codes;
+		conceptIds = null;
+	}
+
+	/**
+	 * @return the codes as concept ids, in their original order, when they were stored as an id list rather than as strings. Otherwise null.
+	 */
+	@JsonIgnore
+	public long[] getConceptIds() {
+		return conceptIds;
+	}
+
+	public void setConceptIds(long[] conceptIds) {
+		this.conceptIds = conceptIds;
+		codes = null;
 	}
 
 	public List<FHIRValueSetFilter> getFilter() {
@@ -2,9 +2,12 @@ package org.snomed.snowstormlite.fhir;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
+import org.snomed.snowstormlite.service.ConceptMapService;
 import org.snomed.snowstormlite.snomedimport.ImportService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -27,6 +30,9 @@ public class AdminController {
 	@Autowired
 	private ImportService importService;
 
+	@Autowired
+	private ConceptMapService conceptMapService;
+
 	@Autowired
 	private FhirContext fhirContext;
 
@@ -54,6 +60,23 @@ public class AdminController {
 		}
 	}
 
+	/**
+	 * Creates or updates a ConceptMap from a FHIR JSON request body. The body is read as a stream, so this suits maps that are
+	 * too large to post to the FHIR ConceptMap endpoint.
+	 */
+	@PostMapping(value = "concept-map", consumes = {"application/json", "application/fhir+json"})
+	public void loadConceptMap(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		try {
+			FHIRConceptMap saved = conceptMapService.createOrUpdateConceptMap(request.getInputStream());
+			response.setContentType("application/fhir+json");
+			Writer writer = new OutputStreamWriter(response.getOutputStream());
+			fhirContext.newJsonParser().encodeResourceToWriter(saved.toHapi(), writer);
+			writer.flush();
+		} catch (FHIRServerResponseException e) {
+			error(e, response);
+		}
+	}
+
 	@PostMapping(value = "clear-snomed")
 	public void clearSnomed(HttpServletResponse response) throws IOException {
 		try {
@@ -0,0 +1,47 @@
+package org.snomed.snowstormlite.fhir;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.snomed.snowstormlite.service.ClosureService;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.snomed.snowstormlite.fhir.FHIRHelper.mutuallyExclusive;
+import static org.snomed.snowstormlite.fhir.FHIRHelper.required;
+
+/**
+ * Server level {@code $closure} operation. A request with only a name initialises the closure table, a request with concepts
+ * adds them to the table and returns the new subsumption pairs, and a request with a version returns all pairs added after that version.
+ */
+@Component
+public class ClosureProvider {
+
+	private final ClosureService closureService;
+
+	public ClosureProvider(ClosureService closureService) {
+		this.closureService = closureService;
+	}
+
+	@Operation(name = "$closure", idempotent = false)
+	public ConceptMap closure(
+			@OperationParam(name = "name") String name,
+			@OperationParam(name = "concept") List<Coding> concepts,
+			@OperationParam(name = "version") String version) throws IOException {
+
+		required("name", name);
+		boolean hasConcepts = concepts != null && !concepts.isEmpty();
+		mutuallyExclusive("concept", hasConcepts ? concepts : null, "version", version);
+		if (hasConcepts) {
+			return closureService.addConcepts(name, concepts);
+		} else if (version != null) {
+			return closureService.getChangesSince(name, version);
+		} else {
+			return closureService.initialise(name);
+		}
+	}
+
+}
@@ -10,6 +10,7 @@ import org.snomed.snowstormlite.domain.FHIRCodeSystem;
 import org.snomed.snowstormlite.domain.LanguageDialect;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
 import org.snomed.snowstormlite.service.CodeSystemService;
+import org.snomed.snowstormlite.service.RequestProfile;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -84,10 +85,14 @@ public class CodeSystemProvider implements IResourceProvider {
 			@OperationParam(name="displayLanguage") String displayLanguage,
 			@OperationParam(name="property") List<CodeType> propertiesType ) {
 
-		mutuallyExclusive("code", code, "coding", coding);
-		notSupported("date", date);
-		FHIRCodeSystem codeSystem = getCodeSystemVersionOrThrow(system, version, coding);
-		List<LanguageDialect> languageDialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(displayLanguage, request.getHeader(ACCEPT_LANGUAGE_HEADER));
+		FHIRCodeSystem codeSystem;
+		List<LanguageDialect> languageDialects;
+		try (RequestProfile.Phase ignored = RequestProfile.phase("request-parse")) {
+			mutuallyExclusive("code", code, "coding", coding);
+			notSupported("date", date);
+			codeSystem = getCodeSystemVersionOrThrow(system, version, coding);
+			languageDialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(displayLanguage, request.getHeader(ACCEPT_LANGUAGE_HEADER));
+		}
 		return codeSystemService.lookup(codeSystem, recoverCode(code, coding), languageDialects);
 	}
 
@@ -1,9 +1,12 @@
 package org.snomed.snowstormlite.fhir;
 
 import ca.uhn.fhir.rest.annotation.*;
+// Count is also the name of a FHIR data type
+import ca.uhn.fhir.rest.annotation.Count;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.IResourceProvider;
-import ca.uhn.fhir.rest.server.exceptions.NotImplementedOperationException;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -17,6 +20,8 @@ import org.snomed.snowstormlite.domain.conceptmap.FHIRMapTarget;
 import org.snomed.snowstormlite.service.BatchTermLoader;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
 import org.snomed.snowstormlite.service.ConceptMapService;
+import org.snomed.snowstormlite.service.ResourceSearch;
+import org.snomed.snowstormlite.service.TerminologyMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -44,6 +49,9 @@ public class ConceptMapProvider implements IResourceProvider {
 	@Autowired
 	private ConceptMapService conceptMapService;
 
+	@Autowired
+	private TerminologyMetrics metrics;
+
 	private Map<String, Enumerations.ConceptMapEquivalence> correlationToEquivalenceMap;
 
 	@PostConstruct
@@ -52,30 +60,44 @@ public class ConceptMapProvider implements IResourceProvider {
 	}
 
 	@Search
-	public List<ConceptMap> search(@OptionalParam(name = "url") String url) throws IOException {
+	public IBundleProvider search(
+			@OptionalParam(name = "url") String url,
+			@OptionalParam(name = "version") String version,
+			@OptionalParam(name = "name") String name,
+			@OptionalParam(name = "status") String status,
+			@OptionalParam(name = "title") String title,
+			@Offset Integer offset,
+			@Count Integer count) throws IOException {
+
+		ResourceSearch search = ResourceSearch.of(url, version, name, status, title, offset, count);
 		String normalizedFilter = FHIRHelper.normalizeImplicitConceptMapSearchUrl(url);
-		List<ConceptMap> results = new ArrayList<>();
+		List<ConceptMap> implicitMaps = new ArrayList<>();
 		if (codeSystemRepository.getCodeSystem() != null) {
 			for (FHIRSnomedImplicitMap implicitMap : implicitConfig.getImplicitMaps()) {
-				String mapUrl = SNOMED_URI + "?fhir_cm=" + implicitMap.refsetId();
-				if (normalizedFilter != null && !normalizedFilter.equals(mapUrl)) {
-					continue;
+				ConceptMap listedMap = buildListedImplicitConceptMap(implicitMap);
+				if ((normalizedFilter == null || normalizedFilter.equals(listedMap.getUrl())) && version == null && title == null &&
+						ResourceSearch.startsWith(listedMap.getName(), name) && (status == null || status.equals(listedMap.getStatus().toCode()))) {
+					implicitMaps.add(listedMap);
 				}
-				results.add(buildListedImplicitConceptMap(implicitMap));
 			}
 		}
-		for (FHIRConceptMap stored : conceptMapService.findAllStored()) {
-			if (normalizedFilter != null) {
-				String u = FHIRHelper.normalizeImplicitConceptMapSearchUrl(stored.getUrl());
-				if (!normalizedFilter.equals(u) && !normalizedFilter.equals(stored.getUrl())) {
-					continue;
-				}
-			}
-			ConceptMap hapi = stored.toHapi();
-			hapi.setGroup(null);
-			results.add(hapi);
+
+		// Implicit maps are listed first, then the stored maps
+		List<ConceptMap> results = new ArrayList<>();
+		for (int i = search.offset(); i < implicitMaps.size() && results.size() < search.count(); i++) {
+			results.add(implicitMaps.get(i));
 		}
-		return results;
+		ResourceSearch.Page<FHIRConceptMap> storedPage = conceptMapService.searchStored(new ResourceSearch(search.url(), search.version(), search.name(),
+				search.status(), search.title(), Math.max(0, search.offset() - implicitMaps.size()), search.count() - results.size()));
+		for (FHIRConceptMap stored : storedPage.resources()) {
+			results.add(stored.toHapi());
+		}
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider(results);
+		bundleProvider.setSize(implicitMaps.size() + storedPage.total());
+		// The provider holds the requested page only, HAPI must not apply the offset again
+		bundleProvider.setCurrentPageOffset(search.offset());
+		bundleProvider.setCurrentPageSize(search.count());
+		return bundleProvider;
 	}
 
 	@Read
@@ -150,10 +172,21 @@ public class ConceptMapProvider implements IResourceProvider {
 			@OperationParam(name="targetsystem") String targetSystem,
 			@OperationParam(name="reverse") BooleanType reverse) throws IOException {
 
+		Parameters parameters = metrics.time("translate", () -> translate(urlType, conceptMap, conceptMapVersion, code, system, version, sourceValueSet,
+				coding, codeableConcept, targetValueSet, targetSystem, reverse));
+		metrics.recordResults("translate", parameters.getParameter().stream().filter(parameter -> "match".equals(parameter.getName())).count());
+		return parameters;
+	}
+
+	private Parameters translate(UriType urlType, ConceptMap conceptMap, String conceptMapVersion, String code, String system, String version,
+			String sourceValueSet, Coding coding, CodeableConcept codeableConcept, String targetValueSet, String targetSystem,
+			BooleanType reverse) throws IOException {
+
 		String url = urlType != null ? urlType.getValueAsString() : null;
 		notSupported("conceptMapVersion", conceptMapVersion);
 		notSupported("source", sourceValueSet);
-		notSupported("reverse", reverse);
+		// When reversed the code is a target of the maps and is translated back to a source code, targetsystem is then the source system
+		boolean reverseTranslate = reverse != null && reverse.booleanValue();
 
 		mutuallyExclusive("target", targetValueSet, "targetsystem", targetSystem);
 		if (targetSystem == null && targetValueSet != null && targetValueSet.endsWith("?fhir_vs")) {
@@ -181,9 +214,6 @@ public class ConceptMapProvider implements IResourceProvider {
 		}
 
 		boolean fromSNOMED = isSnomedUri(coding.getSystem());
-		if (!fromSNOMED && isSnomedUri(targetSystem)) {
-			throw new NotImplementedOperationException("Mapping to SNOMED CT is not yet implemented.");
-		}
 
 		FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
 		if (fromSNOMED && codeSystem != null) {
@@ -196,6 +226,8 @@ public class ConceptMapProvider implements IResourceProvider {
 		List<FHIRConceptMap> maps;
 		if (conceptMap != null) {
 			maps = Collections.singletonList(new FHIRConceptMap(conceptMap));
+		} else if (reverseTranslate) {
+			maps = conceptMapService.findMapsForReverseTranslate(url, coding, targetSystem);
 		} else {
 			maps = conceptMapService.findMapsForTranslate(url, coding, targetSystem);
 		}
@@ -213,15 +245,24 @@ public class ConceptMapProvider implements IResourceProvider {
 
 		BatchTermLoader termLoader = new BatchTermLoader();
 		Map<FHIRSnomedImplicitMap, List<FHIRMapping>> allImplicitMappings = new LinkedHashMap<>();
-		if (fromSNOMED) {
-			for (FHIRConceptMap map : maps) {
-				if (map.isImplicitSnomedMap()) {
+		List<FHIRSnomedImplicitMap> mapsToSearchByTarget = new ArrayList<>();
+		for (FHIRConceptMap map : maps) {
+			FHIRSnomedImplicitMap implicitMap = map.isImplicitSnomedMap() ? refsetToMap.get(map.getSnomedRefsetId()) : null;
+			if (implicitMap == null) {
+				continue;
+			}
+			// The referenced component of the reference set is always the SNOMED CT concept
+			if (implicitMap.isFromSnomed() != reverseTranslate) {
+				if (fromSNOMED) {
 					Map<FHIRSnomedImplicitMap, List<FHIRMapping>> part = new HashMap<>();
-					loadMapping(targetSystem, coding.getCode(), refsetToMap, map.getSnomedRefsetId(), termLoader, part);
+					loadMapping(reverseTranslate ? null : targetSystem, coding.getCode(), refsetToMap, map.getSnomedRefsetId(), reverseTranslate, termLoader, part);
 					allImplicitMappings.putAll(part);
 				}
+			} else if (codeSystem != null) {
+				mapsToSearchByTarget.add(implicitMap);
 			}
 		}
+		loadMappingsByTarget(mapsToSearchByTarget, coding.getCode(), termLoader, allImplicitMappings);
 
 		if (codeSystem != null) {
 			termLoader.loadAll(codeSystemRepository, Concepts.DEFAULT_LANGUAGE);
@@ -229,9 +270,7 @@ public class ConceptMapProvider implements IResourceProvider {
 
 		for (Map.Entry<FHIRSnomedImplicitMap, List<FHIRMapping>> mappingsOfType : allImplicitMappings.entrySet()) {
 			FHIRSnomedImplicitMap type = mappingsOfType.getKey();
-			if (!type.isFromSnomed()) {
-				continue;
-			}
+			String matchSystem = reverseTranslate ? type.sourceSystem() : type.targetSystem();
 			for (FHIRMapping mapping : mappingsOfType.getValue()) {
 				String message = mapping.getMessage();
 				if (message != null) {
@@ -246,7 +285,7 @@ public class ConceptMapProvider implements IResourceProvider {
 
 				match.addPart()
 						.setName("concept")
-						.setValue(new Coding(type.targetSystem(), mapping.getCode(), type.isToSnomed() ? termLoader.get(mapping.getCode()) : null));
+						.setValue(new Coding(matchSystem, mapping.getCode(), isSnomedUri(matchSystem) ? termLoader.get(mapping.getCode()) : null));
 
 				String sourceUrl = codeSystem != null ? type.getUrl(codeSystem) : (SNOMED_URI + "?fhir_cm=" + type.refsetId());
 				match.addPart()
@@ -259,7 +298,11 @@ public class ConceptMapProvider implements IResourceProvider {
 
 		for (FHIRConceptMap map : maps) {
 			if (!map.isImplicitSnomedMap()) {
-				translateStoredConceptMap(map, coding, targetSystem, matches, aggregateResult);
+				if (reverseTranslate) {
+					reverseTranslateStoredConceptMap(map, coding, targetSystem, matches, aggregateResult);
+				} else {
+					translateStoredConceptMap(map, coding, targetSystem, matches, aggregateResult);
+				}
 			}
 		}
 
@@ -304,8 +347,38 @@ public class ConceptMapProvider implements IResourceProvider {
 		}
 	}
 
+	private void reverseTranslateStoredConceptMap(FHIRConceptMap map, Coding coding, String sourceSystem,
+			List<Parameters.ParametersParameterComponent> matches, AtomicBoolean aggregateResult) {
+		for (FHIRConceptMapGroup g : orEmpty(map.getGroup())) {
+			if (!coding.getSystem().equals(g.getTarget())) {
+				continue;
+			}
+			if (sourceSystem != null && !sourceSystem.equals(g.getSource())) {
+				continue;
+			}
+			for (FHIRMapElement element : orEmpty(g.getElement())) {
+				for (FHIRMapTarget mapTarget : orEmpty(element.getTarget())) {
+					if (!coding.getCode().equals(mapTarget.getCode())) {
+						continue;
+					}
+					Parameters.ParametersParameterComponent matchParam = new Parameters.ParametersParameterComponent(new StringType("match"));
+					if (mapTarget.getEquivalence() != null) {
+						matchParam.addPart(new Parameters.ParametersParameterComponent(new StringType("equivalence"))
+								.setValue(new CodeType(mapTarget.getEquivalence())));
+					}
+					matchParam.addPart(new Parameters.ParametersParameterComponent(new StringType("concept"))
+							.setValue(new Coding(g.getSource(), element.getCode(), element.getDisplay())));
+					matchParam.addPart(new Parameters.ParametersParameterComponent(new StringType("source"))
+							.setValue(new StringType(map.getUrl())));
+					matches.add(matchParam);
+					aggregateResult.set(true);
+				}
+			}
+		}
+	}
+
 	private void loadMapping(String targetSystem, String codingCode, Map<String, FHIRSnomedImplicitMap> refsetToMap, String refsetId,
-			BatchTermLoader termLoader, Map<FHIRSnomedImplicitMap, List<FHIRMapping>> mappings) throws IOException {
+			boolean reverseTranslate, BatchTermLoader termLoader, Map<FHIRSnomedImplicitMap, List<FHIRMapping>> mappings) throws IOException {
 
 		FHIRConcept concept = codeSystemRepository.getConcept(codingCode);
 		if (concept != null) {
@@ -315,7 +388,7 @@ public class ConceptMapProvider implements IResourceProvider {
 						(targetSystem == null || targetSystem.equals(implicitMap.targetSystem())) &&
 						(refsetId == null || refsetId.equals(mapping.getRefsetId()))
 				) {
-					if (implicitMap.isToSnomed()) {
+					if (reverseTranslate ? implicitMap.isFromSnomed() : implicitMap.isToSnomed()) {
 						termLoader.addSnomedTerm(mapping.getCode());
 					}
 					mappings.computeIfAbsent(implicitMap, i -> new ArrayList<>()).add(mapping);
@@ -324,6 +397,30 @@ public class ConceptMapProvider implements IResourceProvider {
 		}
 	}
 
+	/**
+	 * Loads the concepts that map to the code in any of the given implicit maps, using one query on the indexed mapping targets.
+	 * Each mapping is reversed, so that its code is the SNOMED CT concept.
+	 */
+	private void loadMappingsByTarget(List<FHIRSnomedImplicitMap> implicitMaps, String code, BatchTermLoader termLoader,
+			Map<FHIRSnomedImplicitMap, List<FHIRMapping>> mappings) throws IOException {
+
+		if (implicitMaps.isEmpty()) {
+			return;
+		}
+		Map<String, FHIRSnomedImplicitMap> refsetToMap = implicitMaps.stream()
+				.collect(Collectors.toMap(FHIRSnomedImplicitMap::refsetId, Function.identity()));
+		for (FHIRConcept concept : codeSystemRepository.findByMappingTarget(refsetToMap.keySet(), code)) {
+			for (FHIRMapping mapping : concept.getMappings()) {
+				FHIRSnomedImplicitMap implicitMap = refsetToMap.get(mapping.getRefsetId());
+				if (!mapping.isInverse() && implicitMap != null && code.equals(mapping.getCode())) {
+					termLoader.addSnomedTerm(concept.getConceptId());
+					mappings.computeIfAbsent(implicitMap, i -> new ArrayList<>())
+							.add(new FHIRMapping(mapping.getRefsetId(), concept.getConceptId(), mapping.getCorrelation(), mapping.getMessage(), false));
+				}
+			}
+		}
+	}
+
 	private Enumerations.ConceptMapEquivalence getEquivalence(FHIRMapping mapping, FHIRSnomedImplicitMap type) {
 		Enumerations.ConceptMapEquivalence equivalence = null;
 		String correlation = mapping.getCorrelation();
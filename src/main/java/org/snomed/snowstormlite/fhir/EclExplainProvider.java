@@ -0,0 +1,61 @@
+package org.snomed.snowstormlite.fhir;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import org.hl7.fhir.r4.model.*;
+import org.snomed.snowstormlite.service.ecl.EclExplainNode;
+import org.snomed.snowstormlite.service.ecl.EclExplainService;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+import static org.snomed.snowstormlite.fhir.FHIRHelper.required;
+
+/**
+ * Server level {@code $ecl-explain} operation. Evaluates each node of an ECL expression separately and returns the
+ * constraint tree with time, concept count, whether the node materialised concepts, and the generated Lucene query.
+ */
+@Component
+public class EclExplainProvider {
+
+	private final EclExplainService eclExplainService;
+
+	public EclExplainProvider(EclExplainService eclExplainService) {
+		this.eclExplainService = eclExplainService;
+	}
+
+	@Operation(name = "$ecl-explain", idempotent = true)
+	public Parameters explain(@OperationParam(name = "ecl") String ecl) throws IOException {
+		required("ecl", ecl);
+		long start = System.currentTimeMillis();
+		EclExplainNode root = eclExplainService.explain(ecl);
+
+		Parameters parameters = new Parameters();
+		parameters.addParameter("ecl", ecl);
+		parameters.addParameter("count", new IntegerType(root.getCount()));
+		parameters.addParameter("time", new IntegerType(System.currentTimeMillis() - start));
+		parameters.addParameter("luceneQuery", root.getLuceneQuery());
+		parameters.addParameter(toParameter(root));
+		return parameters;
+	}
+
+	private Parameters.ParametersParameterComponent toParameter(EclExplainNode node) {
+		Parameters.ParametersParameterComponent parameter = new Parameters.ParametersParameterComponent().setName("node");
+		parameter.addPart().setName("type").setValue(new CodeType(node.getType()));
+		if (node.getLabel() != null) {
+			parameter.addPart().setName("label").setValue(new StringType(node.getLabel()));
+		}
+		parameter.addPart().setName("count").setValue(new IntegerType(node.getCount()));
+		parameter.addPart().setName("time").setValue(new IntegerType(node.getTotalMillis()));
+		parameter.addPart().setName("queryBuildTime").setValue(new IntegerType(node.getQueryBuildMillis()));
+		parameter.addPart().setName("searchTime").setValue(new IntegerType(node.getSearchMillis()));
+		parameter.addPart().setName("materialized").setValue(new BooleanType(node.isMaterialized()));
+		parameter.addPart().setName("materializations").setValue(new IntegerType(node.getMaterializations()));
+		parameter.addPart().setName("luceneQuery").setValue(new StringType(node.getLuceneQuery()));
+		for (EclExplainNode child : node.getChildren()) {
+			parameter.addPart(toParameter(child));
+		}
+		return parameter;
+	}
+
+}
@@ -37,6 +37,7 @@ public class FHIRTerminologyCapabilities extends TerminologyCapabilities impleme
 				.addParameter(new TerminologyCapabilitiesExpansionParameterComponent(new CodeType("includeDesignations")))
 				.addParameter(new TerminologyCapabilitiesExpansionParameterComponent(new CodeType("displayLanguage")))
 		);
+		setClosure(new TerminologyCapabilitiesClosureComponent().setTranslation(false));
 
 		return this;
 	}
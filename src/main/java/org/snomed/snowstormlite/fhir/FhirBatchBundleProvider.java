@@ -2,81 +2,171 @@ package org.snomed.snowstormlite.fhir;
 
 import ca.uhn.fhir.rest.annotation.Transaction;
 import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
-import org.hl7.fhir.r4.model.Bundle;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.Enumeration;
-import org.hl7.fhir.r4.model.OperationOutcome;
-import org.hl7.fhir.r4.model.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.config.QueryBudgetFilter;
+import org.snomed.snowstormlite.config.QueryLimitsConfiguration;
 import org.snomed.snowstormlite.domain.FHIRCodeSystem;
 import org.snomed.snowstormlite.domain.FHIRConcept;
 import org.snomed.snowstormlite.domain.LanguageDialect;
-import org.snomed.snowstormlite.service.CodeSystemRepository;
-import org.snomed.snowstormlite.service.CodeSystemService;
+import org.snomed.snowstormlite.service.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
 
 import java.io.IOException;
-import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.snomed.snowstormlite.fhir.FHIRConstants.ACCEPT_LANGUAGE_HEADER;
 import static org.snomed.snowstormlite.fhir.FHIRConstants.SNOMED_URI;
 
 /**
  * Handles FHIR {@link Bundle} POST at the server base URL for {@link Bundle.BundleType#BATCH}.
- * Individual GET operations are executed independently (not transactional).
+ * Individual GET operations are executed independently (not transactional), concurrently on a bounded pool.
+ * Supported entries are CodeSystem $lookup, $validate-code and $subsumes, ValueSet $expand and $validate-code and ConceptMap $translate.
+ * The concepts for all $lookup entries, and the terms for their normal forms, are loaded up front with one query each.
+ * Each entry runs with the time and concept limits of its own operation.
  */
 @Component
 public class FhirBatchBundleProvider {
 
+	private static final String LOOKUP = "CodeSystem/$lookup";
+
 	@Autowired
 	private CodeSystemRepository codeSystemRepository;
 
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private CodeSystemProvider codeSystemProvider;
+
+	@Autowired
+	private ValueSetProvider valueSetProvider;
+
+	@Autowired
+	private ConceptMapProvider conceptMapProvider;
+
 	@Autowired
 	private LanguageDialectParser languageDialectParser;
 
+	@Autowired
+	private QueryLimitsConfiguration queryLimitsConfiguration;
+
+	private final ThreadPoolExecutor executor;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public FhirBatchBundleProvider(@Value("${fhir.batch.threads:4}") int threads, @Value("${fhir.batch.queue-size:256}") int queueSize) {
+		if (threads > 0) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+					runnable -> {
+						Thread thread = new Thread(runnable, "fhir-batch-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					},
+					// Entries that do not fit in the queue are run by the requesting thread
+					new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+		} else {
+			executor = null;
+		}
+	}
+
 	@Transaction
 	public Bundle batchBundle(@TransactionParam Bundle bundle, HttpServletRequest servletRequest) {
 		if (bundle.getType() != Bundle.BundleType.BATCH) {
 			throw new InvalidRequestException("Only Bundle.type=batch is supported when posting a Bundle to the base FHIR URL.");
 		}
+		BatchContext context = new BatchContext(servletRequest);
+		prefetchLookups(bundle, context);
+
 		Bundle response = new Bundle();
 		response.setType(Bundle.BundleType.BATCHRESPONSE);
+		List<FutureTask<Void>> tasks = new ArrayList<>();
 		for (Bundle.BundleEntryComponent reqEntry : bundle.getEntry()) {
 			Bundle.BundleEntryComponent respEntry = response.addEntry();
-			Bundle.BundleEntryResponseComponent resp = new Bundle.BundleEntryResponseComponent();
-			respEntry.setResponse(resp);
+			tasks.add(new FutureTask<>(IndexReaderScope.wrap(() -> processEntryWithinBudget(reqEntry, respEntry, context)), null));
+		}
+
+		// The first entry runs on this thread while the others are queued
+		if (executor != null) {
+			for (int i = 1; i < tasks.size(); i++) {
+				executor.execute(tasks.get(i));
+			}
+		}
+		for (FutureTask<Void> task : tasks) {
+			// Runs the entry here if no pool thread has started it
+			task.run();
 			try {
-				processEntry(reqEntry, respEntry, servletRequest, resp);
-			} catch (ResourceNotFoundException e) {
-				resp.setStatus("404 Not Found");
-				respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND, e.getMessage()));
-			} catch (IllegalArgumentException e) {
-				resp.setStatus("400 Bad Request");
-				respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, e.getMessage()));
-			} catch (IllegalStateException e) {
-				resp.setStatus("503 Service Unavailable");
-				respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, e.getMessage()));
-			} catch (IOException e) {
-				resp.setStatus("500 Internal Server Error");
-				respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, e.getMessage()));
+				task.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw FHIRHelper.exception("Batch processing was interrupted.", OperationOutcome.IssueType.EXCEPTION, 500);
+			} catch (ExecutionException e) {
+				throw FHIRHelper.exceptionWithErrorLogging("Failed to process batch entry.", OperationOutcome.IssueType.EXCEPTION, 500, e.getCause());
 			}
 		}
 		return response;
 	}
 
+	private void processEntryWithinBudget(Bundle.BundleEntryComponent reqEntry, Bundle.BundleEntryComponent respEntry, BatchContext context) {
+		String url = reqEntry.hasRequest() ? reqEntry.getRequest().getUrl() : null;
+		int q = url != null ? url.indexOf('?') : -1;
+		String operation = QueryBudgetFilter.getOperation(q < 0 ? url : url.substring(0, q));
+		QueryLimitsConfiguration.Limit limit = queryLimitsConfiguration.getLimit(operation);
+		long timeoutMs = limit.getTimeoutMs() != null ? limit.getTimeoutMs() : 0;
+		int maxConcepts = limit.getMaxConcepts() != null ? limit.getMaxConcepts() : 0;
+		// The time limit starts when the entry runs, not when the batch was received
+		try (QueryBudget.Scope ignored = QueryBudget.replace(operation, timeoutMs, maxConcepts)) {
+			processEntry(reqEntry, respEntry, context);
+		}
+	}
+
+	private void processEntry(Bundle.BundleEntryComponent reqEntry, Bundle.BundleEntryComponent respEntry, BatchContext context) {
+		Bundle.BundleEntryResponseComponent resp = new Bundle.BundleEntryResponseComponent();
+		respEntry.setResponse(resp);
+		try {
+			processEntry(reqEntry, respEntry, context, resp);
+		} catch (ResourceNotFoundException e) {
+			resp.setStatus("404 Not Found");
+			respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND, e.getMessage()));
+		} catch (BaseServerResponseException e) {
+			resp.setStatus(status(e.getStatusCode()));
+			IBaseOperationOutcome operationOutcome = e.getOperationOutcome();
+			respEntry.setResource(operationOutcome instanceof OperationOutcome outcome ? outcome :
+					operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, e.getMessage()));
+		} catch (IllegalArgumentException e) {
+			resp.setStatus("400 Bad Request");
+			respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.INVALID, e.getMessage()));
+		} catch (IllegalStateException e) {
+			resp.setStatus("503 Service Unavailable");
+			respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, e.getMessage()));
+		} catch (IOException e) {
+			resp.setStatus("500 Internal Server Error");
+			respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.EXCEPTION, e.getMessage()));
+		}
+	}
+
 	private void processEntry(
 			Bundle.BundleEntryComponent reqEntry,
 			Bundle.BundleEntryComponent respEntry,
-			HttpServletRequest servletRequest,
+			BatchContext context,
 			Bundle.BundleEntryResponseComponent resp) throws IOException {
 
 		Bundle.BundleEntryRequestComponent req = reqEntry.getRequest();
@@ -105,24 +195,88 @@ public class FhirBatchBundleProvider {
 			return;
 		}
 
-		if (url.startsWith("CodeSystem/$lookup")) {
-			Parameters result = performCodeSystemLookup(servletRequest, url);
-			resp.setStatus("200 OK");
-			respEntry.setResource(result);
+		int q = url.indexOf('?');
+		String path = q < 0 ? url : url.substring(0, q);
+		Map<String, String> params = q < 0 ? Collections.emptyMap() : splitQueryParams(url.substring(q + 1));
+		Resource result = switch (path) {
+			case LOOKUP -> performCodeSystemLookup(params, context);
+			case "CodeSystem/$validate-code" -> codeSystemProvider.validateCode(context.entryRequest, null, uri(params, "url"), params.get("code"),
+					uri(params, "system"), params.get("version"), null, null, params.get("display"), params.get("date"), null,
+					params.get("displayLanguage"), null);
+			case "CodeSystem/$subsumes" -> codeSystemProvider.subsumes(context.entryRequest, null, code(params, "codeA"), code(params, "codeB"),
+					uri(params, "system"), string(params, "version"), null, null, string(params, "date"));
+			case "ValueSet/$expand" -> valueSetProvider.expand(context.entryRequest, null, null, null, uri(params, "url"), params.get("valueSetVersion"),
+					null, null, params.get("filter"), params.get("date"), integer(params, "offset"), integer(params, "count"),
+					bool(params, "includeDesignations"), null, null, bool(params, "activeOnly"), null, null, null,
+					params.get("displayLanguage"), null, null, null, null, null);
+			case "ValueSet/$validate-code" -> valueSetProvider.validateCodeExplicit(context.entryRequest, null, null, uri(params, "url"), null, null,
+					params.get("valueSetVersion"), params.get("code"), uri(params, "system"), params.get("systemVersion"), params.get("display"),
+					null, null, params.get("date"), null, params.get("displayLanguage"), null);
+			case "ConceptMap/$translate" -> conceptMapProvider.lookupImplicit(context.entryRequest, null, uri(params, "url"), null,
+					params.get("conceptMapVersion"), params.get("code"), params.get("system"), params.get("version"), params.get("source"),
+					null, null, params.get("target"), params.get("targetsystem"), null);
+			default -> null;
+		};
+		if (result == null) {
+			resp.setStatus("404 Not Found");
+			respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND,
+					"Unsupported batch entry URL: " + url));
 			return;
 		}
+		resp.setStatus("200 OK");
+		respEntry.setResource(result);
+	}
 
-		resp.setStatus("404 Not Found");
-		respEntry.setResource(operationOutcomeError(OperationOutcome.IssueSeverity.ERROR, OperationOutcome.IssueType.NOTFOUND,
-				"Unsupported batch entry URL: " + url));
+	/**
+	 * Loads the concepts of all $lookup entries, and the terms used in their normal forms, with one query each.
+	 */
+	private void prefetchLookups(Bundle bundle, BatchContext context) {
+		Set<String> codes = new HashSet<>();
+		for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+			String url = entry.hasRequest() ? entry.getRequest().getUrl() : null;
+			if (url != null && url.startsWith(LOOKUP + "?") && entry.getRequest().getMethod() == Bundle.HTTPVerb.GET) {
+				Map<String, String> params = splitQueryParams(url.substring(LOOKUP.length() + 1));
+				if (SNOMED_URI.equals(params.get("system")) && params.get("code") != null) {
+					codes.add(params.get("code"));
+				}
+			}
+		}
+		if (codes.isEmpty() || codeSystemRepository.getCodeSystem() == null) {
+			return;
+		}
+		try {
+			context.concepts = codeSystemRepository.getConcepts(codes);
+			Set<String> termCodes = new HashSet<>();
+			for (FHIRConcept concept : context.concepts.values()) {
+				termCodes.addAll(NormalFormBuilder.getReferencedCodes(concept));
+			}
+			Map<String, String> terms = codeSystemRepository.getTerms(termCodes, context.languageDialects);
+			context.termProvider = (requestedCodes, languageDialects) -> {
+				Map<String, String> requestedTerms = new HashMap<>();
+				List<String> missing = new ArrayList<>();
+				for (String code : requestedCodes) {
+					String term = terms.get(code);
+					if (term != null) {
+						requestedTerms.put(code, term);
+					} else {
+						missing.add(code);
+					}
+				}
+				if (!missing.isEmpty()) {
+					requestedTerms.putAll(codeSystemRepository.getTerms(missing, languageDialects));
+				}
+				return requestedTerms;
+			};
+		} catch (IOException e) {
+			// Each lookup loads its own concept instead
+			logger.warn("Failed to load concepts for batch lookup.", e);
+		}
 	}
 
-	private Parameters performCodeSystemLookup(HttpServletRequest servletRequest, String requestUrl) throws IOException {
-		int q = requestUrl.indexOf('?');
-		if (q < 0) {
+	private Parameters performCodeSystemLookup(Map<String, String> params, BatchContext context) throws IOException {
+		if (params.isEmpty()) {
 			throw new IllegalArgumentException("CodeSystem $lookup requires query parameters.");
 		}
-		Map<String, String> params = splitQueryParams(requestUrl.substring(q + 1));
 		String system = params.get("system");
 		String code = params.get("code");
 		if (system == null || code == null) {
@@ -135,13 +289,49 @@ public class FhirBatchBundleProvider {
 		if (codeSystem == null) {
 			throw new IllegalStateException("No CodeSystem is loaded on this server.");
 		}
-		FHIRConcept concept = codeSystemRepository.getConcept(code);
+		FHIRConcept concept = context.concepts != null ? context.concepts.get(code) : codeSystemRepository.getConcept(code);
 		if (concept == null) {
 			throw new ResourceNotFoundException("Concept not found: " + code);
 		}
-		List<LanguageDialect> dialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(null,
-				servletRequest.getHeader(ACCEPT_LANGUAGE_HEADER));
-		return codeSystemService.lookup(codeSystem, code, dialects);
+		TermProvider termProvider = context.termProvider != null ? context.termProvider : codeSystemRepository;
+		return codeSystemService.lookup(codeSystem, concept, termProvider, context.languageDialects);
+	}
+
+	private static UriType uri(Map<String, String> params, String name) {
+		String value = params.get(name);
+		return value != null ? new UriType(value) : null;
+	}
+
+	private static CodeType code(Map<String, String> params, String name) {
+		String value = params.get(name);
+		return value != null ? new CodeType(value) : null;
+	}
+
+	private static StringType string(Map<String, String> params, String name) {
+		String value = params.get(name);
+		return value != null ? new StringType(value) : null;
+	}
+
+	private static IntegerType integer(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return new IntegerType(Integer.parseInt(value));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter '" + name + "' must be an integer.");
+		}
+	}
+
+	private static BooleanType bool(Map<String, String> params, String name) {
+		String value = params.get(name);
+		return value != null ? new BooleanType(Boolean.parseBoolean(value)) : null;
+	}
+
+	private static String status(int statusCode) {
+		HttpStatus httpStatus = HttpStatus.resolve(statusCode);
+		return httpStatus != null ? statusCode + " " + httpStatus.getReasonPhrase() : String.valueOf(statusCode);
 	}
 
 	private static Map<String, String> splitQueryParams(String query) {
@@ -154,8 +344,9 @@ public class FhirBatchBundleProvider {
 			if (eq <= 0) {
 				continue;
 			}
-			String key = URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8);
-			String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+			// Percent-decoded once, '+' is kept because ECL uses it, for example in "{{ +HISTORY }}"
+			String key = UriUtils.decode(pair.substring(0, eq), StandardCharsets.UTF_8);
+			String value = UriUtils.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
 			map.put(key, value);
 		}
 		return map;
@@ -169,4 +360,38 @@ public class FhirBatchBundleProvider {
 				.setDiagnostics(diagnostics);
 		return oo;
 	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private class BatchContext {
+
+		private final String acceptLanguage;
+		private final HttpServletRequest entryRequest;
+		private final List<LanguageDialect> languageDialects;
+		private Map<String, FHIRConcept> concepts;
+		private TermProvider termProvider;
+
+		BatchContext(HttpServletRequest servletRequest) {
+			acceptLanguage = servletRequest.getHeader(ACCEPT_LANGUAGE_HEADER);
+			languageDialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(null, acceptLanguage);
+			// Entries are GET requests, providers must not read the body of the batch request. Headers are read up front because
+			// the servlet request is not safe to use from other threads.
+			entryRequest = new HttpServletRequestWrapper(servletRequest) {
+				@Override
+				public String getMethod() {
+					return "GET";
+				}
+
+				@Override
+				public String getHeader(String name) {
+					return ACCEPT_LANGUAGE_HEADER.equalsIgnoreCase(name) ? acceptLanguage : null;
+				}
+			};
+		}
+	}
 }
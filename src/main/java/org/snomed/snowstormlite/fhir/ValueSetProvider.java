@@ -2,8 +2,12 @@ package org.snomed.snowstormlite.fhir;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.annotation.*;
+// Count is also the name of a FHIR data type
+import ca.uhn.fhir.rest.annotation.Count;
 import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.hl7.fhir.r4.model.*;
@@ -13,9 +17,10 @@ import org.snomed.snowstormlite.domain.FHIRDescription;
 import org.snomed.snowstormlite.domain.LanguageDialect;
 import org.snomed.snowstormlite.domain.valueset.FHIRValueSet;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
+import org.snomed.snowstormlite.service.RequestProfile;
+import org.snomed.snowstormlite.service.ResourceSearch;
 import org.snomed.snowstormlite.service.ValueSetService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.util.UriUtils;
@@ -48,16 +53,23 @@ public class ValueSetProvider implements IResourceProvider {
 	private CodeSystemRepository codeSystemRepository;
 
 	@Search
-	public List<ValueSet> search(
+	public IBundleProvider search(
 			@OptionalParam(name="url") UriType url,
-			@OptionalParam(name="version") String version) throws IOException {
-
-		return valueSetService.findAll().stream()
-				.filter(vs -> url == null || url.equals(vs.getUrl()))
-				.filter(vs -> version == null || version.equals(vs.getVersion()))
-				.peek(vs -> vs.setCompose(null))
-				.map(FHIRValueSet::toHapi)
-				.toList();
+			@OptionalParam(name="version") String version,
+			@OptionalParam(name="name") String name,
+			@OptionalParam(name="status") String status,
+			@OptionalParam(name="title") String title,
+			@Offset Integer offset,
+			@Count Integer count) throws IOException {
+
+		ResourceSearch search = ResourceSearch.of(url != null ? url.getValueAsString() : null, version, name, status, title, offset, count);
+		ResourceSearch.Page<FHIRValueSet> page = valueSetService.search(search);
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider(page.resources().stream().map(FHIRValueSet::toHapi).toList());
+		bundleProvider.setSize(page.total());
+		// The provider holds the requested page only, HAPI must not apply the offset again
+		bundleProvider.setCurrentPageOffset(search.offset());
+		bundleProvider.setCurrentPageSize(search.count());
+		return bundleProvider;
 	}
 
 	@Read()
@@ -153,7 +165,7 @@ public class ValueSetProvider implements IResourceProvider {
 
 		int count = countType != null ? countType.getValue() : 100;
 
-		return doExpand(request, rawBody, id, url, filter, offset, includeDesignationsType, displayLanguage, count, null).getFirst();
+		return doExpand(request, rawBody, id, url, filter, offset, includeDesignationsType, displayLanguage, count);
 	}
 
 	@Operation(name="$validate-code", idempotent=true)
@@ -202,12 +214,16 @@ public class ValueSetProvider implements IResourceProvider {
 		}
 
 		// If any display terms are in the validation input: grab all the relevant display terms from the store
-		BooleanType includeDesignations = new BooleanType(codingsToValidate.stream().anyMatch(coding1 -> coding1.getDisplay() != null));
+		boolean includeDesignations = codingsToValidate.stream().anyMatch(coding1 -> coding1.getDisplay() != null);
 
-		// Resolve and expand the ValueSet with the requested codes
-		Pair<ValueSet, List<FHIRConcept>> expandedValueSetAndConceptPage = doExpand(request, rawBody, id, url, null, new IntegerType(0),
-				includeDesignations, displayLanguage, codingsToValidate.size(), codingsToValidate);
-		List<FHIRConcept> expandedConcepts = expandedValueSetAndConceptPage.getSecond();
+		// Resolve the ValueSet and find which of the requested codes it contains, no expansion is needed
+		List<FHIRConcept> expandedConcepts;
+		try {
+			ValueSet resolvedValueSet = findValueSet(id, url, getPostedValueSet(request, rawBody));
+			expandedConcepts = valueSetService.findMembers(new FHIRValueSet(resolvedValueSet), codingsToValidate, includeDesignations);
+		} catch (IOException e) {
+			throw FHIRHelper.exceptionWithErrorLogging("Failed to validate code in ValueSet " + (url != null ? url : id), OperationOutcome.IssueType.EXCEPTION, 500, e);
+		}
 
 		Parameters response = new Parameters();
 
@@ -317,36 +333,61 @@ public class ValueSetProvider implements IResourceProvider {
 				|| coding.getVersion().equals(codeSystem.getVersionUri());
 	}
 
-	private Pair<ValueSet, List<FHIRConcept>> doExpand(HttpServletRequest request, String rawBody, IdType id, UriType url,
-			String filter, IntegerType offset, BooleanType includeDesignationsType, String displayLanguage, int count, Set<Coding> codingsToValidate) {
+	private ValueSet doExpand(HttpServletRequest request, String rawBody, IdType id, UriType url,
+			String filter, IntegerType offset, BooleanType includeDesignationsType, String displayLanguage, int count) {
 
 		ValueSet postedValueSet = null;
 		List<String> requestedProperties = Collections.emptyList();
-		if (request.getMethod().equals(RequestMethod.POST.name())) {
-			List<Parameters.ParametersParameterComponent> parameters = fhirContext.newJsonParser().parseResource(Parameters.class, rawBody).getParameter();
-			Parameters.ParametersParameterComponent valueSetParam = findParameterOrNull(parameters, "valueSet");
-			if (valueSetParam != null) {
-				postedValueSet = (ValueSet) valueSetParam.getResource();
+		List<LanguageDialect> languageDialects;
+		try (RequestProfile.Phase ignored = RequestProfile.phase("request-parse")) {
+			List<Parameters.ParametersParameterComponent> parameters = getPostedParameters(request, rawBody);
+			if (parameters != null) {
+				postedValueSet = getPostedValueSet(parameters);
+				requestedProperties = getParameterValueStringsOrEmpty(parameters, "property");
 			}
-			requestedProperties = getParameterValueStringsOrEmpty(parameters, "property");
+			languageDialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(displayLanguage, request.getHeader(ACCEPT_LANGUAGE_HEADER));
 		}
-		String idString = id != null ? id.getIdPart() : null;
-		// Percent-decode only: unlike URLDecoder, '+' is not turned into space, so ECL such as
-		// "+HISTORY" is not corrupted when the container has already applied form decoding once.
-		String urlString = url != null ? UriUtils.decode(url.getValueAsString(), StandardCharsets.UTF_8) : null;
-		List<LanguageDialect> languageDialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(displayLanguage, request.getHeader(ACCEPT_LANGUAGE_HEADER));
 		try {
-			ValueSet valueSet = valueSetService.findOrInferValueSet(idString, urlString, postedValueSet);
-			if (valueSet == null) {
-				throw FHIRHelper.exception("ValueSet not found.", OperationOutcome.IssueType.NOTFOUND, 404);
+			ValueSet valueSet;
+			try (RequestProfile.Phase ignored = RequestProfile.phase("resolve")) {
+				valueSet = findValueSet(id, url, postedValueSet);
 			}
 			return valueSetService.expand(new FHIRValueSet(valueSet), filter, languageDialects, toBool(includeDesignationsType),
-					requestedProperties, offset != null ? offset.getValue() : 0, count, codingsToValidate);
+					requestedProperties, offset != null ? offset.getValue() : 0, count).getFirst();
 		} catch (IOException e) {
 			throw FHIRHelper.exceptionWithErrorLogging("Failed to expand ValueSet " + (url != null ? url : id), OperationOutcome.IssueType.EXCEPTION, 500, e);
 		}
 	}
 
+	private ValueSet findValueSet(IdType id, UriType url, ValueSet postedValueSet) throws IOException {
+		String idString = id != null ? id.getIdPart() : null;
+		// Percent-decode only: unlike URLDecoder, '+' is not turned into space, so ECL such as
+		// "+HISTORY" is not corrupted when the container has already applied form decoding once.
+		String urlString = url != null ? UriUtils.decode(url.getValueAsString(), StandardCharsets.UTF_8) : null;
+		ValueSet valueSet = valueSetService.findOrInferValueSet(idString, urlString, postedValueSet);
+		if (valueSet == null) {
+			throw FHIRHelper.exception("ValueSet not found.", OperationOutcome.IssueType.NOTFOUND, 404);
+		}
+		return valueSet;
+	}
+
+	private List<Parameters.ParametersParameterComponent> getPostedParameters(HttpServletRequest request, String rawBody) {
+		if (request.getMethod().equals(RequestMethod.POST.name())) {
+			return fhirContext.newJsonParser().parseResource(Parameters.class, rawBody).getParameter();
+		}
+		return null;
+	}
+
+	private ValueSet getPostedValueSet(HttpServletRequest request, String rawBody) {
+		List<Parameters.ParametersParameterComponent> parameters = getPostedParameters(request, rawBody);
+		return parameters != null ? getPostedValueSet(parameters) : null;
+	}
+
+	private ValueSet getPostedValueSet(List<Parameters.ParametersParameterComponent> parameters) {
+		Parameters.ParametersParameterComponent valueSetParam = findParameterOrNull(parameters, "valueSet");
+		return valueSetParam != null ? (ValueSet) valueSetParam.getResource() : null;
+	}
+
 	private boolean toBool(BooleanType bool) {
 		return bool != null && bool.booleanValue();
 	}
@@ -0,0 +1,50 @@
+package org.snomed.snowstormlite.rest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.snomed.snowstormlite.service.ValueSetBulkValidationService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@Tag(name = "Bulk Validation", description = "Validate many codes in one request")
+public class BulkValidationController {
+
+	private final ValueSetBulkValidationService bulkValidationService;
+
+	public BulkValidationController(ValueSetBulkValidationService bulkValidationService) {
+		this.bulkValidationService = bulkValidationService;
+	}
+
+	@Operation(summary = "Validate many codes against ValueSets.",
+			description = "The request body is newline delimited JSON, one item per line, for example: " +
+					"{\"code\":\"404684003\", \"display\":\"Clinical finding\", \"valueSet\":\"http://snomed.info/sct?fhir_vs=isa/138875005\"}. " +
+					"The system defaults to SNOMED CT and the valueSet defaults to the valueSet request parameter. " +
+					"One result is streamed back per item as newline delimited JSON, with the zero based index of the item: " +
+					"{\"index\":0, \"code\":\"404684003\", \"result\":true, \"inactive\":false}. Results are grouped by ValueSet, not in input order.")
+	@PostMapping(value = "/bulk/validate-code")
+	public ResponseEntity<StreamingResponseBody> validateCodes(
+			HttpServletRequest request,
+			@Parameter(description = "ValueSet url used for items that do not have one") @RequestParam(required = false) String valueSet) throws IOException {
+
+		List<ValueSetBulkValidationService.Item> items;
+		try {
+			items = bulkValidationService.readItems(request.getInputStream(), valueSet);
+		} catch (FHIRServerResponseException e) {
+			return StreamingResponses.error(e.getStatusCode(), e.getMessage());
+		}
+		return ResponseEntity.ok()
+				.contentType(StreamingResponses.NDJSON)
+				.body(outputStream -> bulkValidationService.validate(items, outputStream));
+	}
+
+}
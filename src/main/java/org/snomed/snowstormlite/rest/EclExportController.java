@@ -0,0 +1,68 @@
+package org.snomed.snowstormlite.rest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.snomed.snowstormlite.domain.LanguageDialect;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.snomed.snowstormlite.fhir.LanguageDialectParser;
+import org.snomed.snowstormlite.service.ecl.EclExportService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@RestController
+@Tag(name = "Export", description = "Bulk export")
+public class EclExportController {
+
+	private final EclExportService eclExportService;
+	private final LanguageDialectParser languageDialectParser;
+
+	public EclExportController(EclExportService eclExportService, LanguageDialectParser languageDialectParser) {
+		this.eclExportService = eclExportService;
+		this.languageDialectParser = languageDialectParser;
+	}
+
+	@Operation(summary = "Stream all concepts matching an ECL expression as NDJSON or CSV.",
+			description = "Concepts are streamed in index order using chunked transfer, memory use does not depend on the number of results. " +
+					"Use this rather than paging through ValueSet $expand when the whole result is needed.")
+	@GetMapping(value = "/export/ecl")
+	public ResponseEntity<StreamingResponseBody> exportEcl(
+			@RequestParam String ecl,
+			@Parameter(description = "ndjson or csv") @RequestParam(defaultValue = "ndjson") String format,
+			@Parameter(description = "Include the preferred term of each concept") @RequestParam(defaultValue = "false") boolean includeDisplay,
+			@Parameter(description = "Include the active flag of each concept") @RequestParam(defaultValue = "false") boolean includeActive,
+			@RequestParam(required = false) String displayLanguage,
+			@RequestHeader(value = HttpHeaders.ACCEPT_LANGUAGE, required = false) String acceptLanguageHeader) throws IOException {
+
+		EclExportService.Format exportFormat;
+		if ("csv".equalsIgnoreCase(format)) {
+			exportFormat = EclExportService.Format.CSV;
+		} else if ("ndjson".equalsIgnoreCase(format)) {
+			exportFormat = EclExportService.Format.NDJSON;
+		} else {
+			return StreamingResponses.error(400, "format must be ndjson or csv");
+		}
+		List<LanguageDialect> languageDialects = languageDialectParser.parseDisplayLanguageWithDefaultFallback(displayLanguage, acceptLanguageHeader);
+
+		EclExportService.Export export;
+		try {
+			export = eclExportService.prepareExport(ecl, exportFormat, includeDisplay, includeActive, languageDialects);
+		} catch (FHIRServerResponseException e) {
+			return StreamingResponses.error(e.getStatusCode(), e.getMessage());
+		}
+		return ResponseEntity.ok()
+				.contentType(exportFormat == EclExportService.Format.CSV ? new MediaType("text", "csv", StandardCharsets.UTF_8) : StreamingResponses.NDJSON)
+				.body(export::writeTo);
+	}
+
+}
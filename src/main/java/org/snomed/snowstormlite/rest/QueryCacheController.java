@@ -0,0 +1,40 @@
+package org.snomed.snowstormlite.rest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.TerminologyQueryCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@Tag(name = "Stats", description = "Search statistics")
+public class QueryCacheController {
+
+	private final IndexIOProvider indexIOProvider;
+
+	public QueryCacheController(IndexIOProvider indexIOProvider) {
+		this.indexIOProvider = indexIOProvider;
+	}
+
+	@Operation(summary = "Lucene query cache statistics, overall and per query type.")
+	@GetMapping(value = "/stats/query-cache", produces = "application/json")
+	public Map<String, Object> getQueryCacheStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		TerminologyQueryCache queryCache = indexIOProvider.getQueryCache();
+		stats.put("enabled", queryCache != null);
+		if (queryCache != null) {
+			stats.put("cachedQueries", queryCache.getCacheSize());
+			stats.put("ramBytesUsed", queryCache.ramBytesUsed());
+			stats.put("hits", queryCache.getHitCount());
+			stats.put("misses", queryCache.getMissCount());
+			stats.put("evictions", queryCache.getEvictionCount());
+			stats.put("queryTypes", queryCache.getStatsByQueryType());
+		}
+		return stats;
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.snomed.snowstormlite.rest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.snomed.snowstormlite.service.WarmupService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@Tag(name = "Readiness", description = "Readiness for traffic")
+public class ReadinessController {
+
+	private final WarmupService warmupService;
+
+	public ReadinessController(WarmupService warmupService) {
+		this.warmupService = warmupService;
+	}
+
+	@Operation(summary = "Returns 200 once startup and index warm-up are complete, otherwise 503.")
+	@GetMapping(value = "/ready", produces = "application/json")
+	public ResponseEntity<Map<String, String>> getReadiness() {
+		if (warmupService.isReady()) {
+			return ResponseEntity.ok(Map.of("status", "READY"));
+		}
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("status", "WARMING_UP"));
+	}
+
+}
@@ -0,0 +1,27 @@
+package org.snomed.snowstormlite.rest;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.snomed.snowstormlite.service.SlowRequestLog;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@Tag(name = "Stats", description = "Search statistics")
+public class SlowRequestController {
+
+	private final SlowRequestLog slowRequestLog;
+
+	public SlowRequestController(SlowRequestLog slowRequestLog) {
+		this.slowRequestLog = slowRequestLog;
+	}
+
+	@Operation(summary = "Most recent slow requests, newest first, with their parameters and the time taken by each phase.")
+	@GetMapping(value = "/stats/slow-requests", produces = "application/json")
+	public List<SlowRequestLog.Entry> getSlowRequests() {
+		return slowRequestLog.getRecentEntries();
+	}
+
+}
@@ -0,0 +1,22 @@
+package org.snomed.snowstormlite.rest;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+
+class StreamingResponses {
+
+	static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+	private StreamingResponses() {
+	}
+
+	static ResponseEntity<StreamingResponseBody> error(int status, String message) {
+		return ResponseEntity.status(status)
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(outputStream -> outputStream.write(String.format("{\"message\":\"%s\"}", message.replace("\\", "\\\\").replace("\"", "\\\""))
+						.getBytes(StandardCharsets.UTF_8)));
+	}
+}
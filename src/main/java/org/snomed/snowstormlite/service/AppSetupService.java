@@ -1,6 +1,7 @@
 package org.snomed.snowstormlite.service;
 
 import org.apache.logging.log4j.util.Strings;
+import org.apache.lucene.index.DirectoryReader;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,9 +29,21 @@ public class AppSetupService {
 	@Autowired
 	private IndexIOProvider indexIOProvider;
 
+	@Autowired
+	private ValueSetRepository valueSetRepository;
+
+	@Autowired
+	private ConceptMapRepository conceptMapRepository;
+
+	@Autowired
+	private ClosureTableRepository closureTableRepository;
+
 	@Autowired
 	private SyndicationClient syndicationClient;
 
+	@Autowired
+	private WarmupService warmupService;
+
 	@Value("${index.path}")
 	private String indexPath;
 
@@ -47,6 +60,11 @@ public class AppSetupService {
 
 	public void run() throws IOException, ReleaseImportException {
 		try {
+			// ValueSets, ConceptMaps and closure tables saved before they had their own index
+			valueSetRepository.moveFromSnomedIndex();
+			conceptMapRepository.moveFromSnomedIndex();
+			closureTableRepository.moveFromSnomedIndex();
+
 			if (Strings.isEmpty(useSyndication)) {
 				if (Strings.isEmpty(loadVersionUri)) {
 					throw new IllegalArgumentException("Parameter 'version-uri' must be set when loading SNOMED via syndication.");
@@ -72,15 +90,15 @@ public class AppSetupService {
 				Set<String> filePaths = Arrays.stream(loadReleaseArchives.split(",")).collect(Collectors.toSet());
 				importService.importRelease(filePaths, loadVersionUri);
 			} else {
-				File indexDirectory = new File(indexPath);
-				File[] files = indexDirectory.listFiles();
-				if (indexDirectory.isDirectory() && files != null && files.length > 0) {
+				// The index directory also holds the resource index, so check for a SNOMED CT index commit rather than any files
+				if (DirectoryReader.indexExists(indexIOProvider.getIndexDirectory())) {
 					indexIOProvider.enableRead();
 					logger.info("Snowstorm Lite started. Ready.");
 				} else {
 					logger.info("Snowstorm Lite started. Please load a SNOMED CT package.");
 				}
 			}
+			warmupService.warmUp();
 		} catch (IllegalArgumentException e) {
 			if (e.getMessage().contains("Could not load codec")) {
 				String message = "New Lucene engine detected. Please delete directory '%s' and import again.".formatted(indexPath);
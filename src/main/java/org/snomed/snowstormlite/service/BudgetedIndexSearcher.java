@@ -0,0 +1,41 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Searcher that stops collecting when the time budget of the request has run out and then fails the request,
+ * so a search that was cut short is never taken as a complete result, such as a concept that does not exist.
+ * All search and count methods of {@link IndexSearcher} go through the two methods overridden here.
+ */
+class BudgetedIndexSearcher extends IndexSearcher {
+
+	BudgetedIndexSearcher(IndexReader reader) {
+		super(reader);
+		setTimeout(QueryBudget::isTimedOut);
+	}
+
+	BudgetedIndexSearcher(IndexReader reader, Executor executor) {
+		super(reader, executor);
+		setTimeout(QueryBudget::isTimedOut);
+	}
+
+	@Override
+	public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager) throws IOException {
+		T result = super.search(query, collectorManager);
+		QueryBudget.checkTime();
+		return result;
+	}
+
+	@Override
+	public void search(Query query, Collector results) throws IOException {
+		super.search(query, results);
+		QueryBudget.checkTime();
+	}
+}
@@ -0,0 +1,202 @@
+package org.snomed.snowstormlite.service;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.snomed.snowstormlite.domain.ClosureTableVersion;
+import org.snomed.snowstormlite.domain.FHIRCodeSystem;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+import static java.lang.String.format;
+import static org.snomed.snowstormlite.fhir.FHIRConstants.SNOMED_URI;
+
+/**
+ * Maintains named closure tables for the FHIR ConceptMap $closure operation.
+ * <p>
+ * Each request that adds concepts is stored as a new version of the table, holding only the concepts added.
+ * The subsumption pairs are never stored, they are worked out from the in-memory hierarchy when needed, so the cost of a request
+ * depends on the ancestors and descendants of the concepts added rather than the size of the table.
+ */
+@Service
+public class ClosureService {
+
+	@Autowired
+	private ClosureTableRepository closureTableRepository;
+
+	@Autowired
+	private CodeSystemRepository codeSystemRepository;
+
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	/**
+	 * Creates the named closure table, or clears it if it already exists.
+	 */
+	public synchronized ConceptMap initialise(String name) throws IOException {
+		FHIRCodeSystem codeSystem = getCodeSystem();
+		closureTableRepository.deleteTable(name);
+		closureTableRepository.save(new ClosureTableVersion(name, 0, codeSystem.getVersionUri(), new long[0]));
+		return createConceptMap(name, 0, codeSystem, Map.of());
+	}
+
+	/**
+	 * Adds concepts to the named closure table.
+	 * @return the subsumption pairs that the new concepts add to the table. If none of the concepts are new the version of the table is not changed.
+	 */
+	public synchronized ConceptMap addConcepts(String name, List<Coding> concepts) throws IOException {
+		FHIRCodeSystem codeSystem = getCodeSystem();
+		List<ClosureTableVersion> versions = getVersions(name, codeSystem);
+		LongSet existing = getConcepts(versions, Integer.MAX_VALUE);
+		int latestVersion = versions.get(versions.size() - 1).getVersion();
+
+		LongSet added = new LongLinkedOpenHashSet();
+		for (Coding concept : concepts) {
+			if (!SNOMED_URI.equals(concept.getSystem())) {
+				throw FHIRHelper.exception(format("Closure tables can only contain concepts from '%s'.", SNOMED_URI), OperationOutcome.IssueType.NOTSUPPORTED, 400);
+			}
+			long conceptId = parseConceptId(concept.getCode());
+			if (!existing.contains(conceptId)) {
+				added.add(conceptId);
+			}
+		}
+		if (added.isEmpty()) {
+			return createConceptMap(name, latestVersion, codeSystem, Map.of());
+		}
+
+		int newVersion = latestVersion + 1;
+		closureTableRepository.save(new ClosureTableVersion(name, newVersion, codeSystem.getVersionUri(), added.toLongArray()));
+		return createConceptMap(name, newVersion, codeSystem, getNewSubsumptions(existing, added));
+	}
+
+	/**
+	 * Replays the subsumption pairs added to the named closure table after the given version, for a client that has lost its place.
+	 */
+	public ConceptMap getChangesSince(String name, String version) throws IOException {
+		int sinceVersion;
+		try {
+			sinceVersion = Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			throw FHIRHelper.exception("Closure table version must be a whole number.", OperationOutcome.IssueType.INVALID, 400);
+		}
+		FHIRCodeSystem codeSystem = getCodeSystem();
+		List<ClosureTableVersion> versions = getVersions(name, codeSystem);
+		int latestVersion = versions.get(versions.size() - 1).getVersion();
+		if (sinceVersion < 0 || sinceVersion > latestVersion) {
+			throw FHIRHelper.exception(format("Closure table '%s' does not have version %s.", name, version), OperationOutcome.IssueType.NOTFOUND, 404);
+		}
+
+		LongSet existing = getConcepts(versions, sinceVersion);
+		LongSet added = new LongOpenHashSet();
+		for (ClosureTableVersion tableVersion : versions) {
+			if (tableVersion.getVersion() > sinceVersion) {
+				added.addAll(LongArrayList.wrap(tableVersion.getConceptIds()));
+			}
+		}
+		return createConceptMap(name, latestVersion, codeSystem, getNewSubsumptions(existing, added));
+	}
+
+	/**
+	 * Walks the ancestors and descendants of the added concepts only, so the cost depends on the number of concepts added
+	 * rather than the size of the table.
+	 * @return for each concept, the ancestors that form a new subsumption pair with it. Pairs where both concepts are existing are not included.
+	 */
+	private Map<Long, LongSet> getNewSubsumptions(LongSet existing, LongSet added) throws IOException {
+		HierarchyIndex hierarchy = indexIOProvider.getHierarchyIndex();
+		Map<Long, LongSet> subsumptions = new TreeMap<>();
+		for (long conceptId : added) {
+			int ordinal = hierarchy.getOrdinal(conceptId);
+			if (ordinal == -1) {
+				continue;
+			}
+			// Ancestors of the added concept that are anywhere in the table
+			for (int ancestor : hierarchy.getAncestors(ordinal)) {
+				long ancestorId = hierarchy.getConceptId(ancestor);
+				if (existing.contains(ancestorId) || added.contains(ancestorId)) {
+					subsumptions.computeIfAbsent(conceptId, key -> new LongOpenHashSet()).add(ancestorId);
+				}
+			}
+			// Existing concepts that the added concept subsumes, descendants that were also added are covered by their own ancestors
+			for (int descendant : hierarchy.getDescendants(ordinal)) {
+				long descendantId = hierarchy.getConceptId(descendant);
+				if (existing.contains(descendantId)) {
+					subsumptions.computeIfAbsent(descendantId, key -> new LongOpenHashSet()).add(conceptId);
+				}
+			}
+		}
+		return subsumptions;
+	}
+
+	private ConceptMap createConceptMap(String name, int version, FHIRCodeSystem codeSystem, Map<Long, LongSet> subsumptions) {
+		ConceptMap conceptMap = new ConceptMap();
+		conceptMap.setId(UUID.randomUUID().toString());
+		conceptMap.setName(name);
+		conceptMap.setVersion(Integer.toString(version));
+		conceptMap.setStatus(Enumerations.PublicationStatus.ACTIVE);
+		conceptMap.setExperimental(true);
+		conceptMap.setDate(new Date());
+		if (!subsumptions.isEmpty()) {
+			ConceptMap.ConceptMapGroupComponent group = conceptMap.addGroup()
+					.setSource(SNOMED_URI)
+					.setSourceVersion(codeSystem.getVersionUri())
+					.setTarget(SNOMED_URI)
+					.setTargetVersion(codeSystem.getVersionUri());
+			for (Map.Entry<Long, LongSet> entry : subsumptions.entrySet()) {
+				ConceptMap.SourceElementComponent element = group.addElement().setCode(entry.getKey().toString());
+				long[] ancestorIds = entry.getValue().toLongArray();
+				Arrays.sort(ancestorIds);
+				for (long ancestorId : ancestorIds) {
+					// The target subsumes the source
+					element.addTarget().setCode(Long.toString(ancestorId)).setEquivalence(Enumerations.ConceptMapEquivalence.SUBSUMES);
+				}
+			}
+		}
+		return conceptMap;
+	}
+
+	private FHIRCodeSystem getCodeSystem() {
+		FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
+		if (codeSystem == null) {
+			throw FHIRHelper.exception("SNOMED CT has not yet been loaded.", OperationOutcome.IssueType.CONFLICT, 409);
+		}
+		return codeSystem;
+	}
+
+	private List<ClosureTableVersion> getVersions(String name, FHIRCodeSystem codeSystem) throws IOException {
+		List<ClosureTableVersion> versions = closureTableRepository.findVersions(name);
+		if (versions.isEmpty()) {
+			throw FHIRHelper.exception(format("Closure table '%s' has not been initialised.", name), OperationOutcome.IssueType.NOTFOUND, 404);
+		}
+		if (!codeSystem.getVersionUri().equals(versions.get(0).getCodeSystemVersion())) {
+			throw FHIRHelper.exception(format("The code system has changed since closure table '%s' was initialised, the table must be initialised again.", name),
+					OperationOutcome.IssueType.BUSINESSRULE, 422);
+		}
+		return versions;
+	}
+
+	private static LongSet getConcepts(List<ClosureTableVersion> versions, int upToVersion) {
+		LongSet concepts = new LongOpenHashSet();
+		for (ClosureTableVersion tableVersion : versions) {
+			if (tableVersion.getVersion() <= upToVersion) {
+				concepts.addAll(LongArrayList.wrap(tableVersion.getConceptIds()));
+			}
+		}
+		return concepts;
+	}
+
+	private static long parseConceptId(String code) {
+		if (!SnomedIdentifierHelper.isConceptId(code)) {
+			throw FHIRHelper.exception(format("'%s' is not a SNOMED CT concept identifier.", code), OperationOutcome.IssueType.INVALID, 400);
+		}
+		return Long.parseLong(code);
+	}
+}
@@ -0,0 +1,112 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.domain.ClosureTableVersion;
+import org.snomed.snowstormlite.util.ConceptIdListCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Closure tables are kept in the resource index. Writing them to the SNOMED CT index would replace its reader on every $closure request,
+ * dropping the hierarchy and relationship indexes and the query cache built for that reader.
+ */
+@Service
+public class ClosureTableRepository {
+
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @return all versions of the named closure table in version order, empty if the table has not been initialised.
+	 */
+	public List<ClosureTableVersion> findVersions(String name) throws IOException {
+		return findVersions(resourceIndexIOProvider.getIndexSearcher(), getTableQuery(name));
+	}
+
+	private static List<ClosureTableVersion> findVersions(IndexSearcher indexSearcher, Query query) throws IOException {
+		int count = indexSearcher.count(query);
+		if (count == 0) {
+			return List.of();
+		}
+		TopDocs topDocs = indexSearcher.search(query, count, new Sort(new SortField(ClosureTableVersion.Fields.VERSION, SortField.Type.INT)));
+		List<ClosureTableVersion> versions = new ArrayList<>();
+		StoredFields storedFields = indexSearcher.storedFields();
+		for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+			Document document = storedFields.document(scoreDoc.doc);
+			BytesRef concepts = document.getBinaryValue(ClosureTableVersion.Fields.CONCEPTS);
+			versions.add(new ClosureTableVersion(
+					document.get(ClosureTableVersion.Fields.NAME),
+					document.getField(ClosureTableVersion.Fields.VERSION).numericValue().intValue(),
+					document.get(ClosureTableVersion.Fields.CODE_SYSTEM_VERSION),
+					ConceptIdListCodec.decode(BytesRef.deepCopyOf(concepts).bytes)));
+		}
+		return versions;
+	}
+
+	public void save(ClosureTableVersion tableVersion) throws IOException {
+		resourceIndexIOProvider.writeDocument(getDocument(tableVersion));
+	}
+
+	private static Document getDocument(ClosureTableVersion tableVersion) {
+		Document document = new Document();
+		document.add(new StringField(CodeSystemRepository.TYPE, ClosureTableVersion.DOC_TYPE, Field.Store.YES));
+		document.add(new StringField(ClosureTableVersion.Fields.NAME, tableVersion.getName(), Field.Store.YES));
+		document.add(new NumericDocValuesField(ClosureTableVersion.Fields.VERSION, tableVersion.getVersion()));
+		document.add(new StoredField(ClosureTableVersion.Fields.VERSION, tableVersion.getVersion()));
+		document.add(new StoredField(ClosureTableVersion.Fields.CODE_SYSTEM_VERSION, tableVersion.getCodeSystemVersion()));
+		document.add(new StoredField(ClosureTableVersion.Fields.CONCEPTS, ConceptIdListCodec.encode(tableVersion.getConceptIds().clone())));
+		return document;
+	}
+
+	public void deleteTable(String name) throws IOException {
+		resourceIndexIOProvider.deleteDocuments(getTableQuery(name));
+	}
+
+	/**
+	 * Moves closure tables stored in the SNOMED CT index into the resource index.
+	 */
+	public void moveFromSnomedIndex() throws IOException {
+		IndexSearcher snomedSearcher = indexIOProvider.getIndexSearcherIfAvailable();
+		if (snomedSearcher == null) {
+			return;
+		}
+		Query allQuery = new TermQuery(new Term(CodeSystemRepository.TYPE, ClosureTableVersion.DOC_TYPE));
+		List<ClosureTableVersion> versions = findVersions(snomedSearcher, allQuery);
+		if (versions.isEmpty()) {
+			return;
+		}
+		List<Document> documents = new ArrayList<>();
+		for (ClosureTableVersion tableVersion : versions) {
+			documents.add(getDocument(tableVersion));
+		}
+		resourceIndexIOProvider.writeDocuments(documents);
+		indexIOProvider.deleteDocuments(allQuery);
+		logger.info("Moved {} closure table versions from the SNOMED CT index to the resource index.", versions.size());
+	}
+
+	private static Query getTableQuery(String name) {
+		return new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, ClosureTableVersion.DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(new TermQuery(new Term(ClosureTableVersion.Fields.NAME, name)), BooleanClause.Occur.FILTER)
+				.build();
+	}
+}
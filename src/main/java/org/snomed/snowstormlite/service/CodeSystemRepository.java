@@ -47,7 +47,7 @@ public class CodeSystemRepository implements TermProvider {
 		Map<String, String> termsMap = new HashMap<>();
 		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
 		TopDocs docs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST)
+				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
 				.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.MUST)
 				.build(), codes.size());
 		StoredFields storedFields = indexSearcher.storedFields();
@@ -61,7 +61,7 @@ public class CodeSystemRepository implements TermProvider {
 	public FHIRConcept getConcept(String code) throws IOException {
 		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
 		TopDocs docs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST)
+				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
 				.add(new TermQuery(new Term(FHIRConcept.FieldNames.ID, code)), BooleanClause.Occur.MUST)
 				.build(), 1);
 		if (docs.totalHits.value == 0) {
@@ -71,11 +71,33 @@ public class CodeSystemRepository implements TermProvider {
 		return getConceptFromDoc(conceptDoc);
 	}
 
+	/**
+	 * Loads many concepts with one query.
+	 * @return concepts by code, codes that are not found are missing from the map.
+	 */
+	public Map<String, FHIRConcept> getConcepts(Collection<String> codes) throws IOException {
+		if (codes.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, FHIRConcept> concepts = new HashMap<>();
+		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
+		TopDocs docs = indexSearcher.search(new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.MUST)
+				.build(), codes.size());
+		StoredFields storedFields = indexSearcher.storedFields();
+		for (ScoreDoc scoreDoc : docs.scoreDocs) {
+			FHIRConcept concept = getConceptFromDoc(storedFields.document(scoreDoc.doc));
+			concepts.put(concept.getConceptId(), concept);
+		}
+		return concepts;
+	}
+
 	public List<GraphNode> loadParents(Collection<String> codes, boolean includeTerms) throws IOException {
 		List<GraphNode> nodes = new ArrayList<>();
 		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
 		TopDocs docs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST)
+				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
 				.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.MUST)
 				.build(), codes.size());
 		if (docs.totalHits.value > 0) {
@@ -103,7 +125,7 @@ public class CodeSystemRepository implements TermProvider {
 		Set<T> extract = new HashSet<>();
 		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
 		TopDocs docs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST)
+				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
 				.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.MUST)
 				.build(), codes.size());
 		if (docs.totalHits.value == 0) {
@@ -111,6 +133,9 @@ public class CodeSystemRepository implements TermProvider {
 		}
 		StoredFields storedFields = indexSearcher.storedFields();
 		for (int i = 0; i < docs.totalHits.value; i++) {
+			if (i % 1_000 == 0) {
+				QueryBudget.checkTime();
+			}
 			Document conceptDoc = storedFields.document(docs.scoreDocs[i].doc);
 			FHIRConcept conceptFromDoc = getConceptFromDoc(conceptDoc);
 			extract.addAll(mappingExtractor.apply(conceptFromDoc));
@@ -168,13 +193,30 @@ public class CodeSystemRepository implements TermProvider {
 		return codeSystem;
 	}
 
-	public void findByMapping(String refsetId, String code, boolean toSnomed) throws IOException {
+	/**
+	 * Finds the concepts that have a mapping to the given code in any of the given reference sets.
+	 * Reverse association links are not included.
+	 */
+	public List<FHIRConcept> findByMappingTarget(Collection<String> refsetIds, String code) throws IOException {
+		if (refsetIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> targets = refsetIds.stream().map(refsetId -> FHIRMapping.toTargetIndexString(refsetId, code)).toList();
 		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
-		TopDocs docs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST)
-				.add(new TermQuery(new Term(FHIRConcept.FieldNames.MAPPING, code)), BooleanClause.Occur.MUST)
-				.build(), 1);
-
+		Query query = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.MAPPING_TARGET, targets), BooleanClause.Occur.FILTER)
+				.build();
+		int count = indexSearcher.count(query);
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		List<FHIRConcept> concepts = new ArrayList<>();
+		StoredFields storedFields = indexSearcher.storedFields();
+		for (ScoreDoc scoreDoc : indexSearcher.search(query, count, new Sort(new SortField(FHIRConcept.FieldNames.ID_NUMERIC, SortField.Type.LONG))).scoreDocs) {
+			concepts.add(getConceptFromDoc(storedFields.document(scoreDoc.doc)));
+		}
+		return concepts;
 	}
 
 	public Document getCodeSystemDoc(String versionUri) {
@@ -223,6 +265,13 @@ public class CodeSystemRepository implements TermProvider {
 		return getConceptFromDoc(conceptDoc, false);
 	}
 
+	/**
+	 * @return a concept with only the id and descriptions populated, the document only needs those stored fields loaded.
+	 */
+	public FHIRConcept getConceptDescriptionsFromDoc(Document conceptDoc) {
+		return getConceptFromDoc(conceptDoc, true);
+	}
+
 	private FHIRConcept getConceptFromDoc(Document conceptDoc, boolean descriptionsOnly) {
 		FHIRConcept concept = new FHIRConcept();
 		concept.setConceptId(conceptDoc.get(FHIRConcept.FieldNames.ID));
@@ -264,6 +313,7 @@ public class CodeSystemRepository implements TermProvider {
 		Document conceptDoc = new Document();
 		conceptDoc.add(new StringField(TYPE, FHIRConcept.DOC_TYPE, Field.Store.YES));
 		conceptDoc.add(new StringField(FHIRConcept.FieldNames.ID, concept.getConceptId(), Field.Store.YES));
+		conceptDoc.add(new NumericDocValuesField(FHIRConcept.FieldNames.ID_NUMERIC, Long.parseLong(concept.getConceptId())));
 		conceptDoc.add(new StringField(FHIRConcept.FieldNames.ACTIVE, concept.isActive() ? "1" : "0", Field.Store.YES));
 		conceptDoc.add(new StringField(FHIRConcept.FieldNames.DEFINED, concept.isDefined() ? "1" : "0", Field.Store.YES));
 		conceptDoc.add(new StringField(FHIRConcept.FieldNames.EFFECTIVE_TIME, concept.getEffectiveTime(), Field.Store.YES));
@@ -293,6 +343,10 @@ public class CodeSystemRepository implements TermProvider {
 		fhirMappings.sort(Comparator.comparing(FHIRMapping::getMessage, Comparator.nullsFirst(String::compareTo)));
 		for (FHIRMapping mapping : fhirMappings) {
 			conceptDoc.add(new StringField(FHIRConcept.FieldNames.MAPPING, mapping.toIndexString(), Field.Store.YES));
+			if (!mapping.isInverse() && mapping.getCode() != null) {
+				conceptDoc.add(new StringField(FHIRConcept.FieldNames.MAPPING_TARGET,
+						FHIRMapping.toTargetIndexString(mapping.getRefsetId(), mapping.getCode()), Field.Store.NO));
+			}
 		}
 		conceptDoc.add(new StoredField(FHIRConcept.FieldNames.REL_STORED, serialiseRelationships(concept.getRelationships())));
 
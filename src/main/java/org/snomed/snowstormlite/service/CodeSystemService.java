@@ -29,10 +29,44 @@ public class CodeSystemService {
 	@Autowired
 	private ExpressionConstraintLanguageService eclService;
 	
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	@Autowired
+	private RequestCoalescer requestCoalescer;
+
+	@Autowired
+	private TerminologyMetrics metrics;
+
+	/**
+	 * Concurrent identical lookups share one computation, see {@link RequestCoalescer}. Each caller is given its own copy of the result.
+	 */
 	public Parameters lookup(FHIRCodeSystem codeSystem, String code, List<LanguageDialect> languageDialects) {
+		RequestProfile.put("code", code);
+		RequestProfile.put("displayLanguages", languageDialects != null ? languageDialects.toString() : null);
 		try {
-			FHIRConcept concept = repository.getConcept(code);
-			return concept.toHapi(codeSystem, repository, languageDialects);
+			List<Object> key = Arrays.asList("lookup", indexIOProvider.getIndexVersion(), codeSystem.getSystemAndVersionUri(), code, languageDialects);
+			return metrics.time("lookup", () -> requestCoalescer.execute(key, () -> {
+				FHIRConcept concept;
+				try (RequestProfile.Phase ignored = RequestProfile.phase("search")) {
+					concept = repository.getConcept(code);
+				}
+				try (RequestProfile.Phase ignored = RequestProfile.phase("model-build")) {
+					return lookup(codeSystem, concept, repository, languageDialects);
+				}
+			}, Parameters::copy));
+		} catch (IOException e) {
+			throw exception("Failed to load concept.", OperationOutcome.IssueType.EXCEPTION, 500, e);
+		}
+	}
+
+	/**
+	 * Lookup of a concept that is already loaded.
+	 * @param termProvider source of the terms used in the normal form.
+	 */
+	public Parameters lookup(FHIRCodeSystem codeSystem, FHIRConcept concept, TermProvider termProvider, List<LanguageDialect> languageDialects) {
+		try {
+			return concept.toHapi(codeSystem, termProvider, languageDialects);
 		} catch (IOException e) {
 			throw exception("Failed to load concept.", OperationOutcome.IssueType.EXCEPTION, 500, e);
 		}
@@ -72,6 +106,11 @@ public class CodeSystemService {
 
 	public Parameters validateCode(FHIRCodeSystem codeSystem, Set<Coding> codingsToValidate, List<LanguageDialect> languageDialects,
 			String displayLanguage) throws IOException {
+		return metrics.time("validate-code", () -> doValidateCode(codeSystem, codingsToValidate, languageDialects, displayLanguage));
+	}
+
+	private Parameters doValidateCode(FHIRCodeSystem codeSystem, Set<Coding> codingsToValidate, List<LanguageDialect> languageDialects,
+			String displayLanguage) throws IOException {
 		Parameters response = new Parameters();
 
 		if (codingsToValidate.size() == 1) {
@@ -169,6 +208,10 @@ public class CodeSystemService {
 	}
 
 	public Parameters subsumes(FHIRCodeSystem codeSystem, String codeA, String codeB) {
+		return metrics.time("subsumes", () -> doSubsumes(codeSystem, codeA, codeB));
+	}
+
+	private Parameters doSubsumes(FHIRCodeSystem codeSystem, String codeA, String codeB) {
 		try {
 			FHIRConcept conceptA = repository.getConcept(codeA);
 			FHIRConcept conceptB = repository.getConcept(codeB);
@@ -0,0 +1,71 @@
+package org.snomed.snowstormlite.service;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Collects the ids of all matching concepts without scoring or loading whole documents.
+ * Not thread safe, use with a searcher that does not have an executor.
+ */
+public class ConceptIdCollector extends SimpleCollector {
+
+	private static final Set<String> ID_FIELD = Set.of(FHIRConcept.FieldNames.ID);
+
+	private final int limit;
+	private final LongArrayList conceptIds = new LongArrayList();
+	private NumericDocValues ids;
+	private StoredFields storedFields;
+	private boolean limitReached;
+
+	/**
+	 * @param limit collection stops when more than this number of concepts match.
+	 */
+	public ConceptIdCollector(int limit) {
+		this.limit = limit;
+	}
+
+	@Override
+	protected void doSetNextReader(LeafReaderContext context) throws IOException {
+		if (limitReached) {
+			throw new CollectionTerminatedException();
+		}
+		// Null for segments written before the numeric id field was added, the stored id is read instead
+		ids = context.reader().getNumericDocValues(FHIRConcept.FieldNames.ID_NUMERIC);
+		storedFields = context.reader().storedFields();
+	}
+
+	@Override
+	public void collect(int doc) throws IOException {
+		if (conceptIds.size() == limit) {
+			limitReached = true;
+			throw new CollectionTerminatedException();
+		}
+		if (ids != null && ids.advanceExact(doc)) {
+			conceptIds.add(ids.longValue());
+		} else {
+			conceptIds.add(Long.parseLong(storedFields.document(doc, ID_FIELD).get(FHIRConcept.FieldNames.ID)));
+		}
+	}
+
+	@Override
+	public ScoreMode scoreMode() {
+		return ScoreMode.COMPLETE_NO_SCORES;
+	}
+
+	public boolean isLimitReached() {
+		return limitReached;
+	}
+
+	public long[] getConceptIds() {
+		return conceptIds.toLongArray();
+	}
+}
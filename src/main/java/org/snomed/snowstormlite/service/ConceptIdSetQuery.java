@@ -0,0 +1,117 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches concept documents with an id in a set, by checking the numeric id doc values of each candidate document against the sorted ids.
+ * Used for the large id sets of enumerated ValueSets and stored expansions, where a terms query would need a term dictionary lookup per id.
+ * When combined with more selective clauses only the candidate documents of those clauses are checked.
+ */
+public class ConceptIdSetQuery extends Query implements Accountable {
+
+	private final long[] conceptIds;
+	private final int hashCode;
+
+	/**
+	 * @param conceptIds in any order, the array is not modified.
+	 */
+	public ConceptIdSetQuery(long[] conceptIds) {
+		this.conceptIds = conceptIds.clone();
+		Arrays.sort(this.conceptIds);
+		hashCode = 31 * classHash() + Arrays.hashCode(this.conceptIds);
+	}
+
+	@Override
+	public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+		Weight termsWeight = null;
+		Term conceptType = new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE);
+		for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+			if (leaf.reader().getFieldInfos().fieldInfo(FHIRConcept.FieldNames.ID_NUMERIC) == null && leaf.reader().docFreq(conceptType) > 0) {
+				// Segment written before the numeric id field was added
+				termsWeight = searcher.createWeight(searcher.rewrite(getTermsQuery()), scoreMode, boost);
+				break;
+			}
+		}
+		Weight fallbackWeight = termsWeight;
+
+		return new ConstantScoreWeight(this, boost) {
+			@Override
+			public Scorer scorer(LeafReaderContext context) throws IOException {
+				NumericDocValues ids = context.reader().getNumericDocValues(FHIRConcept.FieldNames.ID_NUMERIC);
+				if (ids == null) {
+					return fallbackWeight != null ? fallbackWeight.scorer(context) : null;
+				}
+				if (conceptIds.length == 0) {
+					return null;
+				}
+				TwoPhaseIterator iterator = new TwoPhaseIterator(ids) {
+					@Override
+					public boolean matches() throws IOException {
+						return Arrays.binarySearch(conceptIds, ids.longValue()) >= 0;
+					}
+
+					@Override
+					public float matchCost() {
+						// Binary search steps
+						return 32 - Integer.numberOfLeadingZeros(conceptIds.length);
+					}
+				};
+				return new ConstantScoreScorer(this, score(), scoreMode, iterator);
+			}
+
+			@Override
+			public boolean isCacheable(LeafReaderContext context) {
+				return DocValues.isCacheable(context, FHIRConcept.FieldNames.ID_NUMERIC);
+			}
+		};
+	}
+
+	private Query getTermsQuery() {
+		List<BytesRef> terms = new ArrayList<>(conceptIds.length);
+		for (long conceptId : conceptIds) {
+			terms.add(new BytesRef(Long.toString(conceptId)));
+		}
+		return new TermInSetQuery(FHIRConcept.FieldNames.ID, terms);
+	}
+
+	@Override
+	public long ramBytesUsed() {
+		// Held as a query cache key
+		return RamUsageEstimator.shallowSizeOfInstance(ConceptIdSetQuery.class) + RamUsageEstimator.sizeOf(conceptIds);
+	}
+
+	@Override
+	public void visit(QueryVisitor visitor) {
+		if (visitor.acceptField(FHIRConcept.FieldNames.ID_NUMERIC)) {
+			visitor.visitLeaf(this);
+		}
+	}
+
+	@Override
+	public String toString(String field) {
+		return "ConceptIdSetQuery(" + conceptIds.length + " ids)";
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return sameClassAs(other) && Arrays.equals(conceptIds, ((ConceptIdSetQuery) other).conceptIds);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+}
@@ -0,0 +1,152 @@
+package org.snomed.snowstormlite.service;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMapGroup;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRMapElement;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRMapTarget;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Reads a FHIR JSON ConceptMap one element at a time, so that the memory used does not depend on the number of elements in the map.
+ * The fields of the map other than the groups are parsed with HAPI once the whole stream has been read.
+ */
+@Service
+public class ConceptMapJsonReader {
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private FhirContext fhirContext;
+
+	/**
+	 * @param elementHandler called for each element as it is read, the element is not added to its group.
+	 * @return the header of the map, with groups that have no elements.
+	 */
+	public FHIRConceptMap read(InputStream inputStream, ElementHandler elementHandler) throws IOException {
+		ObjectNode headerNode = objectMapper.createObjectNode();
+		List<FHIRConceptMapGroup> groups = new ArrayList<>();
+		try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+			expect(parser.nextToken(), JsonToken.START_OBJECT, "ConceptMap");
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String fieldName = parser.currentName();
+				JsonToken valueToken = parser.nextToken();
+				if ("group".equals(fieldName)) {
+					expect(valueToken, JsonToken.START_ARRAY, "ConceptMap.group");
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						groups.add(readGroup(parser, elementHandler));
+					}
+				} else {
+					headerNode.set(fieldName, objectMapper.readTree(parser));
+				}
+			}
+		} catch (JsonProcessingException e) {
+			throw FHIRHelper.exception(format("Failed to parse ConceptMap JSON: %s", e.getOriginalMessage()), OperationOutcome.IssueType.INVALID, 400);
+		}
+
+		if (!"ConceptMap".equals(headerNode.path("resourceType").asText())) {
+			throw FHIRHelper.exception("Expected a resource of type ConceptMap.", OperationOutcome.IssueType.INVALID, 400);
+		}
+		ConceptMap hapiHeader;
+		try {
+			hapiHeader = fhirContext.newJsonParser().parseResource(ConceptMap.class, objectMapper.writeValueAsString(headerNode));
+		} catch (DataFormatException e) {
+			throw FHIRHelper.exception(format("Failed to parse ConceptMap: %s", e.getMessage()), OperationOutcome.IssueType.INVALID, 400);
+		}
+		// The HAPI id includes the resource type
+		if (hapiHeader.hasIdElement()) {
+			hapiHeader.setId(hapiHeader.getIdElement().getIdPart());
+		}
+		FHIRConceptMap header = new FHIRConceptMap(hapiHeader);
+		header.setGroup(groups);
+		return header;
+	}
+
+	private FHIRConceptMapGroup readGroup(JsonParser parser, ElementHandler elementHandler) throws IOException {
+		expect(parser.currentToken(), JsonToken.START_OBJECT, "ConceptMap.group");
+		FHIRConceptMapGroup group = new FHIRConceptMapGroup();
+		group.setElement(new ArrayList<>());
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.currentName();
+			JsonToken valueToken = parser.nextToken();
+			switch (fieldName) {
+				case "source" -> group.setSource(parser.getValueAsString());
+				case "sourceVersion" -> group.setSourceVersion(parser.getValueAsString());
+				case "target" -> group.setTarget(parser.getValueAsString());
+				case "targetVersion" -> group.setTargetVersion(parser.getValueAsString());
+				case "element" -> {
+					expect(valueToken, JsonToken.START_ARRAY, "ConceptMap.group.element");
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						elementHandler.accept(group, toElement(objectMapper.readTree(parser), group.getGroupId()));
+					}
+				}
+				default -> parser.skipChildren();
+			}
+		}
+		return group;
+	}
+
+	private static FHIRMapElement toElement(JsonNode elementNode, String groupId) {
+		FHIRMapElement element = new FHIRMapElement();
+		element.setGroupId(groupId);
+		element.setCode(textOrNull(elementNode, "code"));
+		element.setDisplay(textOrNull(elementNode, "display"));
+		List<FHIRMapTarget> targets = new ArrayList<>();
+		for (JsonNode targetNode : elementNode.path("target")) {
+			FHIRMapTarget target = new FHIRMapTarget();
+			target.setCode(textOrNull(targetNode, "code"));
+			target.setDisplay(textOrNull(targetNode, "display"));
+			String equivalence = textOrNull(targetNode, "equivalence");
+			if (equivalence != null) {
+				try {
+					Enumerations.ConceptMapEquivalence.fromCode(equivalence);
+				} catch (FHIRException e) {
+					throw FHIRHelper.exception(format("Unknown ConceptMap equivalence '%s'.", equivalence), OperationOutcome.IssueType.INVALID, 400);
+				}
+			}
+			target.setEquivalence(equivalence);
+			target.setComment(textOrNull(targetNode, "comment"));
+			targets.add(target);
+		}
+		element.setTarget(targets);
+		return element;
+	}
+
+	private static String textOrNull(JsonNode node, String fieldName) {
+		JsonNode value = node.get(fieldName);
+		return value != null && !value.isNull() ? value.asText() : null;
+	}
+
+	private static void expect(JsonToken actual, JsonToken expected, String path) {
+		if (actual != expected) {
+			throw FHIRHelper.exception(format("Failed to parse ConceptMap, expected %s to be a JSON %s.", path,
+					expected == JsonToken.START_ARRAY ? "array" : "object"), OperationOutcome.IssueType.INVALID, 400);
+		}
+	}
+
+	public interface ElementHandler {
+
+		void accept(FHIRConceptMapGroup group, FHIRMapElement element) throws IOException;
+	}
+}
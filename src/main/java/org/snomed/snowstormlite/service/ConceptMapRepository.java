@@ -1,36 +1,90 @@
 package org.snomed.snowstormlite.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.SortedDocValuesField;
-import org.apache.lucene.document.StringField;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMapGroup;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRMapElement;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRMapTarget;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.UnaryOperator;
 
+import static org.snomed.snowstormlite.util.CollectionUtils.orEmpty;
+
+/**
+ * Stores each ConceptMap as a header document, holding the map without its elements, and one document per element.
+ * Element documents are indexed by group and source code, and by group and target code, so that translation reads only the elements it needs.
+ * <p>
+ * Maps stored before elements were held in their own documents have the elements in the header, these are still read.
+ * <p>
+ * Maps are held in the resource index of {@link ResourceIndexIOProvider}, not the SNOMED CT index.
+ */
 @Service
 public class ConceptMapRepository {
 
+	private static final Set<String> SUMMARY_FIELDS = Set.of(FHIRConceptMap.Fields.ID, FHIRConceptMap.Fields.URL, FHIRConceptMap.Fields.VERSION,
+			FHIRConceptMap.Fields.NAME, FHIRConceptMap.Fields.TITLE, FHIRConceptMap.Fields.STATUS);
+
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
 	@Autowired
 	private IndexIOProvider indexIOProvider;
 
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	@Autowired
+	private ConceptMapJsonReader conceptMapJsonReader;
+
+	private ObjectWriter headerWriter;
+
+	private final ConceptMapTranslationIndex translationIndex = new ConceptMapTranslationIndex();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		headerWriter = objectMapper.copy().addMixIn(FHIRConceptMapGroup.class, HeaderGroupMixin.class).writer();
+	}
+
 	public FHIRConceptMap findConceptMap(String url, String version) throws IOException {
 		if (url == null) {
 			return null;
 		}
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		FHIRConceptMap header = findConceptMapHeader(url, version, indexSearcher);
+		return header != null ? loadAllElements(header, indexSearcher) : null;
+	}
+
+	/**
+	 * @return the map without its elements, or null if not found.
+	 */
+	public FHIRConceptMap findConceptMapHeader(String url, String version) throws IOException {
+		if (url == null) {
+			return null;
+		}
+		return findConceptMapHeader(url, version, resourceIndexIOProvider.getIndexSearcher());
+	}
+
+	private FHIRConceptMap findConceptMapHeader(String url, String version, IndexSearcher indexSearcher) throws IOException {
 		BooleanQuery.Builder builder = new BooleanQuery.Builder()
 				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.DOC_TYPE)), BooleanClause.Occur.MUST)
 				.add(new TermQuery(new Term(FHIRConceptMap.Fields.URL, url)), BooleanClause.Occur.MUST);
@@ -40,42 +94,257 @@ public class ConceptMapRepository {
 		TopDocs topDocs = indexSearcher.search(builder.build(), 1,
 				new Sort(new SortField(FHIRConceptMap.Fields.VERSION, SortField.Type.STRING, true)));
 		if (topDocs.totalHits.value > 0) {
-			return getFromIndex(topDocs.scoreDocs[0], indexSearcher.storedFields());
+			return getHeaderFromIndex(topDocs.scoreDocs[0], indexSearcher.storedFields());
 		}
 		return null;
 	}
 
 	public FHIRConceptMap findConceptMapById(String id) throws IOException {
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
-		TopDocs topDocs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.DOC_TYPE)), BooleanClause.Occur.MUST)
-				.add(new TermQuery(new Term(FHIRConceptMap.Fields.ID, id)), BooleanClause.Occur.MUST)
-				.build(), 1);
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		FHIRConceptMap header = findConceptMapHeaderById(id, indexSearcher);
+		return header != null ? loadAllElements(header, indexSearcher) : null;
+	}
+
+	/**
+	 * @return the map without its elements, or null if not found.
+	 */
+	public FHIRConceptMap findConceptMapHeaderById(String id) throws IOException {
+		return findConceptMapHeaderById(id, resourceIndexIOProvider.getIndexSearcher());
+	}
+
+	private FHIRConceptMap findConceptMapHeaderById(String id, IndexSearcher indexSearcher) throws IOException {
+		TopDocs topDocs = indexSearcher.search(getByIdQuery(id), 1);
 		if (topDocs.totalHits.value > 0) {
-			return getFromIndex(topDocs.scoreDocs[0], indexSearcher.storedFields());
+			return getHeaderFromIndex(topDocs.scoreDocs[0], indexSearcher.storedFields());
 		}
 		return null;
 	}
 
 	public List<FHIRConceptMap> findAll() throws IOException {
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcherIfAvailable();
-		if (indexSearcher == null) {
-			return List.of();
-		}
-		TopDocs topDocs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.DOC_TYPE)), BooleanClause.Occur.MUST)
-				.build(),
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		TopDocs topDocs = indexSearcher.search(getAllQuery(),
 				10_000, new Sort(new SortField(FHIRConceptMap.Fields.URL, SortField.Type.DOC), new SortField(FHIRConceptMap.Fields.VERSION, SortField.Type.DOC, true)));
 
 		List<FHIRConceptMap> all = new ArrayList<>();
 		StoredFields storedFields = indexSearcher.getIndexReader().storedFields();
 		for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-			all.add(getFromIndex(scoreDoc, storedFields));
+			all.add(loadAllElements(getHeaderFromIndex(scoreDoc, storedFields), indexSearcher));
 		}
 		return all;
 	}
 
+	/**
+	 * Lists stored maps matching the search, ordered by name, then url, then version newest first.
+	 * The url matches maps stored with the url in any of the forms accepted for SNOMED CT implicit map urls.
+	 * @return summaries of the maps on the requested page, read from stored fields without the groups.
+	 */
+	public ResourceSearch.Page<FHIRConceptMap> search(ResourceSearch search) throws IOException {
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		BooleanQuery.Builder builder = new BooleanQuery.Builder()
+				.add(getAllQuery(), BooleanClause.Occur.FILTER);
+		if (search.url() != null) {
+			String normalizedUrl = FHIRHelper.normalizeImplicitConceptMapSearchUrl(search.url());
+			builder.add(new BooleanQuery.Builder()
+					.add(new TermQuery(new Term(FHIRConceptMap.Fields.URL, search.url())), BooleanClause.Occur.SHOULD)
+					.add(new TermQuery(new Term(FHIRConceptMap.Fields.URL, normalizedUrl)), BooleanClause.Occur.SHOULD)
+					.add(new TermQuery(new Term(FHIRConceptMap.Fields.NORMALIZED_URL, normalizedUrl)), BooleanClause.Occur.SHOULD)
+					.build(), BooleanClause.Occur.FILTER);
+		}
+		ResourceSearch.addTermFilter(builder, FHIRConceptMap.Fields.VERSION, search.version());
+		ResourceSearch.addTermFilter(builder, FHIRConceptMap.Fields.STATUS, search.status());
+		ResourceSearch.addStartsWithFilter(builder, FHIRConceptMap.Fields.NAME_SEARCH, search.name());
+		ResourceSearch.addStartsWithFilter(builder, FHIRConceptMap.Fields.TITLE_SEARCH, search.title());
+		Query query = builder.build();
+
+		int total = indexSearcher.count(query);
+		if (search.count() == 0 || search.offset() >= total) {
+			return new ResourceSearch.Page<>(List.of(), total);
+		}
+		TopDocs topDocs = indexSearcher.search(query, search.offset() + search.count(),
+				new Sort(new SortField(FHIRConceptMap.Fields.NAME_SORT, SortField.Type.STRING), new SortField(FHIRConceptMap.Fields.URL, SortField.Type.STRING),
+						new SortField(FHIRConceptMap.Fields.VERSION, SortField.Type.STRING, true)));
+		List<FHIRConceptMap> summaries = new ArrayList<>();
+		StoredFields storedFields = indexSearcher.storedFields();
+		for (int i = search.offset(); i < topDocs.scoreDocs.length; i++) {
+			Document document = storedFields.document(topDocs.scoreDocs[i].doc, SUMMARY_FIELDS);
+			FHIRConceptMap summary = new FHIRConceptMap();
+			summary.setId(document.get(FHIRConceptMap.Fields.ID));
+			summary.setUrl(document.get(FHIRConceptMap.Fields.URL));
+			summary.setVersion(document.get(FHIRConceptMap.Fields.VERSION));
+			summary.setName(document.get(FHIRConceptMap.Fields.NAME));
+			summary.setTitle(document.get(FHIRConceptMap.Fields.TITLE));
+			summary.setStatus(document.get(FHIRConceptMap.Fields.STATUS));
+			summaries.add(summary);
+		}
+		return new ResourceSearch.Page<>(summaries, total);
+	}
+
+	/**
+	 * Finds the stored maps that have a group from the source system to the target system, using the in-memory translation index.
+	 * @param normalizedUrlFilter url of the map, may be null.
+	 * @param targetSystem may be null.
+	 * @return a copy of the header of each map, holding only the matching groups, each holding only the elements for the code.
+	 */
+	public List<FHIRConceptMap> findMapsForTranslate(String normalizedUrlFilter, String system, String code, String targetSystem) throws IOException {
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		List<FHIRConceptMap> maps = getTranslationIndex(indexSearcher).findMapsForTranslate(normalizedUrlFilter, system, code, targetSystem);
+		loadElements(maps, FHIRConceptMap.ElementFields.SOURCE, code, UnaryOperator.identity(), indexSearcher);
+		return maps;
+	}
+
+	/**
+	 * Finds the stored maps that have a group to the target system, for translation from a target code back to source codes.
+	 * @param sourceSystem may be null.
+	 * @return a copy of the header of each map, holding only the matching groups, each holding only the elements that have the code as a target.
+	 * Those elements only hold the targets with the code.
+	 */
+	public List<FHIRConceptMap> findMapsForReverseTranslate(String normalizedUrlFilter, String targetSystem, String code, String sourceSystem) throws IOException {
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		List<FHIRConceptMap> maps = getTranslationIndex(indexSearcher).findMapsForReverseTranslate(normalizedUrlFilter, targetSystem, code, sourceSystem);
+		loadElements(maps, FHIRConceptMap.ElementFields.TARGET, code, element -> ConceptMapTranslationIndex.copyElement(element,
+				orEmpty(element.getTarget()).stream().filter(target -> code.equals(target.getCode())).toList()), indexSearcher);
+		return maps;
+	}
+
+	private ConceptMapTranslationIndex getTranslationIndex(IndexSearcher indexSearcher) throws IOException {
+		IndexReader reader = indexSearcher.getIndexReader();
+		if (!translationIndex.isFor(reader)) {
+			synchronized (translationIndex) {
+				if (!translationIndex.isFor(reader)) {
+					// Maps were changed by another instance or the index was replaced
+					List<FHIRConceptMap> all = new ArrayList<>();
+					StoredFields storedFields = indexSearcher.storedFields();
+					for (ScoreDoc scoreDoc : indexSearcher.search(getAllQuery(), Math.max(1, indexSearcher.count(getAllQuery()))).scoreDocs) {
+						all.add(getHeaderFromIndex(scoreDoc, storedFields));
+					}
+					translationIndex.rebuild(all, reader);
+				}
+			}
+		}
+		return translationIndex;
+	}
+
+	/**
+	 * Adds the elements of the map groups that have a term in the given element field for the code, in the order they were stored.
+	 * Groups of maps stored with the elements in the header already hold their matching elements.
+	 */
+	private void loadElements(List<FHIRConceptMap> maps, String field, String code, UnaryOperator<FHIRMapElement> elementFilter,
+			IndexSearcher indexSearcher) throws IOException {
+
+		Map<String, FHIRConceptMapGroup> groupsById = new HashMap<>();
+		for (FHIRConceptMap map : maps) {
+			for (FHIRConceptMapGroup group : map.getGroup()) {
+				groupsById.put(group.getGroupId(), group);
+			}
+		}
+		if (groupsById.isEmpty() || code == null) {
+			return;
+		}
+		Query query = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.ELEMENT_DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(QueryHelper.termsQuery(field, groupsById.keySet().stream().map(groupId -> toCodeKey(groupId, code)).toList()), BooleanClause.Occur.FILTER)
+				.build();
+		for (FHIRMapElement element : searchElements(query, indexSearcher)) {
+			FHIRConceptMapGroup group = groupsById.get(element.getGroupId());
+			if (group != null) {
+				group.getElement().add(elementFilter.apply(element));
+			}
+		}
+	}
+
+	private FHIRConceptMap loadAllElements(FHIRConceptMap header, IndexSearcher indexSearcher) throws IOException {
+		if (header.getElementsKey() == null) {
+			// Stored with the elements in the header
+			return header;
+		}
+		Map<String, FHIRConceptMapGroup> groupsById = new HashMap<>();
+		for (FHIRConceptMapGroup group : header.getGroup()) {
+			group.setElement(new ArrayList<>());
+			groupsById.put(group.getGroupId(), group);
+		}
+		Query query = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.ELEMENT_DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(new TermQuery(new Term(FHIRConceptMap.ElementFields.ELEMENTS_KEY, header.getElementsKey())), BooleanClause.Occur.FILTER)
+				.build();
+		for (FHIRMapElement element : searchElements(query, indexSearcher)) {
+			FHIRConceptMapGroup group = groupsById.get(element.getGroupId());
+			if (group != null) {
+				group.getElement().add(element);
+			}
+		}
+		return header;
+	}
+
+	private List<FHIRMapElement> searchElements(Query query, IndexSearcher indexSearcher) throws IOException {
+		int count = indexSearcher.count(query);
+		if (count == 0) {
+			return List.of();
+		}
+		TopDocs topDocs = indexSearcher.search(query, count, new Sort(new SortField(FHIRConceptMap.ElementFields.ORDER, SortField.Type.LONG)));
+		List<FHIRMapElement> elements = new ArrayList<>(topDocs.scoreDocs.length);
+		StoredFields storedFields = indexSearcher.storedFields();
+		Set<String> fields = Set.of(FHIRConceptMap.ElementFields.SERIALISED);
+		for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+			elements.add(objectMapper.readValue(storedFields.document(scoreDoc.doc, fields).get(FHIRConceptMap.ElementFields.SERIALISED), FHIRMapElement.class));
+		}
+		return elements;
+	}
+
+	/**
+	 * Saves a map that is held in memory, replacing any map with the same id.
+	 */
 	public void save(FHIRConceptMap conceptMap) throws IOException {
+		String elementsKey = UUID.randomUUID().toString();
+		conceptMap.setElementsKey(elementsKey);
+		synchronized (translationIndex) {
+			boolean indexCurrent = isTranslationIndexCurrent();
+			resourceIndexIOProvider.update(indexWriter -> {
+				long order = 0;
+				for (FHIRConceptMapGroup group : orEmpty(conceptMap.getGroup())) {
+					for (FHIRMapElement element : orEmpty(group.getElement())) {
+						element.setGroupId(group.getGroupId());
+						indexWriter.addDocument(getElementDoc(elementsKey, order++, group, element));
+					}
+				}
+				replaceHeader(conceptMap, indexWriter);
+			});
+			if (indexCurrent) {
+				translationIndex.put(conceptMap, resourceIndexIOProvider.getIndexSearcher().getIndexReader());
+			}
+		}
+	}
+
+	/**
+	 * Saves a map read from a FHIR JSON stream, writing each element to the index as it is read.
+	 * Nothing is saved if reading fails or the header is rejected.
+	 * @param headerProcessor checks the header once the whole stream has been read and returns it with the id to save it under,
+	 * replacing any map with that id.
+	 * @return the header of the saved map.
+	 */
+	public FHIRConceptMap save(InputStream conceptMapJson, HeaderProcessor headerProcessor) throws IOException {
+		String elementsKey = UUID.randomUUID().toString();
+		FHIRConceptMap[] saved = new FHIRConceptMap[1];
+		synchronized (translationIndex) {
+			boolean indexCurrent = isTranslationIndexCurrent();
+			resourceIndexIOProvider.update(indexWriter -> {
+				long[] order = new long[1];
+				FHIRConceptMap header = conceptMapJsonReader.read(conceptMapJson,
+						(group, element) -> indexWriter.addDocument(getElementDoc(elementsKey, order[0]++, group, element)));
+				header = headerProcessor.process(header);
+				header.setElementsKey(elementsKey);
+				replaceHeader(header, indexWriter);
+				saved[0] = header;
+			});
+			if (indexCurrent) {
+				translationIndex.put(saved[0], resourceIndexIOProvider.getIndexSearcher().getIndexReader());
+			}
+		}
+		return saved[0];
+	}
+
+	private void replaceHeader(FHIRConceptMap conceptMap, IndexWriter indexWriter) throws IOException {
+		deleteMapDocuments(conceptMap.getId(), indexWriter);
+
 		Document document = new Document();
 		document.add(new StringField(CodeSystemRepository.TYPE, FHIRConceptMap.DOC_TYPE, Field.Store.YES));
 		document.add(new StringField(FHIRConceptMap.Fields.ID, conceptMap.getId(), Field.Store.YES));
@@ -83,23 +352,143 @@ public class ConceptMapRepository {
 		document.add(new SortedDocValuesField(FHIRConceptMap.Fields.URL, new BytesRef(conceptMap.getUrl())));
 		document.add(new StringField(FHIRConceptMap.Fields.VERSION, conceptMap.getVersion(), Field.Store.YES));
 		document.add(new SortedDocValuesField(FHIRConceptMap.Fields.VERSION, new BytesRef(conceptMap.getVersion())));
-		String serialised = objectMapper.writeValueAsString(conceptMap);
-		document.add(new StringField(FHIRConceptMap.Fields.SERIALISED, serialised, Field.Store.YES));
+		document.add(new StringField(FHIRConceptMap.Fields.NORMALIZED_URL, FHIRHelper.normalizeImplicitConceptMapSearchUrl(conceptMap.getUrl()), Field.Store.NO));
+		if (conceptMap.getName() != null) {
+			document.add(new StringField(FHIRConceptMap.Fields.NAME, conceptMap.getName(), Field.Store.YES));
+			document.add(new SortedDocValuesField(FHIRConceptMap.Fields.NAME_SORT, new BytesRef(conceptMap.getName())));
+			document.add(new StringField(FHIRConceptMap.Fields.NAME_SEARCH, ResourceSearch.toSearchValue(conceptMap.getName()), Field.Store.NO));
+		}
+		if (conceptMap.getTitle() != null) {
+			document.add(new StringField(FHIRConceptMap.Fields.TITLE, conceptMap.getTitle(), Field.Store.YES));
+			document.add(new StringField(FHIRConceptMap.Fields.TITLE_SEARCH, ResourceSearch.toSearchValue(conceptMap.getTitle()), Field.Store.NO));
+		}
+		if (conceptMap.getStatus() != null) {
+			document.add(new StringField(FHIRConceptMap.Fields.STATUS, conceptMap.getStatus(), Field.Store.YES));
+		}
+		document.add(new StringField(FHIRConceptMap.Fields.ELEMENTS_KEY, conceptMap.getElementsKey(), Field.Store.YES));
+		// Stored only, an indexed term can not be longer than 32KB
+		document.add(new StoredField(FHIRConceptMap.Fields.SERIALISED_STORED, headerWriter.writeValueAsString(conceptMap)));
+		indexWriter.addDocument(document);
+	}
+
+	private Document getElementDoc(String elementsKey, long order, FHIRConceptMapGroup group, FHIRMapElement element) throws IOException {
+		Document document = new Document();
+		document.add(new StringField(CodeSystemRepository.TYPE, FHIRConceptMap.ELEMENT_DOC_TYPE, Field.Store.YES));
+		document.add(new StringField(FHIRConceptMap.ElementFields.ELEMENTS_KEY, elementsKey, Field.Store.YES));
+		document.add(new NumericDocValuesField(FHIRConceptMap.ElementFields.ORDER, order));
+		if (element.getCode() != null) {
+			document.add(new StringField(FHIRConceptMap.ElementFields.SOURCE, toCodeKey(group.getGroupId(), element.getCode()), Field.Store.NO));
+		}
+		Set<String> targetCodes = new HashSet<>();
+		for (FHIRMapTarget target : orEmpty(element.getTarget())) {
+			if (target.getCode() != null && targetCodes.add(target.getCode())) {
+				document.add(new StringField(FHIRConceptMap.ElementFields.TARGET, toCodeKey(group.getGroupId(), target.getCode()), Field.Store.NO));
+			}
+		}
+		document.add(new StoredField(FHIRConceptMap.ElementFields.SERIALISED, objectMapper.writeValueAsString(element)));
+		return document;
+	}
 
-		deleteById(conceptMap.getId());
-		indexIOProvider.writeDocument(document);
+	private static String toCodeKey(String groupId, String code) {
+		return groupId + "|" + code;
 	}
 
-	private FHIRConceptMap getFromIndex(ScoreDoc scoreDoc, StoredFields storedFields) throws IOException {
+	private FHIRConceptMap getHeaderFromIndex(ScoreDoc scoreDoc, StoredFields storedFields) throws IOException {
 		Document document = storedFields.document(scoreDoc.doc);
-		String content = document.get(FHIRConceptMap.Fields.SERIALISED);
-		return objectMapper.readValue(content, FHIRConceptMap.class);
+		String content = document.get(FHIRConceptMap.Fields.SERIALISED_STORED);
+		if (content == null) {
+			content = document.get(FHIRConceptMap.Fields.SERIALISED);
+		}
+		FHIRConceptMap conceptMap = objectMapper.readValue(content, FHIRConceptMap.class);
+		conceptMap.setElementsKey(document.get(FHIRConceptMap.Fields.ELEMENTS_KEY));
+		if (conceptMap.getElementsKey() != null) {
+			for (FHIRConceptMapGroup group : conceptMap.getGroup()) {
+				group.setElement(new ArrayList<>());
+			}
+		}
+		return conceptMap;
 	}
 
 	public void deleteById(String id) throws IOException {
-		indexIOProvider.deleteDocuments(new BooleanQuery.Builder()
+		synchronized (translationIndex) {
+			boolean indexCurrent = isTranslationIndexCurrent();
+			resourceIndexIOProvider.update(indexWriter -> deleteMapDocuments(id, indexWriter));
+			if (indexCurrent) {
+				translationIndex.delete(id, resourceIndexIOProvider.getIndexSearcher().getIndexReader());
+			}
+		}
+	}
+
+	/**
+	 * @return true if the translation index is up to date, so can be updated with a single change rather than rebuilt on next use.
+	 */
+	private boolean isTranslationIndexCurrent() throws IOException {
+		return translationIndex.isFor(resourceIndexIOProvider.getIndexSearcher().getIndexReader());
+	}
+
+	private static Query getAllQuery() {
+		return new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.DOC_TYPE));
+	}
+
+	private static Query getByIdQuery(String id) {
+		return new BooleanQuery.Builder()
 				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.DOC_TYPE)), BooleanClause.Occur.MUST)
 				.add(new TermQuery(new Term(FHIRConceptMap.Fields.ID, id)), BooleanClause.Occur.MUST)
-				.build());
+				.build();
+	}
+
+	/**
+	 * Deletes the header and elements of the map with the given id, if the map exists in the current reader.
+	 */
+	private void deleteMapDocuments(String id, IndexWriter indexWriter) throws IOException {
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		StoredFields storedFields = indexSearcher.storedFields();
+		Set<String> fields = Set.of(FHIRConceptMap.Fields.ELEMENTS_KEY);
+		List<String> elementKeys = new ArrayList<>();
+		for (ScoreDoc scoreDoc : indexSearcher.search(getByIdQuery(id), 10).scoreDocs) {
+			String elementsKey = storedFields.document(scoreDoc.doc, fields).get(FHIRConceptMap.Fields.ELEMENTS_KEY);
+			if (elementsKey != null) {
+				elementKeys.add(elementsKey);
+			}
+		}
+		if (!elementKeys.isEmpty()) {
+			indexWriter.deleteDocuments(new BooleanQuery.Builder()
+					.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRConceptMap.ELEMENT_DOC_TYPE)), BooleanClause.Occur.FILTER)
+					.add(QueryHelper.termsQuery(FHIRConceptMap.ElementFields.ELEMENTS_KEY, elementKeys), BooleanClause.Occur.FILTER)
+					.build());
+		}
+		indexWriter.deleteDocuments(getByIdQuery(id));
+	}
+
+	/**
+	 * Moves ConceptMaps stored in the SNOMED CT index, before ConceptMaps had their own index, into the resource index.
+	 */
+	public void moveFromSnomedIndex() throws IOException {
+		IndexSearcher snomedSearcher = indexIOProvider.getIndexSearcherIfAvailable();
+		if (snomedSearcher == null) {
+			return;
+		}
+		int count = snomedSearcher.count(getAllQuery());
+		if (count == 0) {
+			return;
+		}
+		StoredFields storedFields = snomedSearcher.storedFields();
+		for (ScoreDoc scoreDoc : snomedSearcher.search(getAllQuery(), count).scoreDocs) {
+			save(loadAllElements(getHeaderFromIndex(scoreDoc, storedFields), snomedSearcher));
+		}
+		indexIOProvider.deleteDocuments(QueryHelper.termsQuery(CodeSystemRepository.TYPE, List.of(FHIRConceptMap.DOC_TYPE, FHIRConceptMap.ELEMENT_DOC_TYPE)));
+		logger.info("Moved {} ConceptMaps from the SNOMED CT index to the resource index.", count);
+	}
+
+	public interface HeaderProcessor {
+
+		FHIRConceptMap process(FHIRConceptMap header) throws IOException;
+	}
+
+	/**
+	 * Leaves the elements out of the stored header, they are held in their own documents.
+	 */
+	@JsonIgnoreProperties("element")
+	abstract static class HeaderGroupMixin {
 	}
 }
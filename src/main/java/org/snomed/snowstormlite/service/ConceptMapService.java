@@ -18,6 +18,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -39,6 +40,8 @@ public class ConceptMapService {
 	@Autowired
 	private FHIRConceptMapImplicitConfig implicitConfig;
 
+	private volatile ImplicitMaps implicitMaps;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public FHIRConceptMap find(String url, String version) throws IOException {
@@ -49,6 +52,10 @@ public class ConceptMapService {
 		return conceptMapRepository.findConceptMapById(id);
 	}
 
+	public ResourceSearch.Page<FHIRConceptMap> searchStored(ResourceSearch search) throws IOException {
+		return conceptMapRepository.search(search);
+	}
+
 	public List<FHIRConceptMap> findAllStored() throws IOException {
 		return conceptMapRepository.findAll().stream()
 				.sorted(Comparator.comparing(FHIRConceptMap::getName, Comparator.nullsFirst(String::compareTo))
@@ -58,25 +65,45 @@ public class ConceptMapService {
 	}
 
 	public synchronized FHIRConceptMap createOrUpdateConceptMap(ConceptMap conceptMapUpdate) throws IOException {
-		if (Strings.isBlank(conceptMapUpdate.getUrl()) || Strings.isBlank(conceptMapUpdate.getVersion())) {
-			throw FHIRHelper.exception("ConceptMap url and version are mandatory", OperationOutcome.IssueType.INVARIANT, 400);
-		}
-		if (conceptMapUpdate.getUrl().contains("fhir_cm")) {
-			throw FHIRHelper.exception("ConceptMap url must not contain 'fhir_cm', this is reserved for implicit concept maps.", OperationOutcome.IssueType.INVARIANT, 400);
-		}
 		if (conceptMapUpdate.getId() != null && conceptMapUpdate.getId().startsWith("ConceptMap/")) {
 			conceptMapUpdate.setId(conceptMapUpdate.getId().replace("ConceptMap/", ""));
 		}
 
 		FHIRConceptMap incoming = new FHIRConceptMap(conceptMapUpdate);
+		prepareForSave(incoming);
+		conceptMapRepository.save(incoming);
+		return incoming;
+	}
+
+	/**
+	 * Creates or updates a ConceptMap from a FHIR JSON stream. Elements are written to the index as they are read,
+	 * so that memory use does not grow with the size of the map.
+	 * @return the saved map, without its elements.
+	 */
+	public synchronized FHIRConceptMap createOrUpdateConceptMap(InputStream conceptMapJson) throws IOException {
+		return conceptMapRepository.save(conceptMapJson, header -> {
+			prepareForSave(header);
+			return header;
+		});
+	}
 
-		FHIRConceptMap existingByUrlVersion = conceptMapRepository.findConceptMap(incoming.getUrl(), incoming.getVersion());
+	/**
+	 * Checks the url, version and id of the incoming map against the stored maps and sets the id to save it under.
+	 */
+	private void prepareForSave(FHIRConceptMap incoming) throws IOException {
+		if (Strings.isBlank(incoming.getUrl()) || Strings.isBlank(incoming.getVersion())) {
+			throw FHIRHelper.exception("ConceptMap url and version are mandatory", OperationOutcome.IssueType.INVARIANT, 400);
+		}
+		if (incoming.getUrl().contains("fhir_cm")) {
+			throw FHIRHelper.exception("ConceptMap url must not contain 'fhir_cm', this is reserved for implicit concept maps.", OperationOutcome.IssueType.INVARIANT, 400);
+		}
+		FHIRConceptMap existingByUrlVersion = conceptMapRepository.findConceptMapHeader(incoming.getUrl(), incoming.getVersion());
 		if (existingByUrlVersion != null) {
 			if (incoming.getId() != null && !incoming.getId().equals(existingByUrlVersion.getId())) {
 				throw FHIRHelper.exception("A ConceptMap with the same url and version already exists with a different id.", OperationOutcome.IssueType.INVARIANT, 400);
 			}
 		} else if (incoming.getId() != null) {
-			FHIRConceptMap existingById = conceptMapRepository.findConceptMapById(incoming.getId());
+			FHIRConceptMap existingById = conceptMapRepository.findConceptMapHeaderById(incoming.getId());
 			if (existingById != null) {
 				throw FHIRHelper.exception("A ConceptMap with the same id already exists with a different url and version.", OperationOutcome.IssueType.INVARIANT, 400);
 			}
@@ -91,9 +118,6 @@ public class ConceptMapService {
 				incoming.setId(UUID.randomUUID().toString());
 			}
 		}
-
-		conceptMapRepository.save(incoming);
-		return incoming;
 	}
 
 	public void deleteById(String id) throws IOException {
@@ -104,13 +128,28 @@ public class ConceptMapService {
 		List<FHIRConceptMap> maps = new ArrayList<>();
 		String normalizedUrlFilter = FHIRHelper.normalizeImplicitConceptMapSearchUrl(url);
 
-		for (FHIRConceptMap m : conceptMapRepository.findAll()) {
-			if (matchesStoredMapForTranslate(m, normalizedUrlFilter, coding, targetSystem)) {
-				maps.add(m);
+		maps.addAll(conceptMapRepository.findMapsForTranslate(normalizedUrlFilter, coding.getSystem(), coding.getCode(), targetSystem));
+		for (FHIRConceptMap implicit : getImplicitConceptMapsForTranslate()) {
+			if (matchesImplicitMapForTranslate(implicit, normalizedUrlFilter, coding, targetSystem)) {
+				maps.add(implicit);
 			}
 		}
-		for (FHIRConceptMap implicit : buildImplicitConceptMapsForTranslate()) {
-			if (matchesImplicitMapForTranslate(implicit, normalizedUrlFilter, coding, targetSystem)) {
+		return maps;
+	}
+
+	/**
+	 * Finds maps that can translate a code back to codes of their source system.
+	 * @param coding code in the target system of the maps.
+	 * @param sourceSystem system to translate to, may be null.
+	 */
+	public List<FHIRConceptMap> findMapsForReverseTranslate(String url, Coding coding, String sourceSystem) throws IOException {
+		List<FHIRConceptMap> maps = new ArrayList<>();
+		String normalizedUrlFilter = FHIRHelper.normalizeImplicitConceptMapSearchUrl(url);
+
+		maps.addAll(conceptMapRepository.findMapsForReverseTranslate(normalizedUrlFilter, coding.getSystem(), coding.getCode(), sourceSystem));
+		for (FHIRConceptMap implicit : getImplicitConceptMapsForTranslate()) {
+			if (matchesUrl(implicit, normalizedUrlFilter) && matchesSystem(implicit.getTargetUri(), coding) &&
+					(sourceSystem == null || (sourceSystem + IMPLICIT_EVERYTHING).equals(implicit.getSourceUri()))) {
 				maps.add(implicit);
 			}
 		}
@@ -135,11 +174,21 @@ public class ConceptMapService {
 		return results;
 	}
 
-	private List<FHIRConceptMap> buildImplicitConceptMapsForTranslate() {
+	private List<FHIRConceptMap> getImplicitConceptMapsForTranslate() {
 		FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
 		if (codeSystem == null) {
 			return List.of();
 		}
+		// The code system object is replaced whenever its cache is cleared, for example after an import
+		ImplicitMaps current = implicitMaps;
+		if (current == null || current.codeSystem() != codeSystem) {
+			current = new ImplicitMaps(codeSystem, buildImplicitConceptMapsForTranslate());
+			implicitMaps = current;
+		}
+		return current.maps();
+	}
+
+	private List<FHIRConceptMap> buildImplicitConceptMapsForTranslate() {
 		List<FHIRConceptMap> out = new ArrayList<>();
 		for (FHIRSnomedImplicitMap implicit : implicitConfig.getImplicitMaps()) {
 			FHIRConceptMap m = new FHIRConceptMap();
@@ -157,38 +206,11 @@ public class ConceptMapService {
 			}
 			out.add(m);
 		}
-		return out;
-	}
-
-	private boolean matchesStoredMapForTranslate(FHIRConceptMap m, String normalizedUrlFilter, Coding coding, String targetSystem) {
-		if (normalizedUrlFilter != null) {
-			String mapUrlNorm = FHIRHelper.normalizeImplicitConceptMapSearchUrl(m.getUrl());
-			if (!normalizedUrlFilter.equals(mapUrlNorm) && !normalizedUrlFilter.equals(m.getUrl())) {
-				return false;
-			}
-		}
-		boolean groupMatchesSystem = false;
-		for (FHIRConceptMapGroup g : orEmpty(m.getGroup())) {
-			if (coding.getSystem().equals(g.getSource())) {
-				if (targetSystem == null || targetSystem.equals(g.getTarget())) {
-					groupMatchesSystem = true;
-					break;
-				}
-			}
-		}
-		return groupMatchesSystem;
+		return List.copyOf(out);
 	}
 
 	private boolean matchesImplicitMapForTranslate(FHIRConceptMap map, String normalizedUrlFilter, Coding coding, String targetSystem) {
-		if (normalizedUrlFilter != null) {
-			String mapUrlNorm = FHIRHelper.normalizeImplicitConceptMapSearchUrl(map.getUrl());
-			if (!normalizedUrlFilter.equals(mapUrlNorm) && !normalizedUrlFilter.equals(map.getUrl())) {
-				return false;
-			}
-		}
-		String sourceUri = map.getSourceUri();
-		String normalizedCodingSystem = coding.getSystem().replace("/xsct", "/sct");
-		if (sourceUri != null && !sourceUri.startsWith(normalizedCodingSystem)) {
+		if (!matchesUrl(map, normalizedUrlFilter) || !matchesSystem(map.getSourceUri(), coding)) {
 			return false;
 		}
 		if (targetSystem != null) {
@@ -199,4 +221,20 @@ public class ConceptMapService {
 		}
 		return true;
 	}
+
+	private static boolean matchesUrl(FHIRConceptMap map, String normalizedUrlFilter) {
+		if (normalizedUrlFilter != null) {
+			String mapUrlNorm = FHIRHelper.normalizeImplicitConceptMapSearchUrl(map.getUrl());
+			return normalizedUrlFilter.equals(mapUrlNorm) || normalizedUrlFilter.equals(map.getUrl());
+		}
+		return true;
+	}
+
+	private static boolean matchesSystem(String implicitValueSetUri, Coding coding) {
+		String normalizedCodingSystem = coding.getSystem().replace("/xsct", "/sct");
+		return implicitValueSetUri == null || implicitValueSetUri.startsWith(normalizedCodingSystem);
+	}
+
+	private record ImplicitMaps(FHIRCodeSystem codeSystem, List<FHIRConceptMap> maps) {
+	}
 }
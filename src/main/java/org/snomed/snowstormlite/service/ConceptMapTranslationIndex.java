@@ -0,0 +1,264 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.index.IndexReader;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMapGroup;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRMapElement;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRMapTarget;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import static org.snomed.snowstormlite.util.CollectionUtils.orEmpty;
+
+/**
+ * In-memory index of the groups of all stored ConceptMaps, keyed by source system, and by target system for reverse translation,
+ * so that $translate does not need to read every map. The elements of the matching groups are then read from their own index documents
+ * by {@link ConceptMapRepository}, apart from maps stored with the elements in the header, which are matched here.
+ * <p>
+ * The index is updated when a map is saved or deleted through {@link ConceptMapRepository}. It records the index segments holding
+ * ConceptMaps when it was last brought up to date, any other change to those segments means it must be rebuilt.
+ */
+class ConceptMapTranslationIndex {
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, IndexedMap> mapsById = new HashMap<>();
+	private final Map<String, List<IndexedGroup>> groupsBySource = new HashMap<>();
+	private final Map<String, List<IndexedGroup>> groupsByTarget = new HashMap<>();
+	private volatile Set<Object> leafKeys;
+
+	boolean isFor(IndexReader reader) throws IOException {
+		Set<Object> current = leafKeys;
+		return current != null && current.equals(QueryHelper.getLeafKeys(reader, FHIRConceptMap.DOC_TYPE));
+	}
+
+	/**
+	 * Replaces the content of the index.
+	 */
+	void rebuild(Collection<FHIRConceptMap> conceptMaps, IndexReader reader) throws IOException {
+		lock.writeLock().lock();
+		try {
+			mapsById.clear();
+			groupsBySource.clear();
+			groupsByTarget.clear();
+			for (FHIRConceptMap conceptMap : conceptMaps) {
+				add(conceptMap);
+			}
+			leafKeys = QueryHelper.getLeafKeys(reader, FHIRConceptMap.DOC_TYPE);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or replaces one map.
+	 * @param reader opened after the map was written.
+	 */
+	void put(FHIRConceptMap conceptMap, IndexReader reader) throws IOException {
+		lock.writeLock().lock();
+		try {
+			remove(conceptMap.getId());
+			add(conceptMap);
+			leafKeys = QueryHelper.getLeafKeys(reader, FHIRConceptMap.DOC_TYPE);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param reader opened after the map was deleted.
+	 */
+	void delete(String id, IndexReader reader) throws IOException {
+		lock.writeLock().lock();
+		try {
+			remove(id);
+			leafKeys = QueryHelper.getLeafKeys(reader, FHIRConceptMap.DOC_TYPE);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the maps that have a group from the source system to the target system.
+	 * @return a copy of the header of each map, holding only the matching groups. The groups have no elements, apart from groups
+	 * of maps stored with the elements in the header, which hold only the elements for the code.
+	 * Maps are ordered by url, then by version newest first.
+	 */
+	List<FHIRConceptMap> findMapsForTranslate(String normalizedUrlFilter, String system, String code, String targetSystem) {
+		lock.readLock().lock();
+		try {
+			Map<String, FHIRConceptMap> maps = new HashMap<>();
+			for (IndexedGroup group : groupsBySource.getOrDefault(system, List.of())) {
+				if ((targetSystem == null || targetSystem.equals(group.header().getTarget())) &&
+						(normalizedUrlFilter == null || mapsById.get(group.mapId()).matchesUrl(normalizedUrlFilter))) {
+					List<FHIRMapElement> elements = new ArrayList<>();
+					for (FHIRMapElement element : group.storedElements()) {
+						if (Objects.equals(code, element.getCode())) {
+							elements.add(element);
+						}
+					}
+					FHIRConceptMap map = maps.computeIfAbsent(group.mapId(), id -> copyHeader(mapsById.get(id).header()));
+					map.getGroup().add(copyGroup(group.header(), elements));
+				}
+			}
+			return sort(maps.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the maps that have a group from the source system to the target system, for translation from a target code back to source codes.
+	 * @param targetSystem system of the code being translated.
+	 * @param sourceSystem system to translate to, may be null.
+	 * @return a copy of the header of each map, holding only the matching groups. The groups have no elements, apart from groups
+	 * of maps stored with the elements in the header, which hold only the elements that have the code as a target, with only the targets with the code.
+	 */
+	List<FHIRConceptMap> findMapsForReverseTranslate(String normalizedUrlFilter, String targetSystem, String code, String sourceSystem) {
+		lock.readLock().lock();
+		try {
+			Map<String, FHIRConceptMap> maps = new HashMap<>();
+			for (IndexedGroup group : groupsByTarget.getOrDefault(targetSystem, List.of())) {
+				if ((sourceSystem == null || sourceSystem.equals(group.header().getSource())) &&
+						(normalizedUrlFilter == null || mapsById.get(group.mapId()).matchesUrl(normalizedUrlFilter))) {
+					List<FHIRMapElement> elements = new ArrayList<>();
+					for (FHIRMapElement element : group.storedElements()) {
+						List<FHIRMapTarget> targets = orEmpty(element.getTarget()).stream().filter(target -> Objects.equals(code, target.getCode())).toList();
+						if (!targets.isEmpty()) {
+							elements.add(copyElement(element, targets));
+						}
+					}
+					FHIRConceptMap map = maps.computeIfAbsent(group.mapId(), id -> copyHeader(mapsById.get(id).header()));
+					map.getGroup().add(copyGroup(group.header(), elements));
+				}
+			}
+			return sort(maps.values());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static List<FHIRConceptMap> sort(Collection<FHIRConceptMap> maps) {
+		List<FHIRConceptMap> results = new ArrayList<>(maps);
+		results.sort(Comparator.comparing(FHIRConceptMap::getUrl)
+				.thenComparing(FHIRConceptMap::getVersion, Comparator.nullsLast(Comparator.reverseOrder())));
+		return results;
+	}
+
+	private void add(FHIRConceptMap conceptMap) {
+		// Maps stored with the elements in the header keep them here, otherwise they are read from the element documents
+		boolean holdsElements = conceptMap.getElementsKey() == null;
+		List<IndexedGroup> groups = new ArrayList<>();
+		for (FHIRConceptMapGroup group : orEmpty(conceptMap.getGroup())) {
+			if (group.getSource() == null) {
+				continue;
+			}
+			IndexedGroup indexedGroup = new IndexedGroup(conceptMap.getId(), copyGroup(group, List.of()),
+					holdsElements ? new ArrayList<>(orEmpty(group.getElement())) : List.of());
+			groups.add(indexedGroup);
+			groupsBySource.computeIfAbsent(group.getSource(), key -> new ArrayList<>()).add(indexedGroup);
+			if (group.getTarget() != null) {
+				groupsByTarget.computeIfAbsent(group.getTarget(), key -> new ArrayList<>()).add(indexedGroup);
+			}
+		}
+		mapsById.put(conceptMap.getId(), new IndexedMap(copyHeader(conceptMap), FHIRHelper.normalizeImplicitConceptMapSearchUrl(conceptMap.getUrl()), groups));
+	}
+
+	private void remove(String id) {
+		IndexedMap indexedMap = mapsById.remove(id);
+		if (indexedMap == null) {
+			return;
+		}
+		for (IndexedGroup group : indexedMap.groups()) {
+			removeFromList(groupsBySource, group.header().getSource(), indexed -> indexed == group);
+			removeFromList(groupsByTarget, group.header().getTarget(), indexed -> indexed == group);
+		}
+	}
+
+	private static <K, V> void removeFromList(Map<K, List<V>> map, K key, Predicate<V> predicate) {
+		List<V> values = map.get(key);
+		if (values != null) {
+			values.removeIf(predicate);
+			if (values.isEmpty()) {
+				map.remove(key);
+			}
+		}
+	}
+
+	private static FHIRConceptMap copyHeader(FHIRConceptMap conceptMap) {
+		FHIRConceptMap header = new FHIRConceptMap();
+		header.setId(conceptMap.getId());
+		header.setUrl(conceptMap.getUrl());
+		header.setVersion(conceptMap.getVersion());
+		header.setName(conceptMap.getName());
+		header.setTitle(conceptMap.getTitle());
+		header.setStatus(conceptMap.getStatus());
+		header.setSourceUri(conceptMap.getSourceUri());
+		header.setTargetUri(conceptMap.getTargetUri());
+		return header;
+	}
+
+	static FHIRMapElement copyElement(FHIRMapElement element, List<FHIRMapTarget> targets) {
+		FHIRMapElement copy = new FHIRMapElement();
+		copy.setId(element.getId());
+		copy.setGroupId(element.getGroupId());
+		copy.setCode(element.getCode());
+		copy.setDisplay(element.getDisplay());
+		copy.setMessage(element.getMessage());
+		copy.setTarget(new ArrayList<>(targets));
+		return copy;
+	}
+
+	private static FHIRConceptMapGroup copyGroup(FHIRConceptMapGroup group, List<FHIRMapElement> elements) {
+		FHIRConceptMapGroup copy = new FHIRConceptMapGroup();
+		copy.setGroupId(group.getGroupId());
+		copy.setSource(group.getSource());
+		copy.setSourceVersion(group.getSourceVersion());
+		copy.setTarget(group.getTarget());
+		copy.setTargetVersion(group.getTargetVersion());
+		copy.setElement(new ArrayList<>(elements));
+		return copy;
+	}
+
+	private record IndexedMap(FHIRConceptMap header, String normalizedUrl, List<IndexedGroup> groups) {
+
+		boolean matchesUrl(String normalizedUrlFilter) {
+			return normalizedUrlFilter.equals(normalizedUrl) || normalizedUrlFilter.equals(header.getUrl());
+		}
+	}
+
+	/**
+	 * Compared by identity, each group of a stored map is indexed once.
+	 */
+	private static final class IndexedGroup {
+
+		private final String mapId;
+		private final FHIRConceptMapGroup header;
+		private final List<FHIRMapElement> storedElements;
+
+		private IndexedGroup(String mapId, FHIRConceptMapGroup header, List<FHIRMapElement> storedElements) {
+			this.mapId = mapId;
+			this.header = header;
+			this.storedElements = storedElements;
+		}
+
+		String mapId() {
+			return mapId;
+		}
+
+		FHIRConceptMapGroup header() {
+			return header;
+		}
+
+		/**
+		 * @return the elements of a map stored with the elements in the header, otherwise empty.
+		 */
+		List<FHIRMapElement> storedElements() {
+			return storedElements;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package org.snomed.snowstormlite.service;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.Bits;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * The parents of all concepts in one index reader, held in compressed sparse row arrays so that ancestors can be walked
+ * without a query per hierarchy level. The children are held the same way, for walking descendants.
+ * <p>
+ * Concept ids are mapped to dense ordinals. The parents of a concept are held between {@code parentOffsets[ordinal]}
+ * and {@code parentOffsets[ordinal + 1]}, the children between {@code childOffsets[ordinal]} and {@code childOffsets[ordinal + 1]}.
+ * <p>
+ * The index stays valid while the index segments holding concepts are unchanged, so writing other documents does not cause a rebuild.
+ */
+public class HierarchyIndex {
+
+	private final Set<Object> conceptLeafKeys;
+	private final long[] conceptIds;
+	private final Long2IntOpenHashMap ordinals;
+	private final int[] parentOffsets;
+	private final int[] parents;
+	private final int[] childOffsets;
+	private final int[] children;
+
+	private HierarchyIndex(Set<Object> conceptLeafKeys, long[] conceptIds, Long2IntOpenHashMap ordinals, LongArrayList childIds, LongArrayList parentIds) {
+		this.conceptLeafKeys = conceptLeafKeys;
+		this.conceptIds = conceptIds;
+		this.ordinals = ordinals;
+		int conceptCount = conceptIds.length;
+		int edgeCount = childIds.size();
+
+		int[] childOrdinals = new int[edgeCount];
+		int[] parentOrdinals = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			childOrdinals[i] = ordinals.get(childIds.getLong(i));
+			parentOrdinals[i] = ordinals.get(parentIds.getLong(i));
+		}
+		parentOffsets = new int[conceptCount + 1];
+		parents = new int[edgeCount];
+		fill(childOrdinals, parentOrdinals, parentOffsets, parents);
+		childOffsets = new int[conceptCount + 1];
+		children = new int[edgeCount];
+		fill(parentOrdinals, childOrdinals, childOffsets, children);
+	}
+
+	/**
+	 * Fills compressed sparse row arrays from a list of edges, grouping the targets of the edges by source.
+	 */
+	private static void fill(int[] sources, int[] targets, int[] offsets, int[] grouped) {
+		int conceptCount = offsets.length - 1;
+		for (int source : sources) {
+			offsets[source + 1]++;
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, conceptCount);
+		for (int i = 0; i < sources.length; i++) {
+			grouped[next[sources[i]]++] = targets[i];
+		}
+	}
+
+	/**
+	 * Reads the stored parents of every concept document in the reader of the given searcher.
+	 */
+	public static HierarchyIndex build(IndexSearcher indexSearcher) throws IOException {
+		IndexReader reader = indexSearcher.getIndexReader();
+		LongOpenHashSet ids = new LongOpenHashSet();
+		LongArrayList children = new LongArrayList();
+		LongArrayList parentIds = new LongArrayList();
+
+		Query conceptQuery = new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE));
+		Weight weight = indexSearcher.createWeight(indexSearcher.rewrite(conceptQuery), ScoreMode.COMPLETE_NO_SCORES, 1);
+		Set<String> fields = Set.of(FHIRConcept.FieldNames.ID, FHIRConcept.FieldNames.PARENTS);
+		for (LeafReaderContext leaf : reader.leaves()) {
+			Scorer scorer = weight.scorer(leaf);
+			if (scorer == null) {
+				continue;
+			}
+			Bits liveDocs = leaf.reader().getLiveDocs();
+			StoredFields storedFields = leaf.reader().storedFields();
+			DocIdSetIterator iterator = scorer.iterator();
+			for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+				if (liveDocs != null && !liveDocs.get(doc)) {
+					continue;
+				}
+				Document conceptDoc = storedFields.document(doc, fields);
+				long conceptId = Long.parseLong(conceptDoc.get(FHIRConcept.FieldNames.ID));
+				ids.add(conceptId);
+				for (IndexableField parent : conceptDoc.getFields(FHIRConcept.FieldNames.PARENTS)) {
+					long parentId = Long.parseLong(parent.stringValue());
+					children.add(conceptId);
+					parentIds.add(parentId);
+					ids.add(parentId);
+				}
+			}
+		}
+
+		long[] conceptIds = ids.toLongArray();
+		Arrays.sort(conceptIds);
+		Long2IntOpenHashMap ordinals = new Long2IntOpenHashMap(conceptIds.length);
+		ordinals.defaultReturnValue(-1);
+		for (int i = 0; i < conceptIds.length; i++) {
+			ordinals.put(conceptIds[i], i);
+		}
+		return new HierarchyIndex(QueryHelper.getLeafKeys(reader, FHIRConcept.DOC_TYPE), conceptIds, ordinals, children, parentIds);
+	}
+
+	boolean isFor(IndexReader reader) throws IOException {
+		return conceptLeafKeys.equals(QueryHelper.getLeafKeys(reader, FHIRConcept.DOC_TYPE));
+	}
+
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+
+	public int getParentCount() {
+		return parents.length;
+	}
+
+	/**
+	 * @return the ordinal of the concept, or -1 if the concept is not in the index.
+	 */
+	public int getOrdinal(long conceptId) {
+		return ordinals.get(conceptId);
+	}
+
+	public long getConceptId(int ordinal) {
+		return conceptIds[ordinal];
+	}
+
+	/**
+	 * @return the ordinals of all ancestors of the concept, not including the concept itself.
+	 */
+	public IntSet getAncestors(int ordinal) {
+		return walk(ordinal, parentOffsets, parents);
+	}
+
+	/**
+	 * @return the ordinals of all descendants of the concept, not including the concept itself.
+	 */
+	public IntSet getDescendants(int ordinal) {
+		return walk(ordinal, childOffsets, children);
+	}
+
+	private static IntSet walk(int ordinal, int[] offsets, int[] edges) {
+		IntSet reached = new IntOpenHashSet();
+		IntArrayList queue = new IntArrayList();
+		queue.add(ordinal);
+		while (!queue.isEmpty()) {
+			int current = queue.popInt();
+			for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+				if (reached.add(edges[i])) {
+					queue.add(edges[i]);
+				}
+			}
+		}
+		return reached;
+	}
+}
@@ -0,0 +1,123 @@
+package org.snomed.snowstormlite.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional watcher that picks up new Lucene commits written to the index directory by another process,
+ * allowing several read-only instances to share one index volume.
+ * Uses the NIO WatchService where available. The poll interval is also used as a fallback check because
+ * file events are not delivered for changes made by other hosts on many network file systems.
+ */
+@Service
+public class IndexDirectoryWatcher {
+
+	private static final String SEGMENTS_FILE_PREFIX = "segments_";
+
+	private final IndexIOProvider indexIOProvider;
+	private final ResourceIndexIOProvider resourceIndexIOProvider;
+	private final CodeSystemRepository codeSystemRepository;
+	private final boolean enabled;
+	private final int pollIntervalSeconds;
+
+	private Thread watcherThread;
+	private WatchService watchService;
+	private volatile boolean running;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public IndexDirectoryWatcher(IndexIOProvider indexIOProvider, ResourceIndexIOProvider resourceIndexIOProvider, CodeSystemRepository codeSystemRepository,
+			@Value("${index.watch.enabled:false}") boolean enabled,
+			@Value("${index.watch.poll-interval-seconds:10}") int pollIntervalSeconds) {
+
+		this.indexIOProvider = indexIOProvider;
+		this.resourceIndexIOProvider = resourceIndexIOProvider;
+		this.codeSystemRepository = codeSystemRepository;
+		this.enabled = enabled;
+		this.pollIntervalSeconds = Math.max(1, pollIntervalSeconds);
+	}
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		Path indexPath = indexIOProvider.getIndexDirectory().getDirectory();
+		try {
+			watchService = indexPath.getFileSystem().newWatchService();
+			indexPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			resourceIndexIOProvider.getIndexPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			logger.info("Watching index directory {} for new commits, with {} second polling fallback.", indexPath.toAbsolutePath(), pollIntervalSeconds);
+		} catch (IOException | UnsupportedOperationException e) {
+			closeWatchService();
+			logger.info("File watching not available for index directory {}, polling every {} seconds.", indexPath.toAbsolutePath(), pollIntervalSeconds);
+		}
+		running = true;
+		watcherThread = new Thread(this::watch, "index-directory-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		if (watcherThread != null) {
+			watcherThread.interrupt();
+		}
+		closeWatchService();
+	}
+
+	private void watch() {
+		while (running) {
+			try {
+				if (watchService != null) {
+					WatchKey key = watchService.poll(pollIntervalSeconds, TimeUnit.SECONDS);
+					if (key != null) {
+						boolean commitSeen = key.pollEvents().stream()
+								.anyMatch(event -> event.context() instanceof Path path && path.toString().startsWith(SEGMENTS_FILE_PREFIX));
+						key.reset();
+						if (!commitSeen) {
+							continue;
+						}
+					}
+				} else {
+					Thread.sleep(TimeUnit.SECONDS.toMillis(pollIntervalSeconds));
+				}
+				resourceIndexIOProvider.refreshIfChanged();
+				if (indexIOProvider.refreshIfChanged()) {
+					codeSystemRepository.clearCache();
+					// Build before the next ECL request needs it
+					try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+						indexIOProvider.getRelationshipIndex();
+					}
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (IOException | RuntimeException e) {
+				// Another instance may be part way through writing, try again next time
+				logger.warn("Failed to refresh index reader: {}", e.getMessage());
+				logger.debug("Index refresh failure.", e);
+			}
+		}
+	}
+
+	private void closeWatchService() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				logger.debug("Failed to close watch service.", e);
+			}
+			watchService = null;
+		}
+	}
+}
@@ -1,16 +1,26 @@
 package org.snomed.snowstormlite.service;
 
+import jakarta.annotation.PreDestroy;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.config.QueryCacheConfiguration;
+import org.snomed.snowstormlite.config.SearchConcurrencyConfiguration;
 import org.snomed.snowstormlite.fhir.FHIRHelper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -19,18 +29,68 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class IndexIOProvider {
 
+	// Commit user data key holding the time of the commit in milliseconds
+	public static final String COMMIT_TIME = "commit_time";
+
 	private final FSDirectory indexDirectory;
-	private IndexSearcher indexSearcher;
+	private volatile SearchersManager searchersManager;
 	private final Object writeLock;
+	private final TerminologyQueryCache queryCache;
+	private final QueryCachingPolicy queryCachingPolicy;
+	private final SearchConcurrencyConfiguration concurrencyConfiguration;
+	private final ThreadPoolExecutor searchExecutor;
+	private final int maxMergedSegmentMB;
+	private final Object relationshipIndexLock = new Object();
+	private volatile RelationshipIndex relationshipIndex;
+	private final Object hierarchyIndexLock = new Object();
+	private volatile HierarchyIndex hierarchyIndex;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	public IndexIOProvider(@Value("${index.path}") String indexPath) throws IOException {
+	public IndexIOProvider(@Value("${index.path}") String indexPath, @Value("${index.max-merged-segment-mb:0}") int maxMergedSegmentMB,
+			QueryCacheConfiguration queryCacheConfiguration, SearchConcurrencyConfiguration concurrencyConfiguration) throws IOException {
+
 		writeLock = new Object();
+		this.maxMergedSegmentMB = maxMergedSegmentMB;
+		if (queryCacheConfiguration.isEnabled()) {
+			queryCache = new TerminologyQueryCache(queryCacheConfiguration.getMaxQueries(), queryCacheConfiguration.getMaxMemoryMb() * 1024L * 1024L,
+					queryCacheConfiguration.getMinSegmentDocs(), queryCacheConfiguration.getSkipCacheFactor());
+			queryCachingPolicy = new TerminologyQueryCachingPolicy(new HashSet<>(queryCacheConfiguration.getQueryTypes()),
+					queryCacheConfiguration.getMinFrequency(), queryCacheConfiguration.getHistorySize());
+		} else {
+			queryCache = null;
+			queryCachingPolicy = null;
+		}
+		this.concurrencyConfiguration = concurrencyConfiguration;
+		if (concurrencyConfiguration.isEnabled()) {
+			int threads = Math.max(1, concurrencyConfiguration.getThreads());
+			AtomicInteger threadNumber = new AtomicInteger();
+			// Bounded queue, when full the requesting thread searches the slice itself rather than queueing more work
+			searchExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(Math.max(1, concurrencyConfiguration.getQueueSize())),
+					runnable -> {
+						Thread thread = new Thread(runnable, "index-search-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					},
+					new ThreadPoolExecutor.CallerRunsPolicy());
+			searchExecutor.allowCoreThreadTimeOut(true);
+			logger.info("Concurrent segment search enabled with {} threads.", threads);
+		} else {
+			searchExecutor = null;
+		}
 		File indexDirFile = new File(indexPath);
 		if (!indexDirFile.exists()) {
 			if (!indexDirFile.mkdirs()) {
@@ -46,52 +106,345 @@ public class IndexIOProvider {
 
 	public void writeDocuments(Collection<Document> documents) throws IOException {
 		synchronized (writeLock) {
-			try (IndexWriter indexWriter = new IndexWriter(indexDirectory, new IndexWriterConfig(new StandardAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND))) {
+			try (IndexWriter indexWriter = openIndexWriter(indexDirectory, newIndexWriterConfig())) {
 				indexWriter.addDocuments(documents);
 			}
-			if (indexSearcher != null) {
-				indexSearcher = new IndexSearcher(DirectoryReader.open(indexDirectory));
-			}
+			refreshAfterWrite();
 		}
 	}
 
 	public void deleteDocuments(Query build) throws IOException {
 		synchronized (writeLock) {
-			try (IndexWriter indexWriter = new IndexWriter(indexDirectory, new IndexWriterConfig(new StandardAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND))) {
+			try (IndexWriter indexWriter = openIndexWriter(indexDirectory, newIndexWriterConfig())) {
 				indexWriter.deleteDocuments(build);
 			}
-			if (indexSearcher != null) {
-				indexSearcher = new IndexSearcher(DirectoryReader.open(indexDirectory));
+			refreshAfterWrite();
+		}
+	}
+
+	/**
+	 * Applies deletes and additions through one index writer so that they are committed together.
+	 * Nothing is committed if the update throws, so an update that streams a large number of documents can fail part way
+	 * without leaving a partial result.
+	 */
+	public void update(IndexUpdate update) throws IOException {
+		synchronized (writeLock) {
+			IndexWriter indexWriter = openIndexWriter(indexDirectory, newIndexWriterConfig());
+			try {
+				update.apply(indexWriter);
+			} catch (IOException | RuntimeException e) {
+				indexWriter.rollback();
+				throw e;
 			}
+			indexWriter.close();
+			refreshAfterWrite();
+		}
+	}
+
+	private void refreshAfterWrite() throws IOException {
+		SearchersManager manager = searchersManager;
+		if (manager != null) {
+			manager.maybeRefreshBlocking();
+			IndexReaderScope.renew(manager);
 		}
 	}
 
+	private IndexWriterConfig newIndexWriterConfig() {
+		IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+		if (maxMergedSegmentMB > 0) {
+			// Smaller segments give concurrent search more slices to work on
+			TieredMergePolicy mergePolicy = new TieredMergePolicy();
+			mergePolicy.setMaxMergedSegmentMB(maxMergedSegmentMB);
+			config.setMergePolicy(mergePolicy);
+		}
+		return config;
+	}
+
+	/**
+	 * Reopens the searcher if a newer commit exists in the index directory, for example one written by another instance
+	 * sharing the same volume. The new searcher is swapped in atomically so in-flight requests keep using the reader they started with,
+	 * the replaced reader is closed when the last {@link IndexReaderScope} using it ends.
+	 * @return true if a new searcher was opened.
+	 */
+	public boolean refreshIfChanged() throws IOException {
+		synchronized (writeLock) {
+			SearchersManager manager = searchersManager;
+			if (manager == null) {
+				// Reading disabled or not yet opened
+				return false;
+			}
+			Searchers before = manager.peek();
+			manager.maybeRefreshBlocking();
+			Searchers after = manager.peek();
+			if (after == before) {
+				return false;
+			}
+			logger.info("Index reader refreshed to commit generation {}.", after.reader().getIndexCommit().getGeneration());
+			return true;
+		}
+	}
+
+	private Searchers newSearchers(DirectoryReader reader) {
+		IndexSearcher standard = configure(new BudgetedIndexSearcher(reader));
+		IndexSearcher concurrent = standard;
+		if (searchExecutor != null && reader.maxDoc() >= concurrencyConfiguration.getMinIndexDocs()) {
+			int maxDocsPerSlice = concurrencyConfiguration.getMaxDocsPerSlice();
+			int maxSegmentsPerSlice = concurrencyConfiguration.getMaxSegmentsPerSlice();
+			// Slice tasks run with the query budget of the requesting thread
+			Executor budgetExecutor = task -> searchExecutor.execute(QueryBudget.wrap(task));
+			concurrent = configure(new BudgetedIndexSearcher(reader, budgetExecutor) {
+				@Override
+				protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+					return slices(leaves, maxDocsPerSlice, maxSegmentsPerSlice);
+				}
+			});
+		}
+		return new Searchers(standard, concurrent);
+	}
+
+	private IndexSearcher configure(IndexSearcher searcher) {
+		searcher.setQueryCache(queryCache);
+		if (queryCachingPolicy != null) {
+			searcher.setQueryCachingPolicy(queryCachingPolicy);
+		}
+		return searcher;
+	}
+
+	/**
+	 * @return the query cache shared by all searchers, or null if caching is disabled.
+	 */
+	public TerminologyQueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	public FSDirectory getIndexDirectory() {
+		return indexDirectory;
+	}
+
 	/**
 	 * Returns the current searcher, lazily opening a reader when a Lucene index already exists on disk.
 	 * {@code null} when no index is present yet (nothing loaded) — use for read APIs that tolerate an empty corpus.
 	 */
 	public IndexSearcher getIndexSearcherIfAvailable() throws IOException {
-		synchronized (writeLock) {
-			if (indexSearcher == null && DirectoryReader.indexExists(indexDirectory)) {
-				indexSearcher = new IndexSearcher(DirectoryReader.open(indexDirectory));
+		Searchers current = getSearchersIfAvailable();
+		return current != null ? current.standard() : null;
+	}
+
+	public IndexSearcher getIndexSearcher() throws IOException {
+		return getSearchers().standard();
+	}
+
+	/**
+	 * @return the version of the current reader, which changes with every commit that the reader has been reopened to see.
+	 */
+	public long getIndexVersion() throws IOException {
+		return getSearchers().reader().getVersion();
+	}
+
+	/**
+	 * @return the time of the commit that the current reader was opened on, or 0 if the commit was made before the time was recorded.
+	 */
+	public long getLastModified() throws IOException {
+		return getCommitTime(getSearchers().reader());
+	}
+
+	/**
+	 * Opens a writer that records the time of each commit in the commit user data, so that the time a commit was made is the same
+	 * for every instance reading the index.
+	 */
+	static IndexWriter openIndexWriter(Directory directory, IndexWriterConfig config) throws IOException {
+		IndexWriter indexWriter = new IndexWriter(directory, config);
+		// Read when the commit is made rather than now
+		indexWriter.setLiveCommitData(() -> Map.of(COMMIT_TIME, String.valueOf(System.currentTimeMillis())).entrySet().iterator());
+		return indexWriter;
+	}
+
+	public static long getCommitTime(DirectoryReader reader) throws IOException {
+		String commitTime = reader.getIndexCommit().getUserData().get(COMMIT_TIME);
+		return commitTime != null ? Long.parseLong(commitTime) : 0;
+	}
+
+	/**
+	 * Returns a searcher that searches index segments in parallel using the bounded search executor, for heavy queries such as
+	 * large expansions and ECL materialisation. Falls back to the standard searcher when concurrent search is disabled or the index
+	 * is smaller than the configured threshold. Light lookups should use {@link #getIndexSearcher()}.
+	 */
+	public IndexSearcher getConcurrentIndexSearcher() throws IOException {
+		return getSearchers().concurrent();
+	}
+
+	/**
+	 * Returns the relationship adjacency index of the current reader, building it on first use after the reader has been opened.
+	 * The index is replaced whenever a new reader is opened.
+	 */
+	public RelationshipIndex getRelationshipIndex() throws IOException {
+		IndexReader reader = getSearchers().standard().getIndexReader();
+		RelationshipIndex current = relationshipIndex;
+		if (current != null && current.isFor(reader)) {
+			return current;
+		}
+		synchronized (relationshipIndexLock) {
+			current = relationshipIndex;
+			if (current == null || !current.isFor(reader)) {
+				long start = System.currentTimeMillis();
+				current = RelationshipIndex.build(new IndexSearcher(reader));
+				relationshipIndex = current;
+				logger.info("Relationship index built with {} concepts and {} relationships in {} ms.",
+						current.getConceptCount(), current.getRelationshipCount(), System.currentTimeMillis() - start);
 			}
-			return indexSearcher;
+			return current;
 		}
 	}
 
-	public IndexSearcher getIndexSearcher() throws IOException {
-		IndexSearcher searcher = getIndexSearcherIfAvailable();
-		if (searcher == null) {
+	/**
+	 * Returns the parent adjacency index of the current reader, building it on first use.
+	 * The index is only replaced when the index segments holding concepts change.
+	 */
+	public HierarchyIndex getHierarchyIndex() throws IOException {
+		IndexReader reader = getSearchers().standard().getIndexReader();
+		HierarchyIndex current = hierarchyIndex;
+		if (current != null && current.isFor(reader)) {
+			return current;
+		}
+		synchronized (hierarchyIndexLock) {
+			current = hierarchyIndex;
+			if (current == null || !current.isFor(reader)) {
+				long start = System.currentTimeMillis();
+				current = HierarchyIndex.build(new IndexSearcher(reader));
+				hierarchyIndex = current;
+				logger.info("Hierarchy index built with {} concepts and {} parents in {} ms.",
+						current.getConceptCount(), current.getParentCount(), System.currentTimeMillis() - start);
+			}
+			return current;
+		}
+	}
+
+	private Searchers getSearchers() throws IOException {
+		Searchers current = getSearchersIfAvailable();
+		if (current == null) {
 			throw FHIRHelper.exception("SNOMED CT has not yet been loaded.", OperationOutcome.IssueType.CONFLICT, 409);
 		}
-		return searcher;
+		return current;
+	}
+
+	/**
+	 * Searchers are acquired through the {@link IndexReaderScope} of the current thread.
+	 */
+	private Searchers getSearchersIfAvailable() throws IOException {
+		SearchersManager manager = searchersManager;
+		if (manager == null) {
+			synchronized (writeLock) {
+				if (searchersManager == null && DirectoryReader.indexExists(indexDirectory)) {
+					searchersManager = new SearchersManager(DirectoryReader.open(indexDirectory));
+				}
+				manager = searchersManager;
+			}
+			if (manager == null) {
+				return null;
+			}
+		}
+		try {
+			return IndexReaderScope.acquire(manager);
+		} catch (AlreadyClosedException e) {
+			if (manager != searchersManager) {
+				// Reading was disabled or re-enabled since the manager was read
+				return getSearchersIfAvailable();
+			}
+			throw e;
+		}
 	}
 
 	public void enableRead() throws IOException {
-		indexSearcher = new IndexSearcher(DirectoryReader.open(indexDirectory));
+		synchronized (writeLock) {
+			SearchersManager previous = searchersManager;
+			searchersManager = new SearchersManager(DirectoryReader.open(indexDirectory));
+			close(previous);
+		}
 	}
 
 	public void disableRead() {
-		indexSearcher = null;
+		synchronized (writeLock) {
+			SearchersManager previous = searchersManager;
+			searchersManager = null;
+			close(previous);
+		}
+		relationshipIndex = null;
+		hierarchyIndex = null;
+	}
+
+	/**
+	 * Readers of the closed manager that are still in use by a request are closed when the request releases them.
+	 */
+	private void close(SearchersManager manager) {
+		if (manager != null) {
+			try {
+				manager.close();
+			} catch (IOException e) {
+				logger.debug("Failed to close index searcher manager.", e);
+			}
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (searchExecutor != null) {
+			searchExecutor.shutdown();
+		}
+		synchronized (writeLock) {
+			close(searchersManager);
+			searchersManager = null;
+		}
+	}
+
+	public interface IndexUpdate {
+
+		void apply(IndexWriter indexWriter) throws IOException;
+	}
+
+	private record Searchers(IndexSearcher standard, IndexSearcher concurrent) {
+
+		DirectoryReader reader() {
+			return (DirectoryReader) standard.getIndexReader();
+		}
+	}
+
+	/**
+	 * Reference counts the reader shared by the standard and concurrent searchers, in the same way as Lucene's SearcherManager.
+	 */
+	private final class SearchersManager extends ReferenceManager<Searchers> {
+
+		private SearchersManager(DirectoryReader reader) {
+			current = newSearchers(reader);
+		}
+
+		@Override
+		protected void decRef(Searchers reference) throws IOException {
+			reference.reader().decRef();
+		}
+
+		@Override
+		protected Searchers refreshIfNeeded(Searchers referenceToRefresh) throws IOException {
+			DirectoryReader newReader = DirectoryReader.openIfChanged(referenceToRefresh.reader());
+			return newReader != null ? newSearchers(newReader) : null;
+		}
+
+		@Override
+		protected boolean tryIncRef(Searchers reference) {
+			return reference.reader().tryIncRef();
+		}
+
+		@Override
+		protected int getRefCount(Searchers reference) {
+			return reference.reader().getRefCount();
+		}
+
+		/**
+		 * @return the current reference, for comparison only as it is released straight away.
+		 */
+		private Searchers peek() throws IOException {
+			Searchers reference = acquire();
+			release(reference);
+			return reference;
+		}
 	}
 }
@@ -0,0 +1,88 @@
+package org.snomed.snowstormlite.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Gauges for the current reader of the SNOMED CT index and the resource index, tagged as snomed or resources.
+ * Values are NaN while SNOMED CT has not been loaded.
+ */
+@Component
+public class IndexMetrics implements MeterBinder {
+
+	public static final String INDEX_DOCUMENTS = "snowstorm.index.documents";
+	public static final String INDEX_SEGMENTS = "snowstorm.index.segments";
+	public static final String INDEX_GENERATION = "snowstorm.index.generation";
+	public static final String INDEX_SIZE = "snowstorm.index.size";
+
+	private final IndexIOProvider indexIOProvider;
+	private final ResourceIndexIOProvider resourceIndexIOProvider;
+
+	public IndexMetrics(IndexIOProvider indexIOProvider, ResourceIndexIOProvider resourceIndexIOProvider) {
+		this.indexIOProvider = indexIOProvider;
+		this.resourceIndexIOProvider = resourceIndexIOProvider;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bindIndex(registry, "snomed", indexIOProvider::getIndexSearcherIfAvailable);
+		bindIndex(registry, "resources", resourceIndexIOProvider::getIndexSearcher);
+	}
+
+	private void bindIndex(MeterRegistry registry, String index, SearcherSupplier searcherSupplier) {
+		bindGauge(registry, INDEX_DOCUMENTS, "Number of documents in the index", null, index, searcherSupplier, IndexReader::numDocs);
+		bindGauge(registry, INDEX_SEGMENTS, "Number of segments in the index", null, index, searcherSupplier, reader -> reader.leaves().size());
+		bindGauge(registry, INDEX_GENERATION, "Commit generation of the current index reader", null, index, searcherSupplier, reader -> {
+			try {
+				return ((DirectoryReader) reader).getIndexCommit().getGeneration();
+			} catch (IOException e) {
+				return Double.NaN;
+			}
+		});
+		bindGauge(registry, INDEX_SIZE, "Size of the files of the current index commit", "bytes", index, searcherSupplier, reader -> {
+			try {
+				DirectoryReader directoryReader = (DirectoryReader) reader;
+				Directory directory = directoryReader.directory();
+				long size = 0;
+				for (String file : directoryReader.getIndexCommit().getFileNames()) {
+					size += directory.fileLength(file);
+				}
+				return size;
+			} catch (IOException e) {
+				// A file of a replaced commit may already be deleted
+				return Double.NaN;
+			}
+		});
+	}
+
+	private static void bindGauge(MeterRegistry registry, String name, String description, String baseUnit, String index,
+			SearcherSupplier searcherSupplier, ToDoubleFunction<IndexReader> function) {
+
+		Gauge.builder(name, searcherSupplier, supplier -> {
+					try {
+						IndexSearcher searcher = supplier.get();
+						return searcher != null ? function.applyAsDouble(searcher.getIndexReader()) : Double.NaN;
+					} catch (IOException e) {
+						return Double.NaN;
+					}
+				})
+				.description(description)
+				.baseUnit(baseUnit)
+				.tag("index", index)
+				.strongReference(true)
+				.register(registry);
+	}
+
+	private interface SearcherSupplier {
+		IndexSearcher get() throws IOException;
+	}
+}
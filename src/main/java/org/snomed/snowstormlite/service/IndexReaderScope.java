@@ -0,0 +1,163 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.search.ReferenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Index readers in use by the request being processed on the current thread.
+ * The first search of an index within the scope acquires the current reader from the index's {@link ReferenceManager}, later searches
+ * of the same index use that reader, so a request sees one commit throughout. All readers are released when the scope ends,
+ * a reader replaced by a write or refresh is only closed once the last scope using it has ended.
+ * <p>
+ * Outside a scope the reader is released as soon as it has been acquired, so it may be closed by a refresh while still being searched.
+ * Work that is not part of a request, such as import and warm-up, opens its own scope.
+ */
+public final class IndexReaderScope {
+
+	private static final ThreadLocal<IndexReaderScope> CURRENT = new ThreadLocal<>();
+
+	private final Map<ReferenceManager<?>, Object> current = new HashMap<>();
+	private final List<Lease<?>> leases = new ArrayList<>();
+	private boolean closed;
+
+	private static final Logger logger = LoggerFactory.getLogger(IndexReaderScope.class);
+
+	private IndexReaderScope() {
+	}
+
+	/**
+	 * Opens a scope for the current thread. If a scope is already open, for example an operation within a batch,
+	 * the outer scope is kept and the returned scope does nothing when closed.
+	 */
+	public static Scope open() {
+		if (CURRENT.get() != null) {
+			return () -> {};
+		}
+		IndexReaderScope scope = new IndexReaderScope();
+		CURRENT.set(scope);
+		return () -> {
+			CURRENT.remove();
+			scope.releaseAll();
+		};
+	}
+
+	/**
+	 * @return the reference held by the scope of the current thread, acquiring the current reference of the manager on first use.
+	 */
+	static <G> G acquire(ReferenceManager<G> manager) throws IOException {
+		IndexReaderScope scope = CURRENT.get();
+		if (scope == null) {
+			return acquireAndRelease(manager);
+		}
+		synchronized (scope) {
+			if (scope.closed) {
+				// A task of the request that is still running after the request has ended
+				return acquireAndRelease(manager);
+			}
+			@SuppressWarnings("unchecked")
+			G reference = (G) scope.current.get(manager);
+			if (reference == null) {
+				reference = manager.acquire();
+				scope.leases.add(new Lease<>(manager, reference));
+				scope.current.put(manager, reference);
+			}
+			return reference;
+		}
+	}
+
+	private static <G> G acquireAndRelease(ReferenceManager<G> manager) throws IOException {
+		G reference = manager.acquire();
+		manager.release(reference);
+		return reference;
+	}
+
+	/**
+	 * Moves the scope of the current thread on to the latest reference of the manager, so that a request reads its own writes.
+	 * The previous reference is not released until the scope ends because it may still be in use further up the stack.
+	 */
+	static void renew(ReferenceManager<?> manager) {
+		IndexReaderScope scope = CURRENT.get();
+		if (scope != null) {
+			synchronized (scope) {
+				scope.current.remove(manager);
+			}
+		}
+	}
+
+	/**
+	 * Wraps a task so that it reads through the scope of the submitting thread. A task that is still running when the submitting thread
+	 * closes its scope, for example a cancelled ECL branch, reads as if outside a scope.
+	 */
+	public static Runnable wrap(Runnable runnable) {
+		IndexReaderScope scope = CURRENT.get();
+		if (scope == null) {
+			return runnable;
+		}
+		return () -> {
+			IndexReaderScope previous = CURRENT.get();
+			CURRENT.set(scope);
+			try {
+				runnable.run();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	public static <T> Callable<T> wrap(Callable<T> callable) {
+		IndexReaderScope scope = CURRENT.get();
+		if (scope == null) {
+			return callable;
+		}
+		return () -> {
+			IndexReaderScope previous = CURRENT.get();
+			CURRENT.set(scope);
+			try {
+				return callable.call();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	private static void restore(IndexReaderScope previous) {
+		if (previous != null) {
+			CURRENT.set(previous);
+		} else {
+			CURRENT.remove();
+		}
+	}
+
+	private synchronized void releaseAll() {
+		closed = true;
+		for (Lease<?> lease : leases) {
+			try {
+				lease.release();
+			} catch (IOException | RuntimeException e) {
+				logger.debug("Failed to release index reader.", e);
+			}
+		}
+		leases.clear();
+		current.clear();
+	}
+
+	private record Lease<G>(ReferenceManager<G> manager, G reference) {
+
+		void release() throws IOException {
+			manager.release(reference);
+		}
+	}
+
+	public interface Scope extends AutoCloseable {
+		@Override
+		void close();
+	}
+}
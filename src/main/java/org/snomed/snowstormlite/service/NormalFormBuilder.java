@@ -21,16 +21,7 @@ public class NormalFormBuilder {
 		Map<Integer, Set<FHIRRelationship>> relationships = concept.getRelationships();
 		Map<String, String> terms = null;
 		if (!terse) {
-			Set<String> codes = new HashSet<>(concept.getParentCodes());
-			for (Map.Entry<Integer, Set<FHIRRelationship>> group : relationships.entrySet()) {
-				for (FHIRRelationship relationship : group.getValue()) {
-					codes.add(relationship.getType().toString());
-					if (!relationship.isConcrete()) {
-						codes.add(relationship.getTarget().toString());
-					}
-				}
-			}
-			terms = new HashMap<>(termProvider.getTerms(codes, languageDialects));
+			terms = new HashMap<>(termProvider.getTerms(getReferencedCodes(concept), languageDialects));
 			terms.put(concept.getConceptId(), concept.getPT(languageDialects));
 		}
 
@@ -73,6 +64,22 @@ public class NormalFormBuilder {
 		return builder.toString();
 	}
 
+	/**
+	 * @return codes of the concepts that the normal form refers to, other than the concept itself.
+	 */
+	public static Set<String> getReferencedCodes(FHIRConcept concept) {
+		Set<String> codes = new HashSet<>(concept.getParentCodes());
+		for (Map.Entry<Integer, Set<FHIRRelationship>> group : concept.getRelationships().entrySet()) {
+			for (FHIRRelationship relationship : group.getValue()) {
+				codes.add(relationship.getType().toString());
+				if (!relationship.isConcrete()) {
+					codes.add(relationship.getTarget().toString());
+				}
+			}
+		}
+		return codes;
+	}
+
 	private static String getCode(String code, Map<String, String> terms) {
 		if (terms != null) {
 			return format("%s|%s|", code, terms.get(code));
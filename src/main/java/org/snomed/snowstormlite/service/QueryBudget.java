@@ -0,0 +1,145 @@
+package org.snomed.snowstormlite.service;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
+
+import java.util.concurrent.Callable;
+
+import static java.lang.String.format;
+
+/**
+ * Time and cardinality limits for the request being processed on the current thread.
+ * Checked at ECL materialisation points and around Lucene searches. When no budget is active, for example during import
+ * or warm-up, all checks pass.
+ */
+public final class QueryBudget {
+
+	private static final ThreadLocal<QueryBudget> CURRENT = new ThreadLocal<>();
+
+	private final String operation;
+	private final long timeoutMillis;
+	private final long deadlineNanos;
+	private final int maxConcepts;
+
+	private QueryBudget(String operation, long timeoutMillis, int maxConcepts) {
+		this.operation = operation;
+		this.timeoutMillis = timeoutMillis;
+		this.deadlineNanos = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1_000_000 : Long.MAX_VALUE;
+		this.maxConcepts = maxConcepts > 0 ? maxConcepts : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Starts a budget for the current thread. If a budget is already active the outer budget is kept and the returned scope
+	 * does nothing when closed.
+	 * @param timeoutMillis time limit, 0 for none.
+	 * @param maxConcepts maximum number of concepts materialised by a single step, 0 for none.
+	 */
+	public static Scope start(String operation, long timeoutMillis, int maxConcepts) {
+		if (CURRENT.get() != null) {
+			return () -> {};
+		}
+		CURRENT.set(new QueryBudget(operation, timeoutMillis, maxConcepts));
+		return CURRENT::remove;
+	}
+
+	/**
+	 * Starts a budget for the current thread in place of any active budget, which is restored when the scope is closed.
+	 * Used for the entries of a batch, which are limited as the operations they call rather than as the batch request.
+	 */
+	public static Scope replace(String operation, long timeoutMillis, int maxConcepts) {
+		QueryBudget previous = CURRENT.get();
+		CURRENT.set(new QueryBudget(operation, timeoutMillis, maxConcepts));
+		return () -> restore(previous);
+	}
+
+	public static QueryBudget current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return true if the budget of the current thread has run out of time. Used as the Lucene query timeout.
+	 */
+	public static boolean isTimedOut() {
+		QueryBudget budget = CURRENT.get();
+		return budget != null && System.nanoTime() > budget.deadlineNanos;
+	}
+
+	public static void checkTime() {
+		QueryBudget budget = CURRENT.get();
+		if (budget != null && System.nanoTime() > budget.deadlineNanos) {
+			throw FHIRHelper.exception(format("The %s request exceeded the time limit of %s ms. Please use a more specific query.",
+					budget.operation, budget.timeoutMillis), OperationOutcome.IssueType.TOOCOSTLY, 422);
+		}
+	}
+
+	public static void checkConcepts(int conceptCount) {
+		QueryBudget budget = CURRENT.get();
+		if (budget != null && conceptCount > budget.maxConcepts) {
+			throw FHIRHelper.exception(format("The %s request needs to process more than %s concepts in a single step, which exceeds the limit. " +
+					"Please use a more specific query.", budget.operation, budget.maxConcepts), OperationOutcome.IssueType.TOOCOSTLY, 422);
+		}
+	}
+
+	/**
+	 * @return the maximum number of hits to collect when materialising concepts, one more than the limit so that overflow can be detected.
+	 */
+	public static int conceptCollectionLimit() {
+		QueryBudget budget = CURRENT.get();
+		if (budget == null || budget.maxConcepts == Integer.MAX_VALUE) {
+			return Integer.MAX_VALUE;
+		}
+		return budget.maxConcepts + 1;
+	}
+
+	/**
+	 * Wraps a task so that it runs with the budget of the submitting thread.
+	 */
+	public static Runnable wrap(Runnable runnable) {
+		QueryBudget budget = CURRENT.get();
+		if (budget == null) {
+			return runnable;
+		}
+		return () -> {
+			QueryBudget previous = CURRENT.get();
+			CURRENT.set(budget);
+			try {
+				runnable.run();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	public static <T> Callable<T> wrap(Callable<T> callable) {
+		QueryBudget budget = CURRENT.get();
+		if (budget == null) {
+			return callable;
+		}
+		return () -> {
+			QueryBudget previous = CURRENT.get();
+			CURRENT.set(budget);
+			try {
+				return callable.call();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	private static void restore(QueryBudget previous) {
+		if (previous != null) {
+			CURRENT.set(previous);
+		} else {
+			CURRENT.remove();
+		}
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public interface Scope extends AutoCloseable {
+		@Override
+		void close();
+	}
+}
@@ -1,5 +1,7 @@
 package org.snomed.snowstormlite.service;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
@@ -8,8 +10,11 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.BytesRef;
 import org.snomed.snowstormlite.domain.FHIRConcept;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class QueryHelper {
@@ -33,4 +38,19 @@ public class QueryHelper {
 		List<BytesRef> collect = values.stream().map(value -> new BytesRef(value.toString())).collect(Collectors.toList());
 		return new TermInSetQuery(fieldName, collect);
 	}
+
+	/**
+	 * @return cache keys of the index segments that hold documents of the given type. The keys change when documents in those segments
+	 * are deleted or the segments are merged, but not when documents of other types are written to new segments.
+	 */
+	public static Set<Object> getLeafKeys(IndexReader reader, String docType) throws IOException {
+		Set<Object> keys = new HashSet<>();
+		Term typeTerm = new Term(TYPE, docType);
+		for (LeafReaderContext leaf : reader.leaves()) {
+			if (leaf.reader().docFreq(typeTerm) > 0) {
+				keys.add(RelationshipIndex.getReaderKey(leaf.reader()));
+			}
+		}
+		return keys;
+	}
 }
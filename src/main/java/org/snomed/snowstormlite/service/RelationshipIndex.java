@@ -0,0 +1,350 @@
+package org.snomed.snowstormlite.service;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.Bits;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Forward and reverse adjacency of the attribute relationships of all concepts in one index reader, held in compressed sparse row
+ * arrays so that ECL refinements and dotted attributes can be evaluated without decoding concept documents.
+ * <p>
+ * Concept ids are mapped to dense ordinals. The forward relationships of a concept are held between
+ * {@code forwardOffsets[ordinal]} and {@code forwardOffsets[ordinal + 1]}, with relationships of the same group next to each other.
+ * The reverse arrays hold the same relationships keyed by destination. Concrete value relationships are not included.
+ */
+public class RelationshipIndex {
+
+	private final Object readerKey;
+	private final long[] conceptIds;
+	private final Long2IntOpenHashMap ordinals;
+	private final int[] forwardOffsets;
+	private final int[] forwardTypes;
+	private final int[] forwardDestinations;
+	private final int[] forwardGroups;
+	private final int[] reverseOffsets;
+	private final int[] reverseTypes;
+	private final int[] reverseSources;
+
+	private RelationshipIndex(Object readerKey, long[] conceptIds, Long2IntOpenHashMap ordinals, LongArrayList sources, LongArrayList types,
+			LongArrayList destinations, IntArrayList groups) {
+
+		this.readerKey = readerKey;
+		this.conceptIds = conceptIds;
+		this.ordinals = ordinals;
+		int conceptCount = conceptIds.length;
+		int relationshipCount = sources.size();
+
+		forwardOffsets = new int[conceptCount + 1];
+		reverseOffsets = new int[conceptCount + 1];
+		int[] sourceOrdinals = new int[relationshipCount];
+		int[] typeOrdinals = new int[relationshipCount];
+		int[] destinationOrdinals = new int[relationshipCount];
+		for (int i = 0; i < relationshipCount; i++) {
+			sourceOrdinals[i] = ordinals.get(sources.getLong(i));
+			typeOrdinals[i] = ordinals.get(types.getLong(i));
+			destinationOrdinals[i] = ordinals.get(destinations.getLong(i));
+			forwardOffsets[sourceOrdinals[i] + 1]++;
+			reverseOffsets[destinationOrdinals[i] + 1]++;
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			forwardOffsets[i + 1] += forwardOffsets[i];
+			reverseOffsets[i + 1] += reverseOffsets[i];
+		}
+
+		// Counting sort keeps the input order within each concept, so groups stay together
+		forwardTypes = new int[relationshipCount];
+		forwardDestinations = new int[relationshipCount];
+		forwardGroups = new int[relationshipCount];
+		reverseTypes = new int[relationshipCount];
+		reverseSources = new int[relationshipCount];
+		int[] forwardNext = Arrays.copyOf(forwardOffsets, conceptCount);
+		int[] reverseNext = Arrays.copyOf(reverseOffsets, conceptCount);
+		for (int i = 0; i < relationshipCount; i++) {
+			int forward = forwardNext[sourceOrdinals[i]]++;
+			forwardTypes[forward] = typeOrdinals[i];
+			forwardDestinations[forward] = destinationOrdinals[i];
+			forwardGroups[forward] = groups.getInt(i);
+			int reverse = reverseNext[destinationOrdinals[i]]++;
+			reverseTypes[reverse] = typeOrdinals[i];
+			reverseSources[reverse] = sourceOrdinals[i];
+		}
+	}
+
+	/**
+	 * Reads the stored relationships of every concept document in the reader of the given searcher.
+	 */
+	public static RelationshipIndex build(IndexSearcher indexSearcher) throws IOException {
+		IndexReader reader = indexSearcher.getIndexReader();
+		LongOpenHashSet ids = new LongOpenHashSet();
+		LongArrayList sources = new LongArrayList();
+		LongArrayList types = new LongArrayList();
+		LongArrayList destinations = new LongArrayList();
+		IntArrayList groups = new IntArrayList();
+
+		Query conceptQuery = new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE));
+		Weight weight = indexSearcher.createWeight(indexSearcher.rewrite(conceptQuery), ScoreMode.COMPLETE_NO_SCORES, 1);
+		Set<String> fields = Set.of(FHIRConcept.FieldNames.ID, FHIRConcept.FieldNames.REL_STORED);
+		for (LeafReaderContext leaf : reader.leaves()) {
+			Scorer scorer = weight.scorer(leaf);
+			if (scorer == null) {
+				continue;
+			}
+			Bits liveDocs = leaf.reader().getLiveDocs();
+			StoredFields storedFields = leaf.reader().storedFields();
+			DocIdSetIterator iterator = scorer.iterator();
+			for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+				if (liveDocs != null && !liveDocs.get(doc)) {
+					continue;
+				}
+				Document conceptDoc = storedFields.document(doc, fields);
+				long sourceId = Long.parseLong(conceptDoc.get(FHIRConcept.FieldNames.ID));
+				ids.add(sourceId);
+				String serialisedRels = conceptDoc.get(FHIRConcept.FieldNames.REL_STORED);
+				if (serialisedRels == null || serialisedRels.isEmpty()) {
+					continue;
+				}
+				// Format written by CodeSystemRepository: {group}{{type}={destination or value},...}|...
+				for (String group : serialisedRels.split("\\|")) {
+					int brace = group.indexOf('{');
+					int groupNum = Integer.parseInt(group.substring(0, brace));
+					for (String rel : group.substring(brace + 1, group.length() - 1).split(",")) {
+						int equals = rel.indexOf('=');
+						String value = rel.substring(equals + 1);
+						if (value.startsWith("#") || value.startsWith("\"")) {
+							continue;
+						}
+						long type = Long.parseLong(rel.substring(0, equals));
+						long destination = Long.parseLong(value);
+						sources.add(sourceId);
+						types.add(type);
+						destinations.add(destination);
+						groups.add(groupNum);
+						ids.add(type);
+						ids.add(destination);
+					}
+				}
+			}
+		}
+
+		long[] conceptIds = ids.toLongArray();
+		Arrays.sort(conceptIds);
+		Long2IntOpenHashMap ordinals = new Long2IntOpenHashMap(conceptIds.length);
+		ordinals.defaultReturnValue(-1);
+		for (int i = 0; i < conceptIds.length; i++) {
+			ordinals.put(conceptIds[i], i);
+		}
+		return new RelationshipIndex(getReaderKey(reader), conceptIds, ordinals, sources, types, destinations, groups);
+	}
+
+	static Object getReaderKey(IndexReader reader) {
+		IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+		return cacheHelper != null ? cacheHelper.getKey() : reader;
+	}
+
+	boolean isFor(IndexReader reader) {
+		return readerKey == getReaderKey(reader);
+	}
+
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+
+	public int getRelationshipCount() {
+		return forwardTypes.length;
+	}
+
+	/**
+	 * @return the ordinals of the given concepts, ignoring concepts that are not in the index.
+	 */
+	public IntSet toOrdinals(Collection<Long> conceptIds) {
+		IntSet ordinalSet = new IntOpenHashSet(conceptIds.size());
+		for (Long conceptId : conceptIds) {
+			int ordinal = ordinals.get(conceptId.longValue());
+			if (ordinal != -1) {
+				ordinalSet.add(ordinal);
+			}
+		}
+		return ordinalSet;
+	}
+
+	/**
+	 * Follows relationships from the source concepts, as used by dotted attributes.
+	 * @param sourceIds source concepts, or null for all concepts.
+	 * @param typeIds relationship types to follow, or null for any type.
+	 * @return the destinations of the matching relationships.
+	 */
+	public Set<Long> getDestinations(Collection<Long> sourceIds, Collection<Long> typeIds) {
+		IntSet typeOrdinals = typeIds != null ? toOrdinals(typeIds) : null;
+		Set<Long> destinationIds = new LongOpenHashSet();
+		if (sourceIds == null) {
+			for (int ordinal = 0; ordinal < conceptIds.length; ordinal++) {
+				addDestinations(ordinal, typeOrdinals, destinationIds);
+			}
+		} else {
+			for (Long sourceId : sourceIds) {
+				int ordinal = ordinals.get(sourceId.longValue());
+				if (ordinal != -1) {
+					addDestinations(ordinal, typeOrdinals, destinationIds);
+				}
+			}
+		}
+		return destinationIds;
+	}
+
+	private void addDestinations(int ordinal, IntSet typeOrdinals, Set<Long> destinationIds) {
+		for (int i = forwardOffsets[ordinal]; i < forwardOffsets[ordinal + 1]; i++) {
+			if (typeOrdinals == null || typeOrdinals.contains(forwardTypes[i])) {
+				destinationIds.add(conceptIds[forwardDestinations[i]]);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of forward relationships between the two positions that match.
+	 */
+	public int countForward(int start, int end, AttributeMatcher matcher) {
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			if (matcher.matches(forwardTypes[i], forwardDestinations[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Wraps a predicate that tests the relationships of one group into a predicate that tests the number of matching groups of a concept.
+	 * Ungrouped relationships are each treated as a group of their own.
+	 */
+	public RelationshipsPredicate groupCardinality(RelationshipsPredicate groupPredicate, int min, Integer max) {
+		return (start, end) -> {
+			int matchingGroups = 0;
+			int groupStart = start;
+			while (groupStart < end) {
+				int group = forwardGroups[groupStart];
+				int groupEnd = groupStart + 1;
+				if (group != 0) {
+					while (groupEnd < end && forwardGroups[groupEnd] == group) {
+						groupEnd++;
+					}
+				}
+				if (groupPredicate.test(groupStart, groupEnd)) {
+					matchingGroups++;
+				}
+				groupStart = groupEnd;
+			}
+			return inRange(matchingGroups, min, max);
+		};
+	}
+
+	/**
+	 * Tests the forward relationships of every concept.
+	 */
+	public Matches match(RelationshipsPredicate predicate) {
+		boolean matchesEmpty = predicate.test(0, 0);
+		Set<Long> ids = new LongOpenHashSet();
+		for (int ordinal = 0; ordinal < conceptIds.length; ordinal++) {
+			int start = forwardOffsets[ordinal];
+			int end = forwardOffsets[ordinal + 1];
+			if (start != end && predicate.test(start, end) != matchesEmpty) {
+				ids.add(conceptIds[ordinal]);
+			}
+		}
+		return new Matches(ids, matchesEmpty);
+	}
+
+	/**
+	 * Finds concepts by the number of matching relationships pointing at them, as used by reverse attributes.
+	 * The attribute value of the matcher is tested against the relationship source.
+	 */
+	public Matches matchReverse(AttributeMatcher matcher, int min, Integer max) {
+		boolean matchesEmpty = inRange(0, min, max);
+		Set<Long> ids = new LongOpenHashSet();
+		for (int ordinal = 0; ordinal < conceptIds.length; ordinal++) {
+			int start = reverseOffsets[ordinal];
+			int end = reverseOffsets[ordinal + 1];
+			if (start == end) {
+				continue;
+			}
+			int count = 0;
+			for (int i = start; i < end; i++) {
+				if (matcher.matches(reverseTypes[i], reverseSources[i])) {
+					count++;
+				}
+			}
+			if (inRange(count, min, max) != matchesEmpty) {
+				ids.add(conceptIds[ordinal]);
+			}
+		}
+		return new Matches(ids, matchesEmpty);
+	}
+
+	public static boolean inRange(int count, int min, Integer max) {
+		return count >= min && (max == null || count <= max);
+	}
+
+	/**
+	 * Tests the forward relationships held between two positions of the index.
+	 */
+	@FunctionalInterface
+	public interface RelationshipsPredicate {
+		boolean test(int start, int end);
+	}
+
+	/**
+	 * Matches relationships by type and attribute value, using ordinals.
+	 * @param types type ordinals, null for any type.
+	 * @param values value ordinals, null for any value.
+	 * @param valuesExcluded true if the value must not be one of the values, for the '!=' comparison operator.
+	 */
+	public record AttributeMatcher(IntSet types, IntSet values, boolean valuesExcluded) {
+
+		public boolean matches(int type, int value) {
+			return (types == null || types.contains(type)) && (values == null || values.contains(value) != valuesExcluded);
+		}
+	}
+
+	/**
+	 * Concepts matched by a relationship predicate.
+	 * @param conceptIds the matching concepts or, when {@code excluded} is true, the concepts that do not match.
+	 * @param excluded true if the predicate also matches concepts without relationships, so the non-matching concepts are listed instead.
+	 */
+	public record Matches(Set<Long> conceptIds, boolean excluded) {
+
+		/**
+		 * Counts the matching concepts against the concept limit of the current budget.
+		 * Excluded matches are not counted, the complement is answered by the query without collecting the concepts.
+		 */
+		public void checkBudget() {
+			if (!excluded) {
+				QueryBudget.checkConcepts(conceptIds.size());
+			}
+		}
+
+		public void addTo(BooleanQuery.Builder builder) {
+			Query idQuery = QueryHelper.termsQueryFromLongs(FHIRConcept.FieldNames.ID, conceptIds);
+			if (excluded) {
+				builder.add(new MatchAllDocsQuery(), BooleanClause.Occur.FILTER);
+				builder.add(idQuery, BooleanClause.Occur.MUST_NOT);
+			} else {
+				builder.add(idQuery, BooleanClause.Occur.MUST);
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.snomed.snowstormlite.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lets concurrent identical requests share one computation. The first caller with a key computes the result, callers arriving with
+ * the same key while it is running wait for it instead of repeating the work. Nothing is kept once the computation has finished,
+ * this is not a cache.
+ * <p>
+ * Keys must hold the normalised operation parameters and the version of each index the result is read from, so that a request
+ * arriving after an import or a resource update never joins a computation that started before it.
+ * <p>
+ * The time a caller spends waiting for another caller's computation is recorded as the coalesced phase of its {@link RequestProfile}.
+ */
+@Service
+public class RequestCoalescer {
+
+	private final boolean enabled;
+	private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+	public RequestCoalescer(@Value("${search.request-coalescing.enabled:true}") boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param key compared using equals, for example a list of the operation name, index versions and parameters.
+	 * @param copier applied to the shared result for every caller, including the one that computed it,
+	 * so that callers can modify the result they are given.
+	 * @return the result of the computation, or of the identical computation already running.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(Object key, Computation<T> computation, UnaryOperator<T> copier) throws IOException {
+		if (!enabled) {
+			return computation.compute();
+		}
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			// The phases of the shared computation are timed in the profile of the first caller only
+			RequestProfile.put("coalesced", true);
+			Object shared;
+			try (RequestProfile.Phase ignored = RequestProfile.phase("coalesced")) {
+				shared = await(existing);
+			}
+			return copier.apply((T) shared);
+		}
+		try {
+			T result = computation.compute();
+			future.complete(result);
+			return copier.apply(result);
+		} catch (IOException | RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an identical request.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException ioException) {
+				throw ioException;
+			}
+			if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (cause instanceof Error error) {
+				throw error;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return the number of distinct computations currently running.
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	public interface Computation<T> {
+		T compute() throws IOException;
+	}
+}
@@ -0,0 +1,177 @@
+package org.snomed.snowstormlite.service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Context and phase timings of the request being processed on the current thread, for the slow-request log and the Server-Timing header.
+ * Services add the parameters that make a request reproducible and time their expensive phases. When no profile is active,
+ * for example during import or warm-up, everything is ignored.
+ */
+public final class RequestProfile {
+
+	private static final ThreadLocal<RequestProfile> CURRENT = new ThreadLocal<>();
+
+	private final String operation;
+	private final boolean serverTiming;
+	private final long startNanos;
+	private final Map<String, Object> context = new LinkedHashMap<>();
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+	private final Set<String> runningPhases = new HashSet<>();
+	private String openPhase;
+	private long openPhaseStartNanos;
+
+	private RequestProfile(String operation, boolean serverTiming) {
+		this.operation = operation;
+		this.serverTiming = serverTiming;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Starts a profile for the current thread. If a profile is already active, for example an operation within a batch,
+	 * the outer profile is kept and the returned scope does nothing when closed.
+	 */
+	public static Scope start(String operation) {
+		return start(operation, false);
+	}
+
+	/**
+	 * Starts a profile for the current thread, see {@link #start(String)}.
+	 * @param serverTiming whether the phase timings should be returned to the client in a Server-Timing header.
+	 */
+	public static Scope start(String operation, boolean serverTiming) {
+		RequestProfile outer = CURRENT.get();
+		if (outer != null) {
+			return new Scope(outer, false);
+		}
+		RequestProfile profile = new RequestProfile(operation, serverTiming);
+		CURRENT.set(profile);
+		return new Scope(profile, true);
+	}
+
+	/**
+	 * Records a request parameter or result value, such as the ValueSet URL or the total number of hits. Null values are ignored.
+	 */
+	public static void put(String name, Object value) {
+		RequestProfile profile = CURRENT.get();
+		if (profile != null && value != null) {
+			profile.context.put(name, value);
+		}
+	}
+
+	/**
+	 * Times a phase of the request, use with try-with-resources. Time of phases with the same name is added together.
+	 * A phase started while a phase with the same name is running, for example a search within the ECL of a search, is ignored
+	 * so that time is not counted twice. Phases with different names may overlap, such as ecl-parse within query-build,
+	 * so the phase times can add up to more than the total.
+	 */
+	public static Phase phase(String name) {
+		RequestProfile profile = CURRENT.get();
+		if (profile == null || !profile.runningPhases.add(name)) {
+			return () -> {};
+		}
+		long start = System.nanoTime();
+		return () -> {
+			profile.runningPhases.remove(name);
+			profile.phaseNanos.merge(name, System.nanoTime() - start, Long::sum);
+		};
+	}
+
+	/**
+	 * Starts a phase that lasts until the end of the request, for example writing the response.
+	 */
+	public static void startFinalPhase(String name) {
+		RequestProfile profile = CURRENT.get();
+		if (profile != null && profile.openPhase == null) {
+			profile.openPhase = name;
+			profile.openPhaseStartNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Formats the phases completed so far as a Server-Timing header value, followed by the total time since the request started,
+	 * for example "query-build;dur=1.5, search;dur=12.25, total;dur=15.1". Phases that are still open are not included.
+	 * @return the header value, or null if no profile is active or the client did not ask for server timing.
+	 */
+	public static String getServerTimingHeader() {
+		RequestProfile profile = CURRENT.get();
+		if (profile == null || !profile.serverTiming) {
+			return null;
+		}
+		StringBuilder header = new StringBuilder();
+		profile.getPhaseMillis().forEach((name, millis) -> header.append(name).append(";dur=").append(millis).append(", "));
+		return header.append("total;dur=").append(toMillis(System.nanoTime() - profile.startNanos)).toString();
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public Map<String, Object> getContext() {
+		return new LinkedHashMap<>(context);
+	}
+
+	/**
+	 * @return the time of each phase in milliseconds, in the order the phases were first completed.
+	 */
+	public Map<String, Double> getPhaseMillis() {
+		Map<String, Double> millis = new LinkedHashMap<>();
+		phaseNanos.forEach((name, nanos) -> millis.put(name, toMillis(nanos)));
+		return millis;
+	}
+
+	private void finish() {
+		if (openPhase != null) {
+			phaseNanos.merge(openPhase, System.nanoTime() - openPhaseStartNanos, Long::sum);
+			openPhase = null;
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 10_000.0) / 100.0;
+	}
+
+	public interface Phase extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	public static final class Scope implements AutoCloseable {
+
+		private final RequestProfile profile;
+		private final boolean owner;
+
+		private Scope(RequestProfile profile, boolean owner) {
+			this.profile = profile;
+			this.owner = owner;
+		}
+
+		/**
+		 * Ends the request, closing any final phase.
+		 * @return the profile, or null if this scope did not start it.
+		 */
+		public RequestProfile end() {
+			if (!owner) {
+				return null;
+			}
+			profile.finish();
+			return profile;
+		}
+
+		/**
+		 * @return the time since the profile was started, in milliseconds.
+		 */
+		public long getElapsedMillis() {
+			return (System.nanoTime() - profile.startNanos) / 1_000_000;
+		}
+
+		@Override
+		public void close() {
+			if (owner) {
+				CURRENT.remove();
+			}
+		}
+	}
+}
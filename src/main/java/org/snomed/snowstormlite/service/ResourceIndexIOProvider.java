@@ -0,0 +1,152 @@
+package org.snomed.snowstormlite.service;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Lucene index for the FHIR resources authored through the API, ValueSets and ConceptMaps, kept apart from the SNOMED CT index
+ * of {@link IndexIOProvider}. Writing a resource reopens only this small index, so the reader of the SNOMED CT index, and the query cache
+ * and adjacency indexes built for that reader, are not replaced. Imports do not touch this index.
+ * <p>
+ * The index is created empty on startup if it does not exist, so it can always be searched, even before SNOMED CT has been loaded.
+ */
+@Service
+public class ResourceIndexIOProvider {
+
+	private final FSDirectory indexDirectory;
+	private final Object writeLock = new Object();
+	private final SearcherManager searcherManager;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public ResourceIndexIOProvider(@Value("${index.resources.path}") String indexPath) throws IOException {
+		File indexDirFile = new File(indexPath);
+		if (!indexDirFile.exists()) {
+			if (!indexDirFile.mkdirs()) {
+				logger.error("Failed to create resource index directory '{}'", indexDirFile.getAbsoluteFile());
+			}
+		}
+		indexDirectory = FSDirectory.open(indexDirFile.toPath());
+		if (!DirectoryReader.indexExists(indexDirectory)) {
+			try (IndexWriter indexWriter = IndexIOProvider.openIndexWriter(indexDirectory, newIndexWriterConfig())) {
+				indexWriter.commit();
+			}
+		}
+		searcherManager = new SearcherManager(DirectoryReader.open(indexDirectory), new SearcherFactory() {
+			@Override
+			public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+				IndexSearcher searcher = new IndexSearcher(reader);
+				// Resource queries are cheap on an index this size, keep them out of Lucene's shared default cache
+				searcher.setQueryCache(null);
+				return searcher;
+			}
+		});
+	}
+
+	public void writeDocument(Document document) throws IOException {
+		writeDocuments(Collections.singleton(document));
+	}
+
+	public void writeDocuments(Collection<Document> documents) throws IOException {
+		update(indexWriter -> indexWriter.addDocuments(documents));
+	}
+
+	public void deleteDocuments(Query query) throws IOException {
+		update(indexWriter -> indexWriter.deleteDocuments(query));
+	}
+
+	/**
+	 * Applies deletes and additions through one index writer so that they are committed together.
+	 * Nothing is committed if the update throws.
+	 */
+	public void update(IndexIOProvider.IndexUpdate update) throws IOException {
+		synchronized (writeLock) {
+			IndexWriter indexWriter = IndexIOProvider.openIndexWriter(indexDirectory, newIndexWriterConfig());
+			try {
+				update.apply(indexWriter);
+			} catch (IOException | RuntimeException e) {
+				indexWriter.rollback();
+				throw e;
+			}
+			indexWriter.close();
+			searcherManager.maybeRefreshBlocking();
+			IndexReaderScope.renew(searcherManager);
+		}
+	}
+
+	/**
+	 * Reopens the searcher if a newer commit exists, for example one written by another instance sharing the same volume.
+	 * As with the SNOMED CT index, the replaced reader is closed when the last {@link IndexReaderScope} using it ends.
+	 * @return true if a new searcher was opened.
+	 */
+	public boolean refreshIfChanged() throws IOException {
+		synchronized (writeLock) {
+			IndexSearcher before = peek();
+			searcherManager.maybeRefreshBlocking();
+			return peek() != before;
+		}
+	}
+
+	/**
+	 * @return the current searcher, for comparison only as it is released straight away.
+	 */
+	private IndexSearcher peek() throws IOException {
+		IndexSearcher searcher = searcherManager.acquire();
+		searcherManager.release(searcher);
+		return searcher;
+	}
+
+	private static IndexWriterConfig newIndexWriterConfig() {
+		return new IndexWriterConfig(new StandardAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+	}
+
+	/**
+	 * Searchers are acquired through the {@link IndexReaderScope} of the current thread.
+	 */
+	public IndexSearcher getIndexSearcher() throws IOException {
+		return IndexReaderScope.acquire(searcherManager);
+	}
+
+	/**
+	 * @return the version of the current reader, which changes with every write to this index.
+	 */
+	public long getIndexVersion() throws IOException {
+		return ((DirectoryReader) getIndexSearcher().getIndexReader()).getVersion();
+	}
+
+	/**
+	 * @return the time of the commit that the current reader was opened on, or 0 if the commit was made before the time was recorded.
+	 */
+	public long getLastModified() throws IOException {
+		return IndexIOProvider.getCommitTime((DirectoryReader) getIndexSearcher().getIndexReader());
+	}
+
+	public Path getIndexPath() {
+		return indexDirectory.getDirectory();
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		searcherManager.close();
+	}
+}
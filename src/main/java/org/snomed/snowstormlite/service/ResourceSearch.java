@@ -0,0 +1,74 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
+
+import java.util.List;
+import java.util.Locale;
+
+import static java.lang.String.format;
+
+/**
+ * Search parameters for listing stored canonical resources, such as ValueSets and ConceptMaps.
+ * All parameters are optional. Name and title match the start of the value ignoring case, the others match the whole value.
+ */
+public record ResourceSearch(String url, String version, String name, String status, String title, int offset, int count) {
+
+	public static final int DEFAULT_COUNT = 100;
+	public static final int MAX_COUNT = 10_000;
+
+	/**
+	 * @param offset may be null for the first page.
+	 * @param count may be null for the default page size.
+	 */
+	public static ResourceSearch of(String url, String version, String name, String status, String title, Integer offset, Integer count) {
+		if (offset != null && offset < 0) {
+			throw FHIRHelper.exception("_offset must not be negative.", OperationOutcome.IssueType.INVALID, 400);
+		}
+		if (count != null && (count < 0 || count > MAX_COUNT)) {
+			throw FHIRHelper.exception(format("_count must be between 0 and %s.", MAX_COUNT), OperationOutcome.IssueType.INVALID, 400);
+		}
+		return new ResourceSearch(url, version, name, status, title, offset != null ? offset : 0, count != null ? count : DEFAULT_COUNT);
+	}
+
+	/**
+	 * @return true if the value of a string parameter, name or title, matches the search value.
+	 */
+	public static boolean startsWith(String value, String searchValue) {
+		return searchValue == null || (value != null && value.toLowerCase(Locale.ROOT).startsWith(searchValue.toLowerCase(Locale.ROOT)));
+	}
+
+	/**
+	 * Value to index for a string parameter, name or title.
+	 */
+	static String toSearchValue(String value) {
+		return value.toLowerCase(Locale.ROOT);
+	}
+
+	static void addTermFilter(BooleanQuery.Builder builder, String field, String value) {
+		if (value != null) {
+			builder.add(QueryHelper.termQuery(field, value), BooleanClause.Occur.FILTER);
+		}
+	}
+
+	static void addStartsWithFilter(BooleanQuery.Builder builder, String searchField, String value) {
+		if (value != null) {
+			builder.add(new PrefixQuery(new Term(searchField, toSearchValue(value))), BooleanClause.Occur.FILTER);
+		}
+	}
+
+	/**
+	 * One page of search results.
+	 * @param total number of resources matching the search, on all pages.
+	 */
+	public record Page<T>(List<T> resources, int total) {
+
+		public static <T> Page<T> empty() {
+			return new Page<>(List.of(), 0);
+		}
+	}
+}
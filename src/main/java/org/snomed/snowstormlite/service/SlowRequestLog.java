@@ -0,0 +1,92 @@
+package org.snomed.snowstormlite.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.config.SlowRequestLogConfiguration;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records requests that take longer than the threshold of their operation, with the context captured in their {@link RequestProfile}.
+ * Entries are written as JSON lines to the slow-requests logger, which has its own rolling file, and the most recent entries
+ * are kept in memory for the dashboard.
+ */
+@Service
+public class SlowRequestLog {
+
+	private static final Logger slowRequestLogger = LoggerFactory.getLogger("slow-requests");
+
+	private final SlowRequestLogConfiguration configuration;
+	private final ObjectMapper objectMapper;
+	private final Deque<Entry> recentEntries = new ArrayDeque<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public SlowRequestLog(SlowRequestLogConfiguration configuration, ObjectMapper objectMapper) {
+		this.configuration = configuration;
+		this.objectMapper = objectMapper;
+	}
+
+	public boolean isEnabled() {
+		return configuration.isEnabled();
+	}
+
+	/**
+	 * Logs the request if it was slow and is selected by the sample rate.
+	 * @param request method, path and query string of the request.
+	 * @return true if the request was logged.
+	 */
+	public boolean record(RequestProfile profile, String request, long durationMillis) {
+		Long thresholdMs = configuration.getThresholdMs(profile.getOperation());
+		if (!configuration.isEnabled() || thresholdMs == null || durationMillis < thresholdMs) {
+			return false;
+		}
+		double sampleRate = configuration.getSampleRate();
+		if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return false;
+		}
+		Entry entry = new Entry(Instant.now().toString(), profile.getOperation(), request, durationMillis, profile.getContext(), profile.getPhaseMillis());
+		synchronized (recentEntries) {
+			recentEntries.addFirst(entry);
+			while (recentEntries.size() > Math.max(configuration.getBufferSize(), 0)) {
+				recentEntries.removeLast();
+			}
+		}
+		try {
+			slowRequestLogger.info(objectMapper.writeValueAsString(entry));
+		} catch (JsonProcessingException e) {
+			logger.warn("Failed to write slow request log entry.", e);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the most recent slow requests, newest first.
+	 */
+	public List<Entry> getRecentEntries() {
+		synchronized (recentEntries) {
+			return new ArrayList<>(recentEntries);
+		}
+	}
+
+	public void clear() {
+		synchronized (recentEntries) {
+			recentEntries.clear();
+		}
+	}
+
+	/**
+	 * @param phases time of each phase in milliseconds.
+	 */
+	public record Entry(String timestamp, String operation, String request, long durationMs, Map<String, Object> context, Map<String, Double> phases) {
+	}
+}
@@ -2,6 +2,7 @@ package org.snomed.snowstormlite.service;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class SnomedIdentifierHelper {
@@ -12,6 +13,24 @@ public class SnomedIdentifierHelper {
 		return sctid != null && SCTID_PATTERN.matcher(sctid).matches() && "0".equals(getPartitionIdPart(sctid));
 	}
 
+	/**
+	 * @return the codes as concept ids, or null if there are no codes or any code is not a concept id.
+	 */
+	public static long[] toConceptIds(List<String> codes) {
+		if (codes == null || codes.isEmpty()) {
+			return null;
+		}
+		long[] conceptIds = new long[codes.size()];
+		for (int i = 0; i < conceptIds.length; i++) {
+			String code = codes.get(i);
+			if (!isConceptId(code)) {
+				return null;
+			}
+			conceptIds[i] = Long.parseLong(code);
+		}
+		return conceptIds;
+	}
+
 	private static String getPartitionIdPart(String sctid) {
 		return !StringUtils.isEmpty(sctid) && sctid.length() > 4 ? sctid.substring(sctid.length() - 2, sctid.length() - 1) : null;
 	}
@@ -0,0 +1,93 @@
+package org.snomed.snowstormlite.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Micrometer meters for the terminology operations, published by the actuator, for example at /actuator/prometheus.
+ * <ul>
+ *     <li>{@value #OPERATION} - time taken by each operation, tagged by operation and outcome.</li>
+ *     <li>{@value #OPERATION_RESULTS} - number of results returned by each operation.</li>
+ *     <li>{@value #OPERATION_HITS} - number of Lucene hits behind the results of each operation.</li>
+ * </ul>
+ * Index gauges are published by {@link IndexMetrics}. Histogram buckets and SLO boundaries are set through the standard
+ * management.metrics.distribution properties.
+ */
+@Service
+public class TerminologyMetrics {
+
+	public static final String OPERATION = "snowstorm.operation";
+	public static final String OPERATION_RESULTS = "snowstorm.results";
+	public static final String OPERATION_HITS = "snowstorm.lucene.hits";
+
+	private final MeterRegistry registry;
+
+	@Autowired
+	public TerminologyMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+		// A simple registry keeps the instrumentation working where the actuator is not configured
+		this(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+	}
+
+	public TerminologyMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Times an operation, recording the outcome as success or error.
+	 * @param operation name of the operation, for example expand or lookup.
+	 */
+	public <T, E extends Exception> T time(String operation, TimedOperation<T, E> timedOperation) throws E {
+		Timer.Sample sample = start();
+		boolean success = false;
+		try {
+			T result = timedOperation.run();
+			success = true;
+			return result;
+		} finally {
+			stop(sample, operation, success);
+		}
+	}
+
+	/**
+	 * Starts timing an operation that can not be passed to {@link #time(String, TimedOperation)}, the sample must be passed to
+	 * {@link #stop(Timer.Sample, String, boolean)} when the operation ends.
+	 */
+	public Timer.Sample start() {
+		return Timer.start(registry);
+	}
+
+	public void stop(Timer.Sample sample, String operation, boolean success) {
+		sample.stop(Timer.builder(OPERATION)
+				.description("Time taken by terminology operations")
+				.tag("operation", operation)
+				.tag("outcome", success ? "success" : "error")
+				.register(registry));
+	}
+
+	public void recordResults(String operation, long results) {
+		DistributionSummary.builder(OPERATION_RESULTS)
+				.description("Number of results returned by terminology operations")
+				.baseUnit("results")
+				.tag("operation", operation)
+				.register(registry)
+				.record(results);
+	}
+
+	public void recordHits(String operation, long hits) {
+		DistributionSummary.builder(OPERATION_HITS)
+				.description("Number of Lucene hits behind the results of terminology operations")
+				.baseUnit("hits")
+				.tag("operation", operation)
+				.register(registry)
+				.record(hits);
+	}
+
+	public interface TimedOperation<T, E extends Exception> {
+		T run() throws E;
+	}
+}
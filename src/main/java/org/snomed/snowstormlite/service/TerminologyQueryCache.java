@@ -0,0 +1,67 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.Query;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Query cache shared by all index searchers, so that filter bitsets such as the concept type clause and popular ECL fragments
+ * survive across requests. Keeps hit, miss, cache and eviction counts per query type.
+ */
+public class TerminologyQueryCache extends LRUQueryCache {
+
+	private final Map<String, Counters> countersByType = new ConcurrentHashMap<>();
+
+	public TerminologyQueryCache(int maxSize, long maxRamBytesUsed, int minSegmentDocs, float skipCacheFactor) {
+		super(maxSize, maxRamBytesUsed, leaf -> leaf.reader().maxDoc() >= minSegmentDocs, skipCacheFactor);
+	}
+
+	@Override
+	protected void onHit(Object readerCoreKey, Query query) {
+		super.onHit(readerCoreKey, query);
+		getCounters(query).hits.increment();
+	}
+
+	@Override
+	protected void onMiss(Object readerCoreKey, Query query) {
+		super.onMiss(readerCoreKey, query);
+		getCounters(query).misses.increment();
+	}
+
+	@Override
+	protected void onQueryCache(Query query, long ramBytesUsed) {
+		super.onQueryCache(query, ramBytesUsed);
+		getCounters(query).cached.increment();
+	}
+
+	@Override
+	protected void onQueryEviction(Query query, long ramBytesUsed) {
+		super.onQueryEviction(query, ramBytesUsed);
+		getCounters(query).evicted.increment();
+	}
+
+	public Map<String, QueryTypeStats> getStatsByQueryType() {
+		Map<String, QueryTypeStats> stats = new TreeMap<>();
+		countersByType.forEach((type, counters) -> stats.put(type, new QueryTypeStats(
+				counters.hits.sum(), counters.misses.sum(), counters.cached.sum(), counters.evicted.sum())));
+		return stats;
+	}
+
+	private Counters getCounters(Query query) {
+		return countersByType.computeIfAbsent(query.getClass().getSimpleName(), type -> new Counters());
+	}
+
+	public record QueryTypeStats(long hits, long misses, long cached, long evicted) {
+	}
+
+	private static final class Counters {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder cached = new LongAdder();
+		private final LongAdder evicted = new LongAdder();
+	}
+}
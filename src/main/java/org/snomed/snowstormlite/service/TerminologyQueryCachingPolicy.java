@@ -0,0 +1,67 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the configured query types once they have been used a minimum number of times within a recent history window.
+ * Unlike Lucene's default policy this allows single term queries to be cached, because the concept type clause is part of nearly every query.
+ */
+public class TerminologyQueryCachingPolicy implements QueryCachingPolicy {
+
+	private final Set<String> queryTypes;
+	private final int minFrequency;
+	private final int[] history;
+	private final Map<Integer, Integer> frequencies;
+	private int position;
+	private int size;
+
+	public TerminologyQueryCachingPolicy(Set<String> queryTypes, int minFrequency, int historySize) {
+		this.queryTypes = queryTypes;
+		this.minFrequency = minFrequency;
+		this.history = new int[Math.max(1, historySize)];
+		this.frequencies = new HashMap<>();
+	}
+
+	@Override
+	public void onUse(Query query) {
+		if (!isCacheableType(query)) {
+			return;
+		}
+		int hash = query.hashCode();
+		synchronized (this) {
+			if (size == history.length) {
+				frequencies.computeIfPresent(history[position], (key, count) -> count == 1 ? null : count - 1);
+			} else {
+				size++;
+			}
+			history[position] = hash;
+			position = (position + 1) % history.length;
+			frequencies.merge(hash, 1, Integer::sum);
+		}
+	}
+
+	@Override
+	public boolean shouldCache(Query query) {
+		if (!isCacheableType(query)) {
+			return false;
+		}
+		return frequency(query) >= minFrequency;
+	}
+
+	synchronized int frequency(Query query) {
+		return frequencies.getOrDefault(query.hashCode(), 0);
+	}
+
+	private boolean isCacheableType(Query query) {
+		if (query instanceof BooleanQuery booleanQuery && booleanQuery.clauses().isEmpty()) {
+			return false;
+		}
+		return queryTypes.contains(query.getClass().getSimpleName());
+	}
+}
@@ -0,0 +1,184 @@
+package org.snomed.snowstormlite.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.Lists;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.snomed.snowstormlite.config.QueryLimitsConfiguration;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+import org.snomed.snowstormlite.domain.valueset.FHIRValueSet;
+import org.snomed.snowstormlite.fhir.FHIRHelper;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+import static org.snomed.snowstormlite.fhir.FHIRConstants.SNOMED_URI;
+
+/**
+ * Validates many codes in one request. Items are grouped by ValueSet so that each ValueSet is resolved once
+ * and membership is checked with one index query per batch of codes, rather than one query per code.
+ */
+@Service
+public class ValueSetBulkValidationService {
+
+	private static final String OPERATION = "validate-code";
+
+	private final ValueSetService valueSetService;
+	private final QueryLimitsConfiguration queryLimitsConfiguration;
+	private final ObjectReader itemReader;
+	private final int maxItems;
+	private final int batchSize;
+
+	public ValueSetBulkValidationService(ValueSetService valueSetService, QueryLimitsConfiguration queryLimitsConfiguration, ObjectMapper objectMapper,
+			@Value("${search.bulk-validate.max-items:100000}") int maxItems,
+			@Value("${search.bulk-validate.batch-size:5000}") int batchSize) {
+
+		this.valueSetService = valueSetService;
+		this.queryLimitsConfiguration = queryLimitsConfiguration;
+		this.itemReader = objectMapper.readerFor(Item.class);
+		this.maxItems = maxItems;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Reads newline delimited JSON items.
+	 * @param defaultValueSet used for items that do not have a valueSet.
+	 */
+	public List<Item> readItems(InputStream inputStream, String defaultValueSet) throws IOException {
+		List<Item> items = new ArrayList<>();
+		try (MappingIterator<Item> iterator = itemReader.readValues(inputStream)) {
+			while (iterator.hasNextValue()) {
+				if (items.size() == maxItems) {
+					throw FHIRHelper.exception(format("A bulk validation request can contain at most %s items.", maxItems),
+							OperationOutcome.IssueType.TOOCOSTLY, 422);
+				}
+				Item item = iterator.nextValue();
+				if (item.valueSet() == null && defaultValueSet != null) {
+					item = new Item(item.code(), item.system(), item.display(), defaultValueSet);
+				}
+				items.add(item);
+			}
+		} catch (JsonProcessingException e) {
+			throw FHIRHelper.exception(format("Failed to read item %s: %s", items.size() + 1, e.getOriginalMessage()), OperationOutcome.IssueType.INVALID, 400);
+		}
+		return items;
+	}
+
+	/**
+	 * Writes one result per item as newline delimited JSON. Results are written a ValueSet at a time so they are not in input order,
+	 * each result has the zero based index of its item.
+	 * The validate-code time limit applies to each ValueSet separately.
+	 * @return the number of results written.
+	 */
+	public long validate(List<Item> items, OutputStream outputStream) throws IOException {
+		Map<String, List<Integer>> itemsByValueSet = new LinkedHashMap<>();
+		for (int i = 0; i < items.size(); i++) {
+			itemsByValueSet.computeIfAbsent(Objects.requireNonNullElse(items.get(i).valueSet(), ""), key -> new ArrayList<>()).add(i);
+		}
+
+		QueryLimitsConfiguration.Limit limit = queryLimitsConfiguration.getLimit(OPERATION);
+		long timeoutMs = limit.getTimeoutMs() != null ? limit.getTimeoutMs() : 0;
+		int maxConcepts = limit.getMaxConcepts() != null ? limit.getMaxConcepts() : 0;
+
+		long count = 0;
+		JsonGenerator generator = new JsonFactory().createGenerator(outputStream);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		for (Map.Entry<String, List<Integer>> group : itemsByValueSet.entrySet()) {
+			List<Integer> groupItems = group.getValue();
+			int written = 0;
+			// Streamed after the request thread has returned, so the readers are held here
+			try (QueryBudget.Scope ignored = QueryBudget.start(OPERATION, timeoutMs, maxConcepts);
+					IndexReaderScope.Scope readers = IndexReaderScope.open()) {
+				FHIRValueSet valueSet = findValueSet(group.getKey());
+				for (List<Integer> batch : Lists.partition(groupItems, batchSize)) {
+					written += validateBatch(items, batch, valueSet, generator);
+				}
+			} catch (FHIRServerResponseException e) {
+				// Items of batches that completed already have a result
+				for (Integer index : groupItems.subList(written, groupItems.size())) {
+					writeResult(index, items.get(index), false, null, e.getMessage(), generator);
+				}
+				written = groupItems.size();
+			}
+			count += written;
+			generator.flush();
+		}
+		generator.flush();
+		return count;
+	}
+
+	private FHIRValueSet findValueSet(String valueSetUrl) throws IOException {
+		if (valueSetUrl.isEmpty()) {
+			throw FHIRHelper.exception("Item has no valueSet.", OperationOutcome.IssueType.INVALID, 400);
+		}
+		ValueSet valueSet = valueSetService.findOrInferValueSet(null, valueSetUrl, null);
+		if (valueSet == null) {
+			throw FHIRHelper.exception("ValueSet not found.", OperationOutcome.IssueType.NOTFOUND, 404);
+		}
+		return new FHIRValueSet(valueSet);
+	}
+
+	private int validateBatch(List<Item> items, List<Integer> batch, FHIRValueSet valueSet, JsonGenerator generator) throws IOException {
+		Set<Coding> codings = new HashSet<>();
+		boolean includeDescriptions = false;
+		for (Integer index : batch) {
+			Item item = items.get(index);
+			codings.add(new Coding(getSystem(item), item.code(), null));
+			includeDescriptions |= item.display() != null;
+		}
+		Map<String, FHIRConcept> members = valueSetService.findMembers(valueSet, codings, includeDescriptions).stream()
+				.collect(Collectors.toMap(FHIRConcept::getConceptId, Function.identity()));
+
+		for (Integer index : batch) {
+			Item item = items.get(index);
+			FHIRConcept concept = SNOMED_URI.equals(getSystem(item)) ? members.get(item.code()) : null;
+			if (concept == null) {
+				writeResult(index, item, false, null, format("The code '%s' from CodeSystem '%s' was not found in this ValueSet.", item.code(), getSystem(item)), generator);
+			} else if (item.display() != null && concept.getDescriptions().stream().noneMatch(description -> item.display().equalsIgnoreCase(description.getTerm()))) {
+				writeResult(index, item, false, !concept.isActive(), format("The code '%s' was found in the ValueSet, however the display '%s' did not match any designations.",
+						item.code(), item.display()), generator);
+			} else {
+				writeResult(index, item, true, !concept.isActive(), null, generator);
+			}
+		}
+		return batch.size();
+	}
+
+	private static String getSystem(Item item) {
+		return item.system() != null ? item.system() : SNOMED_URI;
+	}
+
+	private void writeResult(int index, Item item, boolean result, Boolean inactive, String message, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("index", index);
+		generator.writeStringField("code", item.code());
+		generator.writeBooleanField("result", result);
+		if (inactive != null) {
+			generator.writeBooleanField("inactive", inactive);
+		}
+		if (message != null) {
+			generator.writeStringField("message", message);
+		}
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public record Item(String code, String system, String display, String valueSet) {
+	}
+}
@@ -1,36 +1,59 @@
 package org.snomed.snowstormlite.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.snomed.snowstormlite.domain.valueset.FHIRValueSet;
+import org.snomed.snowstormlite.domain.valueset.FHIRValueSetCompose;
+import org.snomed.snowstormlite.domain.valueset.FHIRValueSetCriteria;
+import org.snomed.snowstormlite.util.ConceptIdListCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+
+import static org.snomed.snowstormlite.util.CollectionUtils.orEmpty;
 
 @Service
 public class ValueSetRepository {
 
+	private static final Set<String> SERIALISED_FIELDS = Set.of(FHIRValueSet.Fields.SERIALISED_STORED, FHIRValueSet.Fields.SERIALISED,
+			FHIRValueSet.Fields.CODES, FHIRValueSet.Fields.CODES_CRITERIA);
+	private static final Set<String> SUMMARY_FIELDS = Set.of(FHIRValueSet.Fields.ID, FHIRValueSet.Fields.URL, FHIRValueSet.Fields.VERSION, FHIRValueSet.Fields.NAME,
+			FHIRValueSet.Fields.TITLE, FHIRValueSet.Fields.STATUS, FHIRValueSet.Fields.EXPERIMENTAL, FHIRValueSet.Fields.DESCRIPTION);
+	private static final Set<String> MEMBERS_FIELDS = Set.of(FHIRValueSet.Fields.MEMBERS, FHIRValueSet.Fields.MEMBERS_KEY);
+
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
 	@Autowired
 	private IndexIOProvider indexIOProvider;
 
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
 	public FHIRValueSet findValueSet(String url, String version) throws IOException {
 		if (url == null) {
 			return null;
 		}
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
 		BooleanQuery.Builder builder = new BooleanQuery.Builder()
 				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE)), BooleanClause.Occur.MUST)
 				.add(new TermQuery(new Term(FHIRValueSet.Fields.URL, url)), BooleanClause.Occur.MUST);
@@ -46,11 +69,8 @@ public class ValueSetRepository {
 	}
 
 	public FHIRValueSet findValueSetById(String id) throws IOException {
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
-		TopDocs topDocs = indexSearcher.search(new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE)), BooleanClause.Occur.MUST)
-				.add(new TermQuery(new Term(FHIRValueSet.Fields.ID, id)), BooleanClause.Occur.MUST)
-				.build(), 1);
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		TopDocs topDocs = indexSearcher.search(getByIdQuery(id), 1);
 		if (topDocs.totalHits.value > 0) {
 			return getVSFromIndex(topDocs.scoreDocs[0], indexSearcher.storedFields());
 		}
@@ -58,10 +78,7 @@ public class ValueSetRepository {
 	}
 
 	public List<FHIRValueSet> findAll() throws IOException {
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcherIfAvailable();
-		if (indexSearcher == null) {
-			return List.of();
-		}
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
 		TopDocs topDocs = indexSearcher.search(new BooleanQuery.Builder()
 				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE)), BooleanClause.Occur.MUST)
 				.build(),
@@ -75,7 +92,81 @@ public class ValueSetRepository {
 		return all;
 	}
 
+	/**
+	 * Lists ValueSets matching the search, ordered by name, then url, then version newest first.
+	 * @return summaries of the ValueSets on the requested page, read from stored fields without the compose.
+	 */
+	public ResourceSearch.Page<FHIRValueSet> search(ResourceSearch search) throws IOException {
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		BooleanQuery.Builder builder = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE)), BooleanClause.Occur.FILTER);
+		ResourceSearch.addTermFilter(builder, FHIRValueSet.Fields.URL, search.url());
+		ResourceSearch.addTermFilter(builder, FHIRValueSet.Fields.VERSION, search.version());
+		ResourceSearch.addTermFilter(builder, FHIRValueSet.Fields.STATUS, search.status());
+		ResourceSearch.addStartsWithFilter(builder, FHIRValueSet.Fields.NAME_SEARCH, search.name());
+		ResourceSearch.addStartsWithFilter(builder, FHIRValueSet.Fields.TITLE_SEARCH, search.title());
+		Query query = builder.build();
+
+		int total = indexSearcher.count(query);
+		if (search.count() == 0 || search.offset() >= total) {
+			return new ResourceSearch.Page<>(List.of(), total);
+		}
+		TopDocs topDocs = indexSearcher.search(query, search.offset() + search.count(),
+				new Sort(new SortField(FHIRValueSet.Fields.NAME_SORT, SortField.Type.STRING), new SortField(FHIRValueSet.Fields.URL, SortField.Type.STRING),
+						new SortField(FHIRValueSet.Fields.VERSION, SortField.Type.STRING, true)));
+		List<FHIRValueSet> summaries = new ArrayList<>();
+		StoredFields storedFields = indexSearcher.storedFields();
+		for (int i = search.offset(); i < topDocs.scoreDocs.length; i++) {
+			summaries.add(getSummaryFromIndex(storedFields.document(topDocs.scoreDocs[i].doc, SUMMARY_FIELDS)));
+		}
+		return new ResourceSearch.Page<>(summaries, total);
+	}
+
+	private static FHIRValueSet getSummaryFromIndex(Document document) {
+		FHIRValueSet summary = new FHIRValueSet();
+		summary.setId(document.get(FHIRValueSet.Fields.ID));
+		summary.setUrl(document.get(FHIRValueSet.Fields.URL));
+		summary.setVersion(document.get(FHIRValueSet.Fields.VERSION));
+		summary.setName(document.get(FHIRValueSet.Fields.NAME));
+		summary.setTitle(document.get(FHIRValueSet.Fields.TITLE));
+		summary.setStatus(document.get(FHIRValueSet.Fields.STATUS));
+		String experimental = document.get(FHIRValueSet.Fields.EXPERIMENTAL);
+		if (experimental != null) {
+			summary.setExperimental("1".equals(experimental));
+		}
+		summary.setDescription(document.get(FHIRValueSet.Fields.DESCRIPTION));
+		return summary;
+	}
+
+	/**
+	 * @return the members stored with the ValueSet, or null if none were stored.
+	 */
+	public MaterialisedMembers findMaterialisedMembers(String id) throws IOException {
+		IndexSearcher indexSearcher = resourceIndexIOProvider.getIndexSearcher();
+		TopDocs topDocs = indexSearcher.search(getByIdQuery(id), 1);
+		if (topDocs.totalHits.value == 0) {
+			return null;
+		}
+		return getMaterialisedMembers(indexSearcher.storedFields().document(topDocs.scoreDocs[0].doc, MEMBERS_FIELDS));
+	}
+
+	private static MaterialisedMembers getMaterialisedMembers(Document document) {
+		BytesRef members = document.getBinaryValue(FHIRValueSet.Fields.MEMBERS);
+		String key = document.get(FHIRValueSet.Fields.MEMBERS_KEY);
+		if (members == null || key == null) {
+			return null;
+		}
+		return new MaterialisedMembers(key, ConceptIdListCodec.decode(BytesRef.deepCopyOf(members).bytes));
+	}
+
 	public void save(FHIRValueSet internalValueSet) throws IOException {
+		save(internalValueSet, null);
+	}
+
+	/**
+	 * @param materialisedMembers expansion of the ValueSet compose to store with the ValueSet, may be null.
+	 */
+	public void save(FHIRValueSet internalValueSet, MaterialisedMembers materialisedMembers) throws IOException {
 		Document document = new Document();
 		document.add(new StringField(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE, Field.Store.YES));
 		document.add(new StringField(FHIRValueSet.Fields.ID, internalValueSet.getId(), Field.Store.YES));
@@ -84,18 +175,47 @@ public class ValueSetRepository {
 		document.add(new StringField(FHIRValueSet.Fields.VERSION, internalValueSet.getVersion(), Field.Store.YES));
 		document.add(new SortedDocValuesField(FHIRValueSet.Fields.VERSION, new BytesRef(internalValueSet.getVersion())));
 		addIfNotNull(document, FHIRValueSet.Fields.NAME, internalValueSet.getName());
+		if (internalValueSet.getName() != null) {
+			document.add(new SortedDocValuesField(FHIRValueSet.Fields.NAME_SORT, new BytesRef(internalValueSet.getName())));
+		}
+		addIfNotNull(document, FHIRValueSet.Fields.TITLE, internalValueSet.getTitle());
+		addSearchValue(document, FHIRValueSet.Fields.NAME_SEARCH, internalValueSet.getName());
+		addSearchValue(document, FHIRValueSet.Fields.TITLE_SEARCH, internalValueSet.getTitle());
 		addIfNotNull(document, FHIRValueSet.Fields.STATUS, internalValueSet.getStatus());
 		if (internalValueSet.getExperimental() != null) {
 			document.add(new StringField(FHIRValueSet.Fields.EXPERIMENTAL, internalValueSet.getExperimental() ? "1" : "0", Field.Store.YES));
 		}
 		addIfNotNull(document, FHIRValueSet.Fields.DESCRIPTION, internalValueSet.getDescription());
 
-		// Store a copy of the whole object in a non-searchable way
-		String serialisedVS = objectMapper.writeValueAsString(internalValueSet);
-		document.add(new StringField(FHIRValueSet.Fields.SERIALISED, serialisedVS, Field.Store.YES));
+		// Store a copy of the whole object in a non-searchable way, apart from enumerated concept ids which are stored as compact id lists
+		ObjectNode serialisedVS = objectMapper.valueToTree(internalValueSet);
+		FHIRValueSetCompose compose = internalValueSet.getCompose();
+		if (compose != null) {
+			addConceptIdLists(document, compose.getInclude(), serialisedVS.path("compose").path("include"), "include");
+			addConceptIdLists(document, compose.getExclude(), serialisedVS.path("compose").path("exclude"), "exclude");
+		}
+		document.add(new StoredField(FHIRValueSet.Fields.SERIALISED_STORED, objectMapper.writeValueAsString(serialisedVS)));
+
+		if (materialisedMembers != null) {
+			document.add(new StoredField(FHIRValueSet.Fields.MEMBERS, ConceptIdListCodec.encode(materialisedMembers.conceptIds())));
+			document.add(new StoredField(FHIRValueSet.Fields.MEMBERS_KEY, materialisedMembers.key()));
+		}
 
-		deleteById(internalValueSet.getId());
-		indexIOProvider.writeDocument(document);
+		resourceIndexIOProvider.update(indexWriter -> {
+			indexWriter.deleteDocuments(getByIdQuery(internalValueSet.getId()));
+			indexWriter.addDocument(document);
+		});
+	}
+
+	private void addConceptIdLists(Document document, List<FHIRValueSetCriteria> criteria, JsonNode criteriaNodes, String criteriaType) {
+		for (int i = 0; i < orEmpty(criteria).size(); i++) {
+			long[] conceptIds = SnomedIdentifierHelper.toConceptIds(criteria.get(i).getCodes());
+			if (conceptIds != null) {
+				((ObjectNode) criteriaNodes.get(i)).remove("codes");
+				document.add(new StoredField(FHIRValueSet.Fields.CODES, ConceptIdListCodec.encodeOrdered(conceptIds)));
+				document.add(new StoredField(FHIRValueSet.Fields.CODES_CRITERIA, criteriaType + "|" + i));
+			}
+		}
 	}
 
 	private void addIfNotNull(Document document, String fieldName, String value) {
@@ -104,17 +224,67 @@ public class ValueSetRepository {
 		}
 	}
 
+	private void addSearchValue(Document document, String fieldName, String value) {
+		if (value != null) {
+			document.add(new StringField(fieldName, ResourceSearch.toSearchValue(value), Field.Store.NO));
+		}
+	}
+
 	private FHIRValueSet getVSFromIndex(ScoreDoc scoreDoc, StoredFields storedFields) throws IOException {
-		Document document = storedFields.document(scoreDoc.doc);
-		String content = document.get(FHIRValueSet.Fields.SERIALISED);
+		Document document = storedFields.document(scoreDoc.doc, SERIALISED_FIELDS);
+		String content = document.get(FHIRValueSet.Fields.SERIALISED_STORED);
+		if (content == null) {
+			content = document.get(FHIRValueSet.Fields.SERIALISED);
+		}
 		FHIRValueSet fhirValueSet = objectMapper.readValue(content, FHIRValueSet.class);
+		IndexableField[] conceptIdLists = document.getFields(FHIRValueSet.Fields.CODES);
+		String[] conceptIdListCriteria = document.getValues(FHIRValueSet.Fields.CODES_CRITERIA);
+		for (int i = 0; i < conceptIdLists.length; i++) {
+			String[] criteriaRef = conceptIdListCriteria[i].split("\\|");
+			FHIRValueSetCompose compose = fhirValueSet.getCompose();
+			List<FHIRValueSetCriteria> criteria = "include".equals(criteriaRef[0]) ? compose.getInclude() : compose.getExclude();
+			criteria.get(Integer.parseInt(criteriaRef[1])).setConceptIds(ConceptIdListCodec.decodeOrdered(BytesRef.deepCopyOf(conceptIdLists[i].binaryValue()).bytes));
+		}
 		return fhirValueSet;
 	}
 
 	public void deleteById(String id) throws IOException {
-		indexIOProvider.deleteDocuments(new BooleanQuery.Builder()
+		resourceIndexIOProvider.deleteDocuments(getByIdQuery(id));
+	}
+
+	/**
+	 * Moves ValueSets stored in the SNOMED CT index, before ValueSets had their own index, into the resource index.
+	 */
+	public void moveFromSnomedIndex() throws IOException {
+		IndexSearcher snomedSearcher = indexIOProvider.getIndexSearcherIfAvailable();
+		if (snomedSearcher == null) {
+			return;
+		}
+		Query allQuery = new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE));
+		int count = snomedSearcher.count(allQuery);
+		if (count == 0) {
+			return;
+		}
+		StoredFields storedFields = snomedSearcher.storedFields();
+		for (ScoreDoc scoreDoc : snomedSearcher.search(allQuery, count).scoreDocs) {
+			save(getVSFromIndex(scoreDoc, storedFields), getMaterialisedMembers(storedFields.document(scoreDoc.doc, MEMBERS_FIELDS)));
+		}
+		indexIOProvider.deleteDocuments(allQuery);
+		logger.info("Moved {} ValueSets from the SNOMED CT index to the resource index.", count);
+	}
+
+	private static Query getByIdQuery(String id) {
+		return new BooleanQuery.Builder()
 				.add(new TermQuery(new Term(CodeSystemRepository.TYPE, FHIRValueSet.DOC_TYPE)), BooleanClause.Occur.MUST)
 				.add(new TermQuery(new Term(FHIRValueSet.Fields.ID, id)), BooleanClause.Occur.MUST)
-				.build());
+				.build();
+	}
+
+	/**
+	 * Concept ids of a ValueSet expansion.
+	 * @param key identifies the ValueSet compose and code system version that the expansion was made from.
+	 * @param conceptIds in ascending order.
+	 */
+	public record MaterialisedMembers(String key, long[] conceptIds) {
 	}
 }
@@ -1,11 +1,14 @@
 package org.snomed.snowstormlite.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
 import info.debatty.java.stringsimilarity.Levenshtein;
 import org.apache.logging.log4j.util.Strings;
 import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
@@ -21,6 +24,8 @@ import org.snomed.snowstormlite.domain.valueset.FHIRValueSetCriteria;
 import org.snomed.snowstormlite.domain.valueset.FHIRValueSetFilter;
 import org.snomed.snowstormlite.fhir.FHIRConstants;
 import org.snomed.snowstormlite.fhir.FHIRHelper;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.snomed.snowstormlite.service.ValueSetRepository.MaterialisedMembers;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -28,7 +33,9 @@ import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -45,9 +52,21 @@ public class ValueSetService {
 	// Constant to help with "?fhir_vs=refset"
 	public static final String REFSETS_WITH_MEMBERS = "Refsets";
 
+	// Below this a terms query on the concept id is cheaper than checking the id doc values of every candidate concept
+	private static final int CONCEPT_ID_SET_QUERY_MIN_CODES = 512;
+	private static final Set<String> MEMBER_FIELDS = Set.of(FHIRConcept.FieldNames.ID, FHIRConcept.FieldNames.ACTIVE);
+	private static final Set<String> MEMBER_AND_DESCRIPTION_FIELDS = Set.of(FHIRConcept.FieldNames.ID, FHIRConcept.FieldNames.ACTIVE,
+			FHIRConcept.FieldNames.TERM_STORED);
+
 	@Value("${search.valueset-expand.relevance-sort-window:250}")
 	private int relevanceSortWindow;
 
+	@Value("${search.valueset-expand.materialise.enabled:true}")
+	private boolean materialiseEnabled;
+
+	@Value("${search.valueset-expand.materialise.max-concepts:500000}")
+	private int materialiseMaxConcepts;
+
 	@Autowired
 	private CodeSystemRepository codeSystemRepository;
 
@@ -57,12 +76,27 @@ public class ValueSetService {
 	@Autowired
 	private IndexIOProvider indexIOProvider;
 
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
 	@Autowired
 	private ValueSetRepository valueSetRepository;
 
+	@Autowired
+	private RequestCoalescer requestCoalescer;
+
+	@Autowired
+	private TerminologyMetrics metrics;
+
 	@Autowired
 	private LanguageCharacterFoldingConfiguration languageCharacterFoldingConfiguration;
 
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	// Stored expansions by ValueSet id, with their member query, for one version of the resource index
+	private final Map<String, CachedMembers> materialisedMembersCache = new ConcurrentHashMap<>();
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public FHIRValueSet find(String url, String version) throws IOException {
@@ -73,6 +107,10 @@ public class ValueSetService {
 		return valueSetRepository.findValueSetById(id);
 	}
 
+	public ResourceSearch.Page<FHIRValueSet> search(ResourceSearch search) throws IOException {
+		return valueSetRepository.search(search);
+	}
+
 	public List<FHIRValueSet> findAll() throws IOException {
 		return valueSetRepository.findAll().stream()
 				.sorted(Comparator.comparing(FHIRValueSet::getName, Comparator.nullsFirst(String::compareTo))
@@ -142,11 +180,115 @@ public class ValueSetService {
 		FHIRValueSet composeUpdate = new FHIRValueSet(valueSetUpdate);
 		existingVS.setCompose(composeUpdate.getCompose());
 
-		valueSetRepository.save(existingVS);
+		valueSetRepository.save(existingVS, materialise(existingVS));
 
 		return internalValueSet;
 	}
 
+	/**
+	 * Stores the expansion of each stored ValueSet against the code system that is now loaded.
+	 * Expansions stored for the previous code system are no longer used once the code system changes.
+	 */
+	public synchronized void materialiseStoredValueSets() throws IOException {
+		if (!materialiseEnabled || codeSystemRepository.getCodeSystem() == null) {
+			return;
+		}
+		List<FHIRValueSet> valueSets = valueSetRepository.findAll();
+		int materialised = 0;
+		for (FHIRValueSet valueSet : valueSets) {
+			MaterialisedMembers members = materialise(valueSet);
+			valueSetRepository.save(valueSet, members);
+			if (members != null) {
+				materialised++;
+			}
+		}
+		logger.info("Materialised the expansion of {} of {} stored ValueSets.", materialised, valueSets.size());
+	}
+
+	/**
+	 * @return the concept ids of the ValueSet compose, or null if the compose can be evaluated with a single index query
+	 * so storing the expansion would not make it faster.
+	 */
+	private MaterialisedMembers materialise(FHIRValueSet valueSet) throws IOException {
+		String key = getMaterialisedMembersKey(valueSet);
+		if (key == null) {
+			return null;
+		}
+		try {
+			int materializationsBefore = eclService.getMaterializationCount();
+			Query query = getComposeQuery(valueSet).build();
+			if (eclService.getMaterializationCount() == materializationsBefore) {
+				return null;
+			}
+			// Plain searcher, the collector is not thread safe
+			IndexSearcher indexSearcher = new IndexSearcher(indexIOProvider.getIndexSearcher().getIndexReader());
+			ConceptIdCollector collector = new ConceptIdCollector(materialiseMaxConcepts);
+			indexSearcher.search(query, collector);
+			QueryBudget.checkTime();
+			if (collector.isLimitReached()) {
+				logger.info("ValueSet '{}' version '{}' has more than {} concepts, the expansion will not be stored.",
+						valueSet.getUrl(), valueSet.getVersion(), materialiseMaxConcepts);
+				return null;
+			}
+			return new MaterialisedMembers(key, collector.getConceptIds());
+		} catch (FHIRServerResponseException e) {
+			logger.warn("Failed to materialise ValueSet '{}' version '{}': {}", valueSet.getUrl(), valueSet.getVersion(), e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * The stored expansion is read and its member query built once for each version of the resource index.
+	 * The key was made when the expansion was stored, only the code system and the url and version of the ValueSet are compared here,
+	 * as the url and version identify the compose.
+	 */
+	private CachedMembers findMaterialisedMembers(FHIRValueSet valueSet) throws IOException {
+		if (!materialiseEnabled || valueSet.getId() == null) {
+			return null;
+		}
+		String keyPrefix = getMaterialisedMembersKeyPrefix(valueSet);
+		if (keyPrefix == null) {
+			return null;
+		}
+		long resourceIndexVersion = resourceIndexIOProvider.getIndexVersion();
+		CachedMembers cached = materialisedMembersCache.get(valueSet.getId());
+		if (cached == null || cached.resourceIndexVersion() != resourceIndexVersion) {
+			if (cached != null) {
+				// Any other entries are from an older version too
+				materialisedMembersCache.clear();
+			}
+			MaterialisedMembers members = valueSetRepository.findMaterialisedMembers(valueSet.getId());
+			if (members == null) {
+				return null;
+			}
+			long[] memberIds = members.conceptIds();
+			Query query = memberIds.length >= CONCEPT_ID_SET_QUERY_MIN_CODES ? new ConceptIdSetQuery(memberIds) :
+					QueryHelper.termsQueryFromLongs(FHIRConcept.FieldNames.ID, Arrays.stream(memberIds).boxed().toList());
+			cached = new CachedMembers(resourceIndexVersion, members, query);
+			materialisedMembersCache.put(valueSet.getId(), cached);
+		}
+		return cached.members().key().startsWith(keyPrefix) ? cached : null;
+	}
+
+	// Changes when the compose or the loaded code system changes
+	private String getMaterialisedMembersKey(FHIRValueSet valueSet) throws IOException {
+		String keyPrefix = getMaterialisedMembersKeyPrefix(valueSet);
+		if (keyPrefix == null) {
+			return null;
+		}
+		String compose = objectMapper.writeValueAsString(valueSet.getCompose());
+		return keyPrefix + Hashing.sha256().hashString(compose, StandardCharsets.UTF_8);
+	}
+
+	private String getMaterialisedMembersKeyPrefix(FHIRValueSet valueSet) {
+		FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
+		if (codeSystem == null || valueSet.getCompose() == null) {
+			return null;
+		}
+		return format("%s|%s|%s|%s|", codeSystem.getVersionUri(), codeSystem.getLastUpdated() != null ? codeSystem.getLastUpdated().getTime() : "",
+				valueSet.getUrl(), valueSet.getVersion());
+	}
+
 	public ValueSet findOrInferValueSet(String id, String url, ValueSet hapiValueSet) throws IOException {
 		mutuallyExclusive("id", id, "url", url);
 		mutuallyExclusive("id", id, "valueSet", hapiValueSet);
@@ -229,11 +371,39 @@ public class ValueSetService {
 						   boolean includeDesignations, int offset, int count) throws IOException {
 
 		ValueSet valueSet = createSnomedImplicitValueSet(url);
-		return expand(new FHIRValueSet(valueSet), termFilter, displayLanguages, includeDesignations, Collections.emptyList(), offset, count, null).getFirst();
+		return expand(new FHIRValueSet(valueSet), termFilter, displayLanguages, includeDesignations, Collections.emptyList(), offset, count).getFirst();
 	}
 
+	/**
+	 * Concurrent identical expansions share one computation, see {@link RequestCoalescer}. Each caller is given its own copy of the ValueSet.
+	 */
 	public Pair<ValueSet, List<FHIRConcept>> expand(FHIRValueSet internalValueSet, String termFilter, List<LanguageDialect> displayLanguages,
-						   boolean includeDesignations, List<String> requestedProperties, int offset, int count, Set<Coding> codingsToValidate) throws IOException {
+						   boolean includeDesignations, List<String> requestedProperties, int offset, int count) throws IOException {
+
+		String url = internalValueSet.getUrl();
+		RequestProfile.put("url", url);
+		if (url != null && url.contains(IMPLICIT_ECL)) {
+			RequestProfile.put("ecl", url.substring(url.indexOf(IMPLICIT_ECL) + IMPLICIT_ECL.length()));
+		}
+		RequestProfile.put("filter", termFilter);
+		RequestProfile.put("displayLanguages", displayLanguages != null ? displayLanguages.toString() : null);
+		RequestProfile.put("offset", offset);
+		RequestProfile.put("count", count);
+
+		// Stored expansions are read from the resource index, so both index versions are part of the key
+		List<Object> key = Arrays.asList("expand", indexIOProvider.getIndexVersion(), resourceIndexIOProvider.getIndexVersion(),
+				objectMapper.writeValueAsString(internalValueSet), termFilter, displayLanguages, includeDesignations, requestedProperties, offset, count);
+		Pair<ValueSet, List<FHIRConcept>> result = metrics.time("expand", () -> requestCoalescer.execute(key,
+				() -> doExpand(internalValueSet, termFilter, displayLanguages, includeDesignations, requestedProperties, offset, count),
+				shared -> Pair.of(shared.getFirst().copy(), new ArrayList<>(shared.getSecond()))));
+		ValueSet.ValueSetExpansionComponent expansion = result.getFirst().getExpansion();
+		metrics.recordResults("expand", expansion.getContains().size());
+		RequestProfile.put("totalHits", expansion.getTotal());
+		return result;
+	}
+
+	private Pair<ValueSet, List<FHIRConcept>> doExpand(FHIRValueSet internalValueSet, String termFilter, List<LanguageDialect> displayLanguages,
+						   boolean includeDesignations, List<String> requestedProperties, int offset, int count) throws IOException {
 
 		int originalCount = count;
 		int originalOffset = offset;
@@ -245,64 +415,76 @@ public class ValueSetService {
 			count = relevanceSortWindow;
 		}
 
-		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
-		BooleanQuery.Builder valueSetExpandQuery = getValueSetExpandQuery(internalValueSet);
-
-		if (codingsToValidate != null) {
-			Set<String> codes = codingsToValidate.stream().filter(coding -> SNOMED_URI.equals(coding.getSystem())).map(Coding::getCode).collect(Collectors.toSet());
-			valueSetExpandQuery.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.MUST);
+		// Building the query includes any ECL that has to be evaluated against the index
+		IndexSearcher indexSearcher;
+		Function<FHIRDescription, Boolean> termMatcher = null;
+		Query query;
+		try (RequestProfile.Phase ignored = RequestProfile.phase("query-build")) {
+			// Expansions can match large parts of the index
+			indexSearcher = indexIOProvider.getConcurrentIndexSearcher();
+			BooleanQuery.Builder valueSetExpandQuery = getValueSetExpandQuery(internalValueSet, null);
+
+			if (termFilter != null && !termFilter.isBlank()) {
+				termMatcher = addTermQuery(termFilter, displayLanguages, valueSetExpandQuery);
+			}
+			query = valueSetExpandQuery.build();
 		}
 
-		Function<FHIRDescription, Boolean> termMatcher = null;
-		if (termFilter != null && !termFilter.isBlank()) {
-			termMatcher = addTermQuery(termFilter, displayLanguages, valueSetExpandQuery);
+		TopDocs queryResult;
+		try (RequestProfile.Phase ignored = RequestProfile.phase("search")) {
+			Sort sort = new Sort(
+					new SortedNumericSortField(FHIRConcept.FieldNames.ACTIVE_SORT, SortField.Type.INT, true),
+					new SortedNumericSortField(FHIRConcept.FieldNames.PT_AND_FSN_TERM_LENGTH, SortField.Type.INT),
+					SortField.FIELD_SCORE);
+			queryResult = indexSearcher.search(query, offset + count, sort, true);
+			QueryBudget.checkTime();
 		}
-		Query query = valueSetExpandQuery.build();
-		Sort sort = new Sort(
-				new SortedNumericSortField(FHIRConcept.FieldNames.ACTIVE_SORT, SortField.Type.INT, true),
-				new SortedNumericSortField(FHIRConcept.FieldNames.PT_AND_FSN_TERM_LENGTH, SortField.Type.INT),
-				SortField.FIELD_SCORE);
-		TopDocs queryResult = indexSearcher.search(query, offset + count, sort, true);
+		// Recorded where the search runs, so a coalesced expansion is counted once
+		metrics.recordHits("expand", queryResult.totalHits.value);
 
 		List<ValueSet.ValueSetExpansionContainsComponent> contains = new ArrayList<>();
 		int offsetReached = 0;
 
 		List<FHIRConcept> conceptPage = new ArrayList<>();
-		StoredFields storedFields = indexSearcher.storedFields();
-		for (ScoreDoc scoreDoc : queryResult.scoreDocs) {
-			if (offsetReached < offset) {
-				offsetReached++;
-				continue;
-			}
-			FHIRConcept concept = codeSystemRepository.getConceptFromDoc(storedFields.document(scoreDoc.doc));
-			conceptPage.add(concept);
-			if (conceptPage.size() == count) {
-				break;
+		try (RequestProfile.Phase ignored = RequestProfile.phase("stored-fields")) {
+			StoredFields storedFields = indexSearcher.storedFields();
+			for (ScoreDoc scoreDoc : queryResult.scoreDocs) {
+				if (offsetReached < offset) {
+					offsetReached++;
+					continue;
+				}
+				FHIRConcept concept = codeSystemRepository.getConceptFromDoc(storedFields.document(scoreDoc.doc));
+				conceptPage.add(concept);
+				if (conceptPage.size() == count) {
+					break;
+				}
 			}
 		}
 
 		// Sort again: prefer hits on the synonym shown as display (PT), then shortest matching term
 		if (additionalSorting && termMatcher != null) {
-			Map<FHIRDescription, FHIRConcept> termToConceptMap = new HashMap<>();
-			Comparator<FHIRDescription> descriptionComparator = Comparator
-					.comparingInt((FHIRDescription d) ->
-							descriptionMatchesExpansionDisplaySynonym(d.getConcept(), d, displayLanguages) ? 0 : 1)
-					.thenComparingInt(FHIRDescription::getTermLength)
-					.thenComparing(FHIRDescription::getTerm)
-					.thenComparing(
-							d -> d.getConcept().getPT(displayLanguages),
-							Comparator.nullsLast(String::compareTo));
-
-			for (FHIRConcept concept : conceptPage) {
-				concept.getDescriptions().forEach(d -> d.setConcept(concept));
-				Optional<FHIRDescription> shortest = concept.getDescriptions().stream()
-                        .filter(termMatcher::apply)
-						.min(descriptionComparator);
-                shortest.ifPresent(fhirDescription -> termToConceptMap.put(fhirDescription, concept));
+			try (RequestProfile.Phase ignored = RequestProfile.phase("re-rank")) {
+				Map<FHIRDescription, FHIRConcept> termToConceptMap = new HashMap<>();
+				Comparator<FHIRDescription> descriptionComparator = Comparator
+						.comparingInt((FHIRDescription d) ->
+								descriptionMatchesExpansionDisplaySynonym(d.getConcept(), d, displayLanguages) ? 0 : 1)
+						.thenComparingInt(FHIRDescription::getTermLength)
+						.thenComparing(FHIRDescription::getTerm)
+						.thenComparing(
+								d -> d.getConcept().getPT(displayLanguages),
+								Comparator.nullsLast(String::compareTo));
+
+				for (FHIRConcept concept : conceptPage) {
+					concept.getDescriptions().forEach(d -> d.setConcept(concept));
+					Optional<FHIRDescription> shortest = concept.getDescriptions().stream()
+	                        .filter(termMatcher::apply)
+							.min(descriptionComparator);
+	                shortest.ifPresent(fhirDescription -> termToConceptMap.put(fhirDescription, concept));
+				}
+				List<FHIRDescription> allConceptShortestTerms = new ArrayList<>(termToConceptMap.keySet());
+				allConceptShortestTerms.sort(descriptionComparator);
+				conceptPage = allConceptShortestTerms.stream().map(termToConceptMap::get).toList();
 			}
-			List<FHIRDescription> allConceptShortestTerms = new ArrayList<>(termToConceptMap.keySet());
-			allConceptShortestTerms.sort(descriptionComparator);
-			conceptPage = allConceptShortestTerms.stream().map(termToConceptMap::get).toList();
 		}
 
 		if (additionalSorting) {
@@ -316,60 +498,120 @@ public class ValueSetService {
 			}
 		}
 
-		for (FHIRConcept concept : conceptPage) {
-			ValueSet.ValueSetExpansionContainsComponent component = new ValueSet.ValueSetExpansionContainsComponent()
-					.setSystem(SNOMED_URI)
-					.setCode(concept.getConceptId())
-					.setDisplay(concept.getPT(displayLanguages));
-			if (!concept.isActive()) {
-				component.setInactive(true);
-			}
-			if (includeDesignations) {
-				for (FHIRDescription description : concept.getDescriptions()) {
-					boolean fsn = description.isFsn();
-					component.addDesignation()
-							.setLanguageElement(new CodeType(description.getLang()))
-							.setUse(new Coding(SNOMED_URI, fsn ? Concepts.FSN : Concepts.SYNONYM, fsn ? "Fully specified name" : "Synonym"))
-							.setValue(description.getTerm());
+		try (RequestProfile.Phase ignored = RequestProfile.phase("model-build")) {
+			for (FHIRConcept concept : conceptPage) {
+				ValueSet.ValueSetExpansionContainsComponent component = new ValueSet.ValueSetExpansionContainsComponent()
+						.setSystem(SNOMED_URI)
+						.setCode(concept.getConceptId())
+						.setDisplay(concept.getPT(displayLanguages));
+				if (!concept.isActive()) {
+					component.setInactive(true);
 				}
-			}
-			if (requestedProperties.contains("inactive")) {
-				Extension extension = component.addExtension().setUrl("http://hl7.org/fhir/5.0/StructureDefinition/extension-ValueSet.expansion.contains.property");
-				extension.addExtension("code", new CodeType("inactive"));
-				extension.addExtension("value", new BooleanType(!concept.isActive()));
-			}
-			if (requestedProperties.contains("parent")) {
-				for (String parentCode : concept.getParentCodes()) {
+				if (includeDesignations) {
+					for (FHIRDescription description : concept.getDescriptions()) {
+						boolean fsn = description.isFsn();
+						component.addDesignation()
+								.setLanguageElement(new CodeType(description.getLang()))
+								.setUse(new Coding(SNOMED_URI, fsn ? Concepts.FSN : Concepts.SYNONYM, fsn ? "Fully specified name" : "Synonym"))
+								.setValue(description.getTerm());
+					}
+				}
+				if (requestedProperties.contains("inactive")) {
 					Extension extension = component.addExtension().setUrl("http://hl7.org/fhir/5.0/StructureDefinition/extension-ValueSet.expansion.contains.property");
-					extension.addExtension("code", new CodeType("parent"));
-					extension.addExtension("value", new CodeType(parentCode));
+					extension.addExtension("code", new CodeType("inactive"));
+					extension.addExtension("value", new BooleanType(!concept.isActive()));
 				}
+				if (requestedProperties.contains("parent")) {
+					for (String parentCode : concept.getParentCodes()) {
+						Extension extension = component.addExtension().setUrl("http://hl7.org/fhir/5.0/StructureDefinition/extension-ValueSet.expansion.contains.property");
+						extension.addExtension("code", new CodeType("parent"));
+						extension.addExtension("value", new CodeType(parentCode));
+					}
+				}
+				if (requestedProperties.contains("sufficientlyDefined")) {
+					Extension extension = component.addExtension().setUrl("http://hl7.org/fhir/5.0/StructureDefinition/extension-ValueSet.expansion.contains.property");
+					extension.addExtension("code", new CodeType("sufficientlyDefined"));
+					extension.addExtension("value", new BooleanType(concept.isDefined()));
+				}
+				contains.add(component);
 			}
-			if (requestedProperties.contains("sufficientlyDefined")) {
-				Extension extension = component.addExtension().setUrl("http://hl7.org/fhir/5.0/StructureDefinition/extension-ValueSet.expansion.contains.property");
-				extension.addExtension("code", new CodeType("sufficientlyDefined"));
-				extension.addExtension("value", new BooleanType(concept.isDefined()));
-			}
-			contains.add(component);
+
+			ValueSet valueSet = internalValueSet.toHapi();
+			valueSet.setCompose(null);
+			valueSet.setCopyright(FHIRConstants.SNOMED_VALUESET_COPYRIGHT);
+			ValueSet.ValueSetExpansionComponent expansion = new ValueSet.ValueSetExpansionComponent();
+			expansion.setIdentifier(UUID.randomUUID().toString());
+			expansion.setTimestamp(new Date());
+			expansion.setTotal((int) queryResult.totalHits.value);
+			FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
+			expansion.addParameter(new ValueSet.ValueSetExpansionParameterComponent(new StringType("version")).setValue(new UriType(codeSystem.getSystemAndVersionUri())));
+			expansion.setContains(contains);
+			valueSet.setExpansion(expansion);
+			return Pair.of(valueSet, conceptPage);
 		}
+	}
 
-		ValueSet valueSet = internalValueSet.toHapi();
-		valueSet.setCompose(null);
-		valueSet.setCopyright(FHIRConstants.SNOMED_VALUESET_COPYRIGHT);
-		ValueSet.ValueSetExpansionComponent expansion = new ValueSet.ValueSetExpansionComponent();
-		expansion.setIdentifier(UUID.randomUUID().toString());
-		expansion.setTimestamp(new Date());
-		expansion.setTotal((int) queryResult.totalHits.value);
-		FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
-		expansion.addParameter(new ValueSet.ValueSetExpansionParameterComponent(new StringType("version")).setValue(new UriType(codeSystem.getSystemAndVersionUri())));
-		expansion.setContains(contains);
-		valueSet.setExpansion(expansion);
-		return Pair.of(valueSet, conceptPage);
+	/**
+	 * Finds which of the given codings are members of the ValueSet, without building an expansion or sorting.
+	 * @param includeDescriptions load the descriptions of each member, only needed when a display must be checked.
+	 * @return matching concepts with the id and active flag populated, plus descriptions if requested.
+	 */
+	public List<FHIRConcept> findMembers(FHIRValueSet internalValueSet, Set<Coding> codings, boolean includeDescriptions) throws IOException {
+		Set<String> codes = codings.stream()
+				.filter(coding -> SNOMED_URI.equals(coding.getSystem()) && coding.getCode() != null)
+				.map(Coding::getCode)
+				.collect(Collectors.toSet());
+		if (codes.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		// The id clause leads the conjunction, so the ValueSet constraint is only checked against the requested concepts
+		BooleanQuery.Builder queryBuilder = getValueSetExpandQuery(internalValueSet, codes);
+		queryBuilder.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.FILTER);
+		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
+		TopDocs topDocs = indexSearcher.search(new ConstantScoreQuery(queryBuilder.build()), codes.size());
+		QueryBudget.checkTime();
+
+		List<FHIRConcept> members = new ArrayList<>();
+		StoredFields storedFields = indexSearcher.storedFields();
+		for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+			Document document = storedFields.document(scoreDoc.doc, includeDescriptions ? MEMBER_AND_DESCRIPTION_FIELDS : MEMBER_FIELDS);
+			FHIRConcept concept = codeSystemRepository.getConceptDescriptionsFromDoc(document);
+			concept.setActive("1".equals(document.get(FHIRConcept.FieldNames.ACTIVE)));
+			members.add(concept);
+		}
+		return members;
 	}
 
-	private BooleanQuery.@NotNull Builder getValueSetExpandQuery(FHIRValueSet valueSet) throws IOException {
+	/**
+	 * Uses the stored expansion of the ValueSet when there is one for the current code system, otherwise the compose is evaluated.
+	 * @param codesToValidate when not null only these codes are searched for.
+	 */
+	private BooleanQuery.Builder getValueSetExpandQuery(FHIRValueSet valueSet, Set<String> codesToValidate) throws IOException {
+		CachedMembers members = findMaterialisedMembers(valueSet);
+		if (members == null) {
+			return getComposeQuery(valueSet);
+		}
+		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER);
+		if (codesToValidate != null) {
+			List<Long> conceptIds = new ArrayList<>();
+			long[] memberIds = members.members().conceptIds();
+			for (String code : codesToValidate) {
+				if (SnomedIdentifierHelper.isConceptId(code) && Arrays.binarySearch(memberIds, Long.parseLong(code)) >= 0) {
+					conceptIds.add(Long.parseLong(code));
+				}
+			}
+			queryBuilder.add(QueryHelper.termsQueryFromLongs(FHIRConcept.FieldNames.ID, conceptIds), BooleanClause.Occur.MUST);
+		} else {
+			queryBuilder.add(members.query(), BooleanClause.Occur.MUST);
+		}
+		return queryBuilder;
+	}
+
+	private BooleanQuery.@NotNull Builder getComposeQuery(FHIRValueSet valueSet) throws IOException {
 		BooleanQuery.Builder queryBuilder = new BooleanQuery.Builder();
-		queryBuilder.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST);
+		queryBuilder.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER);
 
 		FHIRValueSetCompose compose = valueSet.getCompose();
 		BooleanQuery.Builder orBuilder = new BooleanQuery.Builder();
@@ -389,9 +631,18 @@ public class ValueSetService {
 	@NotNull
 	private BooleanQuery.Builder getCriteriaQuery(FHIRValueSetCriteria includeOrExcludeCriteria) throws IOException {
 		BooleanQuery.Builder criteriaBuilder = new BooleanQuery.Builder();
-		List<String> codes = orEmpty(includeOrExcludeCriteria.getCodes());
-		if (!codes.isEmpty()) {
-			criteriaBuilder.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.SHOULD);
+		long[] conceptIds = includeOrExcludeCriteria.getConceptIds();
+		if (conceptIds == null) {
+			conceptIds = SnomedIdentifierHelper.toConceptIds(includeOrExcludeCriteria.getCodes());
+		}
+		if (conceptIds != null && conceptIds.length >= CONCEPT_ID_SET_QUERY_MIN_CODES) {
+			// Large enumerated ValueSet, join on the numeric concept id rather than looking up every code in the term dictionary
+			criteriaBuilder.add(new ConceptIdSetQuery(conceptIds), BooleanClause.Occur.SHOULD);
+		} else {
+			List<String> codes = orEmpty(includeOrExcludeCriteria.getCodes());
+			if (!codes.isEmpty()) {
+				criteriaBuilder.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, codes), BooleanClause.Occur.SHOULD);
+			}
 		}
 		for (FHIRValueSetFilter filter : orEmpty(includeOrExcludeCriteria.getFilter())) {
 			String property = filter.getProperty();
@@ -520,4 +771,6 @@ public class ValueSetService {
 		return result;
 	}
 
+	private record CachedMembers(long resourceIndexVersion, MaterialisedMembers members, Query query) {
+	}
 }
@@ -0,0 +1,185 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.domain.FHIRCodeSystem;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+import org.snomed.snowstormlite.domain.LanguageDialect;
+import org.snomed.snowstormlite.fhir.FHIRConstants;
+import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a small workload against the index after startup so that index pages, term dictionaries, the relationship index
+ * and JIT compiled code are warm before the instance reports itself as ready.
+ * <p>
+ * Each line of the workload file is one request, with fields separated by a pipe:
+ * <pre>
+ * lookup|{code}
+ * expand|{ecl}|{term filter (optional)}
+ * ecl|{ecl}
+ * </pre>
+ * Lines starting with '#' are ignored.
+ */
+@Service
+public class WarmupService {
+
+	private final IndexIOProvider indexIOProvider;
+	private final CodeSystemRepository codeSystemRepository;
+	private final CodeSystemService codeSystemService;
+	private final ValueSetService valueSetService;
+	private final ExpressionConstraintLanguageService eclService;
+	private final ResourceLoader resourceLoader;
+
+	@Value("${warmup.enabled:true}")
+	private boolean enabled;
+
+	@Value("${warmup.workload-file:classpath:warmup/default-workload.txt}")
+	private String workloadFile;
+
+	@Value("${warmup.iterations:3}")
+	private int iterations;
+
+	@Value("${warmup.max-duration-seconds:120}")
+	private int maxDurationSeconds;
+
+	@Value("${search.dialect.en-default}")
+	private Long defaultEnglishLangRefset;
+
+	private volatile boolean ready;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public WarmupService(IndexIOProvider indexIOProvider, CodeSystemRepository codeSystemRepository, CodeSystemService codeSystemService,
+			ValueSetService valueSetService, ExpressionConstraintLanguageService eclService, ResourceLoader resourceLoader) {
+
+		this.indexIOProvider = indexIOProvider;
+		this.codeSystemRepository = codeSystemRepository;
+		this.codeSystemService = codeSystemService;
+		this.valueSetService = valueSetService;
+		this.eclService = eclService;
+		this.resourceLoader = resourceLoader;
+	}
+
+	/**
+	 * Runs the warm-up workload, if enabled and content is loaded, then marks the application as ready.
+	 * Failures are logged and never prevent the application from becoming ready.
+	 */
+	public void warmUp() {
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+			IndexSearcher indexSearcher = indexIOProvider.getIndexSearcherIfAvailable();
+			if (!enabled || indexSearcher == null) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			long deadline = start + maxDurationSeconds * 1_000L;
+			logger.info("Warming up index.");
+
+			touchDocValues(indexSearcher);
+			indexIOProvider.getRelationshipIndex();
+
+			List<String[]> workload = readWorkload();
+			int requests = 0;
+			for (int i = 0; i < iterations && System.currentTimeMillis() < deadline; i++) {
+				for (String[] request : workload) {
+					if (System.currentTimeMillis() >= deadline) {
+						logger.info("Warm-up time limit of {} seconds reached.", maxDurationSeconds);
+						break;
+					}
+					runRequest(request);
+					requests++;
+				}
+			}
+			logger.info("Warm-up complete. {} requests replayed in {} ms.", requests, System.currentTimeMillis() - start);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Warm-up failed: {}", e.getMessage());
+			logger.debug("Warm-up failure.", e);
+		} finally {
+			ready = true;
+		}
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	private void touchDocValues(IndexSearcher indexSearcher) throws IOException {
+		long sum = 0;
+		for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+			for (String field : List.of(FHIRConcept.FieldNames.ACTIVE_SORT, FHIRConcept.FieldNames.PT_AND_FSN_TERM_LENGTH)) {
+				SortedNumericDocValues docValues = DocValues.getSortedNumeric(leaf.reader(), field);
+				while (docValues.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+					sum += docValues.nextValue();
+				}
+			}
+		}
+		logger.debug("Doc values touched, checksum {}.", sum);
+	}
+
+	private List<String[]> readWorkload() throws IOException {
+		List<String[]> workload = new ArrayList<>();
+		Resource resource = resourceLoader.getResource(workloadFile);
+		if (!resource.exists()) {
+			logger.warn("Warm-up workload file '{}' not found.", workloadFile);
+			return workload;
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					workload.add(line.split("\\|", -1));
+				}
+			}
+		}
+		return workload;
+	}
+
+	private void runRequest(String[] request) {
+		List<LanguageDialect> languageDialects = List.of(new LanguageDialect("en", defaultEnglishLangRefset));
+		try {
+			switch (request[0]) {
+				case "lookup" -> {
+					FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
+					if (codeSystemRepository.getConcept(request[1]) != null) {
+						codeSystemService.lookup(codeSystem, request[1], languageDialects);
+					}
+				}
+				case "expand" -> {
+					String filter = request.length > 2 && !request[2].isEmpty() ? request[2] : null;
+					valueSetService.expand(FHIRConstants.SNOMED_URI + FHIRConstants.IMPLICIT_ECL + request[1], filter, languageDialects, false, 0, 20);
+				}
+				case "ecl" -> {
+					BooleanQuery query = new BooleanQuery.Builder()
+							.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
+							.add(eclService.getEclConstraints(request[1]).build(), BooleanClause.Occur.MUST)
+							.build();
+					indexIOProvider.getIndexSearcher().count(query);
+				}
+				default -> logger.warn("Unknown warm-up request type '{}'.", request[0]);
+			}
+		} catch (IOException | RuntimeException e) {
+			// Workload may reference content not in this edition
+			logger.debug("Warm-up request {} failed: {}", String.join("|", request), e.getMessage());
+		}
+	}
+}
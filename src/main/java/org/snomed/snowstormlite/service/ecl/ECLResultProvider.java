@@ -1,6 +1,7 @@
 package org.snomed.snowstormlite.service.ecl;
 
 import org.snomed.snowstormlite.domain.FHIRConcept;
+import org.snomed.snowstormlite.service.RelationshipIndex;
 import org.snomed.snowstormlite.service.ecl.constraint.SConstraint;
 
 import java.io.IOException;
@@ -14,4 +15,6 @@ public interface ECLResultProvider {
 
 	<T> Set<T> extractFromConcepts(Collection<String> conceptIds, Function<FHIRConcept, Set<T>> mappingExtractor) throws IOException;
 
+	RelationshipIndex getRelationshipIndex() throws IOException;
+
 }
@@ -0,0 +1,170 @@
+package org.snomed.snowstormlite.service.ecl;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstormlite.service.IndexReaderScope;
+import org.snomed.snowstormlite.service.QueryBudget;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates independent branches of an ECL expression concurrently, for example the attribute type and value of a refinement,
+ * so that a wide expression costs about as much as its slowest branch rather than the sum of them.
+ * <p>
+ * The pool is bounded and each request may use a limited number of pool threads. Branches that do not get a thread are run by the
+ * requesting thread, which also runs any forked branch that has not started by the time its result is needed,
+ * so nested expressions can not exhaust the pool.
+ */
+@Service
+public class EclBranchExecutor {
+
+	// Shared by all threads working on the same request
+	private static final ThreadLocal<Semaphore> REQUEST_PERMITS = new ThreadLocal<>();
+
+	private final ThreadPoolExecutor executor;
+	private final int maxThreadsPerRequest;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public EclBranchExecutor(@Value("${search.ecl-parallel.enabled:true}") boolean enabled,
+			@Value("${search.ecl-parallel.threads:4}") int threads,
+			@Value("${search.ecl-parallel.queue-size:64}") int queueSize,
+			@Value("${search.ecl-parallel.max-threads-per-request:2}") int maxThreadsPerRequest) {
+
+		this.maxThreadsPerRequest = maxThreadsPerRequest;
+		if (enabled && threads > 0 && maxThreadsPerRequest > 0) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+					runnable -> {
+						Thread thread = new Thread(runnable, "ecl-branch-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			executor.allowCoreThreadTimeOut(true);
+			logger.info("Concurrent ECL branch evaluation enabled with {} threads, {} per request.", threads, maxThreadsPerRequest);
+		} else {
+			executor = null;
+		}
+	}
+
+	/**
+	 * Runs the tasks, concurrently where threads are available, and returns their results in the same order.
+	 * The first task is always run by the calling thread. Tasks run with the query budget and index readers of the calling thread.
+	 */
+	public <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+		List<T> results = new ArrayList<>(tasks.size());
+		if (executor == null || tasks.size() < 2) {
+			for (Callable<T> task : tasks) {
+				results.add(call(task));
+			}
+			return results;
+		}
+
+		Semaphore permits = REQUEST_PERMITS.get();
+		boolean requestStart = permits == null;
+		if (requestStart) {
+			permits = new Semaphore(maxThreadsPerRequest);
+			REQUEST_PERMITS.set(permits);
+		}
+		List<FutureTask<T>> forked = new ArrayList<>(tasks.size());
+		try {
+			forked.add(null);
+			for (int i = 1; i < tasks.size(); i++) {
+				FutureTask<T> future = null;
+				if (permits.tryAcquire()) {
+					future = new FutureTask<>(IndexReaderScope.wrap(QueryBudget.wrap(withPermits(tasks.get(i), permits))));
+					try {
+						executor.execute(future);
+					} catch (RejectedExecutionException e) {
+						// Pool is saturated, the future is run by this thread below
+					}
+				}
+				forked.add(future);
+			}
+
+			results.add(call(tasks.get(0)));
+			for (int i = 1; i < tasks.size(); i++) {
+				FutureTask<T> future = forked.get(i);
+				if (future == null) {
+					results.add(call(tasks.get(i)));
+				} else {
+					// Does nothing if a pool thread has already started the task
+					future.run();
+					results.add(get(future));
+				}
+			}
+			return results;
+		} catch (IOException | RuntimeException e) {
+			for (FutureTask<T> future : forked) {
+				if (future != null) {
+					future.cancel(false);
+				}
+			}
+			throw e;
+		} finally {
+			if (requestStart) {
+				REQUEST_PERMITS.remove();
+			}
+		}
+	}
+
+	private static <T> Callable<T> withPermits(Callable<T> task, Semaphore permits) {
+		return () -> {
+			Semaphore previous = REQUEST_PERMITS.get();
+			REQUEST_PERMITS.set(permits);
+			try {
+				return task.call();
+			} finally {
+				if (previous != null) {
+					REQUEST_PERMITS.set(previous);
+				} else {
+					REQUEST_PERMITS.remove();
+				}
+				permits.release();
+			}
+		};
+	}
+
+	private static <T> T call(Callable<T> task) throws IOException {
+		try {
+			return task.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static <T> T get(FutureTask<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while evaluating ECL.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException ioException) {
+				throw ioException;
+			} else if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			} else if (cause instanceof Error error) {
+				throw error;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.snomed.snowstormlite.service.ecl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One node of an explained ECL constraint tree, with the measurements taken when evaluating that node on its own.
+ */
+public class EclExplainNode {
+
+	private final String type;
+	private final String label;
+	private long queryBuildMillis;
+	private long searchMillis;
+	private long count;
+	private int materializations;
+	private boolean materialized;
+	private String luceneQuery;
+	private final List<EclExplainNode> children = new ArrayList<>();
+
+	public EclExplainNode(String type, String label) {
+		this.type = type;
+		this.label = label;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public long getQueryBuildMillis() {
+		return queryBuildMillis;
+	}
+
+	public void setQueryBuildMillis(long queryBuildMillis) {
+		this.queryBuildMillis = queryBuildMillis;
+	}
+
+	public long getSearchMillis() {
+		return searchMillis;
+	}
+
+	public void setSearchMillis(long searchMillis) {
+		this.searchMillis = searchMillis;
+	}
+
+	public long getTotalMillis() {
+		return queryBuildMillis + searchMillis;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public int getMaterializations() {
+		return materializations;
+	}
+
+	public void setMaterializations(int materializations) {
+		this.materializations = materializations;
+	}
+
+	/**
+	 * @return true if this node itself loaded concepts from the index, rather than only its children.
+	 */
+	public boolean isMaterialized() {
+		return materialized;
+	}
+
+	public void setMaterialized(boolean materialized) {
+		this.materialized = materialized;
+	}
+
+	public String getLuceneQuery() {
+		return luceneQuery;
+	}
+
+	public void setLuceneQuery(String luceneQuery) {
+		this.luceneQuery = luceneQuery;
+	}
+
+	public List<EclExplainNode> getChildren() {
+		return children;
+	}
+}
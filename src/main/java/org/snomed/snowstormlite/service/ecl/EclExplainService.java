@@ -0,0 +1,87 @@
+package org.snomed.snowstormlite.service.ecl;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.snomed.langauges.ecl.ECLException;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.QueryHelper;
+import org.snomed.snowstormlite.service.ecl.constraint.SConstraint;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static org.snomed.snowstormlite.fhir.FHIRHelper.exception;
+
+/**
+ * Evaluates each node of an ECL constraint tree on its own, recording time, cardinality and whether concepts were materialised,
+ * to help find the expensive parts of an expression.
+ */
+@Service
+public class EclExplainService {
+
+	private static final int MAX_QUERY_STRING_LENGTH = 2_000;
+
+	private final ExpressionConstraintLanguageService eclService;
+	private final IndexIOProvider indexIOProvider;
+
+	public EclExplainService(ExpressionConstraintLanguageService eclService, IndexIOProvider indexIOProvider) {
+		this.eclService = eclService;
+		this.indexIOProvider = indexIOProvider;
+	}
+
+	public EclExplainNode explain(String ecl) throws IOException {
+		SConstraint constraint;
+		try {
+			constraint = eclService.getEclConstraintRaw(ecl);
+		} catch (ECLException eclException) {
+			throw exception(format("ECL syntax error. %s", eclException.getMessage()), OperationOutcome.IssueType.INVARIANT, 400);
+		}
+		return explainNode(constraint, indexIOProvider.getIndexSearcher());
+	}
+
+	private EclExplainNode explainNode(SConstraint constraint, IndexSearcher indexSearcher) throws IOException {
+		EclExplainNode node = new EclExplainNode(constraint.getClass().getSimpleName().substring(1), constraint.getExplainLabel());
+
+		int materializationsBefore = eclService.getMaterializationCount();
+		long start = System.nanoTime();
+		BooleanQuery constraintQuery = SConstraint.getQuery(constraint, eclService);
+		node.setQueryBuildMillis(toMillis(System.nanoTime() - start));
+		node.setMaterializations(eclService.getMaterializationCount() - materializationsBefore);
+
+		Query query = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(constraintQuery, BooleanClause.Occur.FILTER)
+				.build();
+		start = System.nanoTime();
+		node.setCount(indexSearcher.count(query));
+		node.setSearchMillis(toMillis(System.nanoTime() - start));
+		node.setLuceneQuery(truncate(constraintQuery.toString()));
+
+		int childMaterializations = 0;
+		for (SConstraint child : constraint.getChildConstraints()) {
+			EclExplainNode childNode = explainNode(child, indexSearcher);
+			childMaterializations += childNode.getMaterializations();
+			node.getChildren().add(childNode);
+		}
+		node.setMaterialized(node.getMaterializations() > childMaterializations);
+		return node;
+	}
+
+	private static String truncate(String queryString) {
+		if (queryString.length() <= MAX_QUERY_STRING_LENGTH) {
+			return queryString;
+		}
+		return format("%s... (%s characters)", queryString.substring(0, MAX_QUERY_STRING_LENGTH), queryString.length());
+	}
+
+	private static long toMillis(long nanos) {
+		return nanos / 1_000_000;
+	}
+}
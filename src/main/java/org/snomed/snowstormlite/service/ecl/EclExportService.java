@@ -0,0 +1,222 @@
+package org.snomed.snowstormlite.service.ecl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.snomed.snowstormlite.domain.FHIRConcept;
+import org.snomed.snowstormlite.domain.LanguageDialect;
+import org.snomed.snowstormlite.service.CodeSystemRepository;
+import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.IndexReaderScope;
+import org.snomed.snowstormlite.service.QueryHelper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams every concept matching an ECL expression, for bulk use such as loading a data warehouse.
+ * Concepts are written in index order as they are collected, without scoring or sorting, so memory use does not grow with the
+ * size of the result.
+ */
+@Service
+public class EclExportService {
+
+	private static final Set<String> ID_FIELD = Set.of(FHIRConcept.FieldNames.ID);
+	private static final Set<String> DISPLAY_FIELDS = Set.of(FHIRConcept.FieldNames.ID, FHIRConcept.FieldNames.TERM_STORED);
+
+	private final ExpressionConstraintLanguageService eclService;
+	private final CodeSystemRepository codeSystemRepository;
+	private final IndexIOProvider indexIOProvider;
+
+	public EclExportService(ExpressionConstraintLanguageService eclService, CodeSystemRepository codeSystemRepository, IndexIOProvider indexIOProvider) {
+		this.eclService = eclService;
+		this.codeSystemRepository = codeSystemRepository;
+		this.indexIOProvider = indexIOProvider;
+	}
+
+	/**
+	 * Evaluates the ECL now, within the budget of the current request, so that errors are reported before any output is written.
+	 * @return an export that writes the results when called, this may be on another thread.
+	 */
+	public Export prepareExport(String ecl, Format format, boolean includeDisplay, boolean includeActive, List<LanguageDialect> languageDialects) throws IOException {
+		Query query = new BooleanQuery.Builder()
+				.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
+				.add(eclService.getEclConstraints(ecl).build(), BooleanClause.Occur.FILTER)
+				.build();
+		return outputStream -> {
+			// The export is written after the request has released its readers, so the reader is only held while writing,
+			// nothing is held if the export is never written
+			try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+				// Plain searcher on the current reader, without the query timeout or executor of the shared searchers
+				IndexSearcher indexSearcher = new IndexSearcher(indexIOProvider.getIndexSearcher().getIndexReader());
+				RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(outputStream, includeDisplay, includeActive) : new NdjsonRowWriter(outputStream);
+				ExportCollector collector = new ExportCollector(rowWriter, includeDisplay, includeActive, languageDialects);
+				indexSearcher.search(query, collector);
+				rowWriter.finish();
+				return collector.count;
+			}
+		};
+	}
+
+	public enum Format {
+		NDJSON, CSV
+	}
+
+	@FunctionalInterface
+	public interface Export {
+		/**
+		 * @return the number of concepts written.
+		 */
+		long writeTo(OutputStream outputStream) throws IOException;
+	}
+
+	private class ExportCollector extends SimpleCollector {
+
+		private final RowWriter rowWriter;
+		private final boolean includeDisplay;
+		private final boolean includeActive;
+		private final List<LanguageDialect> languageDialects;
+		private NumericDocValues ids;
+		private NumericDocValues activeValues;
+		private StoredFields storedFields;
+		private long count;
+
+		ExportCollector(RowWriter rowWriter, boolean includeDisplay, boolean includeActive, List<LanguageDialect> languageDialects) {
+			this.rowWriter = rowWriter;
+			this.includeDisplay = includeDisplay;
+			this.includeActive = includeActive;
+			this.languageDialects = languageDialects;
+		}
+
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) throws IOException {
+			// Null for segments written before the numeric id field was added, the stored id is read instead
+			ids = context.reader().getNumericDocValues(FHIRConcept.FieldNames.ID_NUMERIC);
+			activeValues = includeActive ? DocValues.getNumeric(context.reader(), FHIRConcept.FieldNames.ACTIVE_SORT) : null;
+			storedFields = context.reader().storedFields();
+		}
+
+		@Override
+		public void collect(int doc) throws IOException {
+			String code = null;
+			String display = null;
+			if (includeDisplay) {
+				FHIRConcept concept = codeSystemRepository.getConceptDescriptionsFromDoc(storedFields.document(doc, DISPLAY_FIELDS));
+				code = concept.getConceptId();
+				display = concept.getPT(languageDialects);
+			} else if (ids != null && ids.advanceExact(doc)) {
+				code = Long.toString(ids.longValue());
+			}
+			if (code == null) {
+				code = storedFields.document(doc, ID_FIELD).get(FHIRConcept.FieldNames.ID);
+			}
+			Boolean active = null;
+			if (activeValues != null) {
+				active = activeValues.advanceExact(doc) && activeValues.longValue() == 1;
+			}
+			rowWriter.write(code, display, active);
+			count++;
+		}
+
+		@Override
+		public ScoreMode scoreMode() {
+			return ScoreMode.COMPLETE_NO_SCORES;
+		}
+	}
+
+	private interface RowWriter {
+		void write(String code, String display, Boolean active) throws IOException;
+
+		void finish() throws IOException;
+	}
+
+	private static class NdjsonRowWriter implements RowWriter {
+
+		private final JsonGenerator generator;
+
+		NdjsonRowWriter(OutputStream outputStream) throws IOException {
+			generator = new JsonFactory().createGenerator(outputStream);
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		}
+
+		@Override
+		public void write(String code, String display, Boolean active) throws IOException {
+			generator.writeStartObject();
+			generator.writeStringField("code", code);
+			if (display != null) {
+				generator.writeStringField("display", display);
+			}
+			if (active != null) {
+				generator.writeBooleanField("active", active);
+			}
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+
+		@Override
+		public void finish() throws IOException {
+			generator.flush();
+		}
+	}
+
+	private static class CsvRowWriter implements RowWriter {
+
+		private final Writer writer;
+		private final boolean includeDisplay;
+		private final boolean includeActive;
+
+		CsvRowWriter(OutputStream outputStream, boolean includeDisplay, boolean includeActive) throws IOException {
+			writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+			this.includeDisplay = includeDisplay;
+			this.includeActive = includeActive;
+			writer.write("code");
+			if (includeDisplay) {
+				writer.write(",display");
+			}
+			if (includeActive) {
+				writer.write(",active");
+			}
+			writer.write("\n");
+		}
+
+		@Override
+		public void write(String code, String display, Boolean active) throws IOException {
+			writer.write(code);
+			if (includeDisplay) {
+				writer.write(',');
+				writer.write(escape(display));
+			}
+			if (includeActive) {
+				writer.write(',');
+				writer.write(Boolean.TRUE.equals(active) ? "true" : "false");
+			}
+			writer.write('\n');
+		}
+
+		private static String escape(String value) {
+			if (value == null) {
+				return "";
+			}
+			if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+				return value;
+			}
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+
+		@Override
+		public void finish() throws IOException {
+			writer.flush();
+		}
+	}
+}
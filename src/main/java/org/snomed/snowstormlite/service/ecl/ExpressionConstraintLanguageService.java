@@ -13,16 +13,24 @@ import org.snomed.snowstormlite.domain.Concepts;
 import org.snomed.snowstormlite.domain.FHIRConcept;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
 import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.QueryBudget;
 import org.snomed.snowstormlite.service.QueryHelper;
+import org.snomed.snowstormlite.service.RelationshipIndex;
+import org.snomed.snowstormlite.service.RequestProfile;
+import org.snomed.snowstormlite.service.TerminologyMetrics;
 import org.snomed.snowstormlite.service.ecl.constraint.SConstraint;
 import org.snomed.snowstormlite.service.ecl.constraint.SSubExpressionConstraint;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -37,24 +45,33 @@ public class ExpressionConstraintLanguageService implements ECLResultProvider {
 	private final CodeSystemRepository codeSystemRepository;
 	private final IndexIOProvider indexIOProvider;
 	private final ECLQueryBuilder eclQueryBuilder;
+	private final EclBranchExecutor branchExecutor;
+	private final TerminologyMetrics metrics;
+	private final ThreadLocal<AtomicInteger> materializationCount = ThreadLocal.withInitial(AtomicInteger::new);
+
+	public ExpressionConstraintLanguageService(CodeSystemRepository codeSystemRepository, IndexIOProvider indexIOProvider, EclBranchExecutor branchExecutor,
+			TerminologyMetrics metrics) {
 
-	public ExpressionConstraintLanguageService(CodeSystemRepository codeSystemRepository, IndexIOProvider indexIOProvider) {
 		this.codeSystemRepository = codeSystemRepository;
 		this.indexIOProvider = indexIOProvider;
+		this.branchExecutor = branchExecutor;
+		this.metrics = metrics;
 		eclQueryBuilder = new ECLQueryBuilder(new SECLObjectFactory(this));
 	}
 
 	public BooleanQuery.Builder getEclConstraints(String ecl) throws IOException {
 		try {
 			SConstraint constraint = getEclConstraintRaw(ecl);
-			return constraint.addQuery(new BooleanQuery.Builder(), this);
+			return metrics.time("ecl", () -> constraint.addQuery(new BooleanQuery.Builder(), this));
 		} catch (ECLException eclException) {
 			throw exception(format("ECL syntax error. %s", eclException.getMessage()), OperationOutcome.IssueType.INVARIANT, 400);
 		}
 	}
 
 	public SConstraint getEclConstraintRaw(String ecl) {
-		return (SConstraint) eclQueryBuilder.createQuery(ecl);
+		try (RequestProfile.Phase ignored = RequestProfile.phase("ecl-parse")) {
+			return (SConstraint) eclQueryBuilder.createQuery(ecl);
+		}
 	}
 
 	public FHIRConcept getConcept(String conceptId) throws IOException {
@@ -62,9 +79,15 @@ public class ExpressionConstraintLanguageService implements ECLResultProvider {
 	}
 
 	public <T> Set<T> extractFromConcepts(Collection<String> conceptIds, Function<FHIRConcept, Set<T>> mappingExtractor) throws IOException {
+		materializationCount.get().incrementAndGet();
 		return codeSystemRepository.extractFromConcepts(conceptIds, mappingExtractor);
 	}
 
+	@Override
+	public RelationshipIndex getRelationshipIndex() throws IOException {
+		return indexIOProvider.getRelationshipIndex();
+	}
+
 	public Set<Long> getConceptIds(SConstraint expressionConstraint) throws IOException {
 		if (expressionConstraint instanceof SSubExpressionConstraint subExpressionConstraint) {
 			if (subExpressionConstraint.isSingleConcept()) {
@@ -74,26 +97,100 @@ public class ExpressionConstraintLanguageService implements ECLResultProvider {
 			}
 		}
 
+		materializationCount.get().incrementAndGet();
 		BooleanQuery.Builder builder = expressionConstraint.addQuery(new BooleanQuery.Builder(), this);
 		BooleanQuery booleanQuery = new BooleanQuery.Builder()
-				.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.MUST)
-				.add(builder.build(), BooleanClause.Occur.MUST)
+				.add(new TermQuery(new Term(QueryHelper.TYPE, FHIRConcept.DOC_TYPE)), BooleanClause.Occur.FILTER)
+				// Filter clauses are not scored, which allows the query cache to reuse their bitsets
+				.add(builder.build(), BooleanClause.Occur.FILTER)
 				.build();
 		try {
 			Set<Long> codes = new LongOpenHashSet();
-			IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
+			IndexSearcher indexSearcher = indexIOProvider.getConcurrentIndexSearcher();
 			StoredFields storedFields = indexSearcher.getIndexReader().storedFields();
-			TopDocs queryResult = indexSearcher.search(booleanQuery, Integer.MAX_VALUE);
+			TopDocs queryResult = indexSearcher.search(booleanQuery, QueryBudget.conceptCollectionLimit());
+			QueryBudget.checkTime();
+			QueryBudget.checkConcepts(queryResult.scoreDocs.length);
+			metrics.recordHits("ecl", queryResult.totalHits.value);
 			for (ScoreDoc scoreDoc : queryResult.scoreDocs) {
 				Long conceptId = codeSystemRepository.getConceptIdFromDoc(storedFields.document(scoreDoc.doc));
 				codes.add(conceptId);
 			}
+			metrics.recordResults("ecl", codes.size());
 			return codes;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/**
+	 * Materialises independent constraints, concurrently when more than one of them needs to be loaded from the index.
+	 * @return the concept ids of each constraint, in the same order.
+	 */
+	public List<Set<Long>> getConceptIdsForEach(List<SConstraint> expressionConstraints) throws IOException {
+		List<Callable<Set<Long>>> tasks = new ArrayList<>();
+		for (SConstraint expressionConstraint : expressionConstraints) {
+			tasks.add(() -> getConceptIds(expressionConstraint));
+		}
+		// Every constraint except a single concept needs a search
+		long loading = expressionConstraints.stream()
+				.filter(constraint -> !(constraint instanceof SSubExpressionConstraint subConstraint && subConstraint.isSingleConcept()))
+				.count();
+		return invokeAll(tasks, loading > 1);
+	}
+
+	/**
+	 * Builds the queries of independent constraints, concurrently when more than one of them needs to load concepts from the index.
+	 * @return the query of each constraint, in the same order.
+	 */
+	public List<BooleanQuery> getQueries(List<? extends SConstraint> constraints) throws IOException {
+		List<Callable<BooleanQuery>> tasks = new ArrayList<>();
+		for (SConstraint constraint : constraints) {
+			tasks.add(() -> SConstraint.getQuery(constraint, this));
+		}
+		long loading = constraints.stream().filter(SConstraint::needsMaterialization).count();
+		return invokeAll(tasks, loading > 1);
+	}
+
+	private <T> List<T> invokeAll(List<Callable<T>> tasks, boolean concurrent) throws IOException {
+		if (!concurrent) {
+			List<T> results = new ArrayList<>();
+			for (Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (IOException | RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return results;
+		}
+		// Branches on other threads count towards the materialisations of this thread
+		AtomicInteger count = materializationCount.get();
+		List<Callable<T>> countedTasks = new ArrayList<>();
+		for (Callable<T> task : tasks) {
+			countedTasks.add(() -> {
+				AtomicInteger previous = materializationCount.get();
+				materializationCount.set(count);
+				try {
+					return task.call();
+				} finally {
+					materializationCount.set(previous);
+				}
+			});
+		}
+		return branchExecutor.invokeAll(countedTasks);
+	}
+
+	/**
+	 * @return the number of times concepts have been loaded from the index during ECL evaluation on the current thread,
+	 * rather than the constraint being pushed down into the Lucene query.
+	 */
+	public int getMaterializationCount() {
+		return materializationCount.get().get();
+	}
+
 	public Set<String> getHistoricAssociationTypes(HistorySupplement historySupplement) throws IOException {
 		Set<String> associations;
 		SConstraint expressionConstraint = null;
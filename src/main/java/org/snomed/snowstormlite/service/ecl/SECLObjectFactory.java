@@ -56,8 +56,7 @@ public class SECLObjectFactory extends ECLObjectFactory {
 
 	@Override
 	protected EclAttributeGroup getAttributeGroup() {
-		throwEclFeatureNotSupported("Attribute group");
-		return null;
+		return new SEclAttributeGroup();
 	}
 
 	@Override
@@ -8,6 +8,7 @@ import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstra
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -17,26 +18,40 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
 		if (getConjunctionExpressionConstraints() != null) {
 			// All conjunction constraints must be met
-			for (SSubExpressionConstraint conjunctionExpressionConstraint : getSConjunctionExpressionConstraints()) {
-				builder.add(conjunctionExpressionConstraint.addQuery(new BooleanQuery.Builder(), eclService).build(), BooleanClause.Occur.MUST);
+			for (BooleanQuery conjunctionQuery : eclService.getQueries(getSConjunctionExpressionConstraints())) {
+				builder.add(conjunctionQuery, BooleanClause.Occur.MUST);
 			}
 		} else if (getDisjunctionExpressionConstraints() != null) {
 			// One or more disjunction constraints must be met
 			BooleanQuery.Builder disjunctionShouldClauses = new BooleanQuery.Builder();
-			for (SSubExpressionConstraint disjunctionExpressionConstraint : getSDisjunctionExpressionConstraints()) {
-				disjunctionShouldClauses.add(disjunctionExpressionConstraint.addQuery(new BooleanQuery.Builder(), eclService).build(), BooleanClause.Occur.SHOULD);
+			for (BooleanQuery disjunctionQuery : eclService.getQueries(getSDisjunctionExpressionConstraints())) {
+				disjunctionShouldClauses.add(disjunctionQuery, BooleanClause.Occur.SHOULD);
 			}
 			builder.add(disjunctionShouldClauses.build(), BooleanClause.Occur.MUST);
 		} else if (getExclusionExpressionConstraints() != null) {
 			// First part of exclusion must be met
 			// Second part of exclusion must not be met
 			Pair<SubExpressionConstraint> pair = getExclusionExpressionConstraints();
-			builder.add(((SSubExpressionConstraint)pair.getFirst()).addQuery(new BooleanQuery.Builder(), eclService).build(), BooleanClause.Occur.MUST);
-			builder.add(((SSubExpressionConstraint)pair.getSecond()).addQuery(new BooleanQuery.Builder(), eclService).build(), BooleanClause.Occur.MUST_NOT);
+			List<BooleanQuery> queries = eclService.getQueries(List.of((SSubExpressionConstraint) pair.getFirst(), (SSubExpressionConstraint) pair.getSecond()));
+			builder.add(queries.get(0), BooleanClause.Occur.MUST);
+			builder.add(queries.get(1), BooleanClause.Occur.MUST_NOT);
 		}
 		return builder;
 	}
 
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChildren(children, getConjunctionExpressionConstraints());
+		SConstraint.addChildren(children, getDisjunctionExpressionConstraints());
+		Pair<SubExpressionConstraint> exclusion = getExclusionExpressionConstraints();
+		if (exclusion != null) {
+			SConstraint.addChild(children, exclusion.getFirst());
+			SConstraint.addChild(children, exclusion.getSecond());
+		}
+		return children;
+	}
+
 	public List<SSubExpressionConstraint> getSConjunctionExpressionConstraints() {
 		if (getConjunctionExpressionConstraints() == null) {
 			return null;
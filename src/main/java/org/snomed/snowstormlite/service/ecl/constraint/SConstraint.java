@@ -4,6 +4,8 @@ import org.apache.lucene.search.BooleanQuery;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 public interface SConstraint {
 
@@ -13,4 +15,38 @@ public interface SConstraint {
 
 	BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException;
 
+	/**
+	 * @return the direct child constraints of this node, used to walk the constraint tree, for example when explaining a query.
+	 */
+	default List<SConstraint> getChildConstraints() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * @return a short description of this node for query explanation, or null if the node type is enough.
+	 */
+	default String getExplainLabel() {
+		return null;
+	}
+
+	/**
+	 * @return true if building the query for this node loads concepts from the index, rather than only adding clauses.
+	 * Used to decide which branches are worth evaluating concurrently.
+	 */
+	default boolean needsMaterialization() {
+		return getChildConstraints().stream().anyMatch(SConstraint::needsMaterialization);
+	}
+
+	static void addChild(List<SConstraint> children, Object child) {
+		if (child != null) {
+			children.add((SConstraint) child);
+		}
+	}
+
+	static void addChildren(List<SConstraint> children, List<?> childList) {
+		if (childList != null) {
+			childList.forEach(child -> addChild(children, child));
+		}
+	}
+
 }
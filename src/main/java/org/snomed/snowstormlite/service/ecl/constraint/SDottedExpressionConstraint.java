@@ -5,17 +5,16 @@ import org.apache.lucene.search.BooleanQuery;
 import org.snomed.langauges.ecl.domain.expressionconstraint.DottedExpressionConstraint;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
 import org.snomed.snowstormlite.domain.FHIRConcept;
-import org.snomed.snowstormlite.domain.FHIRRelationship;
+import org.snomed.snowstormlite.service.QueryBudget;
 import org.snomed.snowstormlite.service.QueryHelper;
+import org.snomed.snowstormlite.service.RelationshipIndex;
 import org.snomed.snowstormlite.service.ecl.ECLResultProvider;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class SDottedExpressionConstraint extends DottedExpressionConstraint implements SConstraint {
 
@@ -29,36 +28,39 @@ public class SDottedExpressionConstraint extends DottedExpressionConstraint impl
 	@Override
 	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
 
-		if (getSubExpressionConstraint().isWildcard()) {
-			throw new UnsupportedOperationException("Dotted expression using wildcard focus concept is not supported.");
+		// Null means all concepts
+		Set<Long> conceptIds = null;
+		if (!getSubExpressionConstraint().isWildcard()) {
+			conceptIds = eclResultProvider.getConceptIds((SConstraint) getSubExpressionConstraint());
 		}
 
-		Set<Long> conceptIds = eclResultProvider.getConceptIds((SConstraint) getSubExpressionConstraint());
-
-		Set<Long> allRelationshipTargets = new HashSet<>();
+		// Each dotted attribute is followed from the targets of the previous one
+		RelationshipIndex relationshipIndex = eclResultProvider.getRelationshipIndex();
 		for (SubExpressionConstraint dottedAttribute : dottedAttributes) {
 			SSubExpressionConstraint aDottedAttribute = (SSubExpressionConstraint) dottedAttribute;
-			Set<Long> attributeTypeIds = new HashSet<>(eclResultProvider.getConceptIds(aDottedAttribute));
-
-			Function<FHIRConcept, Set<Long>> relationshipFilterTargetExtractor = concept -> {
-				Set<Long> relationshipTargets = new HashSet<>();
-				for (Set<FHIRRelationship> relationshipGroup : concept.getRelationships().values()) {
-					for (FHIRRelationship fhirRelationship : relationshipGroup) {
-						if (attributeTypeIds.contains(fhirRelationship.getType())) {
-							relationshipTargets.add(fhirRelationship.getTarget());
-						}
-					}
-				}
-				return relationshipTargets;
-			};
-
-			Set<String> idStrings = conceptIds.stream().map(Object::toString).collect(Collectors.toSet());
-			allRelationshipTargets = eclResultProvider.extractFromConcepts(idStrings, relationshipFilterTargetExtractor);
+			Set<Long> attributeTypeIds = null;
+			if (!aDottedAttribute.isWildcard()) {
+				attributeTypeIds = eclResultProvider.getConceptIds(aDottedAttribute);
+			}
+			conceptIds = relationshipIndex.getDestinations(conceptIds, attributeTypeIds);
 		}
 
-		Set<String> allRelationshipTargetStrings = allRelationshipTargets.stream().map(Objects::toString).collect(Collectors.toSet());
-		builder.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, allRelationshipTargetStrings), BooleanClause.Occur.MUST);
+		QueryBudget.checkConcepts(conceptIds.size());
+		builder.add(QueryHelper.termsQueryFromLongs(FHIRConcept.FieldNames.ID, conceptIds), BooleanClause.Occur.MUST);
 
 		return builder;
 	}
+
+	@Override
+	public boolean needsMaterialization() {
+		return true;
+	}
+
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getSubExpressionConstraint());
+		SConstraint.addChildren(children, dottedAttributes);
+		return children;
+	}
 }
@@ -1,16 +1,21 @@
 package org.snomed.snowstormlite.service.ecl.constraint;
 
+import it.unimi.dsi.fastutil.ints.IntSet;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.FieldExistsQuery;
 import org.snomed.langauges.ecl.domain.refinement.EclAttribute;
 import org.snomed.snowstormlite.fhir.FHIRHelper;
 import org.snomed.snowstormlite.service.QueryHelper;
+import org.snomed.snowstormlite.service.RelationshipIndex;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import static org.snomed.snowstormlite.service.ecl.ECLConstraintHelper.throwEclFeatureNotSupported;
@@ -19,33 +24,37 @@ public class SEclAttribute extends EclAttribute implements SConstraint {
 
 	@Override
 	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
-		if (cardinalityMin != 1 || cardinalityMax != null) {
-			throwEclFeatureNotSupported("Attribute cardinality");
+		if (getExpressionComparisonOperator() == null) {
+			throw FHIRHelper.exceptionNotSupported("ECL comparison operators other than the expression comparison operator are supported by this implementation.");
 		}
-		if (reverse) {
-			throwEclFeatureNotSupported("Reverse flag");
+		if (getCardinalityMinOrDefault() != 1 || cardinalityMax != null || reverse) {
+			// Counting is answered from the relationship index
+			RelationshipIndex relationshipIndex = eclService.getRelationshipIndex();
+			RelationshipIndex.AttributeMatcher matcher = getAttributeMatcher(relationshipIndex, eclService);
+			RelationshipIndex.Matches matches;
+			if (reverse) {
+				matches = relationshipIndex.matchReverse(matcher, getCardinalityMinOrDefault(), cardinalityMax);
+			} else {
+				matches = relationshipIndex.match(getRelationshipsPredicate(relationshipIndex, matcher));
+			}
+			matches.checkBudget();
+			matches.addTo(builder);
+			return builder;
 		}
 
-		SSubExpressionConstraint attributeName = (SSubExpressionConstraint) getAttributeName();
+		TypeAndValueIds typeAndValueIds = getTypeAndValueIds(eclService);
 		Set<? extends Serializable> attributeTypes;
-		if (attributeName.isWildcard()) {
+		if (typeAndValueIds.typeIds() == null) {
 			attributeTypes = Collections.singleton("any");
 		} else {
-			attributeTypes = eclService.getConceptIds(attributeName);
+			attributeTypes = typeAndValueIds.typeIds();
 		}
 
-		if (getExpressionComparisonOperator() == null) {
-			throw FHIRHelper.exceptionNotSupported("ECL comparison operators other than the expression comparison operator are supported by this implementation.");
-		}
 		boolean equals = getExpressionComparisonOperator().equals("=");
-		SSubExpressionConstraint value = (SSubExpressionConstraint) getValue();
-		Set<Long> valueIds = null;
-		if (!value.isWildcard()) {
-			valueIds = eclService.getConceptIds(value);
-		}
+		Set<Long> valueIds = typeAndValueIds.valueIds();
 		BooleanQuery.Builder disjunctionBuilder = new BooleanQuery.Builder();
 		for (Serializable attributeType : attributeTypes) {
-			if (value.isWildcard()) {
+			if (valueIds == null) {
 				disjunctionBuilder.add(new FieldExistsQuery("at_" + attributeType), BooleanClause.Occur.SHOULD);
 			} else {
 				disjunctionBuilder.add(QueryHelper.termsQueryFromLongs("at_" + attributeType, valueIds), BooleanClause.Occur.SHOULD);
@@ -55,4 +64,77 @@ public class SEclAttribute extends EclAttribute implements SConstraint {
 
 		return builder;
 	}
+
+	/**
+	 * @return a predicate testing the relationships of one attribute group against this attribute and its cardinality.
+	 */
+	public RelationshipIndex.RelationshipsPredicate getRelationshipsPredicate(RelationshipIndex relationshipIndex,
+			ExpressionConstraintLanguageService eclService) throws IOException {
+
+		if (getExpressionComparisonOperator() == null) {
+			throw FHIRHelper.exceptionNotSupported("ECL comparison operators other than the expression comparison operator are supported by this implementation.");
+		}
+		if (reverse) {
+			throwEclFeatureNotSupported("Reverse flag within an attribute group");
+		}
+		return getRelationshipsPredicate(relationshipIndex, getAttributeMatcher(relationshipIndex, eclService));
+	}
+
+	private RelationshipIndex.RelationshipsPredicate getRelationshipsPredicate(RelationshipIndex relationshipIndex, RelationshipIndex.AttributeMatcher matcher) {
+		int min = getCardinalityMinOrDefault();
+		Integer max = cardinalityMax;
+		return (start, end) -> RelationshipIndex.inRange(relationshipIndex.countForward(start, end, matcher), min, max);
+	}
+
+	private RelationshipIndex.AttributeMatcher getAttributeMatcher(RelationshipIndex relationshipIndex, ExpressionConstraintLanguageService eclService) throws IOException {
+		TypeAndValueIds typeAndValueIds = getTypeAndValueIds(eclService);
+		IntSet types = typeAndValueIds.typeIds() != null ? relationshipIndex.toOrdinals(typeAndValueIds.typeIds()) : null;
+		IntSet values = typeAndValueIds.valueIds() != null ? relationshipIndex.toOrdinals(typeAndValueIds.valueIds()) : null;
+		return new RelationshipIndex.AttributeMatcher(types, values, !getExpressionComparisonOperator().equals("="));
+	}
+
+	/**
+	 * Materialises the attribute name and value, concurrently when both need a search. Wildcards give null.
+	 */
+	private TypeAndValueIds getTypeAndValueIds(ExpressionConstraintLanguageService eclService) throws IOException {
+		SSubExpressionConstraint attributeName = (SSubExpressionConstraint) getAttributeName();
+		SSubExpressionConstraint value = (SSubExpressionConstraint) getValue();
+		List<SConstraint> constraints = new ArrayList<>();
+		if (!attributeName.isWildcard()) {
+			constraints.add(attributeName);
+		}
+		if (!value.isWildcard()) {
+			constraints.add(value);
+		}
+		List<Set<Long>> conceptIds = eclService.getConceptIdsForEach(constraints);
+		Set<Long> typeIds = attributeName.isWildcard() ? null : conceptIds.get(0);
+		Set<Long> valueIds = value.isWildcard() ? null : conceptIds.get(conceptIds.size() - 1);
+		return new TypeAndValueIds(typeIds, valueIds);
+	}
+
+	private int getCardinalityMinOrDefault() {
+		return Objects.requireNonNullElse(cardinalityMin, 1);
+	}
+
+	@Override
+	public boolean needsMaterialization() {
+		return true;
+	}
+
+	@Override
+	public String getExplainLabel() {
+		return String.format("%s[%s..%s] %s", reverse ? "R " : "", getCardinalityMinOrDefault(), cardinalityMax != null ? cardinalityMax : "*",
+				getExpressionComparisonOperator());
+	}
+
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getAttributeName());
+		SConstraint.addChild(children, getValue());
+		return children;
+	}
+
+	private record TypeAndValueIds(Set<Long> typeIds, Set<Long> valueIds) {
+	}
 }
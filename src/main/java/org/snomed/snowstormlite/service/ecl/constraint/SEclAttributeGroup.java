@@ -0,0 +1,47 @@
+package org.snomed.snowstormlite.service.ecl.constraint;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.snomed.langauges.ecl.domain.refinement.EclAttributeGroup;
+import org.snomed.snowstormlite.service.RelationshipIndex;
+import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+public class SEclAttributeGroup extends EclAttributeGroup implements SConstraint {
+
+	@Override
+	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
+		// All attributes of the set must match within the same group
+		RelationshipIndex relationshipIndex = eclService.getRelationshipIndex();
+		RelationshipIndex.RelationshipsPredicate groupPredicate = ((SEclAttributeSet) getAttributeSet()).getRelationshipsPredicate(relationshipIndex, eclService);
+		RelationshipIndex.Matches matches = relationshipIndex.match(
+				relationshipIndex.groupCardinality(groupPredicate, getCardinalityMinOrDefault(), cardinalityMax));
+		matches.checkBudget();
+		matches.addTo(builder);
+		return builder;
+	}
+
+	private int getCardinalityMinOrDefault() {
+		return Objects.requireNonNullElse(cardinalityMin, 1);
+	}
+
+	@Override
+	public boolean needsMaterialization() {
+		return true;
+	}
+
+	@Override
+	public String getExplainLabel() {
+		return String.format("[%s..%s] group", getCardinalityMinOrDefault(), cardinalityMax != null ? cardinalityMax : "*");
+	}
+
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getAttributeSet());
+		return children;
+	}
+}
@@ -4,31 +4,65 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.snomed.langauges.ecl.domain.refinement.EclAttributeSet;
 import org.snomed.langauges.ecl.domain.refinement.SubAttributeSet;
+import org.snomed.snowstormlite.service.RelationshipIndex;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
-
-import static org.snomed.snowstormlite.service.ecl.constraint.SConstraint.getQuery;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SEclAttributeSet extends EclAttributeSet implements SConstraint {
 
 	@Override
 	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
+		// Attribute sets are independent so their values can be loaded concurrently
+		List<SConstraint> attributeSets = new ArrayList<>();
+		SConstraint.addChild(attributeSets, getSubAttributeSet());
 		if (getDisjunctionAttributeSet() != null) {
+			SConstraint.addChildren(attributeSets, getDisjunctionAttributeSet());
 			BooleanQuery.Builder disjunctionBuilder = new BooleanQuery.Builder();
-			disjunctionBuilder.add(getQuery((SConstraint) getSubAttributeSet(), eclService), BooleanClause.Occur.SHOULD);
-			for (SubAttributeSet attributeSet : getDisjunctionAttributeSet()) {
-				disjunctionBuilder.add(getQuery((SConstraint) attributeSet, eclService), BooleanClause.Occur.SHOULD);
+			for (BooleanQuery query : eclService.getQueries(attributeSets)) {
+				disjunctionBuilder.add(query, BooleanClause.Occur.SHOULD);
 			}
 			builder.add(disjunctionBuilder.build(), BooleanClause.Occur.MUST);
 		} else {
-			builder.add(getQuery((SConstraint) getSubAttributeSet(), eclService), BooleanClause.Occur.MUST);
-			if (getConjunctionAttributeSet() != null) {
-				for (SubAttributeSet attributeSet : getConjunctionAttributeSet()) {
-					builder.add(getQuery((SConstraint) attributeSet, eclService), BooleanClause.Occur.MUST);
-				}
+			SConstraint.addChildren(attributeSets, getConjunctionAttributeSet());
+			for (BooleanQuery query : eclService.getQueries(attributeSets)) {
+				builder.add(query, BooleanClause.Occur.MUST);
 			}
 		}
 		return builder;
 	}
+
+	/**
+	 * @return a predicate testing the relationships of one attribute group against this attribute set.
+	 */
+	public RelationshipIndex.RelationshipsPredicate getRelationshipsPredicate(RelationshipIndex relationshipIndex,
+			ExpressionConstraintLanguageService eclService) throws IOException {
+
+		RelationshipIndex.RelationshipsPredicate predicate = ((SSubAttributeSet) getSubAttributeSet()).getRelationshipsPredicate(relationshipIndex, eclService);
+		if (getDisjunctionAttributeSet() != null) {
+			for (SubAttributeSet attributeSet : getDisjunctionAttributeSet()) {
+				RelationshipIndex.RelationshipsPredicate first = predicate;
+				RelationshipIndex.RelationshipsPredicate other = ((SSubAttributeSet) attributeSet).getRelationshipsPredicate(relationshipIndex, eclService);
+				predicate = (start, end) -> first.test(start, end) || other.test(start, end);
+			}
+		} else if (getConjunctionAttributeSet() != null) {
+			for (SubAttributeSet attributeSet : getConjunctionAttributeSet()) {
+				RelationshipIndex.RelationshipsPredicate first = predicate;
+				RelationshipIndex.RelationshipsPredicate other = ((SSubAttributeSet) attributeSet).getRelationshipsPredicate(relationshipIndex, eclService);
+				predicate = (start, end) -> first.test(start, end) && other.test(start, end);
+			}
+		}
+		return predicate;
+	}
+
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getSubAttributeSet());
+		SConstraint.addChildren(children, getConjunctionAttributeSet());
+		SConstraint.addChildren(children, getDisjunctionAttributeSet());
+		return children;
+	}
 }
@@ -3,33 +3,43 @@ package org.snomed.snowstormlite.service.ecl.constraint;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.snomed.langauges.ecl.domain.refinement.EclRefinement;
-import org.snomed.langauges.ecl.domain.refinement.SubRefinement;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
-
-import static org.snomed.snowstormlite.service.ecl.constraint.SConstraint.getQuery;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SEclRefinement extends EclRefinement implements SConstraint {
 
 	@Override
 	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
+		List<SConstraint> subRefinements = new ArrayList<>();
+		SConstraint.addChild(subRefinements, getSubRefinement());
 		if (getDisjunctionSubRefinements() != null) {
+			SConstraint.addChildren(subRefinements, getDisjunctionSubRefinements());
 			BooleanQuery.Builder disjunctionBuilder = new BooleanQuery.Builder();
-			disjunctionBuilder.add(getQuery(getSubRefinement(), eclService), BooleanClause.Occur.SHOULD);
-			for (SubRefinement disjunctionSubRefinement : getDisjunctionSubRefinements()) {
-				disjunctionBuilder.add(getQuery((SConstraint) disjunctionSubRefinement, eclService), BooleanClause.Occur.SHOULD);
+			for (BooleanQuery query : eclService.getQueries(subRefinements)) {
+				disjunctionBuilder.add(query, BooleanClause.Occur.SHOULD);
 			}
 			builder.add(disjunctionBuilder.build(), BooleanClause.Occur.MUST);
 		} else {
-			builder.add(getQuery(getSubRefinement(), eclService), BooleanClause.Occur.MUST);
-			for (SubRefinement conjunctionSubRefinement : getConjunctionSubRefinements()) {
-				builder.add(getQuery((SConstraint) conjunctionSubRefinement, eclService), BooleanClause.Occur.MUST);
+			SConstraint.addChildren(subRefinements, getConjunctionSubRefinements());
+			for (BooleanQuery query : eclService.getQueries(subRefinements)) {
+				builder.add(query, BooleanClause.Occur.MUST);
 			}
 		}
 		return builder;
 	}
 
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getSubRefinement());
+		SConstraint.addChildren(children, getConjunctionSubRefinements());
+		SConstraint.addChildren(children, getDisjunctionSubRefinements());
+		return children;
+	}
+
 	@Override
 	public SSubRefinement getSubRefinement() {
 		return (SSubRefinement) super.getSubRefinement();
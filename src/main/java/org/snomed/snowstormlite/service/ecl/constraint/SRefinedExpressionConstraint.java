@@ -7,6 +7,7 @@ import org.snomed.langauges.ecl.domain.refinement.EclRefinement;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
+import java.util.List;
 
 public class SRefinedExpressionConstraint extends RefinedExpressionConstraint implements SConstraint {
 
@@ -21,6 +22,11 @@ public class SRefinedExpressionConstraint extends RefinedExpressionConstraint im
 		return builder;
 	}
 
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		return List.of(getSubexpressionConstraint(), getEclRefinement());
+	}
+
 	@Override
 	public SSubExpressionConstraint getSubexpressionConstraint() {
 		return (SSubExpressionConstraint) super.getSubexpressionConstraint();
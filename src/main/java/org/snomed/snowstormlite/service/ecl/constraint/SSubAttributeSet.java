@@ -2,9 +2,12 @@ package org.snomed.snowstormlite.service.ecl.constraint;
 
 import org.apache.lucene.search.BooleanQuery;
 import org.snomed.langauges.ecl.domain.refinement.SubAttributeSet;
+import org.snomed.snowstormlite.service.RelationshipIndex;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SSubAttributeSet extends SubAttributeSet implements SConstraint {
 
@@ -17,4 +20,22 @@ public class SSubAttributeSet extends SubAttributeSet implements SConstraint {
 		}
 		return builder;
 	}
+
+	public RelationshipIndex.RelationshipsPredicate getRelationshipsPredicate(RelationshipIndex relationshipIndex,
+			ExpressionConstraintLanguageService eclService) throws IOException {
+
+		if (getAttribute() != null) {
+			return ((SEclAttribute) getAttribute()).getRelationshipsPredicate(relationshipIndex, eclService);
+		} else {
+			return ((SEclAttributeSet) getAttributeSet()).getRelationshipsPredicate(relationshipIndex, eclService);
+		}
+	}
+
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getAttribute());
+		SConstraint.addChild(children, getAttributeSet());
+		return children;
+	}
 }
@@ -11,11 +11,13 @@ import org.snomed.langauges.ecl.domain.filter.MemberFilterConstraint;
 import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstormlite.domain.FHIRConcept;
 import org.snomed.snowstormlite.domain.FHIRMapping;
+import org.snomed.snowstormlite.service.QueryBudget;
 import org.snomed.snowstormlite.service.QueryHelper;
 import org.snomed.snowstormlite.service.ecl.ECLConstraintHelper;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -58,6 +60,7 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 			List<String> conceptIdsStrings = conceptIds.stream().map(Object::toString).collect(Collectors.toList());
 			Set<String> inactiveLinkedConcepts = eclService.extractFromConcepts(conceptIdsStrings, mappingExtractor);
 			conceptIdsStrings.addAll(inactiveLinkedConcepts);
+			QueryBudget.checkConcepts(conceptIdsStrings.size());
 			builder.add(QueryHelper.termsQuery(FHIRConcept.FieldNames.ID, conceptIdsStrings), BooleanClause.Occur.MUST);
 			return builder;
 		} else {
@@ -142,6 +145,37 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		}
 	}
 
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, nestedExpressionConstraint);
+		return children;
+	}
+
+	@Override
+	public boolean needsMaterialization() {
+		return getHistorySupplement() != null || SConstraint.super.needsMaterialization();
+	}
+
+	@Override
+	public String getExplainLabel() {
+		StringBuilder label = new StringBuilder();
+		if (operator != null) {
+			label.append(operator.name()).append(" ");
+		}
+		if (wildcard) {
+			label.append("*");
+		} else if (conceptId != null) {
+			label.append(conceptId);
+		} else {
+			label.append("(nested)");
+		}
+		if (getHistorySupplement() != null) {
+			label.append(" {{ +HISTORY }}");
+		}
+		return label.toString();
+	}
+
 	public boolean isSingleConcept() {
 		return !isWildcard() && operator == null && conceptId != null && getHistorySupplement() == null;
 	}
@@ -5,6 +5,8 @@ import org.snomed.langauges.ecl.domain.refinement.SubRefinement;
 import org.snomed.snowstormlite.service.ecl.ExpressionConstraintLanguageService;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SSubRefinement extends SubRefinement implements SConstraint {
 
@@ -12,16 +14,32 @@ public class SSubRefinement extends SubRefinement implements SConstraint {
 	public BooleanQuery.Builder addQuery(BooleanQuery.Builder builder, ExpressionConstraintLanguageService eclService) throws IOException {
 		if (getEclRefinement() != null) {
 			return getEclRefinement().addQuery(builder, eclService);
+		} else if (getEclAttributeGroup() != null) {
+			return getEclAttributeGroup().addQuery(builder, eclService);
 		} else {
 			return getEclAttributeSet().addQuery(builder, eclService);
 		}
 	}
 
+	@Override
+	public List<SConstraint> getChildConstraints() {
+		List<SConstraint> children = new ArrayList<>();
+		SConstraint.addChild(children, getEclRefinement());
+		SConstraint.addChild(children, getEclAttributeGroup());
+		SConstraint.addChild(children, getEclAttributeSet());
+		return children;
+	}
+
 	@Override
 	public SEclRefinement getEclRefinement() {
 		return (SEclRefinement) super.getEclRefinement();
 	}
 
+	@Override
+	public SEclAttributeGroup getEclAttributeGroup() {
+		return (SEclAttributeGroup) super.getEclAttributeGroup();
+	}
+
 	@Override
 	public SEclAttributeSet getEclAttributeSet() {
 		return (SEclAttributeSet) super.getEclAttributeSet();
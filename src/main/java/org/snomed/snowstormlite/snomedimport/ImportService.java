@@ -1,5 +1,6 @@
 package org.snomed.snowstormlite.snomedimport;
 
+import io.micrometer.core.instrument.Timer;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
@@ -16,7 +17,10 @@ import org.snomed.snowstormlite.domain.FHIRConcept;
 import org.snomed.snowstormlite.fhir.FHIRHelper;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
 import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.IndexReaderScope;
 import org.snomed.snowstormlite.service.QueryHelper;
+import org.snomed.snowstormlite.service.TerminologyMetrics;
+import org.snomed.snowstormlite.service.ValueSetService;
 import org.snomed.snowstormlite.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -41,6 +45,12 @@ public class ImportService {
 	@Autowired
 	private IndexIOProvider indexIOProvider;
 
+	@Autowired
+	private ValueSetService valueSetService;
+
+	@Autowired
+	private TerminologyMetrics metrics;
+
 	@Value("${import.batch-size}")
 	private int importBatchSizeInThousands;
 
@@ -76,15 +86,20 @@ public class ImportService {
 		if (importRunning) {
 			throw FHIRHelper.exception("An import is already running. Concurrent import is not supported.", OperationOutcome.IssueType.CONFLICT, 409);
 		}
-		try {
+		Timer.Sample sample = metrics.start();
+		boolean success = false;
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
 			importRunning = true;
 			codeSystemRepository.clearCache();
 			doImportReleaseStreams(archiveInputStreams, versionUri, syndicationEditionTitle);
+			valueSetService.materialiseStoredValueSets();
 			// Suggest GC after RF2 import
 			System.gc();
 			logger.info("Import complete");
+			success = true;
 		} finally {
 			importRunning = false;
+			metrics.stop(sample, "import", success);
 		}
 	}
 
@@ -0,0 +1,97 @@
+package org.snomed.snowstormlite.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of a set of concept identifiers.
+ * Identifiers are sorted and each is written as the variable length difference from the previous one,
+ * which takes three or four bytes per concept for typical SNOMED CT content.
+ */
+public class ConceptIdListCodec {
+
+	private ConceptIdListCodec() {
+	}
+
+	/**
+	 * @param conceptIds positive identifiers, in any order. The array is sorted in place.
+	 */
+	public static byte[] encode(long[] conceptIds) {
+		Arrays.sort(conceptIds);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(conceptIds.length * 4 + 5);
+		writeVLong(out, conceptIds.length);
+		long previous = 0;
+		for (long conceptId : conceptIds) {
+			writeVLong(out, conceptId - previous);
+			previous = conceptId;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return the identifiers in ascending order.
+	 */
+	public static long[] decode(byte[] bytes) {
+		int[] position = {0};
+		int size = (int) readVLong(bytes, position);
+		long[] conceptIds = new long[size];
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			previous += readVLong(bytes, position);
+			conceptIds[i] = previous;
+		}
+		return conceptIds;
+	}
+
+	/**
+	 * Keeps the order of the identifiers, each is written as the variable length zig-zag encoded difference from the previous one.
+	 * Takes more space than {@link #encode(long[])} unless the identifiers are mostly in order.
+	 */
+	public static byte[] encodeOrdered(long[] conceptIds) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(conceptIds.length * 5 + 5);
+		writeVLong(out, conceptIds.length);
+		long previous = 0;
+		for (long conceptId : conceptIds) {
+			long difference = conceptId - previous;
+			writeVLong(out, (difference << 1) ^ (difference >> 63));
+			previous = conceptId;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return the identifiers in the order they were encoded by {@link #encodeOrdered(long[])}.
+	 */
+	public static long[] decodeOrdered(byte[] bytes) {
+		int[] position = {0};
+		int size = (int) readVLong(bytes, position);
+		long[] conceptIds = new long[size];
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			long zigZag = readVLong(bytes, position);
+			previous += (zigZag >>> 1) ^ -(zigZag & 1);
+			conceptIds[i] = previous;
+		}
+		return conceptIds;
+	}
+
+	private static void writeVLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVLong(byte[] bytes, int[] position) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[position[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+}
@@ -6,6 +6,7 @@ import { dashboardModalDetail } from './dashboard/modalDetail.js';
 import { dashboardResources } from './dashboard/resources.js';
 import { dashboardRouting, getInitialFhirBaseUrl } from './dashboard/routing.js';
 import { dashboardSettings } from './dashboard/settings.js';
+import { dashboardSlowRequests } from './dashboard/slowRequests.js';
 import {
 	dashboardSnomedBrowser,
 	readStoredSnomedTaxonomyPaneWidthPx,
@@ -115,6 +116,9 @@ function createDashboardState() {
 		settingsCustomTotal: 0,
 		settingsCustomCountsLoading: false,
 		settingsCustomCountsLoaded: false,
+		slowRequests: [],
+		loadingSlowRequests: false,
+		errorSlowRequests: null,
 		_syndicationSettingsApplied: false,
 		installTaskSnapshotByEditionId: {},
 		pendingSyndicationEdition: null,
@@ -165,7 +169,8 @@ document.addEventListener('alpine:init', () => {
 			...dashboardConceptMapUi,
 			...dashboardModalDetail,
 			...dashboardSnomedBrowser,
-			...dashboardSettings
+			...dashboardSettings,
+			...dashboardSlowRequests
 		};
 		return Object.defineProperties(component, {
 			...Object.getOwnPropertyDescriptors(dashboardGetters),
@@ -112,6 +112,12 @@ export const dashboardRouting = {
 			return;
 		}
 
+		if (sectionKey === 'slow-requests') {
+			this.section = 'slow-requests';
+			this.loadSlowRequests();
+			return;
+		}
+
 		if (sectionKey === 'upload-sct') {
 			this.section = 'upload-sct';
 		}
@@ -0,0 +1,39 @@
+import { AJAX_TIMEOUT_MS } from './constants.js';
+import { fetchWithTimeout, errorMessage } from './http.js';
+
+export const dashboardSlowRequests = {
+	openSlowRequests() {
+		this.section = 'slow-requests';
+		this.setHash();
+		this.loadSlowRequests();
+	},
+
+	async loadSlowRequests() {
+		this.loadingSlowRequests = true;
+		this.errorSlowRequests = null;
+		let res;
+		try {
+			res = await fetchWithTimeout('/stats/slow-requests', AJAX_TIMEOUT_MS);
+			if (!res.ok) {
+				throw new Error(`Failed to load slow requests (HTTP ${res.status})`);
+			}
+			this.slowRequests = await res.json();
+		} catch (err) {
+			this.errorSlowRequests = errorMessage(err, 'slow requests', res);
+		} finally {
+			this.loadingSlowRequests = false;
+		}
+	},
+
+	formatSlowRequestContext(entry) {
+		return Object.entries(entry.context || {})
+			.map(([name, value]) => `${name}: ${value}`)
+			.join('\n');
+	},
+
+	formatSlowRequestPhases(entry) {
+		return Object.entries(entry.phases || {})
+			.map(([name, ms]) => `${name}: ${ms} ms`)
+			.join('\n');
+	}
+};
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.otf.snomedboot.testutil.ZipUtil;
 import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
 import org.snomed.snowstormlite.service.AppSetupService;
+import org.snomed.snowstormlite.service.QueryBudget;
 import org.snomed.snowstormlite.service.ValueSetService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
@@ -118,10 +119,42 @@ class ECLTest {
 		assertCodesEqual("[]", getCodes("< 404684003 |Clinical finding| : 363698007 |Finding site| = 362969004 |Disorder of endocrine system|").toString());
 	}
 
+	@Test
+	void testAttributeCardinality() throws IOException {
+		assertCodesEqual("[313005]", getCodes("< 404684003 |Clinical finding| : [0..0] 363698007 |Finding site| = *").toString());
+		assertCodesEqual("[362969004]", getCodes("< 404684003 |Clinical finding| : [1..1] 363698007 |Finding site| = *").toString());
+		assertCodesEqual("[313005, 362969004]", getCodes("< 404684003 |Clinical finding| : [0..1] 363698007 |Finding site| = *").toString());
+		assertCodesEqual("[]", getCodes("< 404684003 |Clinical finding| : [2..*] 363698007 |Finding site| = *").toString());
+		assertCodesEqual("[313005]", getCodes("< 404684003 |Clinical finding| : [0..0] * = 113331007 |Structure of endocrine system|").toString());
+	}
+
+	@Test
+	void testAttributeCardinalityWithinConceptLimit() throws IOException {
+		try (QueryBudget.Scope ignored = QueryBudget.start("expand", 0, 1)) {
+			assertCodesEqual("[313005, 362969004]", getCodes("< 404684003 |Clinical finding| : [0..1] 363698007 |Finding site| = *").toString());
+			assertCodesEqual("[313005]", getCodes("< 404684003 |Clinical finding| : [0..0] { 363698007 |Finding site| = * }").toString());
+		}
+	}
+
+	@Test
+	void testReverseAttribute() throws IOException {
+		assertCodesEqual("[113331007]", getCodes("* : R 363698007 |Finding site| = 362969004 |Disorder of endocrine system|").toString());
+		assertCodesEqual("[113331007]", getCodes("<< 138875005 : R 363698007 |Finding site| = < 404684003 |Clinical finding|").toString());
+		assertCodesEqual("[]", getCodes("< 404684003 |Clinical finding| : R 363698007 |Finding site| = *").toString());
+	}
+
+	@Test
+	void testAttributeGroup() throws IOException {
+		assertCodesEqual("[362969004]", getCodes("< 404684003 |Clinical finding| : { 363698007 |Finding site| = 113331007 |Structure of endocrine system| }").toString());
+		assertCodesEqual("[313005]", getCodes("< 404684003 |Clinical finding| : [0..0] { 363698007 |Finding site| = * }").toString());
+		assertCodesEqual("[]", getCodes("< 404684003 |Clinical finding| : [2..*] { * = * }").toString());
+	}
+
 	@Test
 	void testDotted() throws IOException {
 		assertCodesEqual("[113331007]", getCodes("< 404684003 |Clinical finding| . 363698007 |Finding site|").toString());
 		assertCodesEqual("[]", getCodes("< 404684003 |Clinical finding| . 363698007 |Finding site| . 272741003 |Laterality|").toString());
+		assertCodesEqual("[113331007]", getCodes("* . 363698007 |Finding site|").toString());
 	}
 
 	@Test
@@ -6,6 +6,7 @@ import org.snomed.otf.snomedboot.testutil.ZipUtil;
 import org.snomed.snowstormlite.domain.LanguageDialect;
 import org.snomed.snowstormlite.service.AppSetupService;
 import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.ResourceIndexIOProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -23,6 +24,9 @@ public class TestService {
 	@Autowired
 	private IndexIOProvider indexIOProvider;
 
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
 	public static final List<LanguageDialect> EN_LANGUAGE_DIALECTS = List.of(new LanguageDialect("en", 900000000000509007L));
 
 	public void importRF2Int() throws IOException, ReleaseImportException {
@@ -51,5 +55,6 @@ public class TestService {
 
 	public void tearDown() throws IOException {
 		indexIOProvider.deleteDocuments(new MatchAllDocsQuery());
+		resourceIndexIOProvider.deleteDocuments(new MatchAllDocsQuery());
 	}
 }
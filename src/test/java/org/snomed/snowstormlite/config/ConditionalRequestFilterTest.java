@@ -0,0 +1,170 @@
+package org.snomed.snowstormlite.config;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.service.CodeSystemRepository;
+import org.snomed.snowstormlite.service.IndexIOProvider;
+import org.snomed.snowstormlite.service.ResourceIndexIOProvider;
+import org.snomed.snowstormlite.service.ValueSetService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ConditionalRequestFilterTest {
+
+	private static final String LOOKUP = "/fhir/CodeSystem/$lookup?system=http://snomed.info/sct&code=138875005";
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private ValueSetService valueSetService;
+
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
+	@Autowired
+	private CodeSystemRepository codeSystemRepository;
+
+	@Autowired
+	private TestService testService;
+
+	@BeforeEach
+	void setup() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+	}
+
+	@Test
+	void testIfNoneMatch() {
+		ResponseEntity<String> response = get(LOOKUP, new HttpHeaders());
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		String eTag = response.getHeaders().getETag();
+		assertNotNull(eTag);
+		assertFalse(eTag.startsWith("W/"));
+		assertTrue(response.getHeaders().getLastModified() > 0);
+		assertEquals("public, max-age=60", response.getHeaders().getCacheControl());
+
+		assertEquals(HttpStatus.NOT_MODIFIED, get(LOOKUP, ifNoneMatch(eTag)).getStatusCode());
+		assertEquals(HttpStatus.NOT_MODIFIED, get(LOOKUP, ifNoneMatch("W/" + eTag)).getStatusCode());
+		assertEquals(HttpStatus.NOT_MODIFIED, get(LOOKUP, ifNoneMatch("\"other\", " + eTag)).getStatusCode());
+		assertEquals(HttpStatus.NOT_MODIFIED, get(LOOKUP, ifNoneMatch("*")).getStatusCode());
+		assertEquals(HttpStatus.OK, get(LOOKUP, ifNoneMatch("\"other\"")).getStatusCode());
+
+		// Other parameters, other response
+		assertNotEquals(eTag, get(LOOKUP + "&property=parent", new HttpHeaders()).getHeaders().getETag());
+	}
+
+	@Test
+	void testIfModifiedSinceOnlyWithoutIfNoneMatch() {
+		ResponseEntity<String> response = get(LOOKUP, new HttpHeaders());
+		long lastModified = response.getHeaders().getLastModified();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfModifiedSince(lastModified);
+		assertEquals(HttpStatus.NOT_MODIFIED, get(LOOKUP, headers).getStatusCode());
+
+		headers.setIfModifiedSince(lastModified - 60_000);
+		assertEquals(HttpStatus.OK, get(LOOKUP, headers).getStatusCode());
+
+		// If-None-Match takes precedence
+		headers = ifNoneMatch("\"other\"");
+		headers.setIfModifiedSince(lastModified);
+		assertEquals(HttpStatus.OK, get(LOOKUP, headers).getStatusCode());
+	}
+
+	@Test
+	void testLastModifiedFromIndexCommits() throws IOException {
+		// Taken from the index, so an instance started later on the same index gives the same date
+		long expected = Math.max(indexIOProvider.getLastModified(), resourceIndexIOProvider.getLastModified());
+		expected = Math.max(expected, codeSystemRepository.getCodeSystem().getLastUpdated().getTime());
+		assertEquals(expected - expected % 1000, get(LOOKUP, new HttpHeaders()).getHeaders().getLastModified());
+
+		ValueSet valueSet = new ValueSet();
+		valueSet.setId("conditional-test");
+		valueSet.setUrl("http://example.org/fhir/ValueSet/conditional-test");
+		valueSet.setVersion("1");
+		valueSet.getCompose().addInclude().setSystem("http://snomed.info/sct").addConcept().setCode("404684003");
+		valueSetService.createOrUpdateValueset(valueSet);
+		long saved = resourceIndexIOProvider.getLastModified();
+		assertTrue(saved >= expected);
+		assertEquals(saved - saved % 1000, get(LOOKUP, new HttpHeaders()).getHeaders().getLastModified());
+	}
+
+	@Test
+	void testETagChangesWithContent() throws IOException, ReleaseImportException {
+		String eTag = get(LOOKUP, new HttpHeaders()).getHeaders().getETag();
+
+		ValueSet valueSet = new ValueSet();
+		valueSet.setId("conditional-test");
+		valueSet.setUrl("http://example.org/fhir/ValueSet/conditional-test");
+		valueSet.setVersion("1");
+		valueSet.getCompose().addInclude().setSystem("http://snomed.info/sct").addConcept().setCode("404684003");
+		valueSetService.createOrUpdateValueset(valueSet);
+
+		ResponseEntity<String> response = get(LOOKUP, ifNoneMatch(eTag));
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		String afterSave = response.getHeaders().getETag();
+		assertNotEquals(eTag, afterSave);
+
+		testService.importRF2Int();
+		response = get(LOOKUP, ifNoneMatch(afterSave));
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertNotEquals(afterSave, response.getHeaders().getETag());
+	}
+
+	@Test
+	void testErrorResponseNotCached() {
+		ResponseEntity<String> response = get("/fhir/CodeSystem/$lookup?system=http://snomed.info/sct&code=404040404040404040", new HttpHeaders());
+		assertTrue(response.getStatusCode().is4xxClientError());
+		assertNull(response.getHeaders().getETag());
+		assertEquals(-1, response.getHeaders().getLastModified());
+		assertEquals("no-store", response.getHeaders().getCacheControl());
+	}
+
+	@Test
+	void testPrivateWithAuthorization() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setBearerAuth("token");
+		ResponseEntity<String> response = get(LOOKUP, headers);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("private, max-age=60", response.getHeaders().getCacheControl());
+	}
+
+	private ResponseEntity<String> get(String url, HttpHeaders headers) {
+		return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+	}
+
+	private static HttpHeaders ifNoneMatch(String eTag) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.IF_NONE_MATCH, eTag);
+		return headers;
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+}
@@ -0,0 +1,45 @@
+package org.snomed.snowstormlite.config;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "search.server-timing.enabled=false")
+class ServerTimingDisabledTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testNoServerTimingWhenDisabled() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		ResponseEntity<String> response = ServerTimingTest.get(restTemplate, true);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertNull(response.getHeaders().getFirst(RequestProfileInterceptor.SERVER_TIMING_HEADER));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+}
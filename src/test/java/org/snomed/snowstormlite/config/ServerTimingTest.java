@@ -0,0 +1,71 @@
+package org.snomed.snowstormlite.config;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ServerTimingTest {
+
+	static final String EXPAND = "/fhir/ValueSet/$expand?url=http://snomed.info/sct?fhir_vs=ecl/<<404684003";
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private TestService testService;
+
+	@BeforeEach
+	void setup() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+	}
+
+	@Test
+	void testServerTimingWhenRequested() {
+		ResponseEntity<String> response = get(restTemplate, true);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		String serverTiming = response.getHeaders().getFirst(RequestProfileInterceptor.SERVER_TIMING_HEADER);
+		assertNotNull(serverTiming);
+		assertTrue(serverTiming.matches(".*\\bsearch;dur=[0-9.]+, .*total;dur=[0-9.]+"), serverTiming);
+	}
+
+	@Test
+	void testNoServerTimingByDefault() {
+		ResponseEntity<String> response = get(restTemplate, false);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertNull(response.getHeaders().getFirst(RequestProfileInterceptor.SERVER_TIMING_HEADER));
+	}
+
+	static ResponseEntity<String> get(TestRestTemplate restTemplate, boolean requestServerTiming) {
+		HttpHeaders headers = new HttpHeaders();
+		if (requestServerTiming) {
+			headers.set(RequestProfileFilter.SERVER_TIMING_REQUEST_HEADER, "true");
+		}
+		return restTemplate.exchange(EXPAND, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+}
@@ -0,0 +1,51 @@
+package org.snomed.snowstormlite.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WebSecurityTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Value("${admin.username}")
+	private String username;
+
+	@Value("${admin.password}")
+	private String password;
+
+	@Test
+	void testSlowRequestsRequireAuthentication() {
+		assertEquals(HttpStatus.UNAUTHORIZED, restTemplate.getForEntity("/stats/slow-requests", String.class).getStatusCode());
+		assertEquals(HttpStatus.OK, restTemplate.withBasicAuth(username, password).getForEntity("/stats/slow-requests", String.class).getStatusCode());
+	}
+
+	@Test
+	void testClosureRequiresAuthentication() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("application/fhir+json"));
+		HttpEntity<String> request = new HttpEntity<>("""
+				{"resourceType":"Parameters","parameter":[{"name":"name","valueString":"security-test"}]}""", headers);
+
+		// Closure tables are stored, creating them is a write
+		assertEquals(HttpStatus.UNAUTHORIZED, restTemplate.postForEntity("/fhir/$closure", request, String.class).getStatusCode());
+		assertNotEquals(HttpStatus.UNAUTHORIZED, restTemplate.withBasicAuth(username, password)
+				.postForEntity("/fhir/$closure", request, String.class).getStatusCode());
+	}
+}
@@ -1,25 +1,31 @@
 package org.snomed.snowstormlite.fhir;
 
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import org.hl7.fhir.r4.model.ConceptMap;
 import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.UriType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.snomed.snowstormlite.config.FHIRConceptMapImplicitConfig;
 import org.snomed.snowstormlite.domain.FHIRCodeSystem;
 import org.snomed.snowstormlite.domain.FHIRSnomedImplicitMap;
+import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
 import org.snomed.snowstormlite.service.ConceptMapService;
+import org.snomed.snowstormlite.service.ResourceSearch;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -46,14 +52,14 @@ class ConceptMapProviderSearchTest {
 	@Test
 	void searchReturnsEmptyWhenNoCodeSystemLoaded() throws IOException {
 		when(codeSystemRepository.getCodeSystem()).thenReturn(null);
-		when(conceptMapService.findAllStored()).thenReturn(Collections.emptyList());
-		assertTrue(provider.search(null).isEmpty());
+		when(conceptMapService.searchStored(any())).thenReturn(ResourceSearch.Page.empty());
+		assertTrue(search(null).isEmpty());
 	}
 
 	@Test
 	void searchListsImplicitMapsWhenCodeSystemLoaded() throws IOException {
 		when(codeSystemRepository.getCodeSystem()).thenReturn(new FHIRCodeSystem());
-		when(conceptMapService.findAllStored()).thenReturn(Collections.emptyList());
+		when(conceptMapService.searchStored(any())).thenReturn(ResourceSearch.Page.empty());
 		FHIRSnomedImplicitMap implicitMap = new FHIRSnomedImplicitMap(
 				"447562003",
 				"SNOMED CT to ICD-10 extended map",
@@ -62,7 +68,7 @@ class ConceptMapProviderSearchTest {
 				null);
 		when(implicitConfig.getImplicitMaps()).thenReturn(List.of(implicitMap));
 
-		List<ConceptMap> maps = provider.search(null);
+		List<ConceptMap> maps = search(null);
 		assertEquals(1, maps.size());
 		ConceptMap cm = maps.get(0);
 		assertEquals("snomed_implicit_map_447562003", cm.getIdElement().getIdPart());
@@ -78,7 +84,7 @@ class ConceptMapProviderSearchTest {
 	@Test
 	void searchFiltersByUrlWithSnomedVersionNormalization() throws IOException {
 		when(codeSystemRepository.getCodeSystem()).thenReturn(new FHIRCodeSystem());
-		when(conceptMapService.findAllStored()).thenReturn(Collections.emptyList());
+		when(conceptMapService.searchStored(any())).thenReturn(ResourceSearch.Page.empty());
 		FHIRSnomedImplicitMap implicitMap = new FHIRSnomedImplicitMap(
 				"447562003",
 				"SNOMED CT to ICD-10 extended map",
@@ -88,9 +94,40 @@ class ConceptMapProviderSearchTest {
 		when(implicitConfig.getImplicitMaps()).thenReturn(List.of(implicitMap));
 
 		String versionedUrl = "http://snomed.info/sct/900000000000207008/version/20250101?fhir_cm=447562003";
-		assertEquals(1, provider.search(versionedUrl).size());
+		assertEquals(1, search(versionedUrl).size());
 
-		assertTrue(provider.search("http://snomed.info/sct?fhir_cm=999").isEmpty());
+		assertTrue(search("http://snomed.info/sct?fhir_cm=999").isEmpty());
+	}
+
+	@Test
+	void searchPagesThroughImplicitThenStoredMaps() throws IOException {
+		when(codeSystemRepository.getCodeSystem()).thenReturn(new FHIRCodeSystem());
+		when(implicitConfig.getImplicitMaps()).thenReturn(List.of(
+				new FHIRSnomedImplicitMap("447562003", "SNOMED CT to ICD-10 extended map", "http://snomed.info/sct", "http://hl7.org/fhir/sid/icd-10", null),
+				new FHIRSnomedImplicitMap("900000000000497000", "SNOMED CT to CTV3 simple map", "http://snomed.info/sct", "http://read.info/ctv3", null)));
+		FHIRConceptMap stored = new FHIRConceptMap();
+		stored.setId("stored");
+		stored.setUrl("http://example.org/fhir/ConceptMap/stored");
+		when(conceptMapService.searchStored(any())).thenReturn(new ResourceSearch.Page<>(List.of(stored), 3));
+
+		// Second page of two, one implicit map then the first stored map
+		IBundleProvider page = provider.search(null, null, null, null, null, 1, 2);
+		assertEquals(5, page.size());
+		List<String> ids = page.getResources(0, 2).stream().map(resource -> resource.getIdElement().getIdPart()).toList();
+		assertEquals(List.of("snomed_implicit_map_900000000000497000", "stored"), ids);
+		ArgumentCaptor<ResourceSearch> storedSearch = ArgumentCaptor.forClass(ResourceSearch.class);
+		verify(conceptMapService).searchStored(storedSearch.capture());
+		assertEquals(0, storedSearch.getValue().offset());
+		assertEquals(1, storedSearch.getValue().count());
+
+		// Implicit maps have no title
+		when(conceptMapService.searchStored(any())).thenReturn(ResourceSearch.Page.empty());
+		assertEquals(0, provider.search(null, null, null, null, "SNOMED", null, null).size());
+	}
+
+	private List<ConceptMap> search(String url) throws IOException {
+		return provider.search(url, null, null, null, null, null, null).getResources(0, ResourceSearch.MAX_COUNT).stream()
+				.map(ConceptMap.class::cast).toList();
 	}
 
 }
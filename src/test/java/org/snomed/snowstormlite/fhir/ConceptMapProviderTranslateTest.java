@@ -1,11 +1,13 @@
 package org.snomed.snowstormlite.fhir;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hl7.fhir.r4.model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.snomed.snowstormlite.config.FHIRConceptMapImplicitConfig;
 import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
@@ -14,6 +16,7 @@ import org.snomed.snowstormlite.domain.conceptmap.FHIRMapElement;
 import org.snomed.snowstormlite.domain.conceptmap.FHIRMapTarget;
 import org.snomed.snowstormlite.service.CodeSystemRepository;
 import org.snomed.snowstormlite.service.ConceptMapService;
+import org.snomed.snowstormlite.service.TerminologyMetrics;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -35,6 +38,9 @@ class ConceptMapProviderTranslateTest {
 	@Mock
 	private ConceptMapService conceptMapService;
 
+	@Spy
+	private TerminologyMetrics metrics = new TerminologyMetrics(new SimpleMeterRegistry());
+
 	@InjectMocks
 	private ConceptMapProvider provider;
 
@@ -113,4 +119,46 @@ class ConceptMapProviderTranslateTest {
 
 		assertTrue(p.getParameterBool("result"));
 	}
+
+	@Test
+	void reverseTranslateUsesStoredMapTargets() throws IOException {
+		FHIRConceptMapGroup g = new FHIRConceptMapGroup();
+		g.setSource("http://loinc.org");
+		g.setTarget("http://snomed.info/sct");
+		FHIRMapElement el = new FHIRMapElement();
+		el.setCode("300");
+		el.setDisplay("Loinc display");
+		el.setTarget(List.of(new FHIRMapTarget()));
+		el.getTarget().get(0).setCode("20516002");
+		el.getTarget().get(0).setEquivalence(Enumerations.ConceptMapEquivalence.EQUIVALENT.toCode());
+		g.setElement(List.of(el));
+
+		FHIRConceptMap stored = new FHIRConceptMap();
+		stored.setUrl("http://example.org/stored");
+		stored.setGroup(List.of(g));
+
+		when(conceptMapService.findMapsForReverseTranslate(isNull(), any(Coding.class), eq("http://loinc.org")))
+				.thenReturn(List.of(stored));
+
+		Parameters p = provider.lookupImplicit(
+				null, null,
+				null,
+				null,
+				null,
+				"20516002",
+				"http://snomed.info/sct",
+				null,
+				null,
+				null,
+				null,
+				null,
+				"http://loinc.org",
+				new BooleanType(true));
+
+		assertTrue(p.getParameterBool("result"));
+		Parameters.ParametersParameterComponent match = p.getParameter().stream().filter(param -> "match".equals(param.getName())).findFirst().orElseThrow();
+		Coding concept = (Coding) match.getPart().stream().filter(part -> "concept".equals(part.getName())).findFirst().orElseThrow().getValue();
+		assertEquals("http://loinc.org", concept.getSystem());
+		assertEquals("300", concept.getCode());
+	}
 }
@@ -0,0 +1,64 @@
+package org.snomed.snowstormlite.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Bundle;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "search.limits.operation.expand.max-concepts=1")
+class FhirBatchBundleLimitsTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private FhirContext fhirContext;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testEntriesUseLimitsOfTheirOperation() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		// The history supplement collects three concepts, over the expand limit but within the default limit of the batch request
+		String batchJson = """
+				{"resourceType":"Bundle","type":"batch","entry":[
+					{"request":{"method":"GET","url":"ValueSet/$expand?url=http%3A%2F%2Fsnomed.info%2Fsct%3Ffhir_vs%3Decl%2F%3C%20404684003%20%7B%7B%20%2BHISTORY%20%7D%7D"}},
+					{"request":{"method":"GET","url":"CodeSystem/$lookup?system=http%3A%2F%2Fsnomed.info%2Fsct&code=138875005"}}
+				]}""";
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("application/fhir+json"));
+		ResponseEntity<String> response = restTemplate.exchange("/fhir", HttpMethod.POST, new HttpEntity<>(batchJson, headers), String.class);
+		assertTrue(response.getStatusCode().is2xxSuccessful(), () -> "Batch failed: " + response.getBody());
+
+		Bundle bundle = fhirContext.newJsonParser().parseResource(Bundle.class, response.getBody());
+		assertEquals("422 Unprocessable Entity", bundle.getEntry().get(0).getResponse().getStatus());
+		assertEquals("200 OK", bundle.getEntry().get(1).getResponse().getStatus());
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+}
@@ -1,9 +1,11 @@
 package org.snomed.snowstormlite.fhir;
 
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
@@ -15,6 +17,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.IOException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(SpringExtension.class)
@@ -25,6 +29,9 @@ class FhirBatchBundleLookupTest {
 	@Autowired
 	private TestRestTemplate restTemplate;
 
+	@Autowired
+	private TestService testService;
+
 	@Test
 	void postBatchBundleReturnsBatchResponseWithLookupParameters() {
 		ResponseEntity<String> csProbe = restTemplate.getForEntity("/fhir/CodeSystem", String.class);
@@ -66,4 +73,69 @@ class FhirBatchBundleLookupTest {
 		assertTrue(body.contains("\"resourceType\":\"Parameters\""), () -> "Expected at least one Parameters lookup result in batch response");
 		assertTrue(body.contains("\"name\":\"code\""), () -> "Expected lookup Parameters to include code parameter");
 	}
+
+	@Test
+	void postBatchBundleWithMixedOperations() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		try {
+			String batchJson = """
+					{
+					  "resourceType": "Bundle",
+					  "type": "batch",
+					  "entry": [
+					    { "request": { "method": "GET", "url": "CodeSystem/$lookup?system=http%3A%2F%2Fsnomed.info%2Fsct&code=404684003" } },
+					    { "request": { "method": "GET", "url": "CodeSystem/$subsumes?system=http%3A%2F%2Fsnomed.info%2Fsct&codeA=404684003&codeB=362969004" } },
+					    { "request": { "method": "GET", "url": "CodeSystem/$validate-code?system=http%3A%2F%2Fsnomed.info%2Fsct&code=404684003" } },
+					    { "request": { "method": "GET", "url": "ValueSet/$validate-code?url=http%3A%2F%2Fsnomed.info%2Fsct%3Ffhir_vs%3Disa%2F404684003&system=http%3A%2F%2Fsnomed.info%2Fsct&code=362969004" } },
+					    { "request": { "method": "GET", "url": "ValueSet/$expand?url=http%3A%2F%2Fsnomed.info%2Fsct%3Ffhir_vs%3Disa%2F404684003&count=1" } },
+					    { "request": { "method": "GET", "url": "Patient/1" } }
+					  ]
+					}
+					""";
+
+			HttpHeaders headers = new HttpHeaders();
+			headers.setContentType(MediaType.parseMediaType("application/fhir+json"));
+			ResponseEntity<String> response = restTemplate.exchange("/fhir/", HttpMethod.POST, new HttpEntity<>(batchJson, headers), String.class);
+
+			assertTrue(response.getStatusCode().is2xxSuccessful(), "Batch POST should succeed: " + response.getStatusCode());
+			String body = response.getBody();
+			assertNotNull(body);
+			assertEquals(5, body.split("\"status\":\"200 OK\"", -1).length - 1, body);
+			assertTrue(body.contains("\"valueCode\":\"subsumes\""), body);
+			assertTrue(body.contains("\"resourceType\":\"ValueSet\""), body);
+			assertTrue(body.contains("\"status\":\"404 Not Found\""), body);
+			assertTrue(body.contains("Unsupported batch entry URL: Patient/1"), body);
+		} finally {
+			testService.tearDown();
+		}
+	}
+
+	@Test
+	void postBatchBundleWithPlusInEcl() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		try {
+			// The '+' of the history supplement is not encoded and must not be read as a space
+			String batchJson = """
+					{
+					  "resourceType": "Bundle",
+					  "type": "batch",
+					  "entry": [
+					    { "request": { "method": "GET", "url": "ValueSet/$expand?url=http%3A%2F%2Fsnomed.info%2Fsct%3Ffhir_vs%3Decl%2F%3C%20404684003%20%7B%7B%20+HISTORY%20%7D%7D" } }
+					  ]
+					}
+					""";
+
+			HttpHeaders headers = new HttpHeaders();
+			headers.setContentType(MediaType.parseMediaType("application/fhir+json"));
+			ResponseEntity<String> response = restTemplate.exchange("/fhir/", HttpMethod.POST, new HttpEntity<>(batchJson, headers), String.class);
+
+			assertTrue(response.getStatusCode().is2xxSuccessful(), "Batch POST should succeed: " + response.getStatusCode());
+			String body = response.getBody();
+			assertNotNull(body);
+			assertTrue(body.contains("\"status\":\"200 OK\""), body);
+			assertTrue(body.contains("\"code\":\"75521003\""), body);
+		} finally {
+			testService.tearDown();
+		}
+	}
 }
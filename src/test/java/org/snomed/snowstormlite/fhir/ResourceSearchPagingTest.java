@@ -0,0 +1,102 @@
+package org.snomed.snowstormlite.fhir;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.service.ConceptMapService;
+import org.snomed.snowstormlite.service.ValueSetService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ResourceSearchPagingTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private ValueSetService valueSetService;
+
+	@Autowired
+	private ConceptMapService conceptMapService;
+
+	@Autowired
+	private FhirContext fhirContext;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testValueSetSearchWithOffset() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		for (String id : List.of("paging-a", "paging-b", "paging-c")) {
+			ValueSet valueSet = new ValueSet();
+			valueSet.setId(id);
+			valueSet.setUrl("http://example.org/fhir/ValueSet/" + id);
+			valueSet.setVersion("1");
+			valueSet.setName("Paging " + id);
+			valueSet.getCompose().addInclude().setSystem("http://snomed.info/sct").addConcept().setCode("404684003");
+			valueSetService.createOrUpdateValueset(valueSet);
+		}
+
+		// The provider returns the requested page only, HAPI must not skip the offset again
+		Bundle bundle = search("/fhir/ValueSet?name=Paging&_offset=1&_count=1");
+		assertEquals(3, bundle.getTotal());
+		assertEquals(List.of("paging-b"), getIds(bundle));
+
+		assertEquals(List.of("paging-b", "paging-c"), getIds(search("/fhir/ValueSet?name=Paging&_offset=1&_count=5")));
+		assertEquals(List.of(), getIds(search("/fhir/ValueSet?name=Paging&_offset=3&_count=1")));
+	}
+
+	@Test
+	void testConceptMapSearchWithOffset() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		for (String id : List.of("paging-a", "paging-b", "paging-c")) {
+			conceptMapService.createOrUpdateConceptMap(fhirContext.newJsonParser().parseResource(ConceptMap.class, """
+					{"resourceType":"ConceptMap","id":"%s","url":"http://example.org/fhir/ConceptMap/%s","version":"1",
+					"name":"Paging %s","status":"draft","group":[{
+						"source":"http://loinc.org","target":"http://snomed.info/sct",
+						"element":[{"code":"12345","target":[{"code":"20516002","equivalence":"equivalent"}]}]
+					}]}""".formatted(id, id, id)));
+		}
+
+		Bundle bundle = search("/fhir/ConceptMap?name=Paging&_offset=1&_count=1");
+		assertEquals(3, bundle.getTotal());
+		assertEquals(List.of("paging-b"), getIds(bundle));
+
+		assertEquals(List.of("paging-c"), getIds(search("/fhir/ConceptMap?name=Paging&_offset=2&_count=5")));
+	}
+
+	private Bundle search(String url) {
+		ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+		assertTrue(response.getStatusCode().is2xxSuccessful(), () -> "Search failed: " + response.getBody());
+		return fhirContext.newJsonParser().parseResource(Bundle.class, response.getBody());
+	}
+
+	private static List<String> getIds(Bundle bundle) {
+		return bundle.getEntry().stream().map(entry -> entry.getResource().getIdElement().getIdPart()).toList();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+}
@@ -0,0 +1,64 @@
+package org.snomed.snowstormlite.rest;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.service.WarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReadinessControllerTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testReadyAfterWarmUp() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		// A new instance has not warmed up yet
+		WarmupService warmupService = applicationContext.getAutowireCapableBeanFactory().createBean(WarmupService.class);
+		ReadinessController controller = new ReadinessController(warmupService);
+		ResponseEntity<Map<String, String>> readiness = controller.getReadiness();
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, readiness.getStatusCode());
+		assertEquals(Map.of("status", "WARMING_UP"), readiness.getBody());
+
+		warmupService.warmUp();
+		readiness = controller.getReadiness();
+		assertEquals(HttpStatus.OK, readiness.getStatusCode());
+		assertEquals(Map.of("status", "READY"), readiness.getBody());
+
+		// The application warmed up when the content was loaded
+		ResponseEntity<String> response = restTemplate.getForEntity("/ready", String.class);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertTrue(response.getBody() != null && response.getBody().contains("READY"), response::getBody);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+}
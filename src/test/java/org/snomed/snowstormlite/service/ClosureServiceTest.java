@@ -0,0 +1,119 @@
+package org.snomed.snowstormlite.service;
+
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstormlite.fhir.FHIRConstants.SNOMED_URI;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class ClosureServiceTest {
+
+	@Autowired
+	private ClosureService closureService;
+
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testClosure() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		ConceptMap conceptMap = closureService.initialise("test");
+		assertEquals("0", conceptMap.getVersion());
+		assertTrue(conceptMap.getGroup().isEmpty());
+
+		conceptMap = closureService.addConcepts("test", codings("404684003"));
+		assertEquals("1", conceptMap.getVersion());
+		assertEquals(List.of(), pairs(conceptMap));
+
+		conceptMap = closureService.addConcepts("test", codings("313005", "138875005", "404684003"));
+		assertEquals("2", conceptMap.getVersion());
+		assertEquals(List.of("313005 > 138875005", "313005 > 404684003", "404684003 > 138875005"), pairs(conceptMap));
+
+		// Nothing new
+		conceptMap = closureService.addConcepts("test", codings("313005"));
+		assertEquals("2", conceptMap.getVersion());
+		assertEquals(List.of(), pairs(conceptMap));
+
+		conceptMap = closureService.getChangesSince("test", "1");
+		assertEquals("2", conceptMap.getVersion());
+		assertEquals(List.of("313005 > 138875005", "313005 > 404684003", "404684003 > 138875005"), pairs(conceptMap));
+
+		conceptMap = closureService.getChangesSince("test", "2");
+		assertEquals(List.of(), pairs(conceptMap));
+
+		// Initialising again clears the table
+		closureService.initialise("test");
+		conceptMap = closureService.addConcepts("test", codings("313005"));
+		assertEquals("1", conceptMap.getVersion());
+		assertEquals(List.of(), pairs(conceptMap));
+	}
+
+	@Test
+	void testAddAncestorOfExistingConcept() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		HierarchyIndex hierarchyIndex = indexIOProvider.getHierarchyIndex();
+
+		closureService.initialise("test");
+		closureService.addConcepts("test", codings("313005"));
+		ConceptMap conceptMap = closureService.addConcepts("test", codings("404684003"));
+		assertEquals(List.of("313005 > 404684003"), pairs(conceptMap));
+
+		// Tables are kept out of the SNOMED CT index, the hierarchy is not built again
+		assertSame(hierarchyIndex, indexIOProvider.getHierarchyIndex());
+	}
+
+	@Test
+	void testTableNotInitialised() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		FHIRServerResponseException exception = assertThrows(FHIRServerResponseException.class,
+				() -> closureService.addConcepts("unknown", codings("313005")));
+		assertEquals(404, exception.getStatusCode());
+	}
+
+	private static List<Coding> codings(String... codes) {
+		List<Coding> codings = new ArrayList<>();
+		for (String code : codes) {
+			codings.add(new Coding(SNOMED_URI, code, null));
+		}
+		return codings;
+	}
+
+	private static List<String> pairs(ConceptMap conceptMap) {
+		List<String> pairs = new ArrayList<>();
+		for (ConceptMap.ConceptMapGroupComponent group : conceptMap.getGroup()) {
+			for (ConceptMap.SourceElementComponent element : group.getElement()) {
+				for (ConceptMap.TargetElementComponent target : element.getTarget()) {
+					pairs.add(element.getCode() + " > " + target.getCode());
+				}
+			}
+		}
+		return pairs;
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+
+}
@@ -1,5 +1,7 @@
 package org.snomed.snowstormlite.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.Parameters;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
@@ -36,6 +38,9 @@ class CodeSystemServiceTest {
 	@Autowired
 	private TestService testService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Test
 	void testValidateCodeWithValidCode() throws IOException, ReleaseImportException {
 		testService.importRF2Int();
@@ -202,6 +207,27 @@ class CodeSystemServiceTest {
 		assertTrue(getParameterValue(result, "version").contains("version"));
 	}
 
+	@Test
+	void testOperationsAreTimed() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		FHIRCodeSystem codeSystem = codeSystemRepository.getCodeSystem();
+
+		long subsumesCount = getOperationCount("subsumes", "success");
+		codeSystemService.subsumes(codeSystem, "138875005", "404684003");
+		assertEquals(subsumesCount + 1, getOperationCount("subsumes", "success"));
+
+		long failedCount = getOperationCount("subsumes", "error");
+		assertThrows(RuntimeException.class, () -> codeSystemService.subsumes(codeSystem, "404684003", "99999999"));
+		assertEquals(failedCount + 1, getOperationCount("subsumes", "error"));
+
+		assertNotNull(meterRegistry.find(TerminologyMetrics.OPERATION).tag("operation", "import").timer());
+	}
+
+	private long getOperationCount(String operation, String outcome) {
+		Timer timer = meterRegistry.find(TerminologyMetrics.OPERATION).tags("operation", operation, "outcome", outcome).timer();
+		return timer != null ? timer.count() : 0;
+	}
+
 	private String getParameterValue(Parameters parameters, String name) {
 		Parameters.ParametersParameterComponent param = getParameter(parameters, name);
 		return param != null ? param.getValue().primitiveValue() : null;
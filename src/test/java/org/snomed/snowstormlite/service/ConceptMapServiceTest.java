@@ -1,6 +1,7 @@
 package org.snomed.snowstormlite.service;
 
 import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.ConceptMap;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.junit.jupiter.api.AfterEach;
@@ -10,11 +11,16 @@ import org.snomed.snowstormlite.TestConfig;
 import org.snomed.snowstormlite.TestService;
 import org.snomed.snowstormlite.domain.conceptmap.FHIRConceptMap;
 import org.snomed.snowstormlite.domain.conceptmap.FHIRMapElement;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -73,6 +79,81 @@ class ConceptMapServiceTest {
 		assertTrue(conceptMapService.findMapsForTranslate("http://other.org/cm", coding, "http://snomed.info/sct").isEmpty());
 	}
 
+	@Test
+	void findMapsForTranslateFollowsUpdatesAndDeletes() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		String json = """
+				{"resourceType":"ConceptMap","id":"cm-test-2","url":"http://example.org/fhir/ConceptMap/y","version":"1","group":[{
+					"source":"http://loinc.org","target":"http://snomed.info/sct",
+					"element":[{"code":"99","target":[{"code":"%s"}]},{"code":"98","target":[{"code":"404684003"}]}]
+				}]}""";
+		var coding = new org.hl7.fhir.r4.model.Coding("http://loinc.org", "99", null);
+
+		conceptMapService.createOrUpdateConceptMap(fhirContext.newJsonParser().parseResource(ConceptMap.class, json.formatted("20516002")));
+		List<FHIRConceptMap> maps = conceptMapService.findMapsForTranslate(null, coding, null);
+		assertEquals(1, maps.size());
+		List<FHIRMapElement> elements = maps.get(0).getGroup().get(0).getElement();
+		assertEquals(1, elements.size());
+		assertEquals("20516002", elements.get(0).getTarget().get(0).getCode());
+
+		conceptMapService.createOrUpdateConceptMap(fhirContext.newJsonParser().parseResource(ConceptMap.class, json.formatted("313005")));
+		maps = conceptMapService.findMapsForTranslate(null, coding, null);
+		assertEquals(1, maps.size());
+		assertEquals("313005", maps.get(0).getGroup().get(0).getElement().get(0).getTarget().get(0).getCode());
+
+		// A map with a matching group is found even if it has no element for the code
+		maps = conceptMapService.findMapsForTranslate(null, new org.hl7.fhir.r4.model.Coding("http://loinc.org", "97", null), null);
+		assertEquals(1, maps.size());
+		assertTrue(maps.get(0).getGroup().get(0).getElement().isEmpty());
+
+		conceptMapService.deleteById("cm-test-2");
+		assertTrue(conceptMapService.findMapsForTranslate(null, coding, "http://snomed.info/sct").isEmpty());
+	}
+
+	@Test
+	void createOrUpdateConceptMapFromStream() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+		String jsonTemplate = """
+				{"resourceType":"ConceptMap","group":[{
+					"source":"http://loinc.org","target":"http://snomed.info/sct",
+					"element":[%s]
+				}],"id":"cm-stream","url":"http://example.org/fhir/ConceptMap/stream","version":"1","status":"draft"}""";
+		List<String> elements = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			elements.add("{\"code\":\"L" + i + "\",\"target\":[{\"code\":\"" + (i % 2 == 0 ? "20516002" : "313005") + "\",\"equivalence\":\"equivalent\"}]}");
+		}
+
+		FHIRConceptMap saved = conceptMapService.createOrUpdateConceptMap(toStream(jsonTemplate.formatted(String.join(",", elements))));
+		assertEquals("cm-stream", saved.getId());
+		FHIRConceptMap stored = conceptMapService.findById("cm-stream");
+		List<FHIRMapElement> storedElements = stored.getGroup().get(0).getElement();
+		assertEquals(1000, storedElements.size());
+		assertEquals("L0", storedElements.get(0).getCode());
+		assertEquals("L999", storedElements.get(999).getCode());
+
+		List<FHIRConceptMap> maps = conceptMapService.findMapsForTranslate(null, new Coding("http://loinc.org", "L501", null), null);
+		assertEquals(1, maps.size());
+		assertEquals(1, maps.get(0).getGroup().get(0).getElement().size());
+		assertEquals("313005", maps.get(0).getGroup().get(0).getElement().get(0).getTarget().get(0).getCode());
+		maps = conceptMapService.findMapsForReverseTranslate(null, new Coding("http://snomed.info/sct", "20516002", null), "http://loinc.org");
+		assertEquals(500, maps.get(0).getGroup().get(0).getElement().size());
+
+		// Replacing the map removes the old elements
+		conceptMapService.createOrUpdateConceptMap(toStream(jsonTemplate.formatted(elements.get(1))));
+		assertEquals(1, conceptMapService.findById("cm-stream").getGroup().get(0).getElement().size());
+		assertTrue(conceptMapService.findMapsForTranslate(null, new Coding("http://loinc.org", "L0", null), null).get(0).getGroup().get(0).getElement().isEmpty());
+
+		// Nothing is saved if the stream can not be read
+		FHIRServerResponseException exception = assertThrows(FHIRServerResponseException.class,
+				() -> conceptMapService.createOrUpdateConceptMap(toStream(jsonTemplate.formatted(String.join(",", elements)).substring(0, 5000))));
+		assertEquals(400, exception.getStatusCode());
+		assertEquals(1, conceptMapService.findById("cm-stream").getGroup().get(0).getElement().size());
+	}
+
+	private static InputStream toStream(String json) {
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+
 	@AfterEach
 	void after() throws IOException {
 		testService.tearDown();
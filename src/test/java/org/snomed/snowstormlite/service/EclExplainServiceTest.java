@@ -0,0 +1,72 @@
+package org.snomed.snowstormlite.service;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.snomed.snowstormlite.service.ecl.EclExplainNode;
+import org.snomed.snowstormlite.service.ecl.EclExplainService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class EclExplainServiceTest {
+
+	@Autowired
+	private EclExplainService eclExplainService;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testExplainCompound() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		EclExplainNode root = eclExplainService.explain(">> 900000000000441003 OR >> 362969004");
+		assertEquals("CompoundExpressionConstraint", root.getType());
+		assertEquals(4, root.getCount());
+		assertFalse(root.isMaterialized());
+		assertEquals(2, root.getChildren().size());
+		EclExplainNode first = root.getChildren().get(0);
+		assertEquals("SubExpressionConstraint", first.getType());
+		assertEquals("ancestororselfof 900000000000441003", first.getLabel());
+		assertNotNull(first.getLuceneQuery());
+	}
+
+	@Test
+	void testExplainRefinementMaterialization() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		EclExplainNode root = eclExplainService.explain("< 404684003 |Clinical finding| : << 363698007 |Finding site| = 113331007 |Structure of endocrine system|");
+		assertEquals("RefinedExpressionConstraint", root.getType());
+		assertEquals(1, root.getCount());
+		assertTrue(root.getMaterializations() > 0);
+		// The focus concept is pushed down into the Lucene query
+		EclExplainNode focus = root.getChildren().get(0);
+		assertFalse(focus.isMaterialized());
+		assertEquals(2, focus.getCount());
+	}
+
+	@Test
+	void testExplainSyntaxError() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		FHIRServerResponseException exception = assertThrows(FHIRServerResponseException.class, () -> eclExplainService.explain("<< 404684003 AND"));
+		assertEquals(400, exception.getStatusCode());
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.config.QueryBudgetFilter;
+import org.snomed.snowstormlite.config.QueryLimitsConfiguration;
+import org.snomed.snowstormlite.service.ecl.EclExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstormlite.TestService.EN_LANGUAGE_DIALECTS;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class EclExportServiceTest {
+
+	@Autowired
+	private EclExportService eclExportService;
+
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testExportNdjson() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		long count = eclExportService.prepareExport("<< 404684003 |Clinical finding|", EclExportService.Format.NDJSON, false, true, EN_LANGUAGE_DIALECTS)
+				.writeTo(outputStream);
+
+		assertEquals(3, count);
+		List<String> lines = lines(outputStream);
+		assertEquals(3, lines.size());
+		assertTrue(lines.contains("{\"code\":\"404684003\",\"active\":true}"), lines.toString());
+	}
+
+	@Test
+	void testExportCsvWithDisplay() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		eclExportService.prepareExport("404684003", EclExportService.Format.CSV, true, false, EN_LANGUAGE_DIALECTS).writeTo(outputStream);
+
+		assertEquals(List.of("code,display", "404684003,Clinical finding"), lines(outputStream));
+	}
+
+	@Test
+	void testExportNotWrittenHoldsNoReader() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		IndexReader reader = indexIOProvider.getIndexSearcher().getIndexReader();
+		eclExportService.prepareExport("<< 404684003", EclExportService.Format.NDJSON, false, false, EN_LANGUAGE_DIALECTS);
+
+		// A client that goes away before the response is written must not leave the reader open
+		Document document = new Document();
+		document.add(new StringField(CodeSystemRepository.TYPE, "test", Field.Store.YES));
+		indexIOProvider.writeDocument(document);
+		assertEquals(0, reader.getRefCount());
+	}
+
+	@Test
+	void testExportWithinBudget() throws Exception {
+		QueryBudgetFilter filter = new QueryBudgetFilter(new QueryLimitsConfiguration());
+		filter.doFilter(new MockHttpServletRequest("GET", "/export/ecl"), new MockHttpServletResponse(),
+				(request, response) -> assertEquals(QueryBudgetFilter.EXPORT_OPERATION, QueryBudget.current().getOperation()));
+	}
+
+	private static List<String> lines(ByteArrayOutputStream outputStream) {
+		return Arrays.asList(outputStream.toString(StandardCharsets.UTF_8).split("\n"));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+
+}
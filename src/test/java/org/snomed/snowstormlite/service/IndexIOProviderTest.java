@@ -0,0 +1,214 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.config.QueryCacheConfiguration;
+import org.snomed.snowstormlite.config.SearchConcurrencyConfiguration;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class IndexIOProviderTest {
+
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
+	@Autowired
+	private ResourceIndexIOProvider resourceIndexIOProvider;
+
+	@Autowired
+	private CodeSystemRepository codeSystemRepository;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testReaderKeptOpenUntilScopeEnds() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		IndexReader reader;
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+			IndexSearcher searcher = indexIOProvider.getIndexSearcher();
+			reader = searcher.getIndexReader();
+			int count = searcher.count(new MatchAllDocsQuery());
+
+			// Each write replaces the current reader, the reader of the first search must stay open
+			indexIOProvider.writeDocument(testDocument("a"));
+			indexIOProvider.writeDocument(testDocument("b"));
+			assertEquals(count, searcher.count(new MatchAllDocsQuery()));
+
+			// Later searches of the scope see its own writes
+			IndexSearcher latest = indexIOProvider.getIndexSearcher();
+			assertNotSame(reader, latest.getIndexReader());
+			assertEquals(2, latest.count(new TermQuery(new Term(CodeSystemRepository.TYPE, "test"))));
+			assertTrue(reader.getRefCount() > 0);
+		}
+		assertEquals(0, reader.getRefCount());
+	}
+
+	@Test
+	void testResourceReaderKeptOpenUntilScopeEnds() throws IOException {
+		IndexReader reader;
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+			IndexSearcher searcher = resourceIndexIOProvider.getIndexSearcher();
+			reader = searcher.getIndexReader();
+
+			// Saves by other requests replace the reader, they must not close the reader of this request
+			runInOtherRequest(() -> resourceIndexIOProvider.writeDocument(testDocument("a")));
+			runInOtherRequest(() -> resourceIndexIOProvider.writeDocument(testDocument("b")));
+			assertEquals(0, searcher.count(new TermQuery(new Term(CodeSystemRepository.TYPE, "test"))));
+			assertSame(reader, resourceIndexIOProvider.getIndexSearcher().getIndexReader());
+		}
+		assertEquals(0, reader.getRefCount());
+		assertEquals(2, resourceIndexIOProvider.getIndexSearcher().count(new TermQuery(new Term(CodeSystemRepository.TYPE, "test"))));
+	}
+
+	@Test
+	void testTimedOutSearchFails() throws Exception {
+		testService.importRF2Int();
+
+		try (QueryBudget.Scope ignored = QueryBudget.start("lookup", 1, 0)) {
+			Thread.sleep(5);
+			// A search cut short by the time limit must not look like a concept that does not exist
+			FHIRServerResponseException exception = assertThrows(FHIRServerResponseException.class, () -> codeSystemRepository.getConcept("404684003"));
+			assertEquals(422, exception.getStatusCode());
+		}
+		assertNotNull(codeSystemRepository.getConcept("404684003"));
+	}
+
+	@Test
+	void testConcurrentSearcherOnlyAboveMinIndexDocs(@TempDir Path indexPath) throws IOException {
+		IndexIOProvider provider = newConcurrentIndexIOProvider(indexPath);
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+			provider.writeDocument(testDocument("a"));
+			assertSame(provider.getIndexSearcher(), provider.getConcurrentIndexSearcher());
+
+			writeSegments(provider);
+			IndexSearcher concurrent = provider.getConcurrentIndexSearcher();
+			assertNotSame(provider.getIndexSearcher(), concurrent);
+			assertTrue(concurrent.getSlices().length > 1);
+		} finally {
+			provider.shutdown();
+		}
+	}
+
+	@Test
+	void testQueryBudgetPropagatedToSlices(@TempDir Path indexPath) throws IOException {
+		IndexIOProvider provider = newConcurrentIndexIOProvider(indexPath);
+		List<String> operations = Collections.synchronizedList(new ArrayList<>());
+		CollectorManager<SimpleCollector, Void> collectorManager = new CollectorManager<>() {
+			@Override
+			public SimpleCollector newCollector() {
+				return new SimpleCollector() {
+					@Override
+					protected void doSetNextReader(LeafReaderContext context) {
+						// Called on the thread searching the slice
+						QueryBudget budget = QueryBudget.current();
+						operations.add(budget != null ? budget.getOperation() : null);
+					}
+
+					@Override
+					public void collect(int doc) {
+					}
+
+					@Override
+					public ScoreMode scoreMode() {
+						return ScoreMode.COMPLETE_NO_SCORES;
+					}
+				};
+			}
+
+			@Override
+			public Void reduce(Collection<SimpleCollector> collectors) {
+				return null;
+			}
+		};
+		try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+			writeSegments(provider);
+			IndexSearcher concurrent = provider.getConcurrentIndexSearcher();
+			try (QueryBudget.Scope budget = QueryBudget.start("expand", 0, 0)) {
+				concurrent.search(new MatchAllDocsQuery(), collectorManager);
+			}
+			assertEquals(concurrent.getIndexReader().leaves().size(), operations.size());
+			assertEquals(List.of("expand"), operations.stream().distinct().toList());
+		} finally {
+			provider.shutdown();
+		}
+	}
+
+	private static IndexIOProvider newConcurrentIndexIOProvider(Path indexPath) throws IOException {
+		QueryCacheConfiguration queryCacheConfiguration = new QueryCacheConfiguration();
+		queryCacheConfiguration.setEnabled(false);
+		SearchConcurrencyConfiguration concurrencyConfiguration = new SearchConcurrencyConfiguration();
+		concurrencyConfiguration.setEnabled(true);
+		concurrencyConfiguration.setThreads(2);
+		concurrencyConfiguration.setMinIndexDocs(10);
+		concurrencyConfiguration.setMaxDocsPerSlice(1);
+		concurrencyConfiguration.setMaxSegmentsPerSlice(1);
+		return new IndexIOProvider(indexPath.toString(), 0, queryCacheConfiguration, concurrencyConfiguration);
+	}
+
+	// Each write is committed as a new segment
+	private static void writeSegments(IndexIOProvider provider) throws IOException {
+		for (int segment = 0; segment < 4; segment++) {
+			provider.writeDocuments(List.of(testDocument(segment + "-a"), testDocument(segment + "-b"), testDocument(segment + "-c")));
+		}
+	}
+
+	private static void runInOtherRequest(Write write) throws IOException {
+		Thread thread = new Thread(() -> {
+			try (IndexReaderScope.Scope ignored = IndexReaderScope.open()) {
+				write.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Document testDocument(String id) {
+		Document document = new Document();
+		document.add(new StringField(CodeSystemRepository.TYPE, "test", Field.Store.YES));
+		document.add(new StringField("test_id", id, Field.Store.YES));
+		return document;
+	}
+
+	private interface Write {
+		void run() throws IOException;
+	}
+
+	@AfterEach
+	public void after() throws IOException {
+		testService.tearDown();
+	}
+}
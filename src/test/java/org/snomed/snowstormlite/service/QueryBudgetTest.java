@@ -0,0 +1,74 @@
+package org.snomed.snowstormlite.service;
+
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryBudgetTest {
+
+	@Test
+	void testNoBudget() {
+		assertNull(QueryBudget.current());
+		QueryBudget.checkConcepts(Integer.MAX_VALUE);
+		QueryBudget.checkTime();
+		assertEquals(Integer.MAX_VALUE, QueryBudget.conceptCollectionLimit());
+	}
+
+	@Test
+	void testConceptLimit() {
+		try (QueryBudget.Scope ignored = QueryBudget.start("expand", 0, 100)) {
+			assertEquals(101, QueryBudget.conceptCollectionLimit());
+			QueryBudget.checkConcepts(100);
+			FHIRServerResponseException exception = assertThrows(FHIRServerResponseException.class, () -> QueryBudget.checkConcepts(101));
+			assertEquals(422, exception.getStatusCode());
+			OperationOutcome outcome = (OperationOutcome) exception.getOperationOutcome();
+			assertEquals(OperationOutcome.IssueType.TOOCOSTLY, outcome.getIssueFirstRep().getCode());
+		}
+		assertNull(QueryBudget.current());
+	}
+
+	@Test
+	void testExcludedMatchesNotCounted() {
+		try (QueryBudget.Scope ignored = QueryBudget.start("expand", 0, 1)) {
+			// Excluded matches list the complement, which is answered by the query
+			new RelationshipIndex.Matches(Set.of(1L, 2L, 3L), true).checkBudget();
+			assertThrows(FHIRServerResponseException.class, () -> new RelationshipIndex.Matches(Set.of(1L, 2L, 3L), false).checkBudget());
+		}
+	}
+
+	@Test
+	void testTimeLimit() throws InterruptedException {
+		try (QueryBudget.Scope ignored = QueryBudget.start("expand", 1, 0)) {
+			Thread.sleep(5);
+			assertTrue(QueryBudget.isTimedOut());
+			assertThrows(FHIRServerResponseException.class, QueryBudget::checkTime);
+		}
+	}
+
+	@Test
+	void testNestedBudgetKeepsOuter() {
+		try (QueryBudget.Scope ignored = QueryBudget.start("default", 0, 10)) {
+			try (QueryBudget.Scope inner = QueryBudget.start("lookup", 0, 1000)) {
+				assertEquals("default", QueryBudget.current().getOperation());
+			}
+			assertNotNull(QueryBudget.current());
+		}
+		assertNull(QueryBudget.current());
+	}
+
+	@Test
+	void testWrapPropagatesToOtherThread() throws InterruptedException {
+		String[] operation = new String[1];
+		try (QueryBudget.Scope ignored = QueryBudget.start("expand", 0, 10)) {
+			Thread thread = new Thread(QueryBudget.wrap(() -> operation[0] = QueryBudget.current().getOperation()));
+			thread.start();
+			thread.join();
+		}
+		assertEquals("expand", operation[0]);
+	}
+
+}
@@ -0,0 +1,97 @@
+package org.snomed.snowstormlite.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+	@Test
+	void testIdenticalConcurrentRequestsShareOneComputation() throws Exception {
+		RequestCoalescer coalescer = new RequestCoalescer(true);
+		AtomicInteger computations = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<String>>> results = new ArrayList<>();
+			results.add(executor.submit(() -> coalescer.execute(List.of("expand", 1L), () -> {
+				computations.incrementAndGet();
+				started.countDown();
+				await(release);
+				return List.of("a");
+			}, ArrayList::new)));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			List<Future<String>> serverTimings = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				CompletableFuture<List<String>> result = new CompletableFuture<>();
+				results.add(result);
+				serverTimings.add(executor.submit(() -> {
+					try (RequestProfile.Scope ignored = RequestProfile.start("expand", true)) {
+						result.complete(coalescer.execute(List.of("expand", 1L), () -> {
+							computations.incrementAndGet();
+							return List.of("b");
+						}, ArrayList::new));
+						return RequestProfile.getServerTimingHeader();
+					}
+				}));
+			}
+			// Give the other requests time to join the running computation
+			Thread.sleep(200);
+			assertEquals(1, coalescer.getInFlightCount());
+			release.countDown();
+
+			List<String> first = results.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<List<String>> result : results) {
+				List<String> values = result.get(5, TimeUnit.SECONDS);
+				assertEquals(List.of("a"), values);
+				if (result != results.get(0)) {
+					assertNotSame(first, values);
+				}
+			}
+			assertEquals(1, computations.get());
+			assertEquals(0, coalescer.getInFlightCount());
+			// Requests that waited for another request's computation say so
+			for (Future<String> serverTiming : serverTimings) {
+				String header = serverTiming.get(5, TimeUnit.SECONDS);
+				assertTrue(header.matches("coalesced;dur=[0-9.]+, total;dur=[0-9.]+"), header);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void testFinishedComputationIsNotReused() throws IOException {
+		RequestCoalescer coalescer = new RequestCoalescer(true);
+		AtomicInteger computations = new AtomicInteger();
+		coalescer.execute("key", computations::incrementAndGet, value -> value);
+		coalescer.execute("key", computations::incrementAndGet, value -> value);
+		assertEquals(2, computations.get());
+	}
+
+	@Test
+	void testFailureIsThrownToCaller() {
+		RequestCoalescer coalescer = new RequestCoalescer(true);
+		assertThrows(IOException.class, () -> coalescer.execute("key", () -> {
+			throw new IOException("Failed");
+		}, value -> value));
+		assertEquals(0, coalescer.getInFlightCount());
+	}
+
+	private static void await(CountDownLatch latch) throws IOException {
+		try {
+			if (!latch.await(5, TimeUnit.SECONDS)) {
+				throw new IOException("Timed out");
+			}
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+}
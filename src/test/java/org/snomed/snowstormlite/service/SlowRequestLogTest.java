@@ -0,0 +1,104 @@
+package org.snomed.snowstormlite.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstormlite.config.SlowRequestLogConfiguration;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowRequestLogTest {
+
+	@Test
+	void testSlowRequestsRecordedWithContext() {
+		SlowRequestLogConfiguration configuration = new SlowRequestLogConfiguration();
+		configuration.setBufferSize(2);
+		configuration.getOperation().put("default", threshold(1000));
+		configuration.getOperation().put("expand", threshold(100));
+		SlowRequestLog slowRequestLog = new SlowRequestLog(configuration, new ObjectMapper());
+
+		RequestProfile profile;
+		try (RequestProfile.Scope scope = RequestProfile.start("expand")) {
+			RequestProfile.put("url", "http://snomed.info/sct?fhir_vs");
+			RequestProfile.put("filter", null);
+			try (RequestProfile.Phase ignored = RequestProfile.phase("query")) {
+				RequestProfile.put("totalHits", 10);
+			}
+			RequestProfile.startFinalPhase("serialization");
+			profile = scope.end();
+		}
+		assertNotNull(profile);
+		assertEquals(List.of("query", "serialization"), List.copyOf(profile.getPhaseMillis().keySet()));
+		assertFalse(profile.getContext().containsKey("filter"));
+
+		assertFalse(slowRequestLog.record(profile, "GET /fhir/ValueSet/$expand", 99));
+		assertTrue(slowRequestLog.record(profile, "GET /fhir/ValueSet/$expand", 100));
+		assertTrue(slowRequestLog.record(profile, "GET /fhir/ValueSet/$expand?count=1", 150));
+		assertTrue(slowRequestLog.record(profile, "GET /fhir/ValueSet/$expand?count=2", 200));
+
+		List<SlowRequestLog.Entry> entries = slowRequestLog.getRecentEntries();
+		assertEquals(2, entries.size());
+		assertEquals("GET /fhir/ValueSet/$expand?count=2", entries.get(0).request());
+		assertEquals("http://snomed.info/sct?fhir_vs", entries.get(0).context().get("url"));
+		assertEquals(10, entries.get(0).context().get("totalHits"));
+	}
+
+	@Test
+	void testNoProfileOutsideRequest() {
+		RequestProfile.put("url", "ignored");
+		try (RequestProfile.Phase ignored = RequestProfile.phase("query")) {
+			assertNotNull(ignored);
+		}
+		try (RequestProfile.Scope outer = RequestProfile.start("expand")) {
+			try (RequestProfile.Scope inner = RequestProfile.start("lookup")) {
+				assertNull(inner.end());
+			}
+			RequestProfile profile = outer.end();
+			assertEquals("expand", profile.getOperation());
+			assertTrue(profile.getContext().isEmpty());
+		}
+	}
+
+	@Test
+	void testServerTimingHeader() {
+		try (RequestProfile.Scope ignored = RequestProfile.start("expand")) {
+			assertNull(RequestProfile.getServerTimingHeader());
+		}
+		try (RequestProfile.Scope ignored = RequestProfile.start("expand", true)) {
+			try (RequestProfile.Phase phase = RequestProfile.phase("query-build")) {
+				assertNotNull(phase);
+			}
+			try (RequestProfile.Phase phase = RequestProfile.phase("search")) {
+				assertNotNull(phase);
+			}
+			String header = RequestProfile.getServerTimingHeader();
+			assertNotNull(header);
+			assertTrue(header.matches("query-build;dur=[0-9.]+, search;dur=[0-9.]+, total;dur=[0-9.]+"), header);
+		}
+		assertNull(RequestProfile.getServerTimingHeader());
+	}
+
+	@Test
+	void testNestedPhaseWithSameNameIgnored() throws InterruptedException {
+		try (RequestProfile.Scope scope = RequestProfile.start("expand")) {
+			long start = System.nanoTime();
+			try (RequestProfile.Phase outer = RequestProfile.phase("search")) {
+				Thread.sleep(20);
+				try (RequestProfile.Phase inner = RequestProfile.phase("search")) {
+					Thread.sleep(20);
+				}
+			}
+			double elapsedMillis = (System.nanoTime() - start) / 1_000_000.0;
+			RequestProfile profile = scope.end();
+			// Counted once, not 20ms extra for the inner phase
+			assertTrue(profile.getPhaseMillis().get("search") <= elapsedMillis + 1);
+		}
+	}
+
+	private static SlowRequestLogConfiguration.Threshold threshold(long thresholdMs) {
+		SlowRequestLogConfiguration.Threshold threshold = new SlowRequestLogConfiguration.Threshold();
+		threshold.setThresholdMs(thresholdMs);
+		return threshold;
+	}
+}
@@ -0,0 +1,55 @@
+package org.snomed.snowstormlite.service;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TerminologyQueryCachingPolicyTest {
+
+	@Test
+	void testMinFrequency() {
+		TerminologyQueryCachingPolicy policy = new TerminologyQueryCachingPolicy(Set.of("TermQuery", "BooleanQuery"), 2, 10);
+		TermQuery typeQuery = new TermQuery(new Term("_type", "concept"));
+
+		policy.onUse(typeQuery);
+		assertFalse(policy.shouldCache(typeQuery));
+		policy.onUse(new TermQuery(new Term("_type", "concept")));
+		assertTrue(policy.shouldCache(typeQuery));
+	}
+
+	@Test
+	void testQueryTypes() {
+		TerminologyQueryCachingPolicy policy = new TerminologyQueryCachingPolicy(Set.of("TermQuery", "BooleanQuery"), 1, 10);
+		PrefixQuery prefixQuery = new PrefixQuery(new Term("term.en", "diab"));
+		policy.onUse(prefixQuery);
+		assertFalse(policy.shouldCache(prefixQuery));
+
+		BooleanQuery emptyBoolean = new BooleanQuery.Builder().build();
+		policy.onUse(emptyBoolean);
+		assertFalse(policy.shouldCache(emptyBoolean));
+	}
+
+	@Test
+	void testHistoryWindow() {
+		TerminologyQueryCachingPolicy policy = new TerminologyQueryCachingPolicy(Set.of("TermQuery"), 2, 3);
+		TermQuery query = new TermQuery(new Term("ancestors", "404684003"));
+		policy.onUse(query);
+		policy.onUse(query);
+		assertEquals(2, policy.frequency(query));
+
+		for (int i = 0; i < 3; i++) {
+			policy.onUse(new TermQuery(new Term("id", "" + i)));
+		}
+		assertEquals(0, policy.frequency(query));
+		assertFalse(policy.shouldCache(query));
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.snomed.snowstormlite.service;
+
+import org.ihtsdo.otf.snomedboot.ReleaseImportException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstormlite.TestConfig;
+import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.fhir.FHIRServerResponseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class ValueSetBulkValidationServiceTest {
+
+	private static final String FINDINGS = "http://snomed.info/sct?fhir_vs=isa/404684003";
+
+	@Autowired
+	private ValueSetBulkValidationService bulkValidationService;
+
+	@Autowired
+	private TestService testService;
+
+	@Test
+	void testValidate() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		String input = """
+				{"code":"362969004"}
+				{"code":"404684003","display":"Clinical finding"}
+				{"code":"404684003","display":"Something else"}
+				{"code":"138875005"}
+				{"code":"138875005","valueSet":"http://snomed.info/sct?fhir_vs=isa/138875005"}
+				{"code":"138875005","valueSet":"http://example.com/unknown"}
+				""";
+		List<ValueSetBulkValidationService.Item> items = bulkValidationService.readItems(toStream(input), FINDINGS);
+		assertEquals(6, items.size());
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		assertEquals(6, bulkValidationService.validate(items, outputStream));
+		List<String> results = Arrays.asList(outputStream.toString(StandardCharsets.UTF_8).split("\n"));
+		assertEquals(6, results.size());
+		assertEquals("{\"index\":0,\"code\":\"362969004\",\"result\":true,\"inactive\":false}", results.get(0));
+		assertEquals("{\"index\":1,\"code\":\"404684003\",\"result\":true,\"inactive\":false}", results.get(1));
+		assertTrue(results.get(2).startsWith("{\"index\":2,\"code\":\"404684003\",\"result\":false,\"inactive\":false,\"message\":"), results.get(2));
+		assertTrue(results.get(3).startsWith("{\"index\":3,\"code\":\"138875005\",\"result\":false,"), results.get(3));
+		assertEquals("{\"index\":4,\"code\":\"138875005\",\"result\":true,\"inactive\":false}", results.get(4));
+		assertEquals("{\"index\":5,\"code\":\"138875005\",\"result\":false,\"message\":\"ValueSet not found.\"}", results.get(5));
+	}
+
+	@Test
+	void testInvalidInput() {
+		FHIRServerResponseException exception = assertThrows(FHIRServerResponseException.class,
+				() -> bulkValidationService.readItems(toStream("{\"code\":\"362969004\"}\n{\"code\":"), FINDINGS));
+		assertEquals(400, exception.getStatusCode());
+	}
+
+	private static ByteArrayInputStream toStream(String input) {
+		return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		testService.tearDown();
+	}
+
+}
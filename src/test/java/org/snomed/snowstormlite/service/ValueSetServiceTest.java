@@ -1,6 +1,10 @@
 package org.snomed.snowstormlite.service;
 
 import ca.uhn.fhir.context.FhirContext;
+import jakarta.servlet.ServletException;
+import org.apache.lucene.search.IndexSearcher;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Enumerations;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.junit.jupiter.api.AfterEach;
@@ -8,15 +12,23 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstormlite.TestConfig;
 import org.snomed.snowstormlite.TestService;
+import org.snomed.snowstormlite.config.QueryBudgetFilter;
+import org.snomed.snowstormlite.config.QueryLimitsConfiguration;
+import org.snomed.snowstormlite.domain.FHIRConcept;
 import org.snomed.snowstormlite.domain.valueset.FHIRValueSet;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstormlite.TestService.EN_LANGUAGE_DIALECTS;
+import static org.snomed.snowstormlite.fhir.FHIRConstants.SNOMED_URI;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes = TestConfig.class)
@@ -25,9 +37,15 @@ class ValueSetServiceTest {
 	@Autowired
 	private ValueSetService valueSetService;
 
+	@Autowired
+	private ValueSetRepository valueSetRepository;
+
 	@Autowired
 	private FhirContext fhirContext;
 
+	@Autowired
+	private IndexIOProvider indexIOProvider;
+
 	@Autowired
 	private TestService testService;
 
@@ -75,6 +93,161 @@ class ValueSetServiceTest {
 		assertEquals("second", updated.get(2).getTitle());
 	}
 
+	@Test
+	void testSearch() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		valueSetService.createOrUpdateValueset(parseValueSet("findings", "<< 404684003"));
+		valueSetService.createOrUpdateValueset(parseValueSet("procedures", "<< 362969004"));
+		ValueSet titled = parseValueSet("titled", "<< 138875005");
+		titled.setTitle("Everything");
+		titled.setStatus(Enumerations.PublicationStatus.DRAFT);
+		valueSetService.createOrUpdateValueset(titled);
+
+		ResourceSearch.Page<FHIRValueSet> page = valueSetService.search(ResourceSearch.of(null, null, null, null, null, 1, 1));
+		assertEquals(3, page.total());
+		assertEquals(1, page.resources().size());
+		// Summaries do not include the compose
+		assertNull(page.resources().get(0).getCompose());
+
+		assertEquals(List.of("http://example.com/fhir/ValueSet/findings", "http://example.com/fhir/ValueSet/procedures"),
+				valueSetService.search(ResourceSearch.of(null, "1", null, "active", null, null, null)).resources().stream().map(FHIRValueSet::getUrl).toList());
+		page = valueSetService.search(ResourceSearch.of(null, null, null, null, "every", null, null));
+		assertEquals(1, page.total());
+		assertEquals("Everything", page.resources().get(0).getTitle());
+		assertEquals("titled", valueSetService.search(ResourceSearch.of("http://example.com/fhir/ValueSet/titled", null, null, null, null, null, null))
+				.resources().get(0).getId());
+	}
+
+	@Test
+	void testSaveDoesNotReopenSnomedIndex() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		IndexSearcher snomedSearcher = indexIOProvider.getIndexSearcher();
+		valueSetService.createOrUpdateValueset(parseValueSet("findings", "<< 404684003"));
+		assertSame(snomedSearcher, indexIOProvider.getIndexSearcher());
+		assertEquals(1, valueSetService.findAll().size());
+	}
+
+	@Test
+	void testMaterialisedExpansion() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		valueSetService.createOrUpdateValueset(parseValueSet("dotted", "<< 362969004 . 363698007"));
+		valueSetService.createOrUpdateValueset(parseValueSet("simple", "<< 404684003"));
+
+		// The dotted expression is evaluated by loading concepts so the expansion is stored, the simple compose is a single query
+		assertArrayEquals(new long[]{113331007L}, valueSetRepository.findMaterialisedMembers("dotted").conceptIds());
+		assertNull(valueSetRepository.findMaterialisedMembers("simple"));
+
+		FHIRValueSet dotted = new FHIRValueSet(valueSetService.findOrInferValueSet("dotted", null, null));
+		ValueSet expanded = valueSetService.expand(dotted, null, EN_LANGUAGE_DIALECTS, false, List.of(), 0, 10).getFirst();
+		assertEquals(1, expanded.getExpansion().getTotal());
+		assertEquals("113331007", expanded.getExpansion().getContains().get(0).getCode());
+
+		assertEquals(1, valueSetService.findMembers(dotted, Set.of(new Coding(SNOMED_URI, "113331007", null)), false).size());
+		assertEquals(0, valueSetService.findMembers(dotted, Set.of(new Coding(SNOMED_URI, "138875005", null)), false).size());
+
+		// Materialising again without a new import gives the same members and key, see testImportNotTimeLimited for a real import
+		String key = valueSetRepository.findMaterialisedMembers("dotted").key();
+		valueSetService.materialiseStoredValueSets();
+		assertArrayEquals(new long[]{113331007L}, valueSetRepository.findMaterialisedMembers("dotted").conceptIds());
+		assertEquals(key, valueSetRepository.findMaterialisedMembers("dotted").key());
+	}
+
+	@Test
+	void testMaterialisedExpansionUpdated() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		valueSetService.createOrUpdateValueset(parseValueSet("stored", "<< 362969004 . 363698007"));
+		FHIRValueSet stored = new FHIRValueSet(valueSetService.findOrInferValueSet("stored", null, null));
+		assertEquals(1, valueSetService.expand(stored, null, EN_LANGUAGE_DIALECTS, false, List.of(), 0, 10).getFirst().getExpansion().getTotal());
+		assertEquals(1, valueSetService.findMembers(stored, Set.of(new Coding(SNOMED_URI, "113331007", null)), false).size());
+
+		// The members read for the earlier version of the resource index are not used after the update
+		valueSetService.createOrUpdateValueset(parseValueSet("stored", "< 404684003 {{ +HISTORY }}"));
+		stored = new FHIRValueSet(valueSetService.findOrInferValueSet("stored", null, null));
+		assertEquals(3, valueSetService.expand(stored, null, EN_LANGUAGE_DIALECTS, false, List.of(), 0, 10).getFirst().getExpansion().getTotal());
+		assertEquals(0, valueSetService.findMembers(stored, Set.of(new Coding(SNOMED_URI, "113331007", null)), false).size());
+	}
+
+	@Test
+	void testImportNotTimeLimited() throws Exception {
+		testService.importRF2Int();
+		valueSetService.createOrUpdateValueset(parseValueSet("dotted", "<< 362969004 . 363698007"));
+		String keyBefore = valueSetRepository.findMaterialisedMembers("dotted").key();
+
+		QueryLimitsConfiguration limits = new QueryLimitsConfiguration();
+		QueryLimitsConfiguration.Limit limit = new QueryLimitsConfiguration.Limit();
+		limit.setTimeoutMs(1L);
+		limits.getOperation().put(QueryLimitsConfiguration.DEFAULT_OPERATION, limit);
+		QueryBudgetFilter filter = new QueryBudgetFilter(limits);
+
+		filter.doFilter(new MockHttpServletRequest("GET", "/fhir/ValueSet/$expand"), new MockHttpServletResponse(),
+				(request, response) -> assertNotNull(QueryBudget.current()));
+		filter.doFilter(new MockHttpServletRequest("POST", "/fhir-admin/load-package"), new MockHttpServletResponse(), (request, response) -> {
+			assertNull(QueryBudget.current());
+			try {
+				testService.importRF2Int();
+			} catch (ReleaseImportException e) {
+				throw new ServletException(e);
+			}
+		});
+
+		// Stored expansions are made again for the new import
+		ValueSetRepository.MaterialisedMembers members = valueSetRepository.findMaterialisedMembers("dotted");
+		assertNotNull(members);
+		assertNotEquals(keyBefore, members.key());
+		assertArrayEquals(new long[]{113331007L}, members.conceptIds());
+	}
+
+	@Test
+	void testEnumeratedCodesStoredAsConceptIds() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		valueSetService.createOrUpdateValueset(fhirContext.newJsonParser().parseResource(ValueSet.class, "{\"resourceType\":\"ValueSet\",\"id\":\"enumerated\"," +
+				"\"url\":\"http://example.com/fhir/ValueSet/enumerated\",\"version\":\"1\",\"status\":\"active\",\"compose\":{\"include\":[" +
+				"{\"system\":\"http://snomed.info/sct\",\"concept\":[{\"code\":\"404684003\"},{\"code\":\"20516002\"},{\"code\":\"362969004\"}]}]}}"));
+
+		// Codes are read back in their original order
+		FHIRValueSet stored = valueSetService.findById("enumerated");
+		assertArrayEquals(new long[]{404684003L, 20516002L, 362969004L}, stored.getCompose().getInclude().get(0).getConceptIds());
+		assertEquals(List.of("404684003", "20516002", "362969004"), stored.getCompose().getInclude().get(0).getCodes());
+
+		ValueSet expanded = valueSetService.expand(stored, null, EN_LANGUAGE_DIALECTS, false, List.of(), 0, 10).getFirst();
+		assertEquals(3, expanded.getExpansion().getTotal());
+
+		IndexSearcher indexSearcher = indexIOProvider.getIndexSearcher();
+		assertEquals(2, indexSearcher.count(new ConceptIdSetQuery(new long[]{362969004L, 404684003L, 123L})));
+		assertEquals(0, indexSearcher.count(new ConceptIdSetQuery(new long[]{})));
+	}
+
+	@Test
+	void testFindMembers() throws IOException, ReleaseImportException {
+		testService.importRF2Int();
+
+		FHIRValueSet findings = new FHIRValueSet(valueSetService.createSnomedImplicitValueSet("http://snomed.info/sct?fhir_vs=isa/404684003"));
+		List<FHIRConcept> members = valueSetService.findMembers(findings,
+				Set.of(new Coding(SNOMED_URI, "362969004", null), new Coding(SNOMED_URI, "138875005", null)), false);
+		assertEquals(1, members.size());
+		FHIRConcept member = members.get(0);
+		assertEquals("362969004", member.getConceptId());
+		assertTrue(member.isActive());
+		assertTrue(member.getDescriptions().isEmpty());
+
+		members = valueSetService.findMembers(findings, Set.of(new Coding(SNOMED_URI, "404684003", "Clinical finding")), true);
+		assertEquals(1, members.size());
+		assertTrue(members.get(0).getDescriptions().stream().anyMatch(description -> description.getTerm().equals("Clinical finding")));
+
+		assertTrue(valueSetService.findMembers(findings, Set.of(new Coding("http://loinc.org", "404684003", null)), false).isEmpty());
+	}
+
+	private ValueSet parseValueSet(String id, String ecl) {
+		return fhirContext.newJsonParser().parseResource(ValueSet.class, "{\"resourceType\":\"ValueSet\",\"id\":\"" + id + "\"," +
+				"\"url\":\"http://example.com/fhir/ValueSet/" + id + "\",\"version\":\"1\",\"status\":\"active\"," +
+				"\"compose\":{\"include\":[{\"system\":\"http://snomed.info/sct\",\"filter\":[{\"property\":\"constraint\",\"op\":\"=\",\"value\":\"" + ecl + "\"}]}]}}");
+	}
+
 	@AfterEach
 	public void after() throws IOException {
 		testService.tearDown();
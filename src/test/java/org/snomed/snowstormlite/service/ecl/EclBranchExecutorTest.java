@@ -0,0 +1,47 @@
+package org.snomed.snowstormlite.service.ecl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EclBranchExecutorTest {
+
+	private final EclBranchExecutor executor = new EclBranchExecutor(true, 1, 1, 1);
+
+	@Test
+	void testResultsInTaskOrder() throws IOException {
+		List<Callable<Integer>> tasks = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			int value = i;
+			tasks.add(() -> value);
+		}
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), executor.invokeAll(tasks));
+	}
+
+	@Test
+	void testNestedBranchesComplete() throws IOException {
+		// A single pool thread is used by the outer branch, nested branches must not wait for it
+		Callable<Integer> nested = () -> executor.invokeAll(List.of(() -> 1, () -> 2, () -> 3)).stream().mapToInt(Integer::intValue).sum();
+		assertEquals(List.of(6, 6, 6), executor.invokeAll(List.of(nested, nested, nested)));
+	}
+
+	@Test
+	void testExceptionRethrown() {
+		List<Callable<Integer>> tasks = List.of(() -> 1, () -> {
+			throw new IOException("Branch failed");
+		});
+		IOException exception = assertThrows(IOException.class, () -> executor.invokeAll(tasks));
+		assertEquals("Branch failed", exception.getMessage());
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,38 @@
+package org.snomed.snowstormlite.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConceptIdListCodecTest {
+
+	@Test
+	void testRoundTrip() {
+		long[] conceptIds = {404684003L, 138875005L, 999000671000001103L, 313005L, 362969004L};
+		byte[] bytes = ConceptIdListCodec.encode(conceptIds.clone());
+		assertArrayEquals(new long[]{313005L, 138875005L, 362969004L, 404684003L, 999000671000001103L}, ConceptIdListCodec.decode(bytes));
+	}
+
+	@Test
+	void testEmpty() {
+		assertArrayEquals(new long[0], ConceptIdListCodec.decode(ConceptIdListCodec.encode(new long[0])));
+	}
+
+	@Test
+	void testDenseIdsAreCompact() {
+		long[] conceptIds = new long[1000];
+		for (int i = 0; i < conceptIds.length; i++) {
+			conceptIds[i] = 10000000L + i * 1000L;
+		}
+		byte[] bytes = ConceptIdListCodec.encode(conceptIds.clone());
+		assertTrue(bytes.length < conceptIds.length * 3, "Encoded size " + bytes.length);
+		assertArrayEquals(conceptIds, ConceptIdListCodec.decode(bytes));
+	}
+
+	@Test
+	void testOrderedRoundTrip() {
+		long[] conceptIds = {404684003L, 138875005L, 999000671000001103L, 313005L, 313005L, 362969004L};
+		assertArrayEquals(conceptIds, ConceptIdListCodec.decodeOrdered(ConceptIdListCodec.encodeOrdered(conceptIds)));
+	}
+}